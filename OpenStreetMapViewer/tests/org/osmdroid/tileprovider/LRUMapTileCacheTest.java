@@ -0,0 +1,38 @@
+package org.osmdroid.tileprovider;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.drawable.BitmapDrawable;
+import android.test.AndroidTestCase;
+
+public class LRUMapTileCacheTest extends AndroidTestCase {
+
+	public void test_byte_budget() {
+		final BitmapDrawable small = new BitmapDrawable(Bitmap.createBitmap(256, 256,
+				Config.RGB_565));
+		final BitmapDrawable large = new BitmapDrawable(Bitmap.createBitmap(512, 512,
+				Config.ARGB_8888));
+		final int smallBytes = LRUMapTileCache.getByteCount(small);
+		final int largeBytes = LRUMapTileCache.getByteCount(large);
+		assertEquals("Large tile is 8x small tile", 8 * smallBytes, largeBytes);
+
+		// room for 12 small tiles, but always keep 2
+		final LRUMapTileCache cache = new LRUMapTileCache(2, 12 * smallBytes);
+		for (int i = 0; i < 12; i++) {
+			cache.put(new MapTile(1, i, 0), small);
+		}
+		assertEquals("Twelve small tiles", 12, cache.size());
+
+		cache.put(new MapTile(2, 0, 0), large);
+		assertEquals("Eight small tiles evicted", 5, cache.size());
+		assertEquals("Within budget", 12 * smallBytes, cache.getCurrentBytes());
+
+		// the two most recent tiles are pinned even though they exceed the budget
+		cache.put(new MapTile(2, 1, 0), large);
+		assertEquals("Only the pinned tiles are left", 2, cache.size());
+		assertEquals("Over budget", 2 * largeBytes, cache.getCurrentBytes());
+
+		cache.clear();
+		assertEquals("Nothing left", 0, cache.getCurrentBytes());
+	}
+}
@@ -0,0 +1,132 @@
+package org.osmdroid.tileprovider;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Compares {@link MapTileCache} with {@link ConcurrentMapTileCache} when one thread reads a
+ * viewport of tiles (like the UI thread in TilesOverlay) while the tile loader threads are putting
+ * tiles into the cache.
+ */
+public class MapTileCacheContentionTest extends AndroidTestCase {
+
+	private static final String TAG = "MapTileCacheContentionTest";
+
+	/** 8 file system threads and 2 download threads */
+	private static final int WRITER_THREADS = 10;
+	private static final int VIEWPORT_TILES = 5 * 7;
+	private static final int CAPACITY = VIEWPORT_TILES + 20;
+	private static final int READ_PASSES = 20000;
+
+	private final Drawable mDrawable = new BitmapDrawable();
+
+	public void test_contention() throws InterruptedException {
+		final long lru = run(new MapTileCache(CAPACITY));
+		final long concurrent = run(new ConcurrentMapTileCache(CAPACITY));
+
+		Log.i(TAG, "Reading the viewport: MapTileCache " + lru / 1000000
+				+ "ms, ConcurrentMapTileCache " + concurrent / 1000000 + "ms");
+		// the timings vary too much between devices and runs for a tighter bound
+		assertTrue("Lock-free reads aren't slower", concurrent <= 2 * lru);
+	}
+
+	public void test_capacity() {
+		final MapTileCache cache = new ConcurrentMapTileCache(4);
+		final int[] removed = new int[1];
+		cache.setTileRemovedListener(new LRUMapTileCache.TileRemovedListener() {
+			@Override
+			public void onTileRemoved(final MapTile mapTile) {
+				removed[0]++;
+			}
+		});
+		for (int i = 0; i < 10; i++) {
+			cache.putTile(new MapTile(1, i, i), mDrawable);
+		}
+		assertEquals("Six tiles removed", 6, removed[0]);
+		assertTrue("Latest tile is cached", cache.containsTile(new MapTile(1, 9, 9)));
+
+		cache.ensureCapacity(8);
+		for (int i = 10; i < 14; i++) {
+			cache.putTile(new MapTile(1, i, i), mDrawable);
+		}
+		assertEquals("No more tiles removed after ensureCapacity", 6, removed[0]);
+
+		cache.clear();
+		assertEquals("All tiles removed", 14, removed[0]);
+	}
+
+	/**
+	 * Reads the viewport while the writers fill the cache, then checks that no writer failed, that
+	 * every read was counted and that the cache stayed within its capacity.
+	 *
+	 * @return the time spent reading, in nanoseconds
+	 */
+	private long run(final MapTileCache pCache) throws InterruptedException {
+		final MapTile[] viewport = new MapTile[VIEWPORT_TILES];
+		for (int i = 0; i < VIEWPORT_TILES; i++) {
+			viewport[i] = new MapTile(15, i % 7, i / 7);
+			pCache.putTile(viewport[i], mDrawable);
+		}
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final Thread[] writers = new Thread[WRITER_THREADS];
+		for (int i = 0; i < WRITER_THREADS; i++) {
+			final Random random = new Random(i);
+			writers[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (final InterruptedException e) {
+						return;
+					}
+					try {
+						while (!isInterrupted()) {
+							pCache.putTile(new MapTile(15, random.nextInt(64), random.nextInt(64)),
+									mDrawable);
+						}
+					} catch (final Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+			writers[i].start();
+		}
+
+		start.countDown();
+		final long begin = System.nanoTime();
+		for (int pass = 0; pass < READ_PASSES; pass++) {
+			for (final MapTile tile : viewport) {
+				pCache.getMapTile(tile);
+			}
+		}
+		final long total = System.nanoTime() - begin;
+
+		for (final Thread writer : writers) {
+			writer.interrupt();
+			writer.join();
+		}
+		assertNull("No writer failed", failure.get());
+		assertEquals("Every read was counted", (long) READ_PASSES * VIEWPORT_TILES,
+				pCache.getHits() + pCache.getMisses());
+
+		int cached = 0;
+		for (int x = 0; x < 64; x++) {
+			for (int y = 0; y < 64; y++) {
+				if (pCache.containsTile(new MapTile(15, x, y))) {
+					cached++;
+				}
+			}
+		}
+		assertTrue("Cache stays within its capacity", cached <= CAPACITY);
+		pCache.clear();
+		return total;
+	}
+}
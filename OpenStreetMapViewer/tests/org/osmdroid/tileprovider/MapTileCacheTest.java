@@ -0,0 +1,66 @@
+package org.osmdroid.tileprovider;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.drawable.BitmapDrawable;
+import android.test.AndroidTestCase;
+
+public class MapTileCacheTest extends AndroidTestCase {
+
+	public void test_prefetch_byte_budget() {
+		final BitmapDrawable tile = new BitmapDrawable(Bitmap.createBitmap(256, 256,
+				Config.RGB_565));
+		final int tileBytes = LRUMapTileCache.getByteCount(tile);
+
+		// room for 6 tiles in both partitions together
+		final MapTileCache cache = new MapTileCache(2, 6 * tileBytes);
+		cache.ensurePrefetchCapacity(10);
+		for (int i = 0; i < 10; i++) {
+			cache.putPrefetchedTile(new MapTile(1, i, 0), tile);
+		}
+		assertEquals("Within budget", 6 * tileBytes, cache.getCurrentBytes());
+		assertTrue("Latest prefetched tile kept", cache.containsTile(new MapTile(1, 9, 0)));
+		assertFalse("Eldest prefetched tile evicted", cache.containsTile(new MapTile(1, 3, 0)));
+
+		// the visible tiles push out the prefetched ones
+		for (int i = 0; i < 4; i++) {
+			cache.putTile(new MapTile(2, i, 0), tile);
+		}
+		assertEquals("Still within budget", 6 * tileBytes, cache.getCurrentBytes());
+		for (int i = 0; i < 4; i++) {
+			assertTrue("Visible tile kept", cache.containsTile(new MapTile(2, i, 0)));
+		}
+		assertTrue("Latest prefetched tile kept", cache.containsTile(new MapTile(1, 9, 0)));
+		assertFalse("Older prefetched tile evicted", cache.containsTile(new MapTile(1, 7, 0)));
+	}
+
+	public void test_concurrent_prefetch() {
+		final BitmapDrawable tile = new BitmapDrawable(Bitmap.createBitmap(256, 256,
+				Config.RGB_565));
+		final int tileBytes = LRUMapTileCache.getByteCount(tile);
+
+		final ConcurrentMapTileCache cache = new ConcurrentMapTileCache(2);
+		cache.ensurePrefetchCapacity(3);
+		cache.putTile(new MapTile(2, 0, 0), tile);
+		cache.putTile(new MapTile(2, 1, 0), tile);
+		for (int i = 0; i < 4; i++) {
+			cache.putPrefetchedTile(new MapTile(1, i, 0), tile);
+		}
+		assertTrue("Visible tiles kept", cache.containsTile(new MapTile(2, 0, 0))
+				&& cache.containsTile(new MapTile(2, 1, 0)));
+		assertFalse("Eldest prefetched tile evicted", cache.containsTile(new MapTile(1, 0, 0)));
+		assertEquals("Bytes", 5 * tileBytes, cache.getCurrentBytes());
+
+		// a prefetched tile is served, and moves to the clock
+		assertSame("Prefetched tile served", tile, cache.getMapTile(new MapTile(1, 1, 0)));
+		assertEquals("Hit", 1, cache.getHits());
+		assertEquals("A visible tile made room", 4 * tileBytes, cache.getCurrentBytes());
+		assertTrue("Used tile kept", cache.containsTile(new MapTile(1, 1, 0)));
+
+		// it doesn't count in the partition any more
+		cache.putPrefetchedTile(new MapTile(1, 4, 0), tile);
+		assertTrue("Room for another", cache.containsTile(new MapTile(1, 2, 0))
+				&& cache.containsTile(new MapTile(1, 3, 0))
+				&& cache.containsTile(new MapTile(1, 4, 0)));
+	}
+}
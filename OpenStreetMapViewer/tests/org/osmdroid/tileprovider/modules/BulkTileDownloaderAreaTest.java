@@ -0,0 +1,44 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.File;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+import org.osmdroid.util.BoundingBoxE6;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Check the tiles of an area, which come from {@link microsoft.mappoint.TileSystem}.
+ */
+public class BulkTileDownloaderAreaTest extends AndroidTestCase {
+
+	private final MapTileDownloader mDownloader = new MapTileDownloader(new XYTileSource("Test",
+			null, 0, 18, 256, ".png", "http://a/"));
+
+	public void test_tiles() {
+		final BulkTileDownloader job = new BulkTileDownloader(mDownloader, new BoundingBoxE6(
+				80000000, 90000000, -80000000, -90000000), 1, 2, new File("unused"));
+
+		// 2 x 2 tiles at zoom level 1, and x from 1 to 3 and y from 0 to 3 at zoom level 2
+		assertEquals("tiles", 4 + 3 * 4, job.getTileCount());
+		assertEquals("first", new MapTile(1, 0, 0).toString(), job.getTile(0).toString());
+		assertEquals("last of zoom level 1", new MapTile(1, 1, 1).toString(), job.getTile(3)
+				.toString());
+		assertEquals("first of zoom level 2", new MapTile(2, 1, 0).toString(), job.getTile(4)
+				.toString());
+		assertEquals("next column", new MapTile(2, 2, 0).toString(), job.getTile(8).toString());
+		assertEquals("last", new MapTile(2, 3, 3).toString(), job.getTile(15).toString());
+	}
+
+	public void test_antimeridian() {
+		final BulkTileDownloader job = new BulkTileDownloader(mDownloader, new BoundingBoxE6(
+				10000000, -170000000, -10000000, 170000000), 2, 2, new File("unused"));
+
+		// x from 3 round to 0, and y from 1 to 2
+		assertEquals("tiles", 4, job.getTileCount());
+		assertEquals("first", new MapTile(2, 3, 1).toString(), job.getTile(0).toString());
+		assertEquals("wrapped", new MapTile(2, 0, 1).toString(), job.getTile(2).toString());
+		assertEquals("last", new MapTile(2, 0, 2).toString(), job.getTile(3).toString());
+	}
+}
@@ -0,0 +1,180 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
+import org.osmdroid.tileprovider.IMapTileProviderCallback;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.tileprovider.ReusableBitmapDrawable;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.drawable.Drawable;
+import android.test.AndroidTestCase;
+
+/**
+ * Check that an expired tile is revalidated with a conditional request rather than downloaded
+ * again.
+ */
+public class MapTileDownloaderTest extends AndroidTestCase {
+
+	private static final String ETAG = "\"abc\"";
+
+	private ServerSocket mServerSocket;
+	private volatile String mIfNoneMatch;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mServerSocket = new ServerSocket(0);
+		final Thread server = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						serve(mServerSocket.accept());
+					}
+				} catch (final IOException e) {
+					// the server socket has been closed
+				}
+			}
+		};
+		server.setDaemon(true);
+		server.start();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		mServerSocket.close();
+		super.tearDown();
+	}
+
+	public void test_not_modified() throws InterruptedException {
+		final ITileSource tileSource = new XYTileSource("Test", null, 0, 18, 256, ".png",
+				"http://127.0.0.1:" + mServerSocket.getLocalPort() + "/");
+		final TestFilesystemCache cache = new TestFilesystemCache();
+		final MapTileDownloader downloader = new MapTileDownloader(tileSource, cache);
+
+		final ExpirableBitmapDrawable expired = new ReusableBitmapDrawable(Bitmap.createBitmap(
+				256, 256, Config.RGB_565));
+		expired.setState(new int[] { ExpirableBitmapDrawable.EXPIRED });
+		final Callback callback = new Callback();
+		final MapTileRequestState state = new MapTileRequestState(new MapTile(10, 1, 2),
+				new MapTileModuleProviderBase[] { downloader }, callback);
+		state.setExpiredTile(expired);
+
+		downloader.loadMapTileAsync(state);
+		assertTrue("completed", callback.mCompleted.await(10, TimeUnit.SECONDS));
+		downloader.detach();
+
+		assertEquals("conditional request", ETAG, mIfNoneMatch);
+		assertEquals("saved tile refreshed", 1, cache.mRefreshCount);
+		assertEquals("nothing saved", 0, cache.mSaveCount);
+		assertSame("the expired tile is delivered", expired, callback.mDrawable);
+		assertFalse("no longer expired", ExpirableBitmapDrawable.isDrawableExpired(expired));
+	}
+
+	/**
+	 * Answer each request on a connection with 304 Not Modified.
+	 */
+	private void serve(final Socket pSocket) {
+		try {
+			final BufferedReader in = new BufferedReader(new InputStreamReader(
+					pSocket.getInputStream(), "ISO-8859-1"));
+			final OutputStream out = pSocket.getOutputStream();
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.regionMatches(true, 0, "If-None-Match:", 0, 14)) {
+					mIfNoneMatch = line.substring(14).trim();
+				}
+				if (line.length() == 0) {
+					out.write("HTTP/1.1 304 Not Modified\r\nContent-Length: 0\r\n\r\n"
+							.getBytes("ISO-8859-1"));
+					out.flush();
+				}
+			}
+		} catch (final IOException e) {
+			// the client has closed the connection
+		} finally {
+			try {
+				pSocket.close();
+			} catch (final IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	private static class TestFilesystemCache implements IRevalidatingFilesystemCache {
+		private int mSaveCount;
+		private int mRefreshCount;
+
+		@Override
+		public boolean saveFile(final ITileSource pTileSourceInfo, final MapTile pTile,
+				final InputStream pStream) {
+			mSaveCount++;
+			return true;
+		}
+
+		@Override
+		public boolean saveFile(final ITileSource pTileSourceInfo, final MapTile pTile,
+				final InputStream pStream, final TileValidators pValidators) {
+			mSaveCount++;
+			return true;
+		}
+
+		@Override
+		public TileValidators getValidators(final ITileSource pTileSourceInfo,
+				final MapTile pTile) {
+			return new TileValidators(ETAG, null);
+		}
+
+		@Override
+		public boolean refreshFile(final ITileSource pTileSourceInfo, final MapTile pTile) {
+			mRefreshCount++;
+			return true;
+		}
+
+		@Override
+		public long getSaveTime(final ITileSource pTileSourceInfo, final MapTile pTile) {
+			return 0;
+		}
+	}
+
+	private static class Callback implements IMapTileProviderCallback {
+		private final CountDownLatch mCompleted = new CountDownLatch(1);
+		private volatile Drawable mDrawable;
+
+		@Override
+		public void mapTileRequestCompleted(final MapTileRequestState aState,
+				final Drawable aDrawable) {
+			mDrawable = aDrawable;
+			mCompleted.countDown();
+		}
+
+		@Override
+		public void mapTileRequestFailed(final MapTileRequestState aState) {
+			mCompleted.countDown();
+		}
+
+		@Override
+		public void mapTileRequestExpiredTile(final MapTileRequestState aState,
+				final Drawable aDrawable) {
+		}
+
+		@Override
+		public boolean useDataConnection() {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package org.osmdroid.views;
+
+import java.util.ArrayList;
+
+import org.osmdroid.DefaultResourceProxyImpl;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileProviderArray;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.os.Looper;
+import android.os.Message;
+import android.test.AndroidTestCase;
+
+public class CoalescingInvalidationHandlerTest extends AndroidTestCase {
+
+	private static final int TILE_SIZE = 256;
+	private static final int ZOOM_LEVEL = 2;
+
+	private TestMapView mMapView;
+	private CoalescingInvalidationHandler mHandler;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		if (Looper.myLooper() == null) {
+			Looper.prepare();
+		}
+		mMapView = new TestMapView(getContext());
+		mMapView.layout(0, 0, 2 * TILE_SIZE, 2 * TILE_SIZE);
+		mMapView.getController().setZoom(ZOOM_LEVEL);
+		mHandler = new CoalescingInvalidationHandler(mMapView);
+	}
+
+	public void test_union() {
+		// the screen shows the tiles 1 and 2 in each direction
+		mMapView.scrollTo(0, 0);
+		mMapView.reset();
+		tileLoaded(new MapTile(ZOOM_LEVEL, 1, 1));
+		tileLoaded(new MapTile(ZOOM_LEVEL, 2, 2));
+		tileLoaded(new MapTile(ZOOM_LEVEL, 0, 0));
+		assertTrue("Nothing invalidated before the frame", mMapView.mDirtyRects.isEmpty());
+
+		mHandler.flush();
+		assertEquals("One invalidation", 1, mMapView.mDirtyRects.size());
+		assertEquals("The union of the visible tiles", new Rect(-TILE_SIZE, -TILE_SIZE,
+				TILE_SIZE, TILE_SIZE), mMapView.mDirtyRects.get(0));
+		assertEquals("Not the whole view", 0, mMapView.mInvalidateAllCount);
+
+		mHandler.flush();
+		assertEquals("Nothing more to invalidate", 1, mMapView.mDirtyRects.size());
+	}
+
+	public void test_wrap_around() {
+		// the screen shows the east edge of the world and the west edge to the right of it
+		mMapView.scrollTo(2 * TILE_SIZE, 0);
+		mMapView.reset();
+		tileLoaded(new MapTile(ZOOM_LEVEL, 0, 1));
+		mHandler.flush();
+
+		assertEquals("One invalidation", 1, mMapView.mDirtyRects.size());
+		assertEquals("The tile a world to the right", new Rect(2 * TILE_SIZE, -TILE_SIZE,
+				3 * TILE_SIZE, 0), mMapView.mDirtyRects.get(0));
+	}
+
+	public void test_redraws_saved() {
+		mMapView.scrollTo(0, 0);
+		mMapView.reset();
+		mHandler.resetStatistics();
+		for (int i = 1; i <= 2; i++) {
+			for (int j = 1; j <= 2; j++) {
+				tileLoaded(new MapTile(ZOOM_LEVEL, i, j));
+			}
+		}
+		mHandler.flush();
+
+		// a tile of another zoom level invalidates the whole view
+		tileLoaded(new MapTile(ZOOM_LEVEL + 1, 0, 0));
+		tileLoaded(new MapTile(ZOOM_LEVEL, 1, 1));
+		mHandler.flush();
+
+		assertEquals("Tiles", 6, mHandler.getTileCount());
+		assertEquals("Invalidations", 2, mHandler.getInvalidateCount());
+		assertEquals("Redraws saved", 4, mHandler.getRedrawsSaved());
+		assertEquals("Tiles invalidated", 1, mMapView.mDirtyRects.size());
+		assertEquals("Whole view invalidated", 1, mMapView.mInvalidateAllCount);
+	}
+
+	private void tileLoaded(final MapTile pTile) {
+		mHandler.handleMessage(Message.obtain(mHandler, MapTile.MAPTILE_SUCCESS_ID, pTile));
+	}
+
+	private static class TestMapView extends MapView {
+
+		private final ArrayList<Rect> mDirtyRects = new ArrayList<Rect>();
+		private int mInvalidateAllCount;
+
+		private TestMapView(final Context pContext) {
+			super(pContext, TILE_SIZE, new DefaultResourceProxyImpl(pContext),
+					new MapTileProviderArray(TileSourceFactory.DEFAULT_TILE_SOURCE, null,
+							new MapTileModuleProviderBase[0]));
+		}
+
+		private void reset() {
+			mDirtyRects.clear();
+			mInvalidateAllCount = 0;
+		}
+
+		@Override
+		public void invalidateMapCoordinates(final Rect pDirty) {
+			mDirtyRects.add(new Rect(pDirty));
+		}
+
+		@Override
+		public void invalidate() {
+			mInvalidateAllCount++;
+		}
+	}
+}
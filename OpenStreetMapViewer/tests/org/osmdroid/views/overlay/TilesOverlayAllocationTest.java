@@ -0,0 +1,56 @@
+package org.osmdroid.views.overlay;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileProviderArray;
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+/**
+ * Check that drawing tiles that are all in the memory cache doesn't allocate anything.
+ */
+public class TilesOverlayAllocationTest extends AndroidTestCase {
+
+	private static final int ZOOM_LEVEL = 3;
+	private static final int TILE_SIZE = 256;
+
+	@SuppressWarnings("deprecation")
+	public void test_steady_viewport_allocates_nothing() {
+		final MapTileProviderArray provider = new MapTileProviderArray(
+				TileSourceFactory.DEFAULT_TILE_SOURCE, null, new MapTileModuleProviderBase[0]);
+		final TilesOverlay overlay = new TilesOverlay(provider, getContext());
+
+		// the viewport covers tiles 0..3 in each direction
+		final Rect viewPort = new Rect(TILE_SIZE, TILE_SIZE, 3 * TILE_SIZE, 3 * TILE_SIZE);
+		final BitmapDrawable drawable = new BitmapDrawable(Bitmap.createBitmap(TILE_SIZE,
+				TILE_SIZE, Config.RGB_565));
+		provider.ensureCapacity(16);
+		for (int x = 0; x < 4; x++) {
+			for (int y = 0; y < 4; y++) {
+				provider.mapTileRequestCompleted(new MapTileRequestState(new MapTile(ZOOM_LEVEL, x,
+						y), new MapTileModuleProviderBase[0], provider), drawable);
+			}
+		}
+
+		final Canvas canvas = new Canvas(Bitmap.createBitmap(4 * TILE_SIZE, 4 * TILE_SIZE,
+				Config.RGB_565));
+		overlay.drawTiles(canvas, ZOOM_LEVEL, TILE_SIZE, viewPort);
+
+		Debug.resetThreadAllocCount();
+		Debug.startAllocCounting();
+		for (int i = 0; i < 100; i++) {
+			overlay.drawTiles(canvas, ZOOM_LEVEL, TILE_SIZE, viewPort);
+		}
+		Debug.stopAllocCounting();
+
+		assertEquals("No allocations", 0, Debug.getThreadAllocCount());
+	}
+}
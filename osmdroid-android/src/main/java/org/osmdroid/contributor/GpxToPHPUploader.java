@@ -17,6 +17,7 @@ import org.osmdroid.contributor.util.RecordedGeoPoint;
 import org.osmdroid.contributor.util.RecordedRouteGPXFormatter;
 import org.osmdroid.contributor.util.Util;
 import org.osmdroid.http.HttpClientFactory;
+import org.osmdroid.http.PooledHttpClientFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,7 +52,8 @@ public class GpxToPHPUploader {
 					requestEntity.addPart("gpxfile", new InputStreamBody(gpxInputStream, ""
 							+ System.currentTimeMillis() + ".gpx"));
 
-					httpClient.getParams().setBooleanParameter("http.protocol.expect-continue",
+					// not on the client, which is shared
+					request.getParams().setBooleanParameter("http.protocol.expect-continue",
 							false);
 
 					request.setEntity(requestEntity);
@@ -73,6 +75,8 @@ public class GpxToPHPUploader {
 
 						logger.debug("GPXUploader", "Response: " + sb.toString());
 					}
+					// let the connection be reused
+					PooledHttpClientFactory.consumeEntity(response);
 				} catch (final Exception e) {
 					// logger.error("OSMUpload Error", e);
 				}
@@ -1,11 +1,11 @@
 package org.osmdroid.http;
 
 import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.DefaultHttpClient;
 
 /**
  * Factory class for creating an instance of {@link HttpClient}.
- * The default implementation returns an instance of {@link DefaultHttpClient}.
+ * The default implementation is a {@link PooledHttpClientFactory}, which returns the same client
+ * every time, so that connections are reused.
  * In order to use a different implementation call {@link #setFactoryInstance(IHttpClientFactory)}
  * early in your code, for example in <code>onCreate</code> in your main activity.
  * For example to use
@@ -21,12 +21,7 @@ import org.apache.http.impl.client.DefaultHttpClient;
  */
 public class HttpClientFactory {
 
-	private static IHttpClientFactory mFactoryInstance = new IHttpClientFactory() {
-		@Override
-		public HttpClient createHttpClient() {
-			return new DefaultHttpClient();
-		}
-	};
+	private static IHttpClientFactory mFactoryInstance = new PooledHttpClientFactory();
 
 	public static void setFactoryInstance(final IHttpClientFactory aHttpClientFactory) {
 		mFactoryInstance = aHttpClientFactory;
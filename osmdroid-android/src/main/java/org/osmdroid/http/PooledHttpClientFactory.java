@@ -0,0 +1,152 @@
+package org.osmdroid.http;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * The default {@link IHttpClientFactory}. It returns the same thread safe {@link HttpClient} every
+ * time, with a pool of connections that are kept alive between requests, so that the tiles from a
+ * server don't each pay for a new TCP and TLS handshake. The number of connections to each server
+ * and in total is limited, and so is the time to connect, to wait for data and to wait for a
+ * connection from the pool.<br />
+ * A connection only goes back to the pool once the entity of its response has been read or
+ * consumed, see {@link #consumeEntity(HttpResponse)}. Don't shut down the connection manager of
+ * the client, because it's shared.
+ */
+public class PooledHttpClientFactory implements IHttpClientFactory {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	public static final int MAXIMUM_CONNECTIONS_DEFAULT = 20;
+	public static final int MAXIMUM_CONNECTIONS_PER_ROUTE_DEFAULT = 8;
+	public static final int CONNECT_TIMEOUT_DEFAULT = 15 * 1000;
+	public static final int SOCKET_TIMEOUT_DEFAULT = 30 * 1000;
+	/** how long to wait for a connection from the pool */
+	public static final long POOL_TIMEOUT_DEFAULT = 30 * 1000;
+	/** how long to keep an idle connection if the server doesn't say */
+	public static final long KEEP_ALIVE_DEFAULT = 30 * 1000;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final int mMaximumConnections;
+	private final int mMaximumConnectionsPerRoute;
+	private final int mConnectTimeout;
+	private final int mSocketTimeout;
+
+	private DefaultHttpClient mHttpClient;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public PooledHttpClientFactory() {
+		this(MAXIMUM_CONNECTIONS_DEFAULT, MAXIMUM_CONNECTIONS_PER_ROUTE_DEFAULT,
+				CONNECT_TIMEOUT_DEFAULT, SOCKET_TIMEOUT_DEFAULT);
+	}
+
+	/**
+	 * @param pMaximumConnectionsPerRoute
+	 *            the number of connections to each server, which should be at least the number of
+	 *            tiles that are downloaded at the same time
+	 * @param pConnectTimeout
+	 *            milliseconds to wait for a connection to be established
+	 * @param pSocketTimeout
+	 *            milliseconds to wait for data
+	 */
+	public PooledHttpClientFactory(final int pMaximumConnections,
+			final int pMaximumConnectionsPerRoute, final int pConnectTimeout,
+			final int pSocketTimeout) {
+		mMaximumConnections = pMaximumConnections;
+		mMaximumConnectionsPerRoute = pMaximumConnectionsPerRoute;
+		mConnectTimeout = pConnectTimeout;
+		mSocketTimeout = pSocketTimeout;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public synchronized HttpClient createHttpClient() {
+		if (mHttpClient == null) {
+			final HttpParams params = new BasicHttpParams();
+			HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+			HttpConnectionParams.setConnectionTimeout(params, mConnectTimeout);
+			HttpConnectionParams.setSoTimeout(params, mSocketTimeout);
+			// a connection the server has closed while it was idle is found before it's used
+			HttpConnectionParams.setStaleCheckingEnabled(params, true);
+			// a request on a reused connection isn't held back by Nagle's algorithm
+			HttpConnectionParams.setTcpNoDelay(params, true);
+			ConnManagerParams.setMaxTotalConnections(params, mMaximumConnections);
+			ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(
+					mMaximumConnectionsPerRoute));
+			ConnManagerParams.setTimeout(params, POOL_TIMEOUT_DEFAULT);
+
+			final SchemeRegistry registry = new SchemeRegistry();
+			registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+			registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+			mHttpClient = new DefaultHttpClient(new ThreadSafeClientConnManager(params, registry),
+					params);
+			mHttpClient.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+				private final DefaultConnectionKeepAliveStrategy mServerStrategy =
+					new DefaultConnectionKeepAliveStrategy();
+
+				@Override
+				public long getKeepAliveDuration(final HttpResponse pResponse,
+						final HttpContext pContext) {
+					final long duration = mServerStrategy.getKeepAliveDuration(pResponse, pContext);
+					return duration > 0 ? duration : KEEP_ALIVE_DEFAULT;
+				}
+			});
+		} else {
+			mHttpClient.getConnectionManager().closeExpiredConnections();
+			mHttpClient.getConnectionManager().closeIdleConnections(KEEP_ALIVE_DEFAULT,
+					TimeUnit.MILLISECONDS);
+		}
+		return mHttpClient;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Read the rest of the entity of a response, if it has one, so that its connection goes back
+	 * to the pool. Call this when the content isn't read to the end, eg for an error response.
+	 */
+	public static void consumeEntity(final HttpResponse pResponse) {
+		final HttpEntity entity = pResponse == null ? null : pResponse.getEntity();
+		if (entity != null) {
+			try {
+				entity.consumeContent();
+			} catch (final IOException e) {
+				// the connection is closed instead
+			}
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package org.osmdroid.tileprovider;
+
+import java.util.LinkedList;
+
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.util.LongHashMap;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+/**
+ * A pool of bitmaps from tiles that have been evicted from the memory cache. Tile sources decode
+ * new tiles into these bitmaps with {@link BitmapFactory.Options#inBitmap} instead of allocating
+ * new ones, which saves a lot of garbage collection while panning. Bitmaps are pooled by size and
+ * config because before KitKat a bitmap can only be reused for an image of exactly the same size.
+ * Reusing bitmaps requires Honeycomb, on older versions the pool stays empty.
+ */
+public class BitmapPool implements OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final BitmapPool sInstance = new BitmapPool();
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final LongHashMap<LinkedList<Bitmap>> mPool = new LongHashMap<LinkedList<Bitmap>>();
+	private int mMaximumSize = BITMAP_POOL_MAXIMUM_SIZE_DEFAULT;
+	private int mSize;
+
+	private long mHits;
+	private long mMisses;
+	private long mReturned;
+	private long mDiscarded;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	private BitmapPool() {
+	}
+
+	public static BitmapPool getInstance() {
+		return sInstance;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * Set the maximum number of bitmaps to keep in the pool. Bitmaps returned to a full pool are
+	 * left for the garbage collector.
+	 */
+	public synchronized void setMaximumSize(final int pMaximumSize) {
+		mMaximumSize = pMaximumSize;
+		if (mSize > mMaximumSize) {
+			clear();
+		}
+	}
+
+	public synchronized int getMaximumSize() {
+		return mMaximumSize;
+	}
+
+	/**
+	 * @return the number of bitmaps in the pool
+	 */
+	public synchronized int getSize() {
+		return mSize;
+	}
+
+	/**
+	 * @return the number of times a bitmap was taken from the pool
+	 */
+	public synchronized long getHits() {
+		return mHits;
+	}
+
+	/**
+	 * @return the number of times there was no suitable bitmap in the pool
+	 */
+	public synchronized long getMisses() {
+		return mMisses;
+	}
+
+	/**
+	 * @return the fraction of requests for a bitmap that were served from the pool
+	 */
+	public synchronized float getHitRate() {
+		final long requests = mHits + mMisses;
+		return requests == 0 ? 0 : (float) mHits / requests;
+	}
+
+	/**
+	 * @return the number of bitmaps that were put into the pool
+	 */
+	public synchronized long getReturned() {
+		return mReturned;
+	}
+
+	/**
+	 * @return the number of bitmaps that couldn't be put into the pool because it was full
+	 */
+	public synchronized long getDiscarded() {
+		return mDiscarded;
+	}
+
+	public synchronized void resetStatistics() {
+		mHits = mMisses = mReturned = mDiscarded = 0;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Take the bitmap of a tile that is no longer needed and put it in the pool. If the tile is
+	 * being drawn then the bitmap is left alone.
+	 */
+	public void returnDrawableToPool(final ReusableBitmapDrawable pDrawable) {
+		final Bitmap bitmap = pDrawable.tryRecycle();
+		if (bitmap != null && bitmap.isMutable() && !bitmap.isRecycled()) {
+			addBitmap(bitmap);
+		}
+	}
+
+	/**
+	 * Put a bitmap that was taken from the pool but couldn't be used back into the pool.
+	 */
+	public void returnBitmapToPool(final Bitmap pBitmap) {
+		if (pBitmap != null && pBitmap.isMutable() && !pBitmap.isRecycled()) {
+			addBitmap(pBitmap);
+		}
+	}
+
+	/**
+	 * Get a bitmap of the specified size and config from the pool.
+	 *
+	 * @return a bitmap, or null if there is no suitable bitmap
+	 */
+	public synchronized Bitmap obtainBitmapFromPool(final int pWidth, final int pHeight,
+			final Bitmap.Config pConfig) {
+		final LinkedList<Bitmap> bitmaps = mPool.get(getKey(pWidth, pHeight, pConfig));
+		if (bitmaps == null || bitmaps.isEmpty()) {
+			mMisses++;
+			return null;
+		}
+		mHits++;
+		mSize--;
+		return bitmaps.removeFirst();
+	}
+
+	/**
+	 * Set up the options to decode into a bitmap from the pool, if there is a suitable one.
+	 *
+	 * @return true if a bitmap from the pool will be reused
+	 */
+	public boolean applyReusableOptions(final BitmapFactory.Options pOptions, final int pWidth,
+			final int pHeight, final Bitmap.Config pConfig) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+			return false;
+		}
+		// the decoder needs a mutable bitmap to decode into, and it must be mutable to be reused again
+		pOptions.inMutable = true;
+		pOptions.inSampleSize = 1;
+		pOptions.inBitmap = obtainBitmapFromPool(pWidth, pHeight, pConfig);
+		return pOptions.inBitmap != null;
+	}
+
+	public synchronized void clear() {
+		mPool.clear();
+		mSize = 0;
+	}
+
+	private synchronized void addBitmap(final Bitmap pBitmap) {
+		if (mSize >= mMaximumSize) {
+			mDiscarded++;
+			return;
+		}
+		final long key = getKey(pBitmap.getWidth(), pBitmap.getHeight(), pBitmap.getConfig());
+		LinkedList<Bitmap> bitmaps = mPool.get(key);
+		if (bitmaps == null) {
+			bitmaps = new LinkedList<Bitmap>();
+			mPool.put(key, bitmaps);
+		}
+		bitmaps.addLast(pBitmap);
+		mSize++;
+		mReturned++;
+	}
+
+	private static long getKey(final int pWidth, final int pHeight, final Bitmap.Config pConfig) {
+		return ((long) pWidth << 32) | ((long) pHeight << 8)
+				| (pConfig == null ? 0xff : pConfig.ordinal());
+	}
+}
@@ -0,0 +1,130 @@
+package org.osmdroid.tileprovider;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-memory cache of the compressed (eg PNG or JPEG) bytes of tiles. It sits below the
+ * {@link MapTileCache} of decoded bitmaps: a compressed tile takes a fraction of the memory of its
+ * bitmap, so many more tiles fit in the same memory, and getting a tile back from here only costs
+ * a decode rather than a file system or archive read. Tiles are evicted in least recently used
+ * order when the total size exceeds the budget.
+ */
+public class CompressedMapTileCache implements OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(CompressedMapTileCache.class);
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final LinkedHashMap<MapTile, byte[]> mTiles = new LinkedHashMap<MapTile, byte[]>(
+			16, 0.75f, true);
+	private final long mMaximumBytes;
+	private long mCurrentBytes;
+
+	private long mHits;
+	private long mMisses;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public CompressedMapTileCache() {
+		this(MapTileCache.getMaximumCacheBytes(CACHE_COMPRESSED_HEAP_FRACTION_DEFAULT));
+	}
+
+	/**
+	 * @param pMaximumBytes
+	 *            the maximum number of bytes to be held within
+	 */
+	public CompressedMapTileCache(final long pMaximumBytes) {
+		mMaximumBytes = pMaximumBytes;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public long getMaximumBytes() {
+		return mMaximumBytes;
+	}
+
+	public synchronized long getCurrentBytes() {
+		return mCurrentBytes;
+	}
+
+	public synchronized int getSize() {
+		return mTiles.size();
+	}
+
+	public synchronized long getHits() {
+		return mHits;
+	}
+
+	public synchronized long getMisses() {
+		return mMisses;
+	}
+
+	public synchronized void resetStatistics() {
+		mHits = mMisses = 0;
+	}
+
+	/**
+	 * @return the compressed bytes of the tile, or null if they are not in the cache
+	 */
+	public synchronized byte[] getTileBytes(final MapTile pTile) {
+		final byte[] bytes = mTiles.get(pTile);
+		if (bytes == null) {
+			mMisses++;
+		} else {
+			mHits++;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Put the compressed bytes of a tile into the cache. The array must not be modified afterwards.
+	 */
+	public synchronized void putTileBytes(final MapTile pTile, final byte[] pBytes) {
+		if (pBytes == null || pBytes.length > mMaximumBytes) {
+			return;
+		}
+		final byte[] previous = mTiles.put(pTile, pBytes);
+		mCurrentBytes += pBytes.length;
+		if (previous != null) {
+			mCurrentBytes -= previous.length;
+		}
+
+		final Iterator<byte[]> eldest = mTiles.values().iterator();
+		while (mCurrentBytes > mMaximumBytes) {
+			mCurrentBytes -= eldest.next().length;
+			eldest.remove();
+		}
+		if (DEBUGMODE) {
+			logger.debug("Compressed tile cache: " + mTiles.size() + " tiles, " + mCurrentBytes
+					+ " bytes");
+		}
+	}
+
+	public synchronized boolean containsTile(final MapTile pTile) {
+		return mTiles.containsKey(pTile);
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	public synchronized void clear() {
+		mTiles.clear();
+		mCurrentBytes = 0;
+	}
+}
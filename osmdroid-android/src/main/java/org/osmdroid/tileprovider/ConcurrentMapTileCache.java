@@ -0,0 +1,431 @@
+package org.osmdroid.tileprovider;
+
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+
+/**
+ * A {@link MapTileCache} that doesn't block readers. Lookups probe an open addressing hash table
+ * of tile keys without taking a lock and only set a "referenced" bit on the entry, so the UI
+ * thread drawing the tiles never waits for the tile loader threads that are putting tiles into the
+ * cache. Lookups by tile key don't allocate anything.
+ * Insertions and evictions are serialized on a separate lock and use the CLOCK (second chance)
+ * algorithm, which approximates LRU order without having to re-order anything on a read.
+ * Prefetched tiles are in the same table, but outside the clock until they are used, see
+ * {@link #ensurePrefetchCapacity(int)}. This cache has no byte budget, so the prefetch partition
+ * is only limited by its number of tiles.<br />
+ * To use it, override {@link MapTileProviderBase#createTileCache()} and return an instance of this
+ * class.
+ */
+public class ConcurrentMapTileCache extends MapTileCache {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(ConcurrentMapTileCache.class);
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	/** marks a removed entry in {@link #mTable} so that lookups continue probing */
+	private static final Entry TOMBSTONE = new Entry(null, null);
+
+	/**
+	 * The hash table. It's only modified with {@link #mWriteLockObject} held, and replaced by a new
+	 * one rather than resized.
+	 */
+	private volatile AtomicReferenceArray<Entry> mTable;
+
+	/** number of slots in {@link #mTable} that are entries or tombstones */
+	private int mUsedSlots;
+
+	/** guards the clock and all modifications of {@link #mTable} */
+	private final Object mWriteLockObject = new Object();
+
+	/** the clock - each slot is an entry that's also in {@link #mTable} */
+	private Entry[] mClock;
+	private int mClockSize;
+	private int mClockHand;
+
+	/**
+	 * the prefetched tiles that haven't been used yet, least recently prefetched first, or null
+	 * until {@link #ensurePrefetchCapacity(int)} is called
+	 */
+	private LinkedList<Entry> mPrefetchQueue;
+	private int mPrefetchCapacity;
+
+	private volatile long mCurrentBytes;
+
+	private final AtomicLong mHits = new AtomicLong();
+	private final AtomicLong mMisses = new AtomicLong();
+
+	private volatile LRUMapTileCache.TileRemovedListener mTileRemovedListener;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public ConcurrentMapTileCache() {
+		this(CACHE_MAPTILECOUNT_DEFAULT);
+	}
+
+	/**
+	 * @param aMaximumCacheSize
+	 *            Maximum amount of MapTiles to be hold within.
+	 */
+	public ConcurrentMapTileCache(final int aMaximumCacheSize) {
+		super(0);
+		mClock = new Entry[aMaximumCacheSize];
+		mTable = new AtomicReferenceArray<Entry>(getTableSize(aMaximumCacheSize));
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	@Override
+	public void ensureCapacity(final int aCapacity) {
+		synchronized (mWriteLockObject) {
+			if (aCapacity > mClock.length) {
+				logger.info("Tile cache increased from " + mClock.length + " to " + aCapacity);
+				final Entry[] clock = new Entry[aCapacity];
+				System.arraycopy(mClock, 0, clock, 0, mClockSize);
+				mClock = clock;
+			}
+		}
+	}
+
+	@Override
+	public void ensurePrefetchCapacity(final int aCapacity) {
+		synchronized (mWriteLockObject) {
+			if (mPrefetchQueue == null) {
+				mPrefetchQueue = new LinkedList<Entry>();
+			}
+			mPrefetchCapacity = Math.max(mPrefetchCapacity, aCapacity);
+		}
+	}
+
+	@Override
+	public Drawable getMapTile(final MapTile aTile) {
+		return getMapTile(aTile.getTileKey());
+	}
+
+	@Override
+	public Drawable getMapTile(final long aTileKey) {
+		final Entry entry = find(aTileKey);
+		if (entry == null) {
+			mMisses.incrementAndGet();
+			return null;
+		}
+		mHits.incrementAndGet();
+		entry.mReferenced = true;
+		if (entry.mPrefetched) {
+			// only the first use of a prefetched tile takes the lock
+			synchronized (mWriteLockObject) {
+				if (entry.mPrefetched && find(aTileKey) == entry) {
+					promote(entry);
+				}
+			}
+		}
+		return entry.mDrawable;
+	}
+
+	@Override
+	public void putTile(final MapTile aTile, final Drawable aDrawable) {
+		if (aDrawable == null) {
+			return;
+		}
+		synchronized (mWriteLockObject) {
+			final Entry existing = find(aTile.getTileKey());
+			if (existing != null) {
+				mCurrentBytes += LRUMapTileCache.getByteCount(aDrawable)
+						- LRUMapTileCache.getByteCount(existing.mDrawable);
+				existing.mDrawable = aDrawable;
+				existing.mReferenced = true;
+				if (existing.mPrefetched) {
+					promote(existing);
+				}
+				return;
+			}
+
+			final Entry entry = new Entry(aTile, aDrawable);
+			if (!addToClock(entry)) {
+				return;
+			}
+			insert(entry);
+			mCurrentBytes += LRUMapTileCache.getByteCount(aDrawable);
+		}
+	}
+
+	/**
+	 * Put a prefetched tile outside the clock, so that it doesn't push the visible tiles out of the
+	 * cache. It joins the clock when it's used, and the least recently prefetched tile is evicted
+	 * when the partition is full.
+	 */
+	@Override
+	public void putPrefetchedTile(final MapTile aTile, final Drawable aDrawable) {
+		if (aDrawable == null) {
+			return;
+		}
+		synchronized (mWriteLockObject) {
+			final Entry existing = find(aTile.getTileKey());
+			if (mPrefetchQueue == null || existing != null) {
+				putTile(aTile, aDrawable);
+				return;
+			}
+			if (mPrefetchCapacity == 0) {
+				return;
+			}
+			if (mPrefetchQueue.size() >= mPrefetchCapacity) {
+				evict(mPrefetchQueue.poll());
+			}
+			final Entry entry = new Entry(aTile, aDrawable);
+			entry.mPrefetched = true;
+			mPrefetchQueue.add(entry);
+			insert(entry);
+			mCurrentBytes += LRUMapTileCache.getByteCount(aDrawable);
+		}
+	}
+
+	@Override
+	public long getHits() {
+		return mHits.get();
+	}
+
+	@Override
+	public long getMisses() {
+		return mMisses.get();
+	}
+
+	@Override
+	public long getCurrentBytes() {
+		return mCurrentBytes;
+	}
+
+	@Override
+	public LRUMapTileCache.TileRemovedListener getTileRemovedListener() {
+		return mTileRemovedListener;
+	}
+
+	@Override
+	public void setTileRemovedListener(final LRUMapTileCache.TileRemovedListener aListener) {
+		mTileRemovedListener = aListener;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public boolean containsTile(final MapTile aTile) {
+		return find(aTile.getTileKey()) != null;
+	}
+
+	@Override
+	public void clear() {
+		synchronized (mWriteLockObject) {
+			for (int i = 0; i < mClockSize; i++) {
+				final Entry entry = mClock[i];
+				mClock[i] = null;
+				evict(entry);
+			}
+			if (mPrefetchQueue != null) {
+				Entry entry;
+				while ((entry = mPrefetchQueue.poll()) != null) {
+					evict(entry);
+				}
+			}
+			mClockSize = 0;
+			mClockHand = 0;
+			mTable = new AtomicReferenceArray<Entry>(
+					getTableSize(mClock.length + mPrefetchCapacity));
+			mUsedSlots = 0;
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Move the clock hand forward until it points at an entry that hasn't been referenced since the
+	 * hand last passed it, clearing the referenced bit of all entries it passes on the way. Must be
+	 * called with {@link #mWriteLockObject} held and a full clock.
+	 *
+	 * @return the index of the victim
+	 */
+	private int advanceClockHand() {
+		while (mClock[mClockHand].mReferenced) {
+			mClock[mClockHand].mReferenced = false;
+			mClockHand = (mClockHand + 1) % mClock.length;
+		}
+		return mClockHand;
+	}
+
+	/**
+	 * Add an entry to the clock, evicting a victim if it's full. Must be called with
+	 * {@link #mWriteLockObject} held.
+	 *
+	 * @return false if the clock has no room at all
+	 */
+	private boolean addToClock(final Entry pEntry) {
+		if (mClockSize < mClock.length) {
+			mClock[mClockSize++] = pEntry;
+		} else if (mClock.length > 0) {
+			// find a victim and put the new entry in its slot
+			final Entry victim = mClock[advanceClockHand()];
+			mClock[mClockHand] = pEntry;
+			mClockHand = (mClockHand + 1) % mClock.length;
+			evict(victim);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Move a prefetched entry to the clock, now that it's used. Must be called with
+	 * {@link #mWriteLockObject} held.
+	 */
+	private void promote(final Entry pEntry) {
+		if (addToClock(pEntry)) {
+			mPrefetchQueue.remove(pEntry);
+			pEntry.mPrefetched = false;
+		}
+	}
+
+	/**
+	 * Find an entry without taking a lock.
+	 */
+	private Entry find(final long pTileKey) {
+		final AtomicReferenceArray<Entry> table = mTable;
+		final int mask = table.length() - 1;
+		int index = MapTile.hashTileKey(pTileKey) & mask;
+		Entry entry;
+		while ((entry = table.get(index)) != null) {
+			if (entry != TOMBSTONE && entry.mTileKey == pTileKey) {
+				return entry;
+			}
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Insert an entry that isn't in the table yet. Must be called with {@link #mWriteLockObject}
+	 * held.
+	 */
+	private void insert(final Entry pEntry) {
+		AtomicReferenceArray<Entry> table = mTable;
+		if ((mUsedSlots + 1) * 4 > table.length() * 3) {
+			// build a new table without the tombstones, and make sure there's room to grow
+			final AtomicReferenceArray<Entry> newTable = new AtomicReferenceArray<Entry>(
+					getTableSize(Math.max(mClock.length + mPrefetchCapacity, mClockSize
+							+ (mPrefetchQueue == null ? 0 : mPrefetchQueue.size()) + 1)));
+			mUsedSlots = 0;
+			for (int i = 0; i < table.length(); i++) {
+				final Entry entry = table.get(i);
+				if (entry != null && entry != TOMBSTONE) {
+					newTable.set(getFreeSlot(newTable, entry.mTileKey), entry);
+					mUsedSlots++;
+				}
+			}
+			mTable = table = newTable;
+		}
+		final int index = getFreeSlot(table, pEntry.mTileKey);
+		if (table.get(index) == null) {
+			mUsedSlots++;
+		}
+		table.set(index, pEntry);
+	}
+
+	private static int getFreeSlot(final AtomicReferenceArray<Entry> pTable, final long pTileKey) {
+		final int mask = pTable.length() - 1;
+		int index = MapTile.hashTileKey(pTileKey) & mask;
+		Entry entry;
+		while ((entry = pTable.get(index)) != null && entry != TOMBSTONE) {
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	/**
+	 * Must be called with {@link #mWriteLockObject} held.
+	 */
+	private void remove(final Entry pEntry) {
+		final AtomicReferenceArray<Entry> table = mTable;
+		final int mask = table.length() - 1;
+		int index = MapTile.hashTileKey(pEntry.mTileKey) & mask;
+		Entry entry;
+		while ((entry = table.get(index)) != null) {
+			if (entry == pEntry) {
+				table.set(index, TOMBSTONE);
+				return;
+			}
+			index = (index + 1) & mask;
+		}
+	}
+
+	/**
+	 * @return a power of two table size that keeps the load factor below 0.75 for the capacity
+	 */
+	private static int getTableSize(final int pCapacity) {
+		int size = 16;
+		while (size * 3 / 4 <= pCapacity) {
+			size <<= 1;
+		}
+		return size;
+	}
+
+	private void evict(final Entry aEntry) {
+		remove(aEntry);
+		mCurrentBytes -= LRUMapTileCache.getByteCount(aEntry.mDrawable);
+		if (DEBUGMODE) {
+			logger.debug("Remove old tile: " + aEntry.mTile);
+		}
+		// Only recycle if we are running on a project less than 2.3.3 Gingerbread.
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD) {
+			if (aEntry.mDrawable instanceof BitmapDrawable) {
+				final Bitmap bitmap = ((BitmapDrawable) aEntry.mDrawable).getBitmap();
+				if (bitmap != null) {
+					bitmap.recycle();
+				}
+			}
+		} else if (aEntry.mDrawable instanceof ReusableBitmapDrawable) {
+			BitmapPool.getInstance().returnDrawableToPool((ReusableBitmapDrawable) aEntry.mDrawable);
+		}
+		final LRUMapTileCache.TileRemovedListener listener = mTileRemovedListener;
+		if (listener != null) {
+			listener.onTileRemoved(aEntry.mTile);
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	private static final class Entry {
+		private final MapTile mTile;
+		private final long mTileKey;
+		private volatile Drawable mDrawable;
+		private volatile boolean mReferenced;
+		/** whether it's in the prefetch partition rather than in the clock */
+		private volatile boolean mPrefetched;
+
+		private Entry(final MapTile pTile, final Drawable pDrawable) {
+			mTile = pTile;
+			mTileKey = pTile == null ? -1 : pTile.getTileKey();
+			mDrawable = pDrawable;
+		}
+	}
+}
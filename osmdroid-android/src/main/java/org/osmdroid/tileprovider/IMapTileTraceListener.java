@@ -0,0 +1,26 @@
+package org.osmdroid.tileprovider;
+
+/**
+ * Told about the tile requests traced by a {@link MapTileTracer}. The methods are called on the
+ * thread that loaded the tile, so they must be quick, and the trace is only valid during the call.
+ */
+public interface IMapTileTraceListener {
+
+	/**
+	 * Called when a provider has finished with a tile, whether it loaded it or not.
+	 *
+	 * @param pTrace
+	 *            the trace, see {@link MapTileTrace#getStageTime(int)} for the stages of the
+	 *            provider
+	 */
+	void onProviderFinished(MapTileTrace pTrace);
+
+	/**
+	 * Called when a tile is put in the memory cache.
+	 *
+	 * @param pTrace
+	 *            the trace, see {@link MapTileTrace#getStageTime(int)} with
+	 *            {@link MapTileTrace#STAGE_TOTAL} for the time since the tile was requested
+	 */
+	void onTileCached(MapTileTrace pTrace);
+}
@@ -3,6 +3,7 @@ package org.osmdroid.tileprovider;
 import java.util.LinkedHashMap;
 
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.util.LongHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,9 +26,36 @@ public class LRUMapTileCache extends LinkedHashMap<MapTile, Drawable>
 	private int mCapacity;
 	private TileRemovedListener mTileRemovedListener;
 
+	/** maximum bytes of decoded bitmaps, or zero to limit the cache by tile count only */
+	private final long mMaximumBytes;
+	private long mCurrentBytes;
+
+	/** the tiles in the cache by tile key, so they can be looked up without creating a MapTile */
+	private final LongHashMap<MapTile> mTileIndex = new LongHashMap<MapTile>();
+
+	/** true while a tile is removed by {@link #detach(MapTile)} */
+	private boolean mDetaching;
+
 	public LRUMapTileCache(final int aCapacity) {
+		this(aCapacity, 0);
+	}
+
+	/**
+	 * Creates a cache that is limited by the memory used by the bitmaps of its tiles rather than by
+	 * the number of tiles. The capacity is the number of most recently used tiles that are never
+	 * evicted, whatever their size, so that the tiles of the current viewport (see
+	 * {@link #ensureCapacity(int)}) stay in memory.
+	 *
+	 * @param aCapacity
+	 *            the number of most recently used tiles that are always kept
+	 * @param aMaximumBytes
+	 *            the maximum number of bytes used by the bitmaps in the cache, or zero to limit the
+	 *            cache by tile count only
+	 */
+	public LRUMapTileCache(final int aCapacity, final long aMaximumBytes) {
 		super(aCapacity + 2, 0.1f, true);
 		mCapacity = aCapacity;
+		mMaximumBytes = aMaximumBytes;
 	}
 
 	public void ensureCapacity(final int aCapacity) {
@@ -37,9 +65,80 @@ public class LRUMapTileCache extends LinkedHashMap<MapTile, Drawable>
 		}
 	}
 
+	public int getCapacity() {
+		return mCapacity;
+	}
+
+	public long getMaximumBytes() {
+		return mMaximumBytes;
+	}
+
+	/**
+	 * Get the number of bytes used by the bitmaps in the cache.
+	 */
+	public long getCurrentBytes() {
+		return mCurrentBytes;
+	}
+
+	/**
+	 * Get a tile by its tile key. This doesn't allocate anything.
+	 *
+	 * @see MapTile#getTileKey(int, int, int)
+	 */
+	public Drawable get(final long aTileKey) {
+		final MapTile tile = mTileIndex.get(aTileKey);
+		onTileRequested(aTileKey, tile);
+		return tile == null ? null : super.get(tile);
+	}
+
+	/**
+	 * Get the tile that has a tile key, if it's in the cache.
+	 */
+	public MapTile getTile(final long aTileKey) {
+		return mTileIndex.get(aTileKey);
+	}
+
+	@Override
+	public Drawable get(final Object aKey) {
+		if (aKey instanceof MapTile) {
+			onTileRequested(((MapTile) aKey).getTileKey(), (MapTile) aKey);
+		}
+		return super.get(aKey);
+	}
+
+	@Override
+	public Drawable put(final MapTile aKey, final Drawable aValue) {
+		mTileIndex.put(aKey.getTileKey(), aKey);
+		mCurrentBytes += getByteCount(aValue);
+		final Drawable previous = super.put(aKey, aValue);
+		if (previous != null) {
+			mCurrentBytes -= getByteCount(previous);
+		}
+		if (mMaximumBytes > 0) {
+			// evict the eldest tiles until we're within budget, but keep the viewport
+			while (mCurrentBytes > mMaximumBytes && size() > mCapacity) {
+				final MapTile eldest = selectTileToEvict();
+				if (DEBUGMODE) {
+					logger.debug("Remove old tile: " + eldest);
+				}
+				remove(eldest);
+			}
+		}
+		return previous;
+	}
+
 	@Override
 	public Drawable remove(final Object aKey) {
 		final Drawable drawable = super.remove(aKey);
+		if (aKey instanceof MapTile) {
+			mTileIndex.remove(((MapTile) aKey).getTileKey());
+		}
+		if (drawable != null) {
+			mCurrentBytes -= getByteCount(drawable);
+		}
+		if (mDetaching) {
+			return drawable;
+		}
 		// Only recycle if we are running on a project less than 2.3.3 Gingerbread.
 		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD) {
 			if (drawable instanceof BitmapDrawable) {
@@ -48,12 +147,27 @@ public class LRUMapTileCache extends LinkedHashMap<MapTile, Drawable>
 					bitmap.recycle();
 				}
 			}
+		} else if (drawable instanceof ReusableBitmapDrawable) {
+			BitmapPool.getInstance().returnDrawableToPool((ReusableBitmapDrawable) drawable);
 		}
 		if (getTileRemovedListener() != null && aKey instanceof MapTile)
 			getTileRemovedListener().onTileRemoved((MapTile) aKey);
 		return drawable;
 	}
 
+	/**
+	 * Remove a tile without recycling its bitmap or telling the {@link TileRemovedListener}, eg to
+	 * move it to another cache.
+	 */
+	public Drawable detach(final MapTile aTile) {
+		mDetaching = true;
+		try {
+			return remove(aTile);
+		} finally {
+			mDetaching = false;
+		}
+	}
+
 	@Override
 	public void clear() {
 		// remove them all individually so that they get recycled
@@ -63,12 +177,15 @@ public class LRUMapTileCache extends LinkedHashMap<MapTile, Drawable>
 
 		// and then clear
 		super.clear();
+		mTileIndex.clear();
+		mCurrentBytes = 0;
 	}
 
 	@Override
 	protected boolean removeEldestEntry(final java.util.Map.Entry<MapTile, Drawable> aEldest) {
-		if (size() > mCapacity) {
-			final MapTile eldest = aEldest.getKey();
+		// if we have a byte budget then put() takes care of eviction
+		if (mMaximumBytes == 0 && size() > mCapacity) {
+			final MapTile eldest = selectTileToEvict();
 			if (DEBUGMODE) {
 				logger.debug("Remove old tile: " + eldest);
 			}
@@ -78,6 +195,54 @@ public class LRUMapTileCache extends LinkedHashMap<MapTile, Drawable>
 		return false;
 	}
 
+	/**
+	 * Choose the tile to remove when the cache is full. Subclasses can override this to use a
+	 * different eviction policy.
+	 *
+	 * @return the least recently used tile by default
+	 */
+	protected MapTile selectTileToEvict() {
+		return keySet().iterator().next();
+	}
+
+	/**
+	 * Called by {@link MapTileCache#setViewport(int, int, int, int, int)}. Does nothing by
+	 * default.
+	 */
+	public void setViewport(final int aZoomLevel, final int aLeft, final int aTop,
+			final int aRight, final int aBottom) {
+		// Do nothing by default
+	}
+
+	/**
+	 * Called whenever a tile is looked up, whether it's in the cache or not. Subclasses can
+	 * override this to keep track of how often tiles are used.
+	 *
+	 * @param aTileKey
+	 *            the tile key of the tile
+	 * @param aTile
+	 *            the tile, or null if it was looked up by tile key and isn't in the cache
+	 */
+	protected void onTileRequested(final long aTileKey, final MapTile aTile) {
+	}
+
+	/**
+	 * Get the number of bytes used by the bitmap of a tile. Drawables that aren't bitmaps are
+	 * estimated as 32 bits per pixel of their intrinsic size.
+	 */
+	public static int getByteCount(final Drawable aDrawable) {
+		if (aDrawable instanceof BitmapDrawable) {
+			final Bitmap bitmap = ((BitmapDrawable) aDrawable).getBitmap();
+			// getByteCount() is only available from API 12
+			return bitmap == null ? 0 : bitmap.getRowBytes() * bitmap.getHeight();
+		}
+		if (aDrawable != null) {
+			return Math.max(0, aDrawable.getIntrinsicWidth())
+					* Math.max(0, aDrawable.getIntrinsicHeight()) * 4;
+		}
+		return 0;
+	}
+
 	public TileRemovedListener getTileRemovedListener() {
 		return mTileRemovedListener;
 	}
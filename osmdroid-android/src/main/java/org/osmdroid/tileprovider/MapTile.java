@@ -14,6 +14,10 @@ public class MapTile {
 	public static final int MAPTILE_SUCCESS_ID = 0;
 	public static final int MAPTILE_FAIL_ID = MAPTILE_SUCCESS_ID + 1;
 
+	/** number of bits used for each of x and y in a tile key, enough for zoom level 28 */
+	private static final int TILE_KEY_COORDINATE_BITS = 28;
+	private static final long TILE_KEY_COORDINATE_MASK = (1L << TILE_KEY_COORDINATE_BITS) - 1;
+
 	// This class must be immutable because it's used as the key in the cache hash map
 	// (ie all the fields are final).
 	private final int x;
@@ -38,6 +42,13 @@ public class MapTile {
 		return y;
 	}
 
+	/**
+	 * Get the tile key for this tile. See {@link #getTileKey(int, int, int)}.
+	 */
+	public long getTileKey() {
+		return getTileKey(zoomLevel, x, y);
+	}
+
 	@Override
 	public String toString() {
 		return "/" + zoomLevel + "/" + x + "/" + y;
@@ -57,10 +68,37 @@ public class MapTile {
 
 	@Override
 	public int hashCode() {
-		int code = 17;
-		code *= 37 + zoomLevel;
-		code *= 37 + x;
-		code *= 37 + y;
-		return code;
+		return hashTileKey(getTileKey());
+	}
+
+	/**
+	 * Pack the zoom level and coordinates of a tile into a single long, so that a tile can be
+	 * identified without allocating a {@link MapTile}. Tile keys are equal if and only if the tiles
+	 * are equal.
+	 */
+	public static long getTileKey(final int pZoomLevel, final int pTileX, final int pTileY) {
+		return ((long) pZoomLevel << (2 * TILE_KEY_COORDINATE_BITS))
+				| ((pTileX & TILE_KEY_COORDINATE_MASK) << TILE_KEY_COORDINATE_BITS)
+				| (pTileY & TILE_KEY_COORDINATE_MASK);
+	}
+
+	public static int getZoomLevel(final long pTileKey) {
+		return (int) (pTileKey >>> (2 * TILE_KEY_COORDINATE_BITS));
+	}
+
+	public static int getX(final long pTileKey) {
+		return (int) ((pTileKey >>> TILE_KEY_COORDINATE_BITS) & TILE_KEY_COORDINATE_MASK);
+	}
+
+	public static int getY(final long pTileKey) {
+		return (int) (pTileKey & TILE_KEY_COORDINATE_MASK);
+	}
+
+	/**
+	 * A well distributed hash of a tile key. Neighbouring tiles have very different hashes.
+	 */
+	public static int hashTileKey(final long pTileKey) {
+		final long hash = pTileKey * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
 	}
 }
@@ -22,6 +22,15 @@ public class MapTileCache implements OpenStreetMapTileProviderConstants {
 	protected final Object mCachedTilesLockObject = new Object();
 	protected LRUMapTileCache mCachedTiles;
 
+	/**
+	 * the tiles that were prefetched but haven't been used yet, so that they don't push the
+	 * visible tiles out of the cache, or null until {@link #ensurePrefetchCapacity(int)} is called
+	 */
+	protected LRUMapTileCache mPrefetchedTiles;
+
+	private long mHits;
+	private long mMisses;
+
 	// ===========================================================
 	// Constructors
 	// ===========================================================
@@ -38,6 +47,34 @@ public class MapTileCache implements OpenStreetMapTileProviderConstants {
 		this.mCachedTiles = new LRUMapTileCache(aMaximumCacheSize);
 	}
 
+	/**
+	 * Creates a cache limited by the memory used by the bitmaps of its tiles. The most recently
+	 * used tiles, as many as requested with {@link #ensureCapacity(int)}, are always kept even if
+	 * that exceeds the budget.
+	 *
+	 * @param aMinimumCacheSize
+	 *            Minimum amount of MapTiles to be hold within.
+	 * @param aMaximumCacheBytes
+	 *            Maximum amount of bitmap memory to be hold within, see
+	 *            {@link #getMaximumCacheBytes(float)}.
+	 */
+	public MapTileCache(final int aMinimumCacheSize, final long aMaximumCacheBytes) {
+		this.mCachedTiles = new LRUMapTileCache(aMinimumCacheSize, aMaximumCacheBytes);
+	}
+
+	/**
+	 * Creates a cache that uses a different eviction policy, eg
+	 * <code>new MapTileCache(new TinyLFUMapTileCache(9, 40))</code> to keep often used tiles
+	 * (see {@link TinyLFUMapTileCache}), or a {@link ViewportMapTileCache} to keep the tiles close
+	 * to the viewport.
+	 *
+	 * @param aCachedTiles
+	 *            the map that holds the tiles
+	 */
+	public MapTileCache(final LRUMapTileCache aCachedTiles) {
+		this.mCachedTiles = aCachedTiles;
+	}
+
 	// ===========================================================
 	// Getter & Setter
 	// ===========================================================
@@ -48,20 +85,136 @@ public class MapTileCache implements OpenStreetMapTileProviderConstants {
 		}
 	}
 
+	/**
+	 * Make room for prefetched tiles in a partition of the cache of their own. A prefetched tile
+	 * moves to the main cache when it's used, and the least recently prefetched tiles are evicted
+	 * first, so prefetching never pushes the visible tiles out of the cache. If the cache has a
+	 * byte budget, the partition shares it with the main cache and gives way to it.
+	 *
+	 * @see #putPrefetchedTile(MapTile, Drawable)
+	 */
+	public void ensurePrefetchCapacity(final int aCapacity) {
+		synchronized (mCachedTilesLockObject) {
+			if (mPrefetchedTiles == null) {
+				mPrefetchedTiles = new LRUMapTileCache(aCapacity);
+			} else {
+				mPrefetchedTiles.ensureCapacity(aCapacity);
+			}
+		}
+	}
+
+	/**
+	 * Tell the cache which tiles are visible, so that it can keep the tiles close to them (see
+	 * {@link ViewportMapTileCache}). This is called on every frame and must not allocate anything.
+	 * The tile coordinates can be outside the range of the zoom level if the map wraps around.
+	 *
+	 * @param aZoomLevel
+	 *            the zoom level of the map
+	 * @param aLeft
+	 *            the x coordinate of the left most visible tile
+	 * @param aTop
+	 *            the y coordinate of the top most visible tile
+	 * @param aRight
+	 *            the x coordinate of the right most visible tile
+	 * @param aBottom
+	 *            the y coordinate of the bottom most visible tile
+	 */
+	public void setViewport(final int aZoomLevel, final int aLeft, final int aTop,
+			final int aRight, final int aBottom) {
+		synchronized (mCachedTilesLockObject) {
+			mCachedTiles.setViewport(aZoomLevel, aLeft, aTop, aRight, aBottom);
+		}
+	}
+
+	/**
+	 * Get the number of bytes used by the bitmaps in the cache.
+	 */
+	public long getCurrentBytes() {
+		synchronized (mCachedTilesLockObject) {
+			return this.mCachedTiles.getCurrentBytes()
+					+ (mPrefetchedTiles == null ? 0 : mPrefetchedTiles.getCurrentBytes());
+		}
+	}
+
 	public Drawable getMapTile(final MapTile aTile) {
 		synchronized (mCachedTilesLockObject) {
-			return this.mCachedTiles.get(aTile);
+			final Drawable drawable = this.mCachedTiles.get(aTile);
+			return countHit(drawable != null ? drawable : usePrefetchedTile(aTile.getTileKey()));
+		}
+	}
+
+	/**
+	 * Get a tile by its tile key, without allocating a {@link MapTile}.
+	 *
+	 * @see MapTile#getTileKey(int, int, int)
+	 */
+	public Drawable getMapTile(final long aTileKey) {
+		synchronized (mCachedTilesLockObject) {
+			final Drawable drawable = this.mCachedTiles.get(aTileKey);
+			return countHit(drawable != null ? drawable : usePrefetchedTile(aTileKey));
+		}
+	}
+
+	/**
+	 * @return the number of lookups that found the tile
+	 */
+	public long getHits() {
+		synchronized (mCachedTilesLockObject) {
+			return mHits;
+		}
+	}
+
+	/**
+	 * @return the number of lookups that didn't find the tile
+	 */
+	public long getMisses() {
+		synchronized (mCachedTilesLockObject) {
+			return mMisses;
 		}
 	}
 
 	public void putTile(final MapTile aTile, final Drawable aDrawable) {
 		if (aDrawable != null) {
 			synchronized (mCachedTilesLockObject) {
+				if (mPrefetchedTiles != null && !mPrefetchedTiles.isEmpty()) {
+					mPrefetchedTiles.remove(aTile);
+				}
 				this.mCachedTiles.put(aTile, aDrawable);
+				trimPrefetchedTiles();
+			}
+		}
+	}
+
+	/**
+	 * Put a tile that was prefetched rather than requested because it's visible. It goes into the
+	 * prefetch partition, if there is one (see {@link #ensurePrefetchCapacity(int)}), unless the
+	 * tile is in the main cache already.
+	 */
+	public void putPrefetchedTile(final MapTile aTile, final Drawable aDrawable) {
+		if (aDrawable != null) {
+			synchronized (mCachedTilesLockObject) {
+				if (mPrefetchedTiles == null || this.mCachedTiles.containsKey(aTile)) {
+					this.mCachedTiles.put(aTile, aDrawable);
+				} else {
+					mPrefetchedTiles.put(aTile, aDrawable);
+				}
+				trimPrefetchedTiles();
 			}
 		}
 	}
 
+	public LRUMapTileCache.TileRemovedListener getTileRemovedListener() {
+		synchronized (mCachedTilesLockObject) {
+			return this.mCachedTiles.getTileRemovedListener();
+		}
+	}
+
+	public void setTileRemovedListener(final LRUMapTileCache.TileRemovedListener aListener) {
+		synchronized (mCachedTilesLockObject) {
+			this.mCachedTiles.setTileRemovedListener(aListener);
+		}
+	}
+
 	// ===========================================================
 	// Methods from SuperClass/Interfaces
 	// ===========================================================
@@ -72,14 +225,73 @@ public class MapTileCache implements OpenStreetMapTileProviderConstants {
 
 	public boolean containsTile(final MapTile aTile) {
 		synchronized (mCachedTilesLockObject) {
-			return this.mCachedTiles.containsKey(aTile);
+			return this.mCachedTiles.containsKey(aTile)
+					|| (mPrefetchedTiles != null && mPrefetchedTiles.containsKey(aTile));
 		}
 	}
 
 	public void clear() {
 		synchronized (mCachedTilesLockObject) {
 			this.mCachedTiles.clear();
+			if (mPrefetchedTiles != null) {
+				mPrefetchedTiles.clear();
+			}
+		}
+	}
+
+	/**
+	 * Evict the least recently prefetched tiles while the whole cache is over the byte budget of
+	 * the main cache, if it has one.
+	 */
+	private void trimPrefetchedTiles() {
+		final long maximumBytes = this.mCachedTiles.getMaximumBytes();
+		if (maximumBytes <= 0 || mPrefetchedTiles == null) {
+			return;
 		}
+		while (!mPrefetchedTiles.isEmpty() && this.mCachedTiles.getCurrentBytes()
+				+ mPrefetchedTiles.getCurrentBytes() > maximumBytes) {
+			mPrefetchedTiles.remove(mPrefetchedTiles.keySet().iterator().next());
+		}
+	}
+
+	/**
+	 * Move a prefetched tile to the main cache, now that it's used.
+	 *
+	 * @return the tile, or null if it wasn't prefetched
+	 */
+	private Drawable usePrefetchedTile(final long aTileKey) {
+		if (mPrefetchedTiles == null || mPrefetchedTiles.isEmpty()) {
+			return null;
+		}
+		final MapTile tile = mPrefetchedTiles.getTile(aTileKey);
+		if (tile == null) {
+			return null;
+		}
+		final Drawable drawable = mPrefetchedTiles.detach(tile);
+		if (drawable != null) {
+			this.mCachedTiles.put(tile, drawable);
+		}
+		return drawable;
+	}
+
+	private Drawable countHit(final Drawable pDrawable) {
+		if (pDrawable == null) {
+			mMisses++;
+		} else {
+			mHits++;
+		}
+		return pDrawable;
+	}
+
+	/**
+	 * Get a bitmap memory budget that is the specified fraction of the maximum heap size.
+	 *
+	 * @param aHeapFraction
+	 *            fraction of the heap, eg {@link #CACHE_MAPTILE_HEAP_FRACTION_DEFAULT}
+	 * @return the budget in bytes
+	 */
+	public static long getMaximumCacheBytes(final float aHeapFraction) {
+		return (long) (Runtime.getRuntime().maxMemory() * aHeapFraction);
 	}
 
 	// ===========================================================
@@ -0,0 +1,421 @@
+package org.osmdroid.tileprovider;
+
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MyMath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Requests the tiles that a scroll or a zoom of the map is about to show. The destination of a
+ * fling or an animation is known when it starts (see
+ * {@link org.osmdroid.views.MapView#computeScroll()}), so the tiles of the viewport at the
+ * destination are requested first, then the tiles along the way. They are sent through the chain
+ * of {@link MapTileProviderArray} as background requests (see
+ * {@link MapTileRequestState#isBackground()}), so the visible tiles are still loaded first.<br />
+ * Once the map has been stationary for a while (see {@link #setIdleDelay(long)}), the tiles of
+ * the zoom levels above and below the viewport are prefetched too, so that zooming shows real
+ * tiles instead of scaled ones (see {@link MapTileProviderBase#rescaleCache}).<br />
+ * The prefetched tiles are kept in a partition of the memory cache of their own (see
+ * {@link MapTileCache#ensurePrefetchCapacity(int)}), so they don't push out the visible ones. Two
+ * budgets limit what is prefetched:
+ * <ul>
+ * <li>the number of tiles per scroll</li>
+ * <li>the number of requests per minute that may use the data connection. Once it's used up, the
+ * tiles are only prefetched from the providers that don't need a data connection. If
+ * {@link MapTileProviderArray#useDataConnection()} is false, they never use it.</li>
+ * </ul>
+ * The prefetched tiles are followed until they become visible, to count how many were ready in
+ * time. Enable it with {@link MapTileProviderArray#setPrefetchEnabled(boolean)}.
+ */
+public class MapTilePrefetcher implements OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(MapTilePrefetcher.class);
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final MapTileProviderArray mTileProvider;
+
+	private int mMaximumTiles = PREFETCH_MAXIMUM_TILES_DEFAULT;
+	private int mDownloadsPerMinute = PREFETCH_DOWNLOADS_PER_MINUTE_DEFAULT;
+	private double mDownloadTokens = PREFETCH_DOWNLOADS_PER_MINUTE_DEFAULT;
+	private long mLastRefillTime;
+
+	private long mIdleDelay = PREFETCH_IDLE_DELAY_DEFAULT;
+
+	/** the visible tiles of the last frame, and when they changed */
+	private int mViewportZoomLevel = -1;
+	private int mViewportLeft;
+	private int mViewportTop;
+	private int mViewportRight;
+	private int mViewportBottom;
+	private long mViewportTime;
+	private boolean mIdlePrefetched;
+
+	/** the prefetched tiles that haven't been visible yet */
+	private final LongHashMap<MapTile> mPrefetched = new LongHashMap<MapTile>();
+	private int mPrefetchZoomLevel = -1;
+	private long[] mKeys;
+
+	/** the visible tiles when the scroll started */
+	private int mStartLeft;
+	private int mStartTop;
+	private int mStartRight;
+	private int mStartBottom;
+
+	private long mRequestedCount;
+	private long mHitCount;
+	private long mLateCount;
+	private long mUnusedCount;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public MapTilePrefetcher(final MapTileProviderArray pTileProvider) {
+		mTileProvider = pTileProvider;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public synchronized int getMaximumTiles() {
+		return mMaximumTiles;
+	}
+
+	/**
+	 * Set the number of tiles to prefetch for each scroll. The prefetch partition of the memory
+	 * cache is grown to hold them.
+	 */
+	public synchronized void setMaximumTiles(final int pMaximumTiles) {
+		mMaximumTiles = pMaximumTiles;
+	}
+
+	public synchronized int getDownloadsPerMinute() {
+		return mDownloadsPerMinute;
+	}
+
+	/**
+	 * Set the number of prefetch requests per minute that may use the data connection.
+	 */
+	public synchronized void setDownloadsPerMinute(final int pDownloadsPerMinute) {
+		mDownloadsPerMinute = pDownloadsPerMinute;
+		mDownloadTokens = Math.min(mDownloadTokens, pDownloadsPerMinute);
+	}
+
+	public synchronized long getIdleDelay() {
+		return mIdleDelay;
+	}
+
+	/**
+	 * Set how long the map must be stationary before the tiles of the adjacent zoom levels are
+	 * prefetched, in milliseconds, or a negative value to never prefetch them.
+	 */
+	public synchronized void setIdleDelay(final long pIdleDelay) {
+		mIdleDelay = pIdleDelay;
+	}
+
+	/**
+	 * @return the number of tiles that were requested
+	 */
+	public synchronized long getRequestedCount() {
+		return mRequestedCount;
+	}
+
+	/**
+	 * @return the number of prefetched tiles that were in the memory cache when they became visible
+	 */
+	public synchronized long getHitCount() {
+		return mHitCount;
+	}
+
+	/**
+	 * @return the number of prefetched tiles that were still loading when they became visible
+	 */
+	public synchronized long getLateCount() {
+		return mLateCount;
+	}
+
+	/**
+	 * @return the number of prefetched tiles that didn't become visible before the next scroll or
+	 *         zoom, or that failed to load or were evicted before they became visible
+	 */
+	public synchronized long getUnusedCount() {
+		return mUnusedCount;
+	}
+
+	public synchronized void resetStatistics() {
+		mRequestedCount = 0;
+		mHitCount = 0;
+		mLateCount = 0;
+		mUnusedCount = 0;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Prefetch the tiles for a scroll that is starting. The coordinates are in pixels of the zoom
+	 * level, from the top left of the map, and can be outside the map if it wraps around.
+	 *
+	 * @param pFromX
+	 *            the center of the viewport when the scroll starts
+	 * @param pToX
+	 *            the center of the viewport when the scroll ends
+	 * @param pWidth
+	 *            the width of the viewport
+	 * @return the number of tiles requested
+	 */
+	public synchronized int prefetchScroll(final int pZoomLevel, final int pTileSizePx,
+			final int pFromX, final int pFromY, final int pToX, final int pToY, final int pWidth,
+			final int pHeight) {
+		forgetPrefetched();
+		mPrefetchZoomLevel = pZoomLevel;
+		mStartLeft = floorDiv(pFromX - pWidth / 2, pTileSizePx);
+		mStartTop = floorDiv(pFromY - pHeight / 2, pTileSizePx);
+		mStartRight = floorDiv(pFromX + pWidth / 2, pTileSizePx);
+		mStartBottom = floorDiv(pFromY + pHeight / 2, pTileSizePx);
+		if (mMaximumTiles <= 0) {
+			return 0;
+		}
+		mTileProvider.ensurePrefetchCapacity(mMaximumTiles);
+
+		// the destination first, then the tiles along the way, half a viewport apart
+		int candidates = mMaximumTiles * 4;
+		candidates = prefetchViewport(pZoomLevel, pTileSizePx, pToX, pToY, pWidth, pHeight,
+				candidates);
+		final double deltaX = pToX - pFromX;
+		final double deltaY = pToY - pFromY;
+		final double step = Math.max(1, Math.min(pWidth, pHeight) / 2);
+		final int steps = (int) Math.ceil(Math.sqrt(deltaX * deltaX + deltaY * deltaY) / step);
+		for (int i = 1; i < steps && candidates > 0 && mPrefetched.size() < mMaximumTiles; i++) {
+			candidates = prefetchViewport(pZoomLevel, pTileSizePx,
+					(int) (pFromX + deltaX * i / steps), (int) (pFromY + deltaY * i / steps),
+					pWidth, pHeight, candidates);
+		}
+
+		if (DEBUGMODE) {
+			logger.debug("Prefetching " + mPrefetched.size() + " tiles for a scroll of " + deltaX
+					+ "," + deltaY);
+		}
+		return mPrefetched.size();
+	}
+
+	/**
+	 * Request the tiles of a viewport that weren't visible when the scroll started.
+	 *
+	 * @return the number of candidates left
+	 */
+	private int prefetchViewport(final int pZoomLevel, final int pTileSizePx, final int pCenterX,
+			final int pCenterY, final int pWidth, final int pHeight, int pCandidates) {
+		final int mapTiles = 1 << pZoomLevel;
+		final int left = floorDiv(pCenterX - pWidth / 2, pTileSizePx);
+		final int right = floorDiv(pCenterX + pWidth / 2, pTileSizePx);
+		final int top = Math.max(0, floorDiv(pCenterY - pHeight / 2, pTileSizePx));
+		final int bottom = Math.min(mapTiles - 1, floorDiv(pCenterY + pHeight / 2, pTileSizePx));
+		for (int y = top; y <= bottom; y++) {
+			for (int x = left; x <= right; x++) {
+				if (pCandidates <= 0 || mPrefetched.size() >= mMaximumTiles) {
+					return 0;
+				}
+				final int tileX = MyMath.mod(x, mapTiles);
+				final long tileKey = MapTile.getTileKey(pZoomLevel, tileX, y);
+				if (isInside(pZoomLevel, tileKey, mStartLeft, mStartTop, mStartRight, mStartBottom)
+						|| mPrefetched.containsKey(tileKey)) {
+					continue;
+				}
+				pCandidates--;
+				final MapTile tile = new MapTile(pZoomLevel, tileX, y);
+				if (prefetchTile(tile)) {
+					mPrefetched.put(tileKey, tile);
+				}
+			}
+		}
+		return pCandidates;
+	}
+
+	/**
+	 * Prefetch the tiles of the zoom levels above and below the viewport, if the map has been
+	 * stationary for long enough. This is called when the map may have stopped moving, see
+	 * {@link org.osmdroid.views.MapView#dispatchDraw}.
+	 *
+	 * @return the number of milliseconds until the map will have been stationary for long enough,
+	 *         or a negative value if there's nothing to prefetch until the viewport changes
+	 */
+	public long prefetchIfIdle() {
+		return prefetchIfIdle(System.currentTimeMillis());
+	}
+
+	synchronized long prefetchIfIdle(final long pNow) {
+		if (mIdleDelay < 0 || mViewportZoomLevel < 0 || mIdlePrefetched) {
+			return -1;
+		}
+		final long wait = mViewportTime + mIdleDelay - pNow;
+		if (wait > 0) {
+			return wait;
+		}
+		mIdlePrefetched = true;
+
+		final int zoomLevel = mViewportZoomLevel;
+		// the children are 4 times as many tiles as the parents, so request the parents first
+		int count = 0;
+		int capacity = 0;
+		if (zoomLevel > mTileProvider.getMinimumZoomLevel()) {
+			capacity += (floorDiv(mViewportRight, 2) - floorDiv(mViewportLeft, 2) + 1)
+					* (floorDiv(mViewportBottom, 2) - floorDiv(mViewportTop, 2) + 1);
+		}
+		if (zoomLevel < mTileProvider.getMaximumZoomLevel()) {
+			capacity += (mViewportRight - mViewportLeft + 1) * (mViewportBottom - mViewportTop + 1) * 4;
+		}
+		if (capacity == 0) {
+			return -1;
+		}
+		mTileProvider.ensurePrefetchCapacity(capacity);
+		if (zoomLevel > mTileProvider.getMinimumZoomLevel()) {
+			count += prefetchRange(zoomLevel - 1, floorDiv(mViewportLeft, 2),
+					floorDiv(mViewportTop, 2), floorDiv(mViewportRight, 2),
+					floorDiv(mViewportBottom, 2));
+		}
+		if (zoomLevel < mTileProvider.getMaximumZoomLevel()) {
+			count += prefetchRange(zoomLevel + 1, mViewportLeft * 2, mViewportTop * 2,
+					mViewportRight * 2 + 1, mViewportBottom * 2 + 1);
+		}
+
+		if (DEBUGMODE) {
+			logger.debug("Prefetching " + count + " tiles of the zoom levels next to " + zoomLevel);
+		}
+		return -1;
+	}
+
+	/**
+	 * Request a range of tiles, which can be outside the range of the zoom level if the map wraps
+	 * around.
+	 *
+	 * @return the number of tiles requested
+	 */
+	private int prefetchRange(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom) {
+		final int mapTiles = 1 << pZoomLevel;
+		final int right = Math.min(pRight, pLeft + mapTiles - 1);
+		int count = 0;
+		for (int y = Math.max(0, pTop); y <= Math.min(mapTiles - 1, pBottom); y++) {
+			for (int x = pLeft; x <= right; x++) {
+				if (prefetchTile(new MapTile(pZoomLevel, MyMath.mod(x, mapTiles), y))) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return true if the tile was requested
+	 */
+	private boolean prefetchTile(final MapTile pTile) {
+		final boolean useDataConnection = mTileProvider.useDataConnection()
+				&& takeDownloadToken();
+		if (mTileProvider.prefetchMapTile(pTile, useDataConnection)) {
+			mRequestedCount++;
+			return true;
+		}
+		if (useDataConnection) {
+			// nothing was requested
+			mDownloadTokens++;
+		}
+		return false;
+	}
+
+	/**
+	 * @return whether a request may use the data connection, within the budget per minute
+	 */
+	private boolean takeDownloadToken() {
+		final long now = System.currentTimeMillis();
+		if (mLastRefillTime > 0) {
+			mDownloadTokens = Math.min(mDownloadsPerMinute, mDownloadTokens + (now - mLastRefillTime)
+					* mDownloadsPerMinute / (double) ONE_MINUTE);
+		}
+		mLastRefillTime = now;
+		if (mDownloadTokens < 1) {
+			return false;
+		}
+		mDownloadTokens--;
+		return true;
+	}
+
+	/**
+	 * Count the prefetched tiles that have become visible, and note when the viewport changes.
+	 * This is called on every frame by
+	 * {@link MapTileProviderArray#setViewport(int, int, int, int, int)}.
+	 */
+	public void onViewport(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom) {
+		onViewport(pZoomLevel, pLeft, pTop, pRight, pBottom, System.currentTimeMillis());
+	}
+
+	synchronized void onViewport(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom, final long pNow) {
+		if (pZoomLevel != mViewportZoomLevel || pLeft != mViewportLeft || pTop != mViewportTop
+				|| pRight != mViewportRight || pBottom != mViewportBottom) {
+			mViewportZoomLevel = pZoomLevel;
+			mViewportLeft = pLeft;
+			mViewportTop = pTop;
+			mViewportRight = pRight;
+			mViewportBottom = pBottom;
+			mViewportTime = pNow;
+			mIdlePrefetched = false;
+		}
+		if (mPrefetched.isEmpty()) {
+			return;
+		}
+		if (pZoomLevel != mPrefetchZoomLevel) {
+			forgetPrefetched();
+			return;
+		}
+		final int size = mPrefetched.size();
+		mKeys = mPrefetched.getKeys(mKeys);
+		for (int i = 0; i < size; i++) {
+			final long tileKey = mKeys[i];
+			if (!isInside(pZoomLevel, tileKey, pLeft, pTop, pRight, pBottom)) {
+				continue;
+			}
+			final MapTile tile = mPrefetched.remove(tileKey);
+			if (mTileProvider.mTileCache.containsTile(tile)) {
+				mHitCount++;
+			} else if (mTileProvider.isTileInProgress(tileKey)) {
+				mLateCount++;
+			} else {
+				mUnusedCount++;
+			}
+		}
+	}
+
+	private void forgetPrefetched() {
+		mUnusedCount += mPrefetched.size();
+		mPrefetched.clear();
+	}
+
+	/**
+	 * @return whether a tile is within a range of tiles, which can be outside the range of the zoom
+	 *         level if the map wraps around
+	 */
+	private static boolean isInside(final int pZoomLevel, final long pTileKey, final int pLeft,
+			final int pTop, final int pRight, final int pBottom) {
+		final int mapTiles = 1 << pZoomLevel;
+		final int y = MapTile.getY(pTileKey);
+		return y >= pTop && y <= pBottom
+				&& (pRight - pLeft + 1 >= mapTiles
+				|| MyMath.mod(MapTile.getX(pTileKey) - pLeft, mapTiles) <= pRight - pLeft);
+	}
+
+	private static int floorDiv(final int pDividend, final int pDivisor) {
+		return (int) Math.floor((double) pDividend / pDivisor);
+	}
+}
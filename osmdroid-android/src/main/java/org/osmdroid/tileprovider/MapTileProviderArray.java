@@ -1,12 +1,14 @@
 package org.osmdroid.tileprovider;
 
+import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 
 import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase.LowMemoryException;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.LongHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,7 +18,9 @@ import android.graphics.drawable.Drawable;
  * This top-level tile provider allows a consumer to provide an array of modular asynchronous tile
  * providers to be used to obtain map tiles. When a tile is requested, the
  * {@link MapTileProviderArray} first checks the {@link MapTileCache} (synchronously) and returns
- * the tile if available. If not, then the {@link MapTileProviderArray} returns null and sends the
+ * the tile if available. If not, and there is a {@link CompressedMapTileCache} with the tile, it
+ * decodes the tile (also synchronously) and returns it. Otherwise the
+ * {@link MapTileProviderArray} returns null and sends the
  * tile request through the asynchronous tile request chain. Each asynchronous tile provider returns
  * success/failure to the {@link MapTileProviderArray}. If successful, the
  * {@link MapTileProviderArray} passes the result to the base class. If failed, then the next
@@ -30,12 +34,26 @@ import android.graphics.drawable.Drawable;
  */
 public class MapTileProviderArray extends MapTileProviderBase {
 
-	protected final HashMap<MapTile, MapTileRequestState> mWorking;
+	/** the tiles in the request chain, by tile key */
+	private final LongHashMap<MapTileRequestState> mWorking;
 
 	private static final Logger logger = LoggerFactory.getLogger(MapTileProviderArray.class);
 
 	protected final List<MapTileModuleProviderBase> mTileProviderList;
 
+	private int mCancelMargin = TILE_REQUEST_CANCEL_MARGIN_DEFAULT;
+
+	private volatile MapTilePrefetcher mPrefetcher;
+
+	private volatile MapTileTracer mTracer;
+
+	/** the range of tiles that requests were last cancelled outside of */
+	private int mCancelZoomLevel = -1;
+	private int mCancelLeft;
+	private int mCancelTop;
+	private int mCancelRight;
+	private int mCancelBottom;
+
 	/**
 	 * Creates an {@link MapTileProviderArray} with no tile providers.
 	 *
@@ -60,7 +78,7 @@ public class MapTileProviderArray extends MapTileProviderBase {
 			final MapTileModuleProviderBase[] pTileProviderArray) {
 		super(pTileSource);
 
-		mWorking = new HashMap<MapTile, MapTileRequestState>();
+		mWorking = new LongHashMap<MapTileRequestState>();
 
 		mTileProviderList = new ArrayList<MapTileModuleProviderBase>();
 		Collections.addAll(mTileProviderList, pTileProviderArray);
@@ -88,9 +106,30 @@ public class MapTileProviderArray extends MapTileProviderBase {
 			}
 			return tile;
 		} else {
-			boolean alreadyInProgress = false;
+			if (tile == null) {
+				final Drawable decoded = getCompressedMapTile(pTile);
+				if (decoded != null) {
+					return decoded;
+				}
+			}
+
+			final MapTileRequestState inProgress;
 			synchronized (mWorking) {
-				alreadyInProgress = mWorking.containsKey(pTile);
+				inProgress = mWorking.get(pTile.getTileKey());
+			}
+			boolean alreadyInProgress = inProgress != null;
+			if (inProgress != null && inProgress.isBackground()) {
+				// a prefetched tile is needed now
+				inProgress.setBackground(false);
+				final MapTileModuleProviderBase provider = inProgress.getCurrentProvider();
+				if (provider != null) {
+					provider.promoteTileRequest(inProgress);
+				}
+			}
+
+			if (!alreadyInProgress && isTileMissing(pTile)) {
+				// don't go through the chain on every frame just to fail again
+				return tile;
 			}
 
 			if (!alreadyInProgress) {
@@ -105,15 +144,16 @@ public class MapTileProviderArray extends MapTileProviderBase {
 					state = new MapTileRequestState(pTile,
 							mTileProviderList.toArray(providerArray), this);
 				}
+				startTrace(state);
 
 				synchronized (mWorking) {
 					// Check again
-					alreadyInProgress = mWorking.containsKey(pTile);
+					alreadyInProgress = mWorking.containsKey(pTile.getTileKey());
 					if (alreadyInProgress) {
 						return null;
 					}
 
-					mWorking.put(pTile, state);
+					mWorking.put(pTile.getTileKey(), state);
 				}
 
 				final MapTileModuleProviderBase provider = findNextAppropriateProvider(state);
@@ -127,24 +167,210 @@ public class MapTileProviderArray extends MapTileProviderBase {
 		}
 	}
 
+	/**
+	 * Send a background request for a tile through the chain, unless it's in the memory or
+	 * compressed cache, being loaded already or known to be missing. The tile is put in the memory
+	 * cache when it's loaded.
+	 *
+	 * @param pUseDataConnection
+	 *            false to only use the providers that don't need a data connection. The providers
+	 *            that need one are never used if {@link #useDataConnection()} is false.
+	 * @return true if a request was sent
+	 * @see MapTileRequestState#isBackground()
+	 */
+	public boolean prefetchMapTile(final MapTile pTile, final boolean pUseDataConnection) {
+		final CompressedMapTileCache compressedTileCache = mCompressedTileCache;
+		if (mTileCache.containsTile(pTile) || isTileMissing(pTile)
+				|| (compressedTileCache != null && compressedTileCache.containsTile(pTile))) {
+			return false;
+		}
+
+		final MapTileRequestState state;
+		synchronized (mTileProviderList) {
+			final ArrayList<MapTileModuleProviderBase> providers =
+				new ArrayList<MapTileModuleProviderBase>(mTileProviderList.size());
+			for (final MapTileModuleProviderBase tileProvider : mTileProviderList) {
+				if (pUseDataConnection || !tileProvider.getUsesDataConnection()) {
+					providers.add(tileProvider);
+				}
+			}
+			state = new MapTileRequestState(pTile,
+					providers.toArray(new MapTileModuleProviderBase[providers.size()]), this);
+		}
+		state.setBackground(true);
+		startTrace(state);
+
+		synchronized (mWorking) {
+			if (mWorking.containsKey(pTile.getTileKey())) {
+				return false;
+			}
+			mWorking.put(pTile.getTileKey(), state);
+		}
+
+		final MapTileModuleProviderBase provider = findNextAppropriateProvider(state);
+		if (provider == null) {
+			synchronized (mWorking) {
+				mWorking.remove(pTile.getTileKey());
+			}
+			return false;
+		}
+		provider.loadMapTileAsync(state);
+		return true;
+	}
+
+	/**
+	 * @return whether the tile is being loaded by the providers in the chain
+	 */
+	public boolean isTileInProgress(final long pTileKey) {
+		synchronized (mWorking) {
+			return mWorking.containsKey(pTileKey);
+		}
+	}
+
+	/**
+	 * @return the request of the tile in the chain, or null if the tile isn't being loaded
+	 */
+	protected MapTileRequestState getTileRequestState(final long pTileKey) {
+		synchronized (mWorking) {
+			return mWorking.get(pTileKey);
+		}
+	}
+
+	/**
+	 * @return the tracer of the tile requests, or null if they aren't traced
+	 */
+	public MapTileTracer getTracer() {
+		return mTracer;
+	}
+
+	/**
+	 * Trace the tile requests from now on, to see how long they spend in each stage of each
+	 * provider.
+	 *
+	 * @param pTracer
+	 *            the tracer, or null to stop tracing
+	 */
+	public void setTracer(final MapTileTracer pTracer) {
+		mTracer = pTracer;
+	}
+
+	private void startTrace(final MapTileRequestState pState) {
+		final MapTileTracer tracer = mTracer;
+		if (tracer != null) {
+			pState.setTrace(tracer.newTrace(pState.getMapTile()));
+		}
+	}
+
+	/**
+	 * @return the prefetcher, or null if prefetching isn't enabled
+	 */
+	public MapTilePrefetcher getPrefetcher() {
+		return mPrefetcher;
+	}
+
+	/**
+	 * Enable prefetching the tiles along the path of a fling or animation. The prefetcher can then
+	 * be configured with {@link #getPrefetcher()}.
+	 */
+	public void setPrefetchEnabled(final boolean pPrefetchEnabled) {
+		if (pPrefetchEnabled && mPrefetcher == null) {
+			mPrefetcher = new MapTilePrefetcher(this);
+		} else if (!pPrefetchEnabled) {
+			mPrefetcher = null;
+		}
+	}
+
+	/**
+	 * Decode a tile from the compressed tile cache, if it's there, and put it in the memory cache.
+	 *
+	 * @return the tile, or null if it isn't in the compressed tile cache
+	 */
+	protected Drawable getCompressedMapTile(final MapTile pTile) {
+		final CompressedMapTileCache compressedTileCache = mCompressedTileCache;
+		final ITileSource tileSource = getTileSource();
+		if (compressedTileCache == null || tileSource == null) {
+			return null;
+		}
+		final byte[] bytes = compressedTileCache.getTileBytes(pTile);
+		if (bytes == null) {
+			return null;
+		}
+		try {
+			final Drawable drawable = tileSource.getDrawable(new ByteArrayInputStream(bytes));
+			if (drawable != null) {
+				if (DEBUGMODE) {
+					logger.debug("CompressedMapTileCache succeeded for: " + pTile);
+				}
+				mTileCache.putTile(pTile, drawable);
+			}
+			return drawable;
+		} catch (final LowMemoryException e) {
+			logger.warn("LowMemoryException decoding compressed MapTile: " + pTile + " : " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if all the providers in the chain recently failed to load the tile
+	 * @see MapTileModuleProviderBase#getMissingTileCache()
+	 */
+	protected boolean isTileMissing(final MapTile pTile) {
+		synchronized (mTileProviderList) {
+			if (mTileProviderList.isEmpty()) {
+				return false;
+			}
+			for (int i = 0; i < mTileProviderList.size(); i++) {
+				if (!mTileProviderList.get(i).getMissingTileCache().isMissing(pTile)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Forget that the providers in the chain failed to load the tile, eg because it was saved to
+	 * the file system cache since.
+	 *
+	 * @see MapTileModuleProviderBase#getMissingTileCache()
+	 */
+	public void clearMissingTile(final MapTile pTile) {
+		synchronized (mTileProviderList) {
+			for (int i = 0; i < mTileProviderList.size(); i++) {
+				mTileProviderList.get(i).getMissingTileCache().remove(pTile);
+			}
+		}
+	}
+
 	@Override
 	public void mapTileRequestCompleted(final MapTileRequestState aState, final Drawable aDrawable) {
 		synchronized (mWorking) {
-			mWorking.remove(aState.getMapTile());
+			mWorking.remove(aState.getMapTile().getTileKey());
 		}
+		// the tile exists now, eg the file system provider can read what was downloaded
+		clearMissingTile(aState.getMapTile());
 		super.mapTileRequestCompleted(aState, aDrawable);
 	}
 
 	@Override
 	public void mapTileRequestFailed(final MapTileRequestState aState) {
+		if (aState.isCancelled()) {
+			// don't try the other providers, and there's nothing new to draw
+			synchronized (mWorking) {
+				mWorking.remove(aState.getMapTile().getTileKey());
+			}
+			return;
+		}
 		final MapTileModuleProviderBase nextProvider = findNextAppropriateProvider(aState);
 		if (nextProvider != null) {
 			nextProvider.loadMapTileAsync(aState);
 		} else {
 			synchronized (mWorking) {
-				mWorking.remove(aState.getMapTile());
+				mWorking.remove(aState.getMapTile().getTileKey());
+			}
+			if (!aState.isBackground()) {
+				super.mapTileRequestFailed(aState);
 			}
-			super.mapTileRequestFailed(aState);
 		}
 	}
 
@@ -155,12 +381,13 @@ public class MapTileProviderArray extends MapTileProviderBase {
 		super.mapTileRequestExpiredTile(aState, aDrawable);
 
 		// Continue through the provider chain
-		final MapTileModuleProviderBase nextProvider = findNextAppropriateProvider(aState);
+		final MapTileModuleProviderBase nextProvider = aState.isCancelled() ? null
+				: findNextAppropriateProvider(aState);
 		if (nextProvider != null) {
 			nextProvider.loadMapTileAsync(aState);
 		} else {
 			synchronized (mWorking) {
-				mWorking.remove(aState.getMapTile());
+				mWorking.remove(aState.getMapTile().getTileKey());
 			}
 		}
 	}
@@ -172,9 +399,11 @@ public class MapTileProviderArray extends MapTileProviderBase {
 	protected MapTileModuleProviderBase findNextAppropriateProvider(final MapTileRequestState aState) {
 		MapTileModuleProviderBase provider = null;
 		boolean providerDoesntExist = false, providerCantGetDataConnection = false, providerCantServiceZoomlevel = false;
+		boolean providerIsMissingTile = false;
 		// The logic of the while statement is
 		// "Keep looping until you get null, or a provider that still exists
-		// and has a data connection if it needs one and can service the zoom level,"
+		// and has a data connection if it needs one and can service the zoom level
+		// and hasn't recently failed to load the tile,"
 		do {
 			provider = aState.getNextProvider();
 			// Perform some checks to see if we can use this provider
@@ -186,9 +415,12 @@ public class MapTileProviderArray extends MapTileProviderBase {
 				int zoomLevel = aState.getMapTile().getZoomLevel();
 				providerCantServiceZoomlevel = zoomLevel > provider.getMaximumZoomLevel()
 						|| zoomLevel < provider.getMinimumZoomLevel();
+				providerIsMissingTile = provider.getMissingTileCache().isMissing(
+						aState.getMapTile());
 			}
 		} while ((provider != null)
-				&& (providerDoesntExist || providerCantGetDataConnection || providerCantServiceZoomlevel));
+				&& (providerDoesntExist || providerCantGetDataConnection
+						|| providerCantServiceZoomlevel || providerIsMissingTile));
 		return provider;
 	}
 
@@ -224,6 +456,109 @@ public class MapTileProviderArray extends MapTileProviderBase {
 		return result;
 	}
 
+	/**
+	 * Load the tiles closest to the center of the viewport first on all the providers in the
+	 * chain, rather than the most recently requested tiles.
+	 *
+	 * @see MapTileModuleProviderBase#setViewportPriority(boolean)
+	 */
+	public void setViewportPriority(final boolean pViewportPriority) {
+		synchronized (mTileProviderList) {
+			for (final MapTileModuleProviderBase tileProvider : mTileProviderList) {
+				tileProvider.setViewportPriority(pViewportPriority);
+			}
+		}
+	}
+
+	@Override
+	public void setViewport(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom) {
+		super.setViewport(pZoomLevel, pLeft, pTop, pRight, pBottom);
+
+		final MapTilePrefetcher prefetcher = mPrefetcher;
+		if (prefetcher != null) {
+			prefetcher.onViewport(pZoomLevel, pLeft, pTop, pRight, pBottom);
+		}
+
+		synchronized (mTileProviderList) {
+			// this is called on every frame, so don't allocate an iterator
+			for (int i = 0; i < mTileProviderList.size(); i++) {
+				mTileProviderList.get(i).setViewport(pZoomLevel, pLeft, pTop, pRight, pBottom);
+			}
+		}
+
+		if (mCancelMargin >= 0
+				&& (pZoomLevel != mCancelZoomLevel || pLeft != mCancelLeft || pTop != mCancelTop
+						|| pRight != mCancelRight || pBottom != mCancelBottom)) {
+			mCancelZoomLevel = pZoomLevel;
+			mCancelLeft = pLeft;
+			mCancelTop = pTop;
+			mCancelRight = pRight;
+			mCancelBottom = pBottom;
+			cancelTileRequests(pZoomLevel, pLeft - mCancelMargin, pTop - mCancelMargin, pRight
+					+ mCancelMargin, pBottom + mCancelMargin);
+		}
+	}
+
+	/**
+	 * Cancel the requests for all the tiles that aren't within a range of tiles on all the
+	 * providers in the chain. This is done automatically when the viewport moves, see
+	 * {@link #setCancelMargin(int)}.
+	 *
+	 * @see MapTileModuleProviderBase#cancelTileRequests(int, int, int, int, int)
+	 * @return the number of requests cancelled
+	 */
+	public int cancelTileRequests(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom) {
+		int count = 0;
+		synchronized (mTileProviderList) {
+			for (int i = 0; i < mTileProviderList.size(); i++) {
+				count += mTileProviderList.get(i).cancelTileRequests(pZoomLevel, pLeft, pTop,
+						pRight, pBottom);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the total number of requests cancelled by the providers in the chain
+	 */
+	public long getCancelledCount() {
+		long count = 0;
+		synchronized (mTileProviderList) {
+			for (final MapTileModuleProviderBase tileProvider : mTileProviderList) {
+				count += tileProvider.getCancelledCount();
+			}
+		}
+		return count;
+	}
+
+	public int getCancelMargin() {
+		return mCancelMargin;
+	}
+
+	/**
+	 * Set how far outside the viewport a tile can be before its request is cancelled when the
+	 * viewport moves. The default is {@link #TILE_REQUEST_CANCEL_MARGIN_DEFAULT}.
+	 *
+	 * @param pCancelMargin
+	 *            the number of tiles, or a negative number to never cancel requests
+	 */
+	public void setCancelMargin(final int pCancelMargin) {
+		mCancelMargin = pCancelMargin;
+	}
+
+	@Override
+	public void setCompressedTileCache(final CompressedMapTileCache pCompressedTileCache) {
+		super.setCompressedTileCache(pCompressedTileCache);
+
+		synchronized (mTileProviderList) {
+			for (final MapTileModuleProviderBase tileProvider : mTileProviderList) {
+				tileProvider.setCompressedTileCache(pCompressedTileCache);
+			}
+		}
+	}
+
 	@Override
 	public void setTileSource(final ITileSource aTileSource) {
 		super.setTileSource(aTileSource);
@@ -39,6 +39,7 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 	private static final Logger logger = LoggerFactory.getLogger(MapTileProviderBase.class);
 
 	protected final MapTileCache mTileCache;
+	protected CompressedMapTileCache mCompressedTileCache;
 	protected Handler mTileRequestCompleteHandler;
 	protected boolean mUseDataConnection = true;
 
@@ -46,6 +47,21 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 
 	public abstract Drawable getMapTile(MapTile pTile);
 
+	/**
+	 * Get a tile by its tile key. If a current version of the tile is in the memory cache then this
+	 * doesn't allocate anything, otherwise it calls {@link #getMapTile(MapTile)}.
+	 *
+	 * @see MapTile#getTileKey(int, int, int)
+	 */
+	public Drawable getMapTile(final long pTileKey) {
+		final Drawable tile = mTileCache.getMapTile(pTileKey);
+		if (tile != null && !ExpirableBitmapDrawable.isDrawableExpired(tile)) {
+			return tile;
+		}
+		return getMapTile(new MapTile(MapTile.getZoomLevel(pTileKey), MapTile.getX(pTileKey),
+				MapTile.getY(pTileKey)));
+	}
+
 	public abstract void detach();
 
 	/**
@@ -83,7 +99,11 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 	}
 
 	/**
-	 * Creates a {@link MapTileCache} to be used to cache tiles in memory.
+	 * Creates a {@link MapTileCache} to be used to cache tiles in memory. Override this to use a
+	 * {@link ConcurrentMapTileCache}, a cache limited by bitmap memory rather than tile count
+	 * (see {@link MapTileCache#MapTileCache(int, long)}), or one that keeps often used tiles (see
+	 * {@link TinyLFUMapTileCache}) or the tiles close to the viewport (see
+	 * {@link ViewportMapTileCache}).
 	 */
 	public MapTileCache createTileCache() {
 		return new MapTileCache();
@@ -102,7 +122,9 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 
 	/**
 	 * Called by implementation class methods indicating that they have completed the request as
-	 * best it can. The tile is added to the cache, and a MAPTILE_SUCCESS_ID message is sent.
+	 * best it can. The tile is added to the cache, and a MAPTILE_SUCCESS_ID message is sent, with
+	 * the {@link MapTile} as its object, unless the tile was prefetched: it isn't visible, so
+	 * there's nothing to redraw.
 	 *
 	 * @param pState
 	 *            the map tile request state object
@@ -115,8 +137,8 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 		putTileIntoCache(pState, pDrawable);
 
 		// tell our caller we've finished and it should update its view
-		if (mTileRequestCompleteHandler != null) {
-			mTileRequestCompleteHandler.sendEmptyMessage(MapTile.MAPTILE_SUCCESS_ID);
+		if (!pState.isBackground()) {
+			notifyTileRequestCompleted(pState.getMapTile());
 		}
 
 		if (DEBUGMODE) {
@@ -133,9 +155,7 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 	 */
 	@Override
 	public void mapTileRequestFailed(final MapTileRequestState pState) {
-		if (mTileRequestCompleteHandler != null) {
-			mTileRequestCompleteHandler.sendEmptyMessage(MapTile.MAPTILE_FAIL_ID);
-		}
+		notifyTileRequestFailed();
 
 		if (DEBUGMODE) {
 			logger.debug("MapTile request failed: " + pState.getMapTile());
@@ -145,7 +165,7 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 	/**
 	 * Called by implementation class methods indicating that they have produced an expired result
 	 * that can be used but better results may be delivered later. The tile is added to the cache,
-	 * and a MAPTILE_SUCCESS_ID message is sent.
+	 * and a MAPTILE_SUCCESS_ID message is sent, with the {@link MapTile} as its object.
 	 * 
 	 * @param pState
 	 *            the map tile request state object
@@ -158,19 +178,41 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 		putExpiredTileIntoCache(pState, pDrawable);
 
 		// tell our caller we've finished and it should update its view
-		if (mTileRequestCompleteHandler != null) {
-			mTileRequestCompleteHandler.sendEmptyMessage(MapTile.MAPTILE_SUCCESS_ID);
-		}
+		notifyTileRequestCompleted(pState.getMapTile());
 
 		if (DEBUGMODE) {
 			logger.debug("MapTile request complete: " + pState.getMapTile());
 		}
 	}
 
+	/**
+	 * Send a MAPTILE_SUCCESS_ID message to the handler, if there is one.
+	 */
+	protected void notifyTileRequestCompleted(final MapTile pTile) {
+		if (mTileRequestCompleteHandler != null) {
+			mTileRequestCompleteHandler.obtainMessage(MapTile.MAPTILE_SUCCESS_ID, pTile)
+					.sendToTarget();
+		}
+	}
+
+	/**
+	 * Send a MAPTILE_FAIL_ID message to the handler, if there is one.
+	 */
+	protected void notifyTileRequestFailed() {
+		if (mTileRequestCompleteHandler != null) {
+			mTileRequestCompleteHandler.sendEmptyMessage(MapTile.MAPTILE_FAIL_ID);
+		}
+	}
+
 	protected void putTileIntoCache(MapTileRequestState pState, Drawable pDrawable) {
 		final MapTile tile = pState.getMapTile();
 		if (pDrawable != null) {
-			mTileCache.putTile(tile, pDrawable);
+			if (pState.isBackground()) {
+				mTileCache.putPrefetchedTile(tile, pDrawable);
+			} else {
+				mTileCache.putTile(tile, pDrawable);
+			}
+			pState.trace(MapTileTrace.EVENT_CACHED);
 		}
 	}
 
@@ -178,6 +220,7 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 		final MapTile tile = pState.getMapTile();
 		if (pDrawable != null && !mTileCache.containsTile(tile)) {
 			mTileCache.putTile(tile, pDrawable);
+			pState.trace(MapTileTrace.EVENT_CACHED);
 		}
 	}
 
@@ -189,8 +232,46 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 		mTileCache.ensureCapacity(pCapacity);
 	}
 
+	/**
+	 * @see MapTileCache#ensurePrefetchCapacity(int)
+	 */
+	public void ensurePrefetchCapacity(final int pCapacity) {
+		mTileCache.ensurePrefetchCapacity(pCapacity);
+	}
+
+	/**
+	 * Set the range of visible tiles. This is called on every frame.
+	 *
+	 * @see MapTileCache#setViewport(int, int, int, int, int)
+	 */
+	public void setViewport(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom) {
+		mTileCache.setViewport(pZoomLevel, pLeft, pTop, pRight, pBottom);
+	}
+
 	public void clearTileCache() {
 		mTileCache.clear();
+		if (mCompressedTileCache != null) {
+			mCompressedTileCache.clear();
+		}
+	}
+
+	/**
+	 * Get the cache of compressed tiles below the memory cache, if any.
+	 */
+	public CompressedMapTileCache getCompressedTileCache() {
+		return mCompressedTileCache;
+	}
+
+	/**
+	 * Set a cache of compressed tiles to keep below the memory cache of bitmaps. Tiles that drop
+	 * out of the memory cache can be decoded from it again without reading them from storage.
+	 *
+	 * @param pCompressedTileCache
+	 *            the cache, or null to not use one
+	 */
+	public void setCompressedTileCache(final CompressedMapTileCache pCompressedTileCache) {
+		mCompressedTileCache = pCompressedTileCache;
 	}
 
 	/**
@@ -317,20 +398,34 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 			final Drawable oldDrawable = mTileCache.getMapTile(oldTile);
 
 			if (oldDrawable instanceof BitmapDrawable) {
-				final Bitmap oldBitmap = ((BitmapDrawable)oldDrawable).getBitmap();
-				final int xx = (pX % (1 << mDiff)) * mTileSize_2;
-				final int yy = (pY % (1 << mDiff)) * mTileSize_2;
-				mSrcRect.set(xx, yy, xx + mTileSize_2, yy + mTileSize_2);
-				mDestRect.set(0, 0, pTileSizePx, pTileSizePx);
-				final Bitmap bitmap = Bitmap.createBitmap(pTileSizePx, pTileSizePx, Bitmap.Config.RGB_565);
-				final Canvas canvas = new Canvas(bitmap);
-				canvas.drawBitmap(oldBitmap, mSrcRect, mDestRect, null);
-				if (DEBUGMODE) {
-					logger.debug("Created scaled tile: " + pTile);
-					mDebugPaint.setTextSize(40);
-					canvas.drawText("scaled", 50, 50, mDebugPaint);
+				final ReusableBitmapDrawable reusableTile = oldDrawable instanceof ReusableBitmapDrawable
+						? (ReusableBitmapDrawable) oldDrawable : null;
+				if (reusableTile != null) {
+					reusableTile.beginUsingDrawable();
+				}
+				try {
+					if (reusableTile != null && !reusableTile.isBitmapValid()) {
+						return;
+					}
+					final Bitmap oldBitmap = ((BitmapDrawable)oldDrawable).getBitmap();
+					final int xx = (pX % (1 << mDiff)) * mTileSize_2;
+					final int yy = (pY % (1 << mDiff)) * mTileSize_2;
+					mSrcRect.set(xx, yy, xx + mTileSize_2, yy + mTileSize_2);
+					mDestRect.set(0, 0, pTileSizePx, pTileSizePx);
+					final Bitmap bitmap = Bitmap.createBitmap(pTileSizePx, pTileSizePx, Bitmap.Config.RGB_565);
+					final Canvas canvas = new Canvas(bitmap);
+					canvas.drawBitmap(oldBitmap, mSrcRect, mDestRect, null);
+					if (DEBUGMODE) {
+						logger.debug("Created scaled tile: " + pTile);
+						mDebugPaint.setTextSize(40);
+						canvas.drawText("scaled", 50, 50, mDebugPaint);
+					}
+					mNewTiles.put(pTile, bitmap);
+				} finally {
+					if (reusableTile != null) {
+						reusableTile.finishUsingDrawable();
+					}
 				}
-				mNewTiles.put(pTile, bitmap);
 			}
 		}
 	}
@@ -358,19 +453,31 @@ public abstract class MapTileProviderBase implements IMapTileProviderCallback,
 					final MapTile oldTile = new MapTile(mOldZoomLevel, xx + x, yy + y);
 					final Drawable oldDrawable = mTileCache.getMapTile(oldTile);
 					if (oldDrawable instanceof BitmapDrawable) {
-						final Bitmap oldBitmap = ((BitmapDrawable)oldDrawable).getBitmap();
-						if (oldBitmap != null) {
-							if (bitmap == null) {
-								bitmap = Bitmap.createBitmap(pTileSizePx, pTileSizePx, Bitmap.Config.RGB_565);
-								canvas = new Canvas(bitmap);
-								canvas.drawColor(Color.LTGRAY);
-							}
-							mDestRect.set(
-									x * mTileSize_2, y * mTileSize_2,
-									(x + 1) * mTileSize_2, (y + 1) * mTileSize_2);
+						final ReusableBitmapDrawable reusableTile = oldDrawable instanceof ReusableBitmapDrawable
+								? (ReusableBitmapDrawable) oldDrawable : null;
+						if (reusableTile != null) {
+							reusableTile.beginUsingDrawable();
+						}
+						try {
+							final Bitmap oldBitmap = reusableTile != null && !reusableTile.isBitmapValid()
+									? null : ((BitmapDrawable)oldDrawable).getBitmap();
 							if (oldBitmap != null) {
-								canvas.drawBitmap(oldBitmap, null, mDestRect, null);
-								mTileCache.mCachedTiles.remove(oldBitmap);
+								if (bitmap == null) {
+									bitmap = Bitmap.createBitmap(pTileSizePx, pTileSizePx, Bitmap.Config.RGB_565);
+									canvas = new Canvas(bitmap);
+									canvas.drawColor(Color.LTGRAY);
+								}
+								mDestRect.set(
+										x * mTileSize_2, y * mTileSize_2,
+										(x + 1) * mTileSize_2, (y + 1) * mTileSize_2);
+								if (oldBitmap != null) {
+									canvas.drawBitmap(oldBitmap, null, mDestRect, null);
+									mTileCache.mCachedTiles.remove(oldBitmap);
+								}
+							}
+						} finally {
+							if (reusableTile != null) {
+								reusableTile.finishUsingDrawable();
 							}
 						}
 					}
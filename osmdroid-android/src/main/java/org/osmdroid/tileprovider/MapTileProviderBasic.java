@@ -4,6 +4,7 @@ import org.osmdroid.tileprovider.modules.INetworkAvailablityCheck;
 import org.osmdroid.tileprovider.modules.MapTileDownloader;
 import org.osmdroid.tileprovider.modules.MapTileFileArchiveProvider;
 import org.osmdroid.tileprovider.modules.MapTileFilesystemProvider;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
 import org.osmdroid.tileprovider.modules.NetworkAvailabliltyCheck;
 import org.osmdroid.tileprovider.modules.TileWriter;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
@@ -11,11 +12,20 @@ import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
 import org.osmdroid.tileprovider.util.SimpleRegisterReceiver;
 
 import android.content.Context;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
 
 /**
  * This top-level tile provider implements a basic tile request chain which includes a
  * {@link MapTileFilesystemProvider} (a file-system cache), a {@link MapTileFileArchiveProvider}
- * (archive provider), and a {@link MapTileDownloader} (downloads map tiles via tile source).
+ * (archive provider), and a {@link MapTileDownloader} (downloads map tiles via tile source).<br />
+ * A {@link MapTileProviderBasic} can also be attached to a {@link SharedMapTileProvider} instead of
+ * having a chain of its own, so that several views on the same tile source share the requests and
+ * the memory cache:
+ *
+ * <pre>
+ * new MapTileProviderBasic(SharedMapTileProvider.acquire(context, tileSource));
+ * </pre>
  * 
  * @author Marc Kurtz
  * 
@@ -24,6 +34,12 @@ public class MapTileProviderBasic extends MapTileProviderArray implements IMapTi
 
 	// private static final Logger logger = LoggerFactory.getLogger(MapTileProviderBasic.class);
 
+	/** the shared provider this is attached to, or null if it has its own chain */
+	private volatile SharedMapTileProvider mSharedProvider;
+
+	/** the memory cache capacity this needs in the shared provider */
+	int mSharedCapacity;
+
 	/**
 	 * Creates a {@link MapTileProviderBasic}.
 	 */
@@ -44,20 +60,190 @@ public class MapTileProviderBasic extends MapTileProviderArray implements IMapTi
 	 */
 	public MapTileProviderBasic(final IRegisterReceiver pRegisterReceiver,
 			final INetworkAvailablityCheck aNetworkAvailablityCheck, final ITileSource pTileSource) {
-		super(pTileSource, pRegisterReceiver);
+		super(pTileSource, pRegisterReceiver,
+				createTileProviders(pRegisterReceiver, aNetworkAvailablityCheck, pTileSource));
+	}
+
+	/**
+	 * Creates a {@link MapTileProviderBasic} that loads its tiles through a shared provider. The
+	 * shared provider is released when this is detached.
+	 *
+	 * @param pSharedProvider
+	 *            a shared provider acquired for this, see
+	 *            {@link SharedMapTileProvider#acquire(Context, ITileSource)}
+	 */
+	public MapTileProviderBasic(final SharedMapTileProvider pSharedProvider) {
+		super(pSharedProvider.getTileSource(), null);
+		mSharedProvider = pSharedProvider;
+		pSharedProvider.attach(this);
+	}
 
+	/**
+	 * @return the chain of a {@link MapTileProviderBasic}: the file system cache, the archives and
+	 *         the downloader
+	 */
+	static MapTileModuleProviderBase[] createTileProviders(
+			final IRegisterReceiver pRegisterReceiver,
+			final INetworkAvailablityCheck pNetworkAvailablityCheck, final ITileSource pTileSource) {
 		final TileWriter tileWriter = new TileWriter();
 
 		final MapTileFilesystemProvider fileSystemProvider = new MapTileFilesystemProvider(
 				pRegisterReceiver, pTileSource);
-		mTileProviderList.add(fileSystemProvider);
 
 		final MapTileFileArchiveProvider archiveProvider = new MapTileFileArchiveProvider(
 				pRegisterReceiver, pTileSource);
-		mTileProviderList.add(archiveProvider);
 
 		final MapTileDownloader downloaderProvider = new MapTileDownloader(pTileSource, tileWriter,
-				aNetworkAvailablityCheck);
-		mTileProviderList.add(downloaderProvider);
+				pNetworkAvailablityCheck);
+
+		return new MapTileModuleProviderBase[] { fileSystemProvider, archiveProvider,
+				downloaderProvider };
+	}
+
+	/**
+	 * @return the shared provider this is attached to, or null if it has its own chain. The
+	 *         prefetching, tracing and request priorities of a shared chain are set on it.
+	 */
+	public SharedMapTileProvider getSharedProvider() {
+		return mSharedProvider;
+	}
+
+	@Override
+	public Drawable getMapTile(final MapTile pTile) {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		return sharedProvider != null ? sharedProvider.getChain().getMapTile(pTile) : super
+				.getMapTile(pTile);
+	}
+
+	@Override
+	public Drawable getMapTile(final long pTileKey) {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		return sharedProvider != null ? sharedProvider.getChain().getMapTile(pTileKey) : super
+				.getMapTile(pTileKey);
+	}
+
+	@Override
+	public boolean prefetchMapTile(final MapTile pTile, final boolean pUseDataConnection) {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		return sharedProvider != null ? sharedProvider.getChain().prefetchMapTile(pTile,
+				pUseDataConnection) : super.prefetchMapTile(pTile, pUseDataConnection);
+	}
+
+	@Override
+	public boolean isTileInProgress(final long pTileKey) {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		return sharedProvider != null ? sharedProvider.getChain().isTileInProgress(pTileKey) : super
+				.isTileInProgress(pTileKey);
+	}
+
+	@Override
+	public void detach() {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		if (sharedProvider != null) {
+			mSharedProvider = null;
+			sharedProvider.detach(this);
+		} else {
+			super.detach();
+		}
+	}
+
+	@Override
+	public int getMinimumZoomLevel() {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		return sharedProvider != null ? sharedProvider.getChain().getMinimumZoomLevel() : super
+				.getMinimumZoomLevel();
+	}
+
+	@Override
+	public int getMaximumZoomLevel() {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		return sharedProvider != null ? sharedProvider.getChain().getMaximumZoomLevel() : super
+				.getMaximumZoomLevel();
+	}
+
+	/**
+	 * If this is attached to a shared provider, switch to the shared provider of the new tile
+	 * source, with the same room in its memory cache.
+	 */
+	@Override
+	public void setTileSource(final ITileSource aTileSource) {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		if (sharedProvider != null
+				&& !sharedProvider.getTileSource().name().equals(aTileSource.name())) {
+			final int capacity = mSharedCapacity;
+			final SharedMapTileProvider newSharedProvider = sharedProvider.acquire(aTileSource);
+			newSharedProvider.attach(this);
+			mSharedProvider = newSharedProvider;
+			sharedProvider.detach(this);
+			newSharedProvider.ensureCapacity(this, capacity);
+		}
+		super.setTileSource(aTileSource);
+	}
+
+	/**
+	 * @return the prefetcher of the shared chain if this is attached to one, see
+	 *         {@link SharedMapTileProvider#setPrefetchEnabled(boolean)}
+	 */
+	@Override
+	public MapTilePrefetcher getPrefetcher() {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		return sharedProvider != null ? sharedProvider.getPrefetcher() : super.getPrefetcher();
+	}
+
+	@Override
+	public void ensureCapacity(final int pCapacity) {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		if (sharedProvider != null) {
+			sharedProvider.ensureCapacity(this, pCapacity);
+		} else {
+			super.ensureCapacity(pCapacity);
+		}
+	}
+
+	@Override
+	public void ensurePrefetchCapacity(final int pCapacity) {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		if (sharedProvider != null) {
+			sharedProvider.getChain().ensurePrefetchCapacity(pCapacity);
+		} else {
+			super.ensurePrefetchCapacity(pCapacity);
+		}
+	}
+
+	@Override
+	public void setViewport(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom) {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		if (sharedProvider != null) {
+			sharedProvider.setViewport(this, pZoomLevel, pLeft, pTop, pRight, pBottom);
+		} else {
+			super.setViewport(pZoomLevel, pLeft, pTop, pRight, pBottom);
+		}
+	}
+
+	@Override
+	public void rescaleCache(final int pNewZoomLevel, final int pOldZoomLevel, final Rect pViewPort) {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		if (sharedProvider != null) {
+			sharedProvider.getChain().rescaleCache(pNewZoomLevel, pOldZoomLevel, pViewPort);
+		} else {
+			super.rescaleCache(pNewZoomLevel, pOldZoomLevel, pViewPort);
+		}
+	}
+
+	@Override
+	public boolean useDataConnection() {
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		return sharedProvider != null ? sharedProvider.getChain().useDataConnection() : super
+				.useDataConnection();
+	}
+
+	@Override
+	public void setUseDataConnection(final boolean pMode) {
+		super.setUseDataConnection(pMode);
+		final SharedMapTileProvider sharedProvider = mSharedProvider;
+		if (sharedProvider != null) {
+			sharedProvider.getChain().setUseDataConnection(pMode);
+		}
 	}
 }
@@ -6,12 +6,19 @@ import java.util.Queue;
 
 import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
 
+import android.graphics.drawable.Drawable;
+
 public class MapTileRequestState {
 
 	private final Queue<MapTileModuleProviderBase> mProviderQueue;
 	private final MapTile mMapTile;
 	private final IMapTileProviderCallback mCallback;
 	private MapTileModuleProviderBase mCurrentProvider;
+	private volatile boolean mCancelled;
+	private volatile boolean mBackground;
+	private volatile MapTileTrace mTrace;
+	private volatile Drawable mExpiredTile;
+	private volatile int mRetryCount;
 
 	public MapTileRequestState(final MapTile mapTile,
 			final MapTileModuleProviderBase[] providers,
@@ -42,4 +49,73 @@ public class MapTileRequestState {
 	public MapTileModuleProviderBase getCurrentProvider() {
 		return mCurrentProvider;
 	}
+
+	/**
+	 * @return whether the tile is no longer needed, eg because it has left the viewport
+	 */
+	public boolean isCancelled() {
+		return mCancelled;
+	}
+
+	public void cancel() {
+		mCancelled = true;
+	}
+
+	/**
+	 * @return whether the tile isn't needed yet, eg because it's being prefetched. Background
+	 *         requests are loaded after the others and aren't cancelled when the viewport moves.
+	 */
+	public boolean isBackground() {
+		return mBackground;
+	}
+
+	public void setBackground(final boolean pBackground) {
+		mBackground = pBackground;
+	}
+
+	/**
+	 * @return the trace of the request, or null if it isn't traced
+	 * @see MapTileTracer
+	 */
+	public MapTileTrace getTrace() {
+		return mTrace;
+	}
+
+	public void setTrace(final MapTileTrace pTrace) {
+		mTrace = pTrace;
+	}
+
+	/**
+	 * @return the expired tile that an earlier provider returned, which the next provider can
+	 *         revalidate rather than load again, or null
+	 */
+	public Drawable getExpiredTile() {
+		return mExpiredTile;
+	}
+
+	public void setExpiredTile(final Drawable pExpiredTile) {
+		mExpiredTile = pExpiredTile;
+	}
+
+	/**
+	 * @return the number of times the current provider has tried to load the tile again
+	 */
+	public int getRetryCount() {
+		return mRetryCount;
+	}
+
+	public void setRetryCount(final int pRetryCount) {
+		mRetryCount = pRetryCount;
+	}
+
+	/**
+	 * Record that the request has reached an event, eg {@link MapTileTrace#EVENT_DEQUEUED}, if
+	 * it's traced.
+	 */
+	public void trace(final int pEvent) {
+		final MapTileTrace trace = mTrace;
+		if (trace != null) {
+			trace.mark(pEvent);
+		}
+	}
 }
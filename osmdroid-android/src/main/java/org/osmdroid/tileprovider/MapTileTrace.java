@@ -0,0 +1,177 @@
+package org.osmdroid.tileprovider;
+
+/**
+ * The times at which a tile request reached each stage of a provider in the chain of a
+ * {@link MapTileProviderArray}. It's only created when the provider has a {@link MapTileTracer},
+ * see {@link MapTileRequestState#trace(int)}. The times of the events are those of the provider
+ * the request is at, they are cleared when it's queued at the next provider.
+ */
+public class MapTileTrace {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** put in the queue of a provider */
+	public static final int EVENT_ENQUEUED = 0;
+	/** taken from the queue by a tile loader */
+	public static final int EVENT_DEQUEUED = 1;
+	public static final int EVENT_LOAD_STARTED = 2;
+	public static final int EVENT_LOAD_FINISHED = 3;
+	public static final int EVENT_DECODE_STARTED = 4;
+	public static final int EVENT_DECODE_FINISHED = 5;
+	/** the provider has finished with the tile, whether it loaded it or not */
+	public static final int EVENT_FINISHED = 6;
+	/** put in the memory cache */
+	public static final int EVENT_CACHED = 7;
+	public static final int EVENT_COUNT = 8;
+
+	/** waiting in the queue of the provider */
+	public static final int STAGE_QUEUE = 0;
+	/** reading the tile, eg from a file or the network */
+	public static final int STAGE_LOAD = 1;
+	/** waiting for the decode stage, see {@link org.osmdroid.tileprovider.modules.MapTileDecoder} */
+	public static final int STAGE_DECODE_QUEUE = 2;
+	public static final int STAGE_DECODE = 3;
+	/** from the request to the memory cache, or to the end of the provider if it's not cached */
+	public static final int STAGE_TOTAL = 4;
+	public static final int STAGE_COUNT = 5;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final MapTileTracer mTracer;
+	private final MapTile mMapTile;
+	private final long mRequestTime;
+	private final long[] mEventTimes = new long[EVENT_COUNT];
+	private String mProviderName;
+	private boolean mLoaded;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	MapTileTrace(final MapTileTracer pTracer, final MapTile pMapTile, final long pRequestTime) {
+		mTracer = pTracer;
+		mMapTile = pMapTile;
+		mRequestTime = pRequestTime;
+		clearEvents();
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public MapTile getMapTile() {
+		return mMapTile;
+	}
+
+	/**
+	 * @return the name of the last provider that finished with the tile
+	 */
+	public synchronized String getProviderName() {
+		return mProviderName;
+	}
+
+	/**
+	 * @return whether the last provider that finished with the tile loaded it
+	 */
+	public synchronized boolean isLoaded() {
+		return mLoaded;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} of an event at the current provider, or -1 if it
+	 *         hasn't happened
+	 */
+	public synchronized long getEventTime(final int pEvent) {
+		return mEventTimes[pEvent];
+	}
+
+	/**
+	 * @return the time spent in a stage in nanoseconds, or -1 if the tile didn't go through it
+	 */
+	public synchronized long getStageTime(final int pStage) {
+		switch (pStage) {
+		case STAGE_QUEUE:
+			return getInterval(EVENT_ENQUEUED, EVENT_DEQUEUED);
+		case STAGE_LOAD:
+			return getInterval(EVENT_LOAD_STARTED, EVENT_LOAD_FINISHED);
+		case STAGE_DECODE_QUEUE:
+			return getInterval(EVENT_LOAD_FINISHED, EVENT_DECODE_STARTED);
+		case STAGE_DECODE:
+			return getInterval(EVENT_DECODE_STARTED, EVENT_DECODE_FINISHED);
+		case STAGE_TOTAL:
+			final long end = mEventTimes[EVENT_CACHED] >= 0 ? mEventTimes[EVENT_CACHED]
+					: mEventTimes[EVENT_FINISHED];
+			return end < 0 ? -1 : end - mRequestTime;
+		default:
+			throw new IllegalArgumentException("Unknown stage: " + pStage);
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Record that the request has reached an event at its current provider.
+	 */
+	public void mark(final int pEvent) {
+		mark(pEvent, System.nanoTime());
+	}
+
+	synchronized void mark(final int pEvent, final long pNow) {
+		if (pEvent == EVENT_ENQUEUED) {
+			// the next provider starts
+			clearEvents();
+		}
+		mEventTimes[pEvent] = pNow;
+		if (pEvent == EVENT_CACHED && mProviderName != null) {
+			mTracer.onTileCached(this);
+		}
+	}
+
+	/**
+	 * Record that a provider has finished with the tile. This is called before the callback of the
+	 * request is told, which may queue it at the next provider.
+	 *
+	 * @param pProviderName
+	 *            the name of the provider
+	 * @param pLoaded
+	 *            whether the provider loaded the tile
+	 */
+	public void finish(final String pProviderName, final boolean pLoaded) {
+		finish(pProviderName, pLoaded, System.nanoTime());
+	}
+
+	synchronized void finish(final String pProviderName, final boolean pLoaded, final long pNow) {
+		mEventTimes[EVENT_FINISHED] = pNow;
+		mProviderName = pProviderName;
+		mLoaded = pLoaded;
+		mTracer.onProviderFinished(this);
+	}
+
+	private long getInterval(final int pStartEvent, final int pEndEvent) {
+		final long start = mEventTimes[pStartEvent];
+		final long end = mEventTimes[pEndEvent];
+		return start < 0 || end < 0 ? -1 : end - start;
+	}
+
+	private void clearEvents() {
+		for (int i = 0; i < EVENT_COUNT; i++) {
+			mEventTimes[i] = -1;
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(mMapTile).append(' ').append(mProviderName).append(mLoaded ? " loaded" : " failed");
+		for (int i = 0; i < STAGE_COUNT; i++) {
+			sb.append(' ').append(getStageTime(i) / 1000).append("us");
+		}
+		return sb.toString();
+	}
+}
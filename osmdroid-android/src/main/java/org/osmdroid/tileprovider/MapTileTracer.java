@@ -0,0 +1,106 @@
+package org.osmdroid.tileprovider;
+
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.osmdroid.util.LatencyHistogram;
+
+/**
+ * Traces the tile requests of a {@link MapTileProviderArray} through the stages of each provider
+ * in its chain: the queue, loading, decoding and the memory cache (see {@link MapTileTrace}). The
+ * times are added to a {@link LatencyHistogram} per provider and stage, and listeners can see each
+ * trace. Set it with {@link MapTileProviderArray#setTracer(MapTileTracer)}. Without a tracer,
+ * tracing costs a null check at each stage.
+ */
+public class MapTileTracer {
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	/** the histograms of each stage, by provider name */
+	private final HashMap<String, LatencyHistogram[]> mHistograms =
+		new HashMap<String, LatencyHistogram[]>();
+
+	private final CopyOnWriteArrayList<IMapTileTraceListener> mListeners =
+		new CopyOnWriteArrayList<IMapTileTraceListener>();
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * @return the names of the providers that have finished with a tile
+	 */
+	public synchronized String[] getProviderNames() {
+		return mHistograms.keySet().toArray(new String[mHistograms.size()]);
+	}
+
+	/**
+	 * @param pStage
+	 *            the stage, eg {@link MapTileTrace#STAGE_LOAD}
+	 * @return the histogram of the times of a stage of a provider, or null if it hasn't finished
+	 *         with a tile
+	 */
+	public synchronized LatencyHistogram getHistogram(final String pProviderName,
+			final int pStage) {
+		final LatencyHistogram[] histograms = mHistograms.get(pProviderName);
+		return histograms == null ? null : histograms[pStage];
+	}
+
+	public void addListener(final IMapTileTraceListener pListener) {
+		mListeners.add(pListener);
+	}
+
+	public void removeListener(final IMapTileTraceListener pListener) {
+		mListeners.remove(pListener);
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Start tracing a request.
+	 */
+	public MapTileTrace newTrace(final MapTile pTile) {
+		return new MapTileTrace(this, pTile, System.nanoTime());
+	}
+
+	public synchronized void clear() {
+		mHistograms.clear();
+	}
+
+	void onProviderFinished(final MapTileTrace pTrace) {
+		final LatencyHistogram[] histograms = getHistograms(pTrace.getProviderName());
+		for (int stage = 0; stage < MapTileTrace.STAGE_COUNT; stage++) {
+			final long time = stage == MapTileTrace.STAGE_TOTAL ? -1 : pTrace.getStageTime(stage);
+			if (time >= 0) {
+				histograms[stage].add(time);
+			}
+		}
+		for (final IMapTileTraceListener listener : mListeners) {
+			listener.onProviderFinished(pTrace);
+		}
+	}
+
+	void onTileCached(final MapTileTrace pTrace) {
+		getHistograms(pTrace.getProviderName())[MapTileTrace.STAGE_TOTAL].add(
+				pTrace.getStageTime(MapTileTrace.STAGE_TOTAL));
+		for (final IMapTileTraceListener listener : mListeners) {
+			listener.onTileCached(pTrace);
+		}
+	}
+
+	private synchronized LatencyHistogram[] getHistograms(final String pProviderName) {
+		LatencyHistogram[] histograms = mHistograms.get(pProviderName);
+		if (histograms == null) {
+			histograms = new LatencyHistogram[MapTileTrace.STAGE_COUNT];
+			for (int i = 0; i < histograms.length; i++) {
+				histograms[i] = new LatencyHistogram();
+			}
+			mHistograms.put(pProviderName, histograms);
+		}
+		return histograms;
+	}
+}
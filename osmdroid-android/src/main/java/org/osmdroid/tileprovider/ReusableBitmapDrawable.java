@@ -0,0 +1,51 @@
+package org.osmdroid.tileprovider;
+
+import android.graphics.Bitmap;
+
+/**
+ * An {@link ExpirableBitmapDrawable} whose bitmap can be handed back to the {@link BitmapPool}
+ * when the tile is evicted from the memory cache. The bitmap is only taken away if nobody is
+ * drawing the tile at the time, so drawing code should wrap its use of the drawable in
+ * {@link #beginUsingDrawable()} and {@link #finishUsingDrawable()} and check
+ * {@link #isBitmapValid()} in between.
+ */
+public class ReusableBitmapDrawable extends ExpirableBitmapDrawable {
+
+	private boolean mBitmapRecycled = false;
+	private int mUsageRefCount = 0;
+
+	public ReusableBitmapDrawable(final Bitmap pBitmap) {
+		super(pBitmap);
+	}
+
+	public synchronized void beginUsingDrawable() {
+		mUsageRefCount++;
+	}
+
+	public synchronized void finishUsingDrawable() {
+		mUsageRefCount--;
+		if (mUsageRefCount < 0) {
+			throw new IllegalStateException("Unbalanced finishUsingDrawable() called.");
+		}
+	}
+
+	/**
+	 * @return false if the bitmap has been given to the pool and must not be drawn any more
+	 */
+	public synchronized boolean isBitmapValid() {
+		return !mBitmapRecycled;
+	}
+
+	/**
+	 * Take the bitmap away from this drawable so that it can be reused, unless it is being used.
+	 *
+	 * @return the bitmap, or null if it is in use or has already been taken
+	 */
+	public synchronized Bitmap tryRecycle() {
+		if (mUsageRefCount == 0 && !mBitmapRecycled) {
+			mBitmapRecycled = true;
+			return getBitmap();
+		}
+		return null;
+	}
+}
@@ -0,0 +1,333 @@
+package org.osmdroid.tileprovider;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.tileprovider.modules.INetworkAvailablityCheck;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.modules.NetworkAvailabliltyCheck;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.util.SimpleRegisterReceiver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.content.Context;
+
+/**
+ * Holds a tile provider chain shared by all the {@link MapTileProviderBasic}s on the same tile
+ * source in the process, eg a {@link org.osmdroid.views.MapView}, its minimap and a second map
+ * view. A tile that several of them need is loaded once, and they share the memory cache and the
+ * compressed tile cache.<br />
+ * A shared provider is reference counted: each {@link #acquire(Context, ITileSource)} is balanced
+ * by detaching the {@link MapTileProviderBasic} it's given to. The chain is detached when the last
+ * one is.<br />
+ * The first provider attached drives the viewport of the shared cache and the priority of the
+ * requests. Requests aren't cancelled when the viewport moves, since another view may need them.
+ */
+public class SharedMapTileProvider implements OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(SharedMapTileProvider.class);
+
+	/** the shared providers by tile source name */
+	private static final HashMap<String, SharedMapTileProvider> sProviders = new HashMap<String, SharedMapTileProvider>();
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	/** the chain, which only the providers attached to this can reach */
+	private final Chain mChain;
+
+	private final IRegisterReceiver mRegisterReceiver;
+	private final INetworkAvailablityCheck mNetworkAvailablityCheck;
+
+	/** the providers that are notified when a tile has loaded */
+	private final ArrayList<MapTileProviderBasic> mConsumers = new ArrayList<MapTileProviderBasic>();
+
+	/** guarded by {@link #sProviders} */
+	private int mReferenceCount;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * Creates a {@link SharedMapTileProvider} with the chain of a {@link MapTileProviderBasic}. Use
+	 * {@link #acquire(Context, ITileSource)} to get one.
+	 */
+	SharedMapTileProvider(final IRegisterReceiver pRegisterReceiver,
+			final INetworkAvailablityCheck pNetworkAvailablityCheck, final ITileSource pTileSource) {
+		this(pRegisterReceiver, pNetworkAvailablityCheck, pTileSource, MapTileProviderBasic
+				.createTileProviders(pRegisterReceiver, pNetworkAvailablityCheck, pTileSource));
+	}
+
+	SharedMapTileProvider(final IRegisterReceiver pRegisterReceiver,
+			final INetworkAvailablityCheck pNetworkAvailablityCheck, final ITileSource pTileSource,
+			final MapTileModuleProviderBase[] pTileProviderArray) {
+		mChain = new Chain(pTileSource, pRegisterReceiver, pTileProviderArray);
+		mRegisterReceiver = pRegisterReceiver;
+		mNetworkAvailablityCheck = pNetworkAvailablityCheck;
+		mChain.setCancelMargin(-1);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * @return the number of providers attached
+	 */
+	public int getConsumerCount() {
+		synchronized (mConsumers) {
+			return mConsumers.size();
+		}
+	}
+
+	public int getReferenceCount() {
+		synchronized (sProviders) {
+			return mReferenceCount;
+		}
+	}
+
+	/**
+	 * @return the tile source, which doesn't change. The providers attached switch to another
+	 *         shared provider instead, see {@link MapTileProviderBasic#setTileSource(ITileSource)}.
+	 */
+	public ITileSource getTileSource() {
+		return mChain.getTileSource();
+	}
+
+	/**
+	 * @see MapTileProviderArray#getTracer()
+	 */
+	public MapTileTracer getTracer() {
+		return mChain.getTracer();
+	}
+
+	/**
+	 * @see MapTileProviderArray#setTracer(MapTileTracer)
+	 */
+	public void setTracer(final MapTileTracer pTracer) {
+		mChain.setTracer(pTracer);
+	}
+
+	/**
+	 * @see MapTileProviderArray#getPrefetcher()
+	 */
+	public MapTilePrefetcher getPrefetcher() {
+		return mChain.getPrefetcher();
+	}
+
+	/**
+	 * @see MapTileProviderArray#setPrefetchEnabled(boolean)
+	 */
+	public void setPrefetchEnabled(final boolean pPrefetchEnabled) {
+		mChain.setPrefetchEnabled(pPrefetchEnabled);
+	}
+
+	/**
+	 * @see MapTileProviderArray#setViewportPriority(boolean)
+	 */
+	public void setViewportPriority(final boolean pViewportPriority) {
+		mChain.setViewportPriority(pViewportPriority);
+	}
+
+	/**
+	 * @see MapTileProviderBase#getCompressedTileCache()
+	 */
+	public CompressedMapTileCache getCompressedTileCache() {
+		return mChain.getCompressedTileCache();
+	}
+
+	/**
+	 * @see MapTileProviderArray#setCompressedTileCache(CompressedMapTileCache)
+	 */
+	public void setCompressedTileCache(final CompressedMapTileCache pCompressedTileCache) {
+		mChain.setCompressedTileCache(pCompressedTileCache);
+	}
+
+	/**
+	 * @return the chain, for the providers attached
+	 */
+	MapTileProviderArray getChain() {
+		return mChain;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Get the shared provider of a tile source, creating it if need be, for a
+	 * {@link MapTileProviderBasic}.
+	 */
+	public static SharedMapTileProvider acquire(final Context pContext,
+			final ITileSource pTileSource) {
+		// the shared provider outlives the activity
+		final Context context = pContext.getApplicationContext();
+		return acquire(new SimpleRegisterReceiver(context), new NetworkAvailabliltyCheck(context),
+				pTileSource);
+	}
+
+	/**
+	 * Get the shared provider of a tile source, creating it with these if need be, for a
+	 * {@link MapTileProviderBasic}.
+	 */
+	public static SharedMapTileProvider acquire(final IRegisterReceiver pRegisterReceiver,
+			final INetworkAvailablityCheck pNetworkAvailablityCheck, final ITileSource pTileSource) {
+		synchronized (sProviders) {
+			SharedMapTileProvider provider = sProviders.get(pTileSource.name());
+			if (provider == null) {
+				provider = new SharedMapTileProvider(pRegisterReceiver, pNetworkAvailablityCheck,
+						pTileSource);
+				sProviders.put(pTileSource.name(), provider);
+				if (DEBUGMODE) {
+					logger.debug("Created shared provider for " + pTileSource.name());
+				}
+			}
+			return provider.retain();
+		}
+	}
+
+	/**
+	 * Get the shared provider of another tile source, created with the same register receiver and
+	 * network check as this one if need be.
+	 */
+	SharedMapTileProvider acquire(final ITileSource pTileSource) {
+		return acquire(mRegisterReceiver, mNetworkAvailablityCheck, pTileSource);
+	}
+
+	/**
+	 * Share a provider, so that it's the one acquired for its tile source until it's released.
+	 */
+	static void put(final SharedMapTileProvider pProvider) {
+		synchronized (sProviders) {
+			sProviders.put(pProvider.getTileSource().name(), pProvider);
+		}
+	}
+
+	SharedMapTileProvider retain() {
+		synchronized (sProviders) {
+			mReferenceCount++;
+		}
+		return this;
+	}
+
+	/**
+	 * Give back a reference from {@link #acquire(Context, ITileSource)}. The last one detaches
+	 * the chain.
+	 */
+	public void release() {
+		synchronized (sProviders) {
+			if (--mReferenceCount > 0) {
+				return;
+			}
+			if (sProviders.get(getTileSource().name()) == this) {
+				sProviders.remove(getTileSource().name());
+			}
+		}
+		if (DEBUGMODE) {
+			logger.debug("Detaching shared provider for " + getTileSource().name());
+		}
+		mChain.detach();
+	}
+
+	/**
+	 * Attach a provider. It has no room in the memory cache until it asks for some with
+	 * {@link #ensureCapacity(MapTileProviderBasic, int)}.
+	 */
+	void attach(final MapTileProviderBasic pConsumer) {
+		synchronized (mConsumers) {
+			pConsumer.mSharedCapacity = 0;
+			mConsumers.add(pConsumer);
+		}
+	}
+
+	/**
+	 * Detach a provider, and release the reference it was given.
+	 */
+	void detach(final MapTileProviderBasic pConsumer) {
+		synchronized (mConsumers) {
+			mConsumers.remove(pConsumer);
+		}
+		release();
+	}
+
+	/**
+	 * Make room in the memory cache for the tiles of a provider, on top of the tiles of the
+	 * others.
+	 */
+	void ensureCapacity(final MapTileProviderBasic pConsumer, final int pCapacity) {
+		final int capacity;
+		synchronized (mConsumers) {
+			if (pCapacity <= pConsumer.mSharedCapacity) {
+				return;
+			}
+			pConsumer.mSharedCapacity = pCapacity;
+			capacity = getCapacity();
+		}
+		mChain.ensureCapacity(capacity);
+	}
+
+	/**
+	 * Set the viewport if the provider is the first attached, which is usually the main map.
+	 */
+	void setViewport(final MapTileProviderBasic pConsumer, final int pZoomLevel,
+			final int pLeft, final int pTop, final int pRight, final int pBottom) {
+		synchronized (mConsumers) {
+			if (mConsumers.isEmpty() || mConsumers.get(0) != pConsumer) {
+				return;
+			}
+		}
+		mChain.setViewport(pZoomLevel, pLeft, pTop, pRight, pBottom);
+	}
+
+	/**
+	 * @return the memory cache capacity all the providers need
+	 */
+	private int getCapacity() {
+		int capacity = 0;
+		for (int i = 0; i < mConsumers.size(); i++) {
+			capacity += mConsumers.get(i).mSharedCapacity;
+		}
+		return capacity;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * The shared chain, which tells all the providers attached when a tile has loaded.
+	 */
+	private class Chain extends MapTileProviderArray {
+
+		private Chain(final ITileSource pTileSource, final IRegisterReceiver pRegisterReceiver,
+				final MapTileModuleProviderBase[] pTileProviderArray) {
+			super(pTileSource, pRegisterReceiver, pTileProviderArray);
+		}
+
+		@Override
+		protected void notifyTileRequestCompleted(final MapTile pTile) {
+			synchronized (mConsumers) {
+				for (int i = 0; i < mConsumers.size(); i++) {
+					mConsumers.get(i).notifyTileRequestCompleted(pTile);
+				}
+			}
+		}
+
+		@Override
+		protected void notifyTileRequestFailed() {
+			synchronized (mConsumers) {
+				for (int i = 0; i < mConsumers.size(); i++) {
+					mConsumers.get(i).notifyTileRequestFailed();
+				}
+			}
+		}
+	}
+}
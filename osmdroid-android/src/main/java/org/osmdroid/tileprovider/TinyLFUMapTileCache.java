@@ -0,0 +1,213 @@
+package org.osmdroid.tileprovider;
+
+import java.util.LinkedHashMap;
+
+import org.osmdroid.util.FrequencySketch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.graphics.drawable.Drawable;
+
+/**
+ * A tile cache that resists being flushed by tiles that are only seen once, eg while flinging
+ * across the map. New tiles always go into a window of recently used tiles, as big as the capacity
+ * (see {@link #ensureCapacity(int)}), so the tiles of the viewport are always kept. When a tile
+ * drops out of the window it only replaces the least recently used tile of the main area if it
+ * has been requested more often recently, as estimated by a {@link FrequencySketch} of the
+ * lookups. This is the W-TinyLFU admission policy. The window also grows into the main area, or
+ * shrinks back, depending on which gives more hits.<br />
+ * This cache is limited by tile count only. To use it, pass it to
+ * {@link MapTileCache#MapTileCache(LRUMapTileCache)}.
+ */
+public class TinyLFUMapTileCache extends LRUMapTileCache {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final long serialVersionUID = 3960530569512458187L;
+
+	private static final Logger logger = LoggerFactory.getLogger(TinyLFUMapTileCache.class);
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final FrequencySketch mSketch;
+
+	/** the tiles in the window, in least recently used order */
+	private final LinkedHashMap<MapTile, MapTile> mWindow = new LinkedHashMap<MapTile, MapTile>(
+			16, 0.75f, true);
+
+	private final int mMainCapacity;
+
+	/** the number of tiles of the main area that the window currently uses */
+	private int mWindowExtra;
+	private int mWindowStep;
+	private int mSampleHits;
+	private int mSampleLookups;
+	private float mPreviousHitRatio;
+
+	private long mAdmitted;
+	private long mRejected;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param aWindowCapacity
+	 *            the number of most recently used tiles that are always kept
+	 * @param aMainCapacity
+	 *            the number of other tiles that are kept if they are used often enough
+	 */
+	public TinyLFUMapTileCache(final int aWindowCapacity, final int aMainCapacity) {
+		super(aWindowCapacity);
+		mMainCapacity = aMainCapacity;
+		mSketch = new FrequencySketch(aWindowCapacity + aMainCapacity);
+		mWindowStep = Math.max(1, (aWindowCapacity + aMainCapacity) / 16);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int getMainCapacity() {
+		return mMainCapacity;
+	}
+
+	/**
+	 * @return the number of tiles leaving the window that replaced a tile of the main area
+	 */
+	public long getAdmitted() {
+		return mAdmitted;
+	}
+
+	/**
+	 * @return the number of tiles leaving the window that were evicted because they weren't used
+	 *         as often as the tile they would have replaced
+	 */
+	public long getRejected() {
+		return mRejected;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	protected void onTileRequested(final long aTileKey, final MapTile aTile) {
+		// Tiles in the window are looked up on every frame while they are visible, so only count
+		// the lookups of the other tiles
+		if (aTile != null && mWindow.get(aTile) != null) {
+			adaptWindow(true);
+			return;
+		}
+		mSketch.increment(aTileKey);
+		if (aTile != null && containsKey(aTile)) {
+			// a tile of the main area is being used again, so move it back into the window
+			addToWindow(aTile);
+			adaptWindow(true);
+		} else {
+			adaptWindow(false);
+		}
+	}
+
+	@Override
+	public Drawable put(final MapTile aKey, final Drawable aValue) {
+		final boolean isNew = !containsKey(aKey);
+		final Drawable previous = super.put(aKey, aValue);
+		if (isNew) {
+			final MapTile candidate = addToWindow(aKey);
+			if (candidate != null && size() > getCapacity() + mMainCapacity) {
+				evict(candidate);
+			}
+		}
+		return previous;
+	}
+
+	@Override
+	public Drawable remove(final Object aKey) {
+		mWindow.remove(aKey);
+		return super.remove(aKey);
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		mWindow.clear();
+		mSketch.clear();
+	}
+
+	@Override
+	protected boolean removeEldestEntry(final java.util.Map.Entry<MapTile, Drawable> aEldest) {
+		// put() takes care of eviction
+		return false;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * @return the tile that was moved out of the window to make room, or null
+	 */
+	private MapTile addToWindow(final MapTile aTile) {
+		mWindow.put(aTile, aTile);
+		MapTile eldest = null;
+		while (mWindow.size() > getCapacity() + mWindowExtra) {
+			eldest = mWindow.keySet().iterator().next();
+			mWindow.remove(eldest);
+		}
+		return eldest;
+	}
+
+	/**
+	 * Tune the size of the window by hill climbing: move some of the main area to the window, or
+	 * back, and keep going in the same direction as long as the hit ratio improves. A bigger window
+	 * suits browsing around one place, a smaller one going back to the same places.
+	 */
+	private void adaptWindow(final boolean aHit) {
+		if (aHit) {
+			mSampleHits++;
+		}
+		if (++mSampleLookups < (getCapacity() + mMainCapacity) * 10) {
+			return;
+		}
+		final float hitRatio = (float) mSampleHits / mSampleLookups;
+		if (hitRatio < mPreviousHitRatio) {
+			mWindowStep = -mWindowStep;
+		}
+		mPreviousHitRatio = hitRatio;
+		mWindowExtra = Math.max(0, Math.min(mMainCapacity, mWindowExtra + mWindowStep));
+		mSampleHits = mSampleLookups = 0;
+	}
+
+	/**
+	 * Evict either the tile that has just left the window or the least recently used tile of the
+	 * main area, whichever has been requested less often.
+	 */
+	private void evict(final MapTile aCandidate) {
+		MapTile victim = null;
+		for (final MapTile tile : keySet()) {
+			if (!mWindow.containsKey(tile)) {
+				victim = tile;
+				break;
+			}
+		}
+		if (victim != aCandidate
+				&& mSketch.frequency(aCandidate.getTileKey()) > mSketch.frequency(victim
+						.getTileKey())) {
+			mAdmitted++;
+		} else {
+			if (victim != aCandidate) {
+				mRejected++;
+			}
+			victim = aCandidate;
+		}
+		if (DEBUGMODE) {
+			logger.debug("Remove old tile: " + victim);
+		}
+		remove(victim);
+	}
+}
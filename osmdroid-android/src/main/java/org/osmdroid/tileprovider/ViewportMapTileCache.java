@@ -0,0 +1,118 @@
+package org.osmdroid.tileprovider;
+
+/**
+ * A tile cache that evicts the tiles that are furthest from the viewport rather than the least
+ * recently used ones. A tile is scored by how many zoom levels it is away from the map, counting
+ * each level as far as the size of the viewport, plus how many tiles it is away from the viewport
+ * at the zoom level of the map. So after zooming, the tiles around the new viewport are kept and
+ * the tiles of zoom levels that were left long ago go first. Tiles with the same score are evicted
+ * in least recently used order, which is also what happens until a viewport is set with
+ * {@link #setViewport(int, int, int, int, int)}.<br />
+ * To use it, pass it to {@link MapTileCache#MapTileCache(LRUMapTileCache)}.
+ */
+public class ViewportMapTileCache extends LRUMapTileCache {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final long serialVersionUID = -2710462538236154087L;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private int mZoomLevel = -1;
+	private int mLeft;
+	private int mTop;
+	private int mRight;
+	private int mBottom;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public ViewportMapTileCache(final int aCapacity) {
+		super(aCapacity);
+	}
+
+	/**
+	 * @see LRUMapTileCache#LRUMapTileCache(int, long)
+	 */
+	public ViewportMapTileCache(final int aCapacity, final long aMaximumBytes) {
+		super(aCapacity, aMaximumBytes);
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public void setViewport(final int aZoomLevel, final int aLeft, final int aTop,
+			final int aRight, final int aBottom) {
+		mZoomLevel = aZoomLevel;
+		mLeft = aLeft;
+		mTop = aTop;
+		mRight = aRight;
+		mBottom = aBottom;
+	}
+
+	@Override
+	protected MapTile selectTileToEvict() {
+		if (mZoomLevel < 0) {
+			return super.selectTileToEvict();
+		}
+		MapTile worst = null;
+		int worstScore = -1;
+		// iterate from the least recently used, so it wins a tie
+		for (final MapTile tile : keySet()) {
+			final int score = getScore(tile);
+			if (score > worstScore) {
+				worst = tile;
+				worstScore = score;
+			}
+		}
+		return worst;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * @return the distance of the tile from the viewport, zero if it's visible
+	 */
+	public int getScore(final MapTile aTile) {
+		final int zoomDelta = aTile.getZoomLevel() - mZoomLevel;
+		final int left, top, right, bottom;
+		if (zoomDelta >= 0) {
+			// the tile at the zoom level of the map that contains this tile
+			left = right = aTile.getX() >> zoomDelta;
+			top = bottom = aTile.getY() >> zoomDelta;
+		} else {
+			// the tiles at the zoom level of the map that this tile covers
+			left = aTile.getX() << -zoomDelta;
+			right = ((aTile.getX() + 1) << -zoomDelta) - 1;
+			top = aTile.getY() << -zoomDelta;
+			bottom = ((aTile.getY() + 1) << -zoomDelta) - 1;
+		}
+
+		// the viewport can be outside the range of the zoom level if the map wraps around
+		final int mapSize = 1 << mZoomLevel;
+		final int distanceX = Math.min(getDistance(left, right, mLeft, mRight),
+				Math.min(getDistance(left + mapSize, right + mapSize, mLeft, mRight),
+						getDistance(left - mapSize, right - mapSize, mLeft, mRight)));
+		final int distanceY = getDistance(top, bottom, mTop, mBottom);
+
+		final int viewportSize = Math.max(mRight - mLeft, mBottom - mTop) + 1;
+		return Math.abs(zoomDelta) * viewportSize + Math.max(distanceX, distanceY);
+	}
+
+	/**
+	 * @return the distance between two ranges, zero if they overlap
+	 */
+	private static int getDistance(final int aFrom1, final int aTo1, final int aFrom2,
+			final int aTo2) {
+		return Math.max(0, Math.max(aFrom2 - aTo1, aFrom1 - aTo2));
+	}
+}
@@ -40,6 +40,24 @@ public interface OpenStreetMapTileProviderConstants {
 	 */
 	public static final int CACHE_MAPTILECOUNT_DEFAULT = 9;
 
+	/**
+	 * Default fraction of the heap that a byte budgeted tile cache may use for bitmaps. See
+	 * {@link org.osmdroid.tileprovider.MapTileCache#getMaximumCacheBytes(float)}.
+	 */
+	public static final float CACHE_MAPTILE_HEAP_FRACTION_DEFAULT = 0.25f;
+
+	/**
+	 * Default fraction of the heap used by a
+	 * {@link org.osmdroid.tileprovider.CompressedMapTileCache}.
+	 */
+	public static final float CACHE_COMPRESSED_HEAP_FRACTION_DEFAULT = 0.0625f;
+
+	/**
+	 * Default maximum number of evicted tile bitmaps kept for reuse by
+	 * {@link org.osmdroid.tileprovider.BitmapPool}.
+	 */
+	public static final int BITMAP_POOL_MAXIMUM_SIZE_DEFAULT = 20;
+
 	/**
 	 * number of tile download threads, conforming to OSM policy:
 	 * http://wiki.openstreetmap.org/wiki/Tile_usage_policy
@@ -57,8 +75,88 @@ public interface OpenStreetMapTileProviderConstants {
 	public static final long DEFAULT_MAXIMUM_CACHED_FILE_AGE = ONE_WEEK;
 
 	public static final int TILE_DOWNLOAD_MAXIMUM_QUEUE_SIZE = 40;
+
+	/** Default number of downloads from each host of a tile source at the same time. */
+	public static final int TILE_DOWNLOAD_MAXIMUM_REQUESTS_PER_HOST_DEFAULT = 2;
+
+	/**
+	 * Default number of failures in a row after which a host is drained. See
+	 * {@link org.osmdroid.tileprovider.tilesource.HostScheduler}.
+	 */
+	public static final int HOST_FAILURES_TO_DRAIN_DEFAULT = 3;
+
+	/** Default average latency above which a host is drained. */
+	public static final long HOST_SLOW_LATENCY_DEFAULT = ONE_SECOND * 5;
+
+	/** Default time a host is drained for. */
+	public static final long HOST_DRAIN_TIME_DEFAULT = ONE_SECOND * 30;
+
+	/**
+	 * Default number of times a download is tried again. See
+	 * {@link org.osmdroid.tileprovider.modules.RetryPolicy}.
+	 */
+	public static final int TILE_DOWNLOAD_MAXIMUM_RETRIES_DEFAULT = 3;
+
+	/** Default time before a download is tried again the first time. */
+	public static final long TILE_DOWNLOAD_RETRY_DELAY_DEFAULT = ONE_SECOND;
+
+	/** Default maximum time before a download is tried again. */
+	public static final long TILE_DOWNLOAD_MAXIMUM_RETRY_DELAY_DEFAULT = ONE_SECOND * 30;
+
+	/**
+	 * Default number of failed downloads in a row that pause the downloader. See
+	 * {@link org.osmdroid.tileprovider.modules.CircuitBreaker}.
+	 */
+	public static final int CIRCUIT_BREAKER_FAILURES_DEFAULT = 5;
+
+	/** Default time the downloader is paused for before it checks the network again. */
+	public static final long CIRCUIT_BREAKER_OPEN_TIME_DEFAULT = ONE_SECOND * 5;
+
+	/** Default maximum time the downloader is paused for before it checks the network again. */
+	public static final long CIRCUIT_BREAKER_MAXIMUM_OPEN_TIME_DEFAULT = ONE_MINUTE;
+
+	/**
+	 * Default number of tiles a bulk download fetches per second. See
+	 * {@link org.osmdroid.tileprovider.modules.BulkTileDownloader}.
+	 */
+	public static final float BULK_DOWNLOAD_TILES_PER_SECOND_DEFAULT = 2;
+
+	/** Number of tiles after which a bulk download saves its progress. */
+	public static final int BULK_DOWNLOAD_SAVE_INTERVAL = 20;
+
 	public static final int TILE_FILESYSTEM_MAXIMUM_QUEUE_SIZE = 40;
 
+	/**
+	 * Requests for tiles more than this many tiles outside the viewport are cancelled when the map
+	 * moves. See
+	 * {@link org.osmdroid.tileprovider.MapTileProviderArray#setCancelMargin(int)}.
+	 */
+	public static final int TILE_REQUEST_CANCEL_MARGIN_DEFAULT = 2;
+
+	/**
+	 * Default number of tiles each provider remembers it couldn't load. See
+	 * {@link org.osmdroid.tileprovider.modules.MissingTileCache}.
+	 */
+	public static final int TILE_MISSING_CACHE_SIZE_DEFAULT = 500;
+
+	/** Default time to remember that a tile doesn't exist, eg because the server returned 404. */
+	public static final long TILE_MISSING_PERMANENT_TTL_DEFAULT = ONE_HOUR;
+
+	/** Default time to remember that loading a tile failed, eg because of a network error. */
+	public static final long TILE_MISSING_TRANSIENT_TTL_DEFAULT = ONE_SECOND * 30;
+
+	/**
+	 * Default number of tiles prefetched for a scroll. See
+	 * {@link org.osmdroid.tileprovider.MapTilePrefetcher}.
+	 */
+	public static final int PREFETCH_MAXIMUM_TILES_DEFAULT = 40;
+
+	/** Default number of prefetch requests per minute that may use the data connection. */
+	public static final int PREFETCH_DOWNLOADS_PER_MINUTE_DEFAULT = 30;
+
+	/** Default time the map must be stationary before the adjacent zoom levels are prefetched. */
+	public static final long PREFETCH_IDLE_DELAY_DEFAULT = ONE_SECOND;
+
 	/** 30 days */
 	public static final long TILE_EXPIRY_TIME_MILLISECONDS = 1000L * 60 * 60 * 24 * 30;
 
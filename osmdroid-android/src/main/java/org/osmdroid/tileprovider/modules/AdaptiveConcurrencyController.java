@@ -0,0 +1,251 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adjusts how many tiles a {@link MapTileModuleProviderBase} loads at the same time, by additive
+ * increase and multiplicative decrease (AIMD) of the limit. The time it takes to load each tile is
+ * collected in windows. After each window:
+ * <ul>
+ * <li>if the average load time is more than {@link #getLatencyTolerance()} times the lowest
+ * average seen, the server or storage is overloaded, so the limit is cut by a quarter</li>
+ * <li>if the limit was raised after the previous window but fewer tiles per second were loaded,
+ * the raise is undone</li>
+ * <li>otherwise, if tiles were waiting for a loader, the limit is raised by one</li>
+ * </ul>
+ * The lowest average is forgotten every now and then so that it follows eg a change of network.
+ * To use it, pass it to
+ * {@link MapTileModuleProviderBase#setConcurrencyController(AdaptiveConcurrencyController)}. Use
+ * one controller per provider.
+ */
+public class AdaptiveConcurrencyController implements OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(AdaptiveConcurrencyController.class);
+
+	public static final int DEFAULT_WINDOW_SIZE = 20;
+	public static final float DEFAULT_LATENCY_TOLERANCE = 2.0f;
+	private static final float DECREASE_FACTOR = 0.75f;
+	/** the number of windows after which the lowest average load time is measured again */
+	private static final int MINIMUM_LATENCY_WINDOWS = 50;
+
+	public static enum Decision {
+		/** the limit was raised because tiles were waiting */
+		INCREASE,
+		/** the limit was lowered because the load time went up */
+		DECREASE,
+		/** the limit was lowered because raising it didn't load more tiles per second */
+		REVERT,
+		/** the limit was kept */
+		HOLD
+	}
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final int mMinimumLimit;
+	private final int mMaximumLimit;
+	private final int mWindowSize;
+	private final float mLatencyTolerance;
+
+	private int mLimit;
+	private IConcurrencyListener mListener;
+
+	private int mWindowSamples;
+	private long mWindowLatencySum;
+	private boolean mWindowBacklog;
+	private long mWindowStart;
+	private int mWindowCount;
+
+	private long mMinimumLatency;
+	private long mAverageLatency;
+	private float mThroughput;
+	private Decision mLastDecision = Decision.HOLD;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pMinimumLimit
+	 *            the lowest number of tiles to load at the same time
+	 * @param pMaximumLimit
+	 *            the highest number of tiles to load at the same time, eg to keep to the usage
+	 *            policy of a tile server
+	 */
+	public AdaptiveConcurrencyController(final int pMinimumLimit, final int pMaximumLimit) {
+		this(pMinimumLimit, pMaximumLimit, DEFAULT_WINDOW_SIZE, DEFAULT_LATENCY_TOLERANCE);
+	}
+
+	/**
+	 * @param pWindowSize
+	 *            the number of tiles to load between decisions
+	 * @param pLatencyTolerance
+	 *            how many times the lowest average load time the average may be before the limit
+	 *            is lowered
+	 */
+	public AdaptiveConcurrencyController(final int pMinimumLimit, final int pMaximumLimit,
+			final int pWindowSize, final float pLatencyTolerance) {
+		if (pMinimumLimit < 1 || pMaximumLimit < pMinimumLimit) {
+			throw new IllegalArgumentException("Invalid limits: " + pMinimumLimit + " to "
+					+ pMaximumLimit);
+		}
+		mMinimumLimit = pMinimumLimit;
+		mMaximumLimit = pMaximumLimit;
+		mWindowSize = pWindowSize;
+		mLatencyTolerance = pLatencyTolerance;
+		mLimit = pMinimumLimit;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public synchronized int getConcurrencyLimit() {
+		return mLimit;
+	}
+
+	public int getMinimumLimit() {
+		return mMinimumLimit;
+	}
+
+	public int getMaximumLimit() {
+		return mMaximumLimit;
+	}
+
+	public float getLatencyTolerance() {
+		return mLatencyTolerance;
+	}
+
+	/**
+	 * @return the average load time of the last window, in nanoseconds
+	 */
+	public synchronized long getAverageLatency() {
+		return mAverageLatency;
+	}
+
+	/**
+	 * @return the lowest average load time, in nanoseconds
+	 */
+	public synchronized long getMinimumLatency() {
+		return mMinimumLatency;
+	}
+
+	/**
+	 * @return the number of tiles loaded per second during the last window
+	 */
+	public synchronized float getThroughput() {
+		return mThroughput;
+	}
+
+	public synchronized Decision getLastDecision() {
+		return mLastDecision;
+	}
+
+	/**
+	 * Set a listener that is told about each decision, on the thread that loaded the last tile of
+	 * the window.
+	 */
+	public synchronized void setListener(final IConcurrencyListener pListener) {
+		mListener = pListener;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Start again from a limit, eg the one the provider was using.
+	 */
+	public synchronized void reset(final int pLimit) {
+		mLimit = Math.max(mMinimumLimit, Math.min(mMaximumLimit, pLimit));
+		mWindowSamples = 0;
+		mWindowLatencySum = 0;
+		mWindowBacklog = false;
+		mWindowCount = 0;
+		mMinimumLatency = 0;
+		mAverageLatency = 0;
+		mThroughput = 0;
+		mLastDecision = Decision.HOLD;
+	}
+
+	/**
+	 * Record the time it took to load a tile.
+	 *
+	 * @param pLatency
+	 *            the load time in nanoseconds
+	 * @param pBacklog
+	 *            whether there were tiles waiting for a loader
+	 * @param pNow
+	 *            {@link System#nanoTime()}
+	 * @return the limit to use from now on
+	 */
+	public int addSample(final long pLatency, final boolean pBacklog, final long pNow) {
+		final IConcurrencyListener listener;
+		final Decision decision;
+		final int previousLimit;
+		final int limit;
+		synchronized (this) {
+			if (mWindowSamples == 0) {
+				mWindowStart = pNow - pLatency;
+			}
+			mWindowSamples++;
+			mWindowLatencySum += pLatency;
+			mWindowBacklog |= pBacklog;
+			if (mWindowSamples < mWindowSize) {
+				return mLimit;
+			}
+
+			previousLimit = mLimit;
+			decision = decide(pNow);
+			limit = mLimit;
+			listener = mListener;
+			mWindowSamples = 0;
+			mWindowLatencySum = 0;
+			mWindowBacklog = false;
+			if (DEBUGMODE) {
+				logger.debug(decision + " to " + mLimit + ", latency " + mAverageLatency / 1000
+						+ "us (min " + mMinimumLatency / 1000 + "us), " + mThroughput + " tiles/s");
+			}
+		}
+		if (listener != null) {
+			listener.onConcurrencyDecision(this, decision, previousLimit);
+		}
+		return limit;
+	}
+
+	private Decision decide(final long pNow) {
+		final float previousThroughput = mThroughput;
+		mAverageLatency = mWindowLatencySum / mWindowSamples;
+		mThroughput = mWindowSamples * 1000000000f / Math.max(1, pNow - mWindowStart);
+		if (++mWindowCount >= MINIMUM_LATENCY_WINDOWS) {
+			mWindowCount = 0;
+			mMinimumLatency = 0;
+		}
+		if (mMinimumLatency == 0 || mAverageLatency < mMinimumLatency) {
+			mMinimumLatency = mAverageLatency;
+		}
+
+		if (mAverageLatency > mMinimumLatency * mLatencyTolerance && mLimit > mMinimumLimit) {
+			mLimit = Math.max(mMinimumLimit, Math.min(mLimit - 1, (int) (mLimit * DECREASE_FACTOR)));
+			mLastDecision = Decision.DECREASE;
+		} else if (mLastDecision == Decision.INCREASE && mThroughput < previousThroughput
+				&& mLimit > mMinimumLimit) {
+			mLimit--;
+			mLastDecision = Decision.REVERT;
+		} else if (mWindowBacklog && mLimit < mMaximumLimit) {
+			mLimit++;
+			mLastDecision = Decision.INCREASE;
+		} else {
+			mLastDecision = Decision.HOLD;
+		}
+		return mLastDecision;
+	}
+}
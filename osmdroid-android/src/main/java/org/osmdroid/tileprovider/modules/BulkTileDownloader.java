@@ -0,0 +1,550 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import microsoft.mappoint.TileSystem;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileProviderArray;
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.util.StreamUtils;
+import org.osmdroid.util.BoundingBoxE6;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.graphics.Point;
+
+/**
+ * Downloads all the tiles of an area over a range of zoom levels into the file system cache of a
+ * {@link MapTileDownloader}, so that the area can be viewed offline. Tiles that were saved less
+ * than a maximum age ago are skipped.<br />
+ * The job runs on a background thread, one tile at a time and at most
+ * {@link #setTilesPerSecond(float)} requests per second, so that it doesn't overload the tile
+ * server. Check the usage policy of the tile server before downloading a large area. A download
+ * that fails is tried again according to a {@link RetryPolicy}, and while the network isn't
+ * available the job waits for it.<br />
+ * The progress is saved to a file, so that a job that was paused or stopped with the process
+ * carries on where it was, see {@link #restore(MapTileDownloader, File)}.<br />
+ * The file system cache is trimmed when it gets bigger than {@link #TILE_MAX_CACHE_SIZE_BYTES},
+ * so an area that needs more space than that can't be kept in full.<br />
+ * Give the job the provider of the map with {@link #setTileProvider(MapTileProviderArray)}, so
+ * that the map loads the tiles it saves even if the providers failed to find them before.
+ */
+public class BulkTileDownloader implements OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(BulkTileDownloader.class);
+
+	private static final String TILE_SOURCE = "tileSource";
+	private static final String NORTH = "north";
+	private static final String EAST = "east";
+	private static final String SOUTH = "south";
+	private static final String WEST = "west";
+	private static final String MINIMUM_ZOOM_LEVEL = "minimumZoomLevel";
+	private static final String MAXIMUM_ZOOM_LEVEL = "maximumZoomLevel";
+	private static final String MAXIMUM_AGE = "maximumAge";
+	private static final String RANGE = "range.";
+	private static final String NEXT = "next";
+	private static final String DOWNLOADED = "downloaded";
+	private static final String SKIPPED = "skipped";
+	private static final String FAILED = "failed";
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final MapTileDownloader mDownloader;
+	private final File mJobFile;
+	private final BoundingBoxE6 mArea;
+	private final int mMinimumZoomLevel;
+	private final int mMaximumZoomLevel;
+	private final long mMaximumAge;
+
+	/** the left, top, right and bottom tile of each zoom level */
+	private final int[] mRanges;
+	private final long mTileCount;
+
+	/** the index of the next tile, see {@link #getTile(long)} */
+	private volatile long mNext;
+	private volatile long mDownloaded;
+	private volatile long mSkipped;
+	private volatile long mFailed;
+
+	private volatile long mTileInterval;
+	private volatile RetryPolicy mRetryPolicy = new RetryPolicy();
+	private volatile ProgressListener mListener;
+	private volatile MapTileProviderArray mTileProvider;
+
+	/** guarded by this */
+	private Thread mThread;
+	private volatile boolean mPaused;
+	/** whether the progress was deleted, so that the job doesn't save it again */
+	private volatile boolean mCancelled;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * Creates a job to download an area, with the maximum age of the file system provider.
+	 *
+	 * @param pJobFile
+	 *            the file to save the progress to
+	 */
+	public BulkTileDownloader(final MapTileDownloader pDownloader, final BoundingBoxE6 pArea,
+			final int pMinimumZoomLevel, final int pMaximumZoomLevel, final File pJobFile) {
+		this(pDownloader, pArea, pMinimumZoomLevel, pMaximumZoomLevel,
+				DEFAULT_MAXIMUM_CACHED_FILE_AGE, pJobFile);
+	}
+
+	/**
+	 * Creates a job to download an area.
+	 *
+	 * @param pMaximumAge
+	 *            the age in milliseconds below which a saved tile isn't downloaded again
+	 * @param pJobFile
+	 *            the file to save the progress to
+	 */
+	public BulkTileDownloader(final MapTileDownloader pDownloader, final BoundingBoxE6 pArea,
+			final int pMinimumZoomLevel, final int pMaximumZoomLevel, final long pMaximumAge,
+			final File pJobFile) {
+		this(pDownloader, pArea, pMinimumZoomLevel, pMaximumZoomLevel, pMaximumAge,
+				getTileRanges(pArea, pMinimumZoomLevel, pMaximumZoomLevel), pJobFile);
+	}
+
+	BulkTileDownloader(final MapTileDownloader pDownloader, final BoundingBoxE6 pArea,
+			final int pMinimumZoomLevel, final int pMaximumZoomLevel, final long pMaximumAge,
+			final int[] pRanges, final File pJobFile) {
+		mDownloader = pDownloader;
+		mArea = pArea;
+		mMinimumZoomLevel = pMinimumZoomLevel;
+		mMaximumZoomLevel = pMaximumZoomLevel;
+		mMaximumAge = pMaximumAge;
+		mRanges = pRanges;
+		mJobFile = pJobFile;
+		long count = 0;
+		for (int zoomLevel = pMinimumZoomLevel; zoomLevel <= pMaximumZoomLevel; zoomLevel++) {
+			count += (long) getWidth(zoomLevel) * getHeight(zoomLevel);
+		}
+		mTileCount = count;
+		setTilesPerSecond(BULK_DOWNLOAD_TILES_PER_SECOND_DEFAULT);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public BoundingBoxE6 getArea() {
+		return mArea;
+	}
+
+	public int getMinimumZoomLevel() {
+		return mMinimumZoomLevel;
+	}
+
+	public int getMaximumZoomLevel() {
+		return mMaximumZoomLevel;
+	}
+
+	/**
+	 * @return the number of tiles in the area over all the zoom levels
+	 */
+	public long getTileCount() {
+		return mTileCount;
+	}
+
+	/**
+	 * @return the number of tiles done, whether they were downloaded, skipped or failed
+	 */
+	public long getCompletedCount() {
+		return mNext;
+	}
+
+	public long getDownloadedCount() {
+		return mDownloaded;
+	}
+
+	/**
+	 * @return the number of tiles that were saved already
+	 */
+	public long getSkippedCount() {
+		return mSkipped;
+	}
+
+	/**
+	 * @return the number of tiles that the server doesn't have, or that failed every retry
+	 */
+	public long getFailedCount() {
+		return mFailed;
+	}
+
+	public boolean isFinished() {
+		return mNext >= mTileCount;
+	}
+
+	public synchronized boolean isRunning() {
+		return mThread != null;
+	}
+
+	public boolean isPaused() {
+		return mPaused;
+	}
+
+	public void setTilesPerSecond(final float pTilesPerSecond) {
+		mTileInterval = (long) (ONE_SECOND / pTilesPerSecond);
+	}
+
+	public void setRetryPolicy(final RetryPolicy pRetryPolicy) {
+		mRetryPolicy = pRetryPolicy;
+	}
+
+	/**
+	 * @param pListener
+	 *            told about the progress on the background thread, or null
+	 */
+	public void setProgressListener(final ProgressListener pListener) {
+		mListener = pListener;
+	}
+
+	/**
+	 * @param pTileProvider
+	 *            the provider whose missing tiles are cleared when the job saves them, or null
+	 */
+	public void setTileProvider(final MapTileProviderArray pTileProvider) {
+		mTileProvider = pTileProvider;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Continue a job whose progress was saved, eg before the process was stopped.
+	 *
+	 * @param pDownloader
+	 *            a downloader for the tile source of the job
+	 * @return the job, or null if there is none or it's for another tile source
+	 */
+	public static BulkTileDownloader restore(final MapTileDownloader pDownloader,
+			final File pJobFile) {
+		if (!pJobFile.exists()) {
+			return null;
+		}
+		final Properties properties = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(pJobFile);
+			properties.load(in);
+
+			final ITileSource tileSource = pDownloader.getTileSource();
+			if (tileSource == null || !tileSource.name().equals(properties.getProperty(TILE_SOURCE))) {
+				logger.warn("Bulk download job is for another tile source: " + pJobFile);
+				return null;
+			}
+			final BoundingBoxE6 area = new BoundingBoxE6(getInt(properties, NORTH), getInt(
+					properties, EAST), getInt(properties, SOUTH), getInt(properties, WEST));
+			final int minimumZoomLevel = getInt(properties, MINIMUM_ZOOM_LEVEL);
+			final int maximumZoomLevel = getInt(properties, MAXIMUM_ZOOM_LEVEL);
+			// the tiles of the job don't change
+			final int[] ranges = new int[(maximumZoomLevel - minimumZoomLevel + 1) * 4];
+			for (int i = 0; i < ranges.length; i += 4) {
+				final String[] range = properties.getProperty(RANGE + (minimumZoomLevel + i / 4))
+						.split(",");
+				for (int j = 0; j < 4; j++) {
+					ranges[i + j] = Integer.parseInt(range[j]);
+				}
+			}
+			final BulkTileDownloader job = new BulkTileDownloader(pDownloader, area,
+					minimumZoomLevel, maximumZoomLevel, getLong(properties, MAXIMUM_AGE), ranges,
+					pJobFile);
+			job.mNext = getLong(properties, NEXT);
+			job.mDownloaded = getLong(properties, DOWNLOADED);
+			job.mSkipped = getLong(properties, SKIPPED);
+			job.mFailed = getLong(properties, FAILED);
+			return job;
+		} catch (final IOException e) {
+			logger.warn("Error reading bulk download job: " + pJobFile, e);
+		} catch (final RuntimeException e) {
+			// eg a missing or malformed property
+			logger.warn("Invalid bulk download job: " + pJobFile, e);
+		} finally {
+			StreamUtils.closeStream(in);
+		}
+		return null;
+	}
+
+	/**
+	 * Start the job, or continue it if it was paused.
+	 */
+	public synchronized void start() {
+		mPaused = false;
+		mCancelled = false;
+		if (mThread != null || isFinished()) {
+			return;
+		}
+		mThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runJob();
+			}
+		}, "BulkTileDownloader");
+		mThread.setPriority(Thread.MIN_PRIORITY);
+		mThread.start();
+	}
+
+	/**
+	 * Stop the job after the tile being downloaded, and save its progress.
+	 */
+	public synchronized void pause() {
+		mPaused = true;
+		if (mThread != null) {
+			mThread.interrupt();
+		}
+	}
+
+	/**
+	 * Stop the job and delete its progress.
+	 */
+	public void cancel() {
+		mCancelled = true;
+		pause();
+		synchronized (this) {
+			// wait for the job to stop, unless it's cancelled from the listener
+			while (mThread != null && mThread != Thread.currentThread()) {
+				try {
+					wait();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		if (!mJobFile.delete() && mJobFile.exists()) {
+			logger.warn("Couldn't delete bulk download job: " + mJobFile);
+		}
+	}
+
+	/**
+	 * Download the tiles until the job is paused or finished.
+	 */
+	void runJob() {
+		while (true) {
+			synchronized (this) {
+				if (mPaused || isFinished()) {
+					// save before a cancel waiting for the job to stop deletes the file
+					if (!mCancelled) {
+						save();
+					}
+					mThread = null;
+					notifyAll();
+					break;
+				}
+			}
+			final long start = System.currentTimeMillis();
+			final MapTile tile = getTile(mNext);
+			boolean skipped = false;
+			try {
+				if (mDownloader.isTileSaved(tile, mMaximumAge)) {
+					mSkipped++;
+					skipped = true;
+				} else if (download(tile)) {
+					mDownloaded++;
+					tileSaved(tile);
+				} else {
+					mFailed++;
+				}
+			} catch (final InterruptedException e) {
+				// paused, the tile is downloaded again when the job continues
+				continue;
+			}
+			mNext++;
+			if (mNext % BULK_DOWNLOAD_SAVE_INTERVAL == 0 || isFinished()) {
+				save();
+			}
+			final ProgressListener listener = mListener;
+			if (listener != null) {
+				listener.onProgress(this);
+				if (isFinished()) {
+					listener.onFinished(this);
+				}
+			}
+			// a tile that failed or isn't on the server was still requested
+			if (!skipped) {
+				try {
+					Thread.sleep(Math.max(0, mTileInterval - (System.currentTimeMillis() - start)));
+				} catch (final InterruptedException e) {
+					// paused
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return whether the tile was downloaded, false if the server doesn't have it or it failed
+	 *         every retry
+	 */
+	private boolean download(final MapTile pTile) throws InterruptedException {
+		int retryCount = 0;
+		while (true) {
+			while (!mDownloader.isAvailable()) {
+				if (mPaused) {
+					throw new InterruptedException();
+				}
+				Thread.sleep(ONE_SECOND);
+			}
+			try {
+				return mDownloader.downloadTile(pTile);
+			} catch (final IOException e) {
+				logger.warn("Bulk download of MapTile failed: " + pTile + " : " + e);
+				if (!mRetryPolicy.shouldRetry(retryCount)) {
+					return false;
+				}
+				Thread.sleep(mRetryPolicy.getDelay(retryCount++));
+			}
+		}
+	}
+
+	/**
+	 * The tile is on the file system now, so the providers mustn't skip it as missing any more.
+	 */
+	private void tileSaved(final MapTile pTile) {
+		mDownloader.getMissingTileCache().remove(pTile);
+		final MapTileProviderArray tileProvider = mTileProvider;
+		if (tileProvider != null) {
+			tileProvider.clearMissingTile(pTile);
+		}
+	}
+
+	/**
+	 * @return the tile at an index, in the order of zoom level, then x, then y
+	 */
+	MapTile getTile(final long pIndex) {
+		long index = pIndex;
+		for (int zoomLevel = mMinimumZoomLevel; zoomLevel <= mMaximumZoomLevel; zoomLevel++) {
+			final int height = getHeight(zoomLevel);
+			final long count = (long) getWidth(zoomLevel) * height;
+			if (index < count) {
+				final int i = (zoomLevel - mMinimumZoomLevel) * 4;
+				// wrap around the antimeridian
+				final int x = (int) ((mRanges[i] + index / height) % (1L << zoomLevel));
+				return new MapTile(zoomLevel, x, mRanges[i + 1] + (int) (index % height));
+			}
+			index -= count;
+		}
+		throw new IndexOutOfBoundsException("Tile " + pIndex + " of " + mTileCount);
+	}
+
+	private int getWidth(final int pZoomLevel) {
+		final int i = (pZoomLevel - mMinimumZoomLevel) * 4;
+		final int width = mRanges[i + 2] - mRanges[i] + 1;
+		// an area across the antimeridian
+		return width > 0 ? width : width + (1 << pZoomLevel);
+	}
+
+	private int getHeight(final int pZoomLevel) {
+		final int i = (pZoomLevel - mMinimumZoomLevel) * 4;
+		return mRanges[i + 3] - mRanges[i + 1] + 1;
+	}
+
+	/**
+	 * Save the job and its progress. The file is replaced in one go, so that it's never half
+	 * written.
+	 */
+	private void save() {
+		final ITileSource tileSource = mDownloader.getTileSource();
+		if (tileSource == null) {
+			return;
+		}
+		final Properties properties = new Properties();
+		properties.setProperty(TILE_SOURCE, tileSource.name());
+		properties.setProperty(NORTH, String.valueOf(mArea.getLatNorthE6()));
+		properties.setProperty(EAST, String.valueOf(mArea.getLonEastE6()));
+		properties.setProperty(SOUTH, String.valueOf(mArea.getLatSouthE6()));
+		properties.setProperty(WEST, String.valueOf(mArea.getLonWestE6()));
+		properties.setProperty(MINIMUM_ZOOM_LEVEL, String.valueOf(mMinimumZoomLevel));
+		properties.setProperty(MAXIMUM_ZOOM_LEVEL, String.valueOf(mMaximumZoomLevel));
+		properties.setProperty(MAXIMUM_AGE, String.valueOf(mMaximumAge));
+		for (int i = 0; i < mRanges.length; i += 4) {
+			properties.setProperty(RANGE + (mMinimumZoomLevel + i / 4), mRanges[i] + ","
+					+ mRanges[i + 1] + "," + mRanges[i + 2] + "," + mRanges[i + 3]);
+		}
+		properties.setProperty(NEXT, String.valueOf(mNext));
+		properties.setProperty(DOWNLOADED, String.valueOf(mDownloaded));
+		properties.setProperty(SKIPPED, String.valueOf(mSkipped));
+		properties.setProperty(FAILED, String.valueOf(mFailed));
+
+		final File file = new File(mJobFile.getPath() + ".tmp");
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(file);
+			properties.store(out, "osmdroid bulk download");
+			out.close();
+			out = null;
+			if (!file.renameTo(mJobFile)) {
+				logger.warn("Couldn't save bulk download job: " + mJobFile);
+			}
+		} catch (final IOException e) {
+			logger.warn("Error saving bulk download job: " + mJobFile, e);
+		} finally {
+			StreamUtils.closeStream(out);
+		}
+	}
+
+	/**
+	 * @return the left, top, right and bottom tile of the area at each zoom level
+	 */
+	private static int[] getTileRanges(final BoundingBoxE6 pArea, final int pMinimumZoomLevel,
+			final int pMaximumZoomLevel) {
+		final int[] ranges = new int[(pMaximumZoomLevel - pMinimumZoomLevel + 1) * 4];
+		final Point point = new Point();
+		for (int i = 0; i < ranges.length; i += 4) {
+			final int zoomLevel = pMinimumZoomLevel + i / 4;
+			TileSystem.LatLongToPixelXY(pArea.getLatNorthE6() / 1E6, pArea.getLonWestE6() / 1E6,
+					zoomLevel, point);
+			TileSystem.PixelXYToTileXY(point.x, point.y, point);
+			ranges[i] = point.x;
+			ranges[i + 1] = point.y;
+			TileSystem.LatLongToPixelXY(pArea.getLatSouthE6() / 1E6, pArea.getLonEastE6() / 1E6,
+					zoomLevel, point);
+			TileSystem.PixelXYToTileXY(point.x, point.y, point);
+			ranges[i + 2] = point.x;
+			ranges[i + 3] = point.y;
+		}
+		return ranges;
+	}
+
+	private static int getInt(final Properties pProperties, final String pKey) {
+		return Integer.parseInt(pProperties.getProperty(pKey));
+	}
+
+	private static long getLong(final Properties pProperties, final String pKey) {
+		return Long.parseLong(pProperties.getProperty(pKey));
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	public interface ProgressListener {
+		/**
+		 * A tile has been downloaded, skipped or has failed.
+		 */
+		void onProgress(BulkTileDownloader pJob);
+
+		/**
+		 * All the tiles are done. The job file is kept with the final counts until
+		 * {@link BulkTileDownloader#cancel()}.
+		 */
+		void onFinished(BulkTileDownloader pJob);
+	}
+}
@@ -0,0 +1,166 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops a provider from loading tiles while they can't be loaded, eg because the network is down.
+ * <br />
+ * The breaker is closed while tiles load. It opens when there's no network, or after a number of
+ * failures in a row, and the provider pauses and keeps its requests. Once the open time has passed
+ * and the network is available, the breaker is half open and the provider tries again. The first
+ * success closes it, and a failure opens it again for twice as long, up to a maximum.
+ */
+public class CircuitBreaker implements OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	public static final int CLOSED = 0;
+	public static final int OPEN = 1;
+	public static final int HALF_OPEN = 2;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final int mFailureThreshold;
+	private final long mInitialOpenTime;
+	private final long mMaximumOpenTime;
+
+	private int mState = CLOSED;
+	private int mConsecutiveFailures;
+	private long mOpenTime;
+	private long mRetryTime;
+	private long mOpenCount;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public CircuitBreaker() {
+		this(CIRCUIT_BREAKER_FAILURES_DEFAULT, CIRCUIT_BREAKER_OPEN_TIME_DEFAULT,
+				CIRCUIT_BREAKER_MAXIMUM_OPEN_TIME_DEFAULT);
+	}
+
+	/**
+	 * @param pFailureThreshold
+	 *            the number of failures in a row that open the breaker
+	 * @param pOpenTime
+	 *            the time in milliseconds the breaker stays open the first time
+	 * @param pMaximumOpenTime
+	 *            the maximum time in milliseconds the breaker stays open
+	 */
+	public CircuitBreaker(final int pFailureThreshold, final long pOpenTime,
+			final long pMaximumOpenTime) {
+		mFailureThreshold = pFailureThreshold;
+		mInitialOpenTime = pOpenTime;
+		mMaximumOpenTime = pMaximumOpenTime;
+		mOpenTime = pOpenTime;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * @return {@link #CLOSED}, {@link #OPEN} or {@link #HALF_OPEN}
+	 */
+	public synchronized int getState() {
+		return mState;
+	}
+
+	public synchronized boolean isOpen() {
+		return mState == OPEN;
+	}
+
+	/**
+	 * @return the time at which an open breaker can be half opened, see
+	 *         {@link #tryHalfOpen(long, boolean)}
+	 */
+	public synchronized long getRetryTime() {
+		return mRetryTime;
+	}
+
+	/**
+	 * @return the number of times the breaker has opened
+	 */
+	public synchronized long getOpenCount() {
+		return mOpenCount;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * A tile has loaded, so the breaker closes.
+	 */
+	public synchronized void onSuccess() {
+		if (mState != CLOSED) {
+			logger.info("Circuit breaker closed");
+		}
+		mState = CLOSED;
+		mConsecutiveFailures = 0;
+		mOpenTime = mInitialOpenTime;
+	}
+
+	/**
+	 * A tile has failed to load, which opens the breaker if it's half open or the failure
+	 * threshold is reached.
+	 *
+	 * @return whether the breaker has opened
+	 */
+	public synchronized boolean onFailure(final long pNow) {
+		mConsecutiveFailures++;
+		if (mState == HALF_OPEN || mState == CLOSED && mConsecutiveFailures >= mFailureThreshold) {
+			return open(pNow);
+		}
+		return false;
+	}
+
+	/**
+	 * Open the breaker straight away, eg because there's no network.
+	 *
+	 * @return whether the breaker has opened, false if it was open already
+	 */
+	public synchronized boolean open(final long pNow) {
+		if (mState == OPEN) {
+			return false;
+		}
+		if (mState == HALF_OPEN) {
+			mOpenTime = Math.min(mMaximumOpenTime, mOpenTime * 2);
+		}
+		mState = OPEN;
+		mRetryTime = pNow + mOpenTime;
+		mOpenCount++;
+		logger.info("Circuit breaker opened for " + mOpenTime + "ms");
+		return true;
+	}
+
+	/**
+	 * Half open the breaker if it has been open long enough and the network is available. If the
+	 * network isn't available, it stays open for another open time.
+	 *
+	 * @return whether the breaker isn't open any more
+	 */
+	public synchronized boolean tryHalfOpen(final long pNow, final boolean pNetworkAvailable) {
+		if (mState != OPEN) {
+			return true;
+		}
+		if (pNow < mRetryTime) {
+			return false;
+		}
+		if (!pNetworkAvailable) {
+			mOpenTime = Math.min(mMaximumOpenTime, mOpenTime * 2);
+			mRetryTime = pNow + mOpenTime;
+			return false;
+		}
+		mState = HALF_OPEN;
+		return true;
+	}
+}
@@ -0,0 +1,20 @@
+package org.osmdroid.tileprovider.modules;
+
+/**
+ * Told about the decisions of an {@link AdaptiveConcurrencyController}.
+ */
+public interface IConcurrencyListener {
+
+	/**
+	 * Called after each window of tile loads.
+	 *
+	 * @param pController
+	 *            the controller, for the new limit and the measured load times and throughput
+	 * @param pDecision
+	 *            what was done with the limit
+	 * @param pPreviousLimit
+	 *            the limit before the decision
+	 */
+	void onConcurrencyDecision(AdaptiveConcurrencyController pController,
+			AdaptiveConcurrencyController.Decision pDecision, int pPreviousLimit);
+}
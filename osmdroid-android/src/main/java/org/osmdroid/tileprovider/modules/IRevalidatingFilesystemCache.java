@@ -0,0 +1,40 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.io.InputStream;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+
+/**
+ * A file system cache that also keeps the HTTP validators of the tiles it saves, so that
+ * {@link MapTileDownloader} can revalidate an expired tile with a conditional request.
+ */
+public interface IRevalidatingFilesystemCache extends IFilesystemCache {
+
+	/**
+	 * Save an InputStream as the specified tile, along with the validators the server sent with it.
+	 *
+	 * @param pValidators
+	 *            the validators, or null if the server didn't send any
+	 * @return whether the tile was saved
+	 */
+	boolean saveFile(final ITileSource pTileSourceInfo, MapTile pTile, final InputStream pStream,
+			final TileValidators pValidators);
+
+	/**
+	 * @return the validators of the saved tile, or null if the tile isn't saved or has none
+	 */
+	TileValidators getValidators(final ITileSource pTileSourceInfo, MapTile pTile);
+
+	/**
+	 * The server says that the saved tile hasn't changed, so make it current again.
+	 *
+	 * @return whether the tile is saved
+	 */
+	boolean refreshFile(final ITileSource pTileSourceInfo, MapTile pTile);
+
+	/**
+	 * @return the time the tile was saved or last refreshed, or 0 if it isn't saved
+	 */
+	long getSaveTime(final ITileSource pTileSourceInfo, MapTile pTile);
+}
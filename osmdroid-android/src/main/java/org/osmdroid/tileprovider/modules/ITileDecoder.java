@@ -0,0 +1,22 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase.CantContinueException;
+
+import android.graphics.drawable.Drawable;
+
+/**
+ * Decodes a tile that a tile loader has fetched, on a thread of the {@link MapTileDecoder}. See
+ * {@link MapTileModuleProviderBase.TileLoader#decodeLater}.
+ */
+public interface ITileDecoder {
+
+	/**
+	 * Decode the tile.
+	 *
+	 * @return the tile, or null if it couldn't be decoded and other tile providers need to be
+	 *         called
+	 * @throws CantContinueException
+	 *             if the provider can no longer function, eg because it's low on memory
+	 */
+	Drawable decode() throws CantContinueException;
+}
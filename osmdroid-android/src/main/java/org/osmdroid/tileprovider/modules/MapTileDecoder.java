@@ -0,0 +1,150 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.Build;
+
+/**
+ * The thread pool that decodes the tiles that the tile loaders of all the
+ * {@link MapTileModuleProviderBase}s have fetched (see
+ * {@link MapTileModuleProviderBase.TileLoader#decodeLater}). Decoding only needs a processor, so
+ * there is one thread per processor, while the {@link MapTileExecutor} has more threads that
+ * mostly wait for the network or storage. A slow decode then doesn't hold up a fetch and the other
+ * way round. The threads stop when they have been idle for a while.
+ */
+public class MapTileDecoder implements Executor {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private static MapTileDecoder sInstance;
+
+	private final ThreadPoolExecutor mExecutor;
+
+	private final AtomicLong mDecodedCount = new AtomicLong();
+	private final AtomicLong mDecodeTime = new AtomicLong();
+	private volatile int mMaximumQueuedCount;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	private MapTileDecoder(final int pThreadCount) {
+		mExecutor = new ThreadPoolExecutor(pThreadCount, pThreadCount, KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, "MapTileDecoder"));
+		if (Build.VERSION.SDK_INT >= 9) {
+			mExecutor.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	public static synchronized MapTileDecoder getInstance() {
+		if (sInstance == null) {
+			sInstance = new MapTileDecoder(Math.max(1, Runtime.getRuntime().availableProcessors()));
+		}
+		return sInstance;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int getThreadCount() {
+		return mExecutor.getMaximumPoolSize();
+	}
+
+	/**
+	 * Change the number of threads, eg to leave a processor free for drawing.
+	 */
+	public void setThreadCount(final int pThreadCount) {
+		if (pThreadCount < 1) {
+			throw new IllegalArgumentException("pThreadCount must be at least 1");
+		}
+		synchronized (mExecutor) {
+			if (pThreadCount > mExecutor.getMaximumPoolSize()) {
+				mExecutor.setMaximumPoolSize(pThreadCount);
+				mExecutor.setCorePoolSize(pThreadCount);
+			} else {
+				mExecutor.setCorePoolSize(pThreadCount);
+				mExecutor.setMaximumPoolSize(pThreadCount);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of tiles being decoded
+	 */
+	public int getActiveCount() {
+		return mExecutor.getActiveCount();
+	}
+
+	/**
+	 * @return the number of tiles waiting to be decoded
+	 */
+	public int getQueuedCount() {
+		return mExecutor.getQueue().size();
+	}
+
+	/**
+	 * @return the largest number of tiles that have been waiting to be decoded at the same time
+	 */
+	public int getMaximumQueuedCount() {
+		return mMaximumQueuedCount;
+	}
+
+	/**
+	 * @return the number of tiles that have been decoded, whether it worked or not
+	 */
+	public long getDecodedCount() {
+		return mDecodedCount.get();
+	}
+
+	/**
+	 * @return the average time to decode and deliver a tile, in milliseconds
+	 */
+	public double getAverageDecodeTime() {
+		final long count = mDecodedCount.get();
+		return count == 0 ? 0 : mDecodeTime.get() / 1000000d / count;
+	}
+
+	public void resetStatistics() {
+		mDecodedCount.set(0);
+		mDecodeTime.set(0);
+		mMaximumQueuedCount = 0;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public void execute(final Runnable pRunnable) {
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final long startTime = System.nanoTime();
+				try {
+					pRunnable.run();
+				} finally {
+					mDecodeTime.addAndGet(System.nanoTime() - startTime);
+					mDecodedCount.incrementAndGet();
+				}
+			}
+		});
+		final int queued = mExecutor.getQueue().size();
+		if (queued > mMaximumQueuedCount) {
+			mMaximumQueuedCount = queued;
+		}
+	}
+}
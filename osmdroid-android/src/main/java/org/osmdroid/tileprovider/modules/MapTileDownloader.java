@@ -1,26 +1,30 @@
 package org.osmdroid.tileprovider.modules;
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.UnknownHostException;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.osmdroid.http.HttpClientFactory;
+import org.osmdroid.http.PooledHttpClientFactory;
+import org.osmdroid.tileprovider.BitmapPool;
+import org.osmdroid.tileprovider.CompressedMapTileCache;
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.tileprovider.ReusableBitmapDrawable;
 import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase.LowMemoryException;
+import org.osmdroid.tileprovider.tilesource.HostScheduler;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.tilesource.OnlineTileSourceBase;
 import org.osmdroid.tileprovider.util.StreamUtils;
+import org.osmdroid.tileprovider.util.TileBuffer;
+import org.osmdroid.util.LongHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,7 +33,12 @@ import android.text.TextUtils;
 
 /**
  * The {@link MapTileDownloader} loads tiles from an HTTP server. It saves downloaded tiles to an
- * IFilesystemCache if available.
+ * IFilesystemCache if available. If the cache is an {@link IRevalidatingFilesystemCache}, an
+ * expired tile is revalidated with a conditional request, and only downloaded again if it has
+ * changed.<br />
+ * A download that times out or gets a server error is tried again later, see
+ * {@link RetryPolicy}. While the network is down or the server keeps failing, the
+ * {@link CircuitBreaker} pauses the provider, and the requests wait for it to be resumed.
  *
  * @author Marc Kurtz
  * @author Nicolas Gramlich
@@ -44,6 +53,15 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 
 	private static final Logger logger = LoggerFactory.getLogger(MapTileDownloader.class);
 
+	private static final String ETAG = "ETag";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	private static final String IF_NONE_MATCH = "If-None-Match";
+	private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+	private static final int TOO_MANY_REQUESTS = 429;
+
+	/** how long a tile waits in the queue when no host of the tile source is free */
+	private static final long HOST_BUSY_RETRY_DELAY = ONE_SECOND / 4;
+
 	// ===========================================================
 	// Fields
 	// ===========================================================
@@ -54,6 +72,14 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 
 	private final INetworkAvailablityCheck mNetworkAvailablityCheck;
 
+	/** the downloads in progress by tile key, so that they can be aborted */
+	private final LongHashMap<HttpUriRequest> mDownloads = new LongHashMap<HttpUriRequest>();
+
+	private volatile RetryPolicy mRetryPolicy = new RetryPolicy();
+
+	/** replaced with the tile source, which closes it */
+	private volatile CircuitBreaker mCircuitBreaker = new CircuitBreaker();
+
 	// ===========================================================
 	// Constructors
 	// ===========================================================
@@ -92,6 +118,28 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 		return mTileSource;
 	}
 
+	public RetryPolicy getRetryPolicy() {
+		return mRetryPolicy;
+	}
+
+	public void setRetryPolicy(final RetryPolicy pRetryPolicy) {
+		mRetryPolicy = pRetryPolicy;
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return mCircuitBreaker;
+	}
+
+	/**
+	 * @return whether tiles can be downloaded now, ie the network is available and the circuit
+	 *         breaker isn't open
+	 */
+	public boolean isAvailable() {
+		return !mCircuitBreaker.isOpen()
+				&& (mNetworkAvailablityCheck == null || mNetworkAvailablityCheck
+						.getNetworkAvailable());
+	}
+
 	// ===========================================================
 	// Methods from SuperClass/Interfaces
 	// ===========================================================
@@ -126,116 +174,464 @@ public class MapTileDownloader extends MapTileModuleProviderBase {
 		return (mTileSource != null ? mTileSource.getMaximumZoomLevel() : MAXIMUM_ZOOMLEVEL);
 	}
 
+	@Override
+	protected void abortTileLoad(final MapTileRequestState pState) {
+		final HttpUriRequest download;
+		synchronized (mDownloads) {
+			download = mDownloads.get(pState.getMapTile().getTileKey());
+		}
+		if (download != null) {
+			if (DEBUGMODE) {
+				logger.debug("Aborting download of " + pState.getMapTile());
+			}
+			download.abort();
+		}
+	}
+
 	@Override
 	public void setTileSource(final ITileSource tileSource) {
 		// We are only interested in OnlineTileSourceBase tile sources
+		getMissingTileCache().clear();
 		if (tileSource instanceof OnlineTileSourceBase) {
 			mTileSource = (OnlineTileSourceBase) tileSource;
 		} else {
 			// Otherwise shut down the tile downloader
 			mTileSource = null;
 		}
+		// the new tile source may well be reachable
+		mCircuitBreaker = new CircuitBreaker();
+		resume();
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * @return whether a tile is in the file system cache and was saved or revalidated less than
+	 *         pMaximumAge milliseconds ago. Only an {@link IRevalidatingFilesystemCache} knows.
+	 */
+	public boolean isTileSaved(final MapTile pTile, final long pMaximumAge) {
+		final OnlineTileSourceBase tileSource = mTileSource;
+		if (tileSource == null || !(mFilesystemCache instanceof IRevalidatingFilesystemCache)) {
+			return false;
+		}
+		final long saveTime = ((IRevalidatingFilesystemCache) mFilesystemCache).getSaveTime(
+				tileSource, pTile);
+		return saveTime > System.currentTimeMillis() - pMaximumAge;
+	}
+
+	/**
+	 * Download a tile into the file system cache straight away, without decoding it, eg to save an
+	 * area for use offline, see {@link BulkTileDownloader}. A saved copy of the tile is revalidated
+	 * rather than downloaded again. This waits for a host of the tile source to be free.
+	 *
+	 * @return true if the tile has been saved or is current, false if the server doesn't have it
+	 *         or it can't be saved
+	 * @throws IOException
+	 *             if the download failed, eg the network is down or the server failed, and may be
+	 *             tried again later
+	 */
+	public boolean downloadTile(final MapTile pTile) throws IOException, InterruptedException {
+		final OnlineTileSourceBase tileSource = mTileSource;
+		if (tileSource == null || mFilesystemCache == null) {
+			return false;
+		}
+		final CircuitBreaker breaker = mCircuitBreaker;
+		if (!isAvailable()) {
+			throw new IOException("The network isn't available");
+		}
+
+		final HostScheduler hostScheduler = tileSource.getHostScheduler();
+		while (hostScheduler.acquire(pTile, ONE_SECOND) < 0) {
+			// wait for a host to be free, which decides the url of the tile
+		}
+		final TileValidators validators = mFilesystemCache instanceof IRevalidatingFilesystemCache
+				? ((IRevalidatingFilesystemCache) mFilesystemCache).getValidators(tileSource, pTile)
+				: null;
+		final Fetch fetch = new Fetch();
+		boolean hostFailed = false;
+		try {
+			fetchTile(tileSource, pTile, validators, null, fetch);
+			if (fetch.isHostFailed()) {
+				throw new IOException("HTTP response: " + fetch.mStatusCode);
+			}
+			return fetch.mSaved;
+		} catch (final IOException e) {
+			hostFailed = true;
+			final long now = System.currentTimeMillis();
+			pauseIfOpened(breaker, e instanceof UnknownHostException ? breaker.open(now) : breaker
+					.onFailure(now));
+			throw e;
+		} finally {
+			hostScheduler.release(pTile, hostFailed, fetch.mLatency);
+			if (fetch.mData != null) {
+				fetch.mData.recycle();
+			}
+		}
+	}
+
+	/**
+	 * Request a tile from the host acquired for it, and save it to the file system cache. The saved
+	 * copy is refreshed instead if the server says that it hasn't changed.
+	 *
+	 * @param pValidators
+	 *            the validators of the saved copy, to make a conditional request, or null
+	 * @param pState
+	 *            the request of the provider, so that the download can be aborted, or null
+	 * @param pFetch
+	 *            gets the response status, the latency, and the content of the tile if it was
+	 *            downloaded
+	 */
+	private void fetchTile(final OnlineTileSourceBase pTileSource, final MapTile pTile,
+			final TileValidators pValidators, final MapTileRequestState pState, final Fetch pFetch)
+			throws IOException {
+		final String tileURLString = pTileSource.getTileURLString(pTile);
+
+		if (DEBUGMODE) {
+			logger.debug("Downloading Maptile from url: " + tileURLString);
+		}
+
+		if (TextUtils.isEmpty(tileURLString)) {
+			return;
+		}
+
+		final HttpUriRequest request = newRequest(tileURLString, pValidators);
+		InputStream in = null;
+		TileBuffer buffer = null;
+		try {
+			if (pState != null) {
+				synchronized (mDownloads) {
+					mDownloads.put(pTile.getTileKey(), request);
+				}
+				if (pState.isCancelled()) {
+					return;
+				}
+			}
+			final long start = System.currentTimeMillis();
+			final HttpResponse response = HttpClientFactory.createHttpClient().execute(request);
+			pFetch.mLatency = System.currentTimeMillis() - start;
+
+			// Check to see if we got success
+			final org.apache.http.StatusLine line = response.getStatusLine();
+			pFetch.mStatusCode = line.getStatusCode();
+			if (!pFetch.isHostFailed()) {
+				mCircuitBreaker.onSuccess();
+			}
+			if (pFetch.mStatusCode == HttpStatus.SC_NOT_MODIFIED && pValidators != null) {
+				if (DEBUGMODE) {
+					logger.debug("MapTile not modified: " + pTile);
+				}
+				PooledHttpClientFactory.consumeEntity(response);
+				pFetch.mSaved = ((IRevalidatingFilesystemCache) mFilesystemCache).refreshFile(
+						pTileSource, pTile);
+				return;
+			}
+			if (pFetch.mStatusCode != HttpStatus.SC_OK) {
+				logger.warn("Problem downloading MapTile: " + pTile + " HTTP response: " + line);
+				// let the connection be reused
+				PooledHttpClientFactory.consumeEntity(response);
+				return;
+			}
+
+			final HttpEntity entity = response.getEntity();
+			if (entity == null) {
+				logger.warn("No content downloading MapTile: " + pTile);
+				return;
+			}
+			in = entity.getContent();
+
+			// read the content once, and write the same bytes to the file system cache and give
+			// them to the caller
+			buffer = TileBuffer.obtain();
+			buffer.readFrom(in, entity.getContentLength());
+			saveFile(pTileSource, pTile, buffer, getValidators(response));
+			pFetch.mData = buffer;
+			pFetch.mSaved = mFilesystemCache != null;
+			buffer = null;
+		} finally {
+			if (pState != null) {
+				synchronized (mDownloads) {
+					mDownloads.remove(pTile.getTileKey());
+				}
+			}
+			StreamUtils.closeStream(in);
+			if (buffer != null) {
+				buffer.recycle();
+			}
+		}
+	}
+
+	/**
+	 * @return a request for a tile, conditional if there are validators
+	 */
+	private static HttpUriRequest newRequest(final String pTileURLString,
+			final TileValidators pValidators) {
+		final HttpUriRequest request = new HttpGet(pTileURLString);
+		if (pValidators != null) {
+			if (pValidators.getETag() != null) {
+				request.setHeader(IF_NONE_MATCH, pValidators.getETag());
+			}
+			if (pValidators.getLastModified() != null) {
+				request.setHeader(IF_MODIFIED_SINCE, pValidators.getLastModified());
+			}
+		}
+		return request;
+	}
+
+	/**
+	 * @return the validators of the saved copy of an expired tile, or null if it can't be
+	 *         revalidated
+	 */
+	private TileValidators getValidators(final ITileSource pTileSource,
+			final MapTileRequestState pState) {
+		if (pState.getExpiredTile() == null
+				|| !(mFilesystemCache instanceof IRevalidatingFilesystemCache)) {
+			return null;
+		}
+		return ((IRevalidatingFilesystemCache) mFilesystemCache).getValidators(pTileSource,
+				pState.getMapTile());
+	}
+
+	private static TileValidators getValidators(final HttpResponse pResponse) {
+		final Header eTag = pResponse.getFirstHeader(ETAG);
+		final Header lastModified = pResponse.getFirstHeader(LAST_MODIFIED);
+		return new TileValidators(eTag == null ? null : eTag.getValue(),
+				lastModified == null ? null : lastModified.getValue());
+	}
+
+	private void saveFile(final ITileSource pTileSource, final MapTile pTile,
+			final TileBuffer pData, final TileValidators pValidators) {
+		if (mFilesystemCache instanceof IRevalidatingFilesystemCache) {
+			((IRevalidatingFilesystemCache) mFilesystemCache).saveFile(pTileSource, pTile,
+					pData.toInputStream(), pValidators);
+		} else if (mFilesystemCache != null) {
+			mFilesystemCache.saveFile(pTileSource, pTile, pData.toInputStream());
+		}
+	}
+
+	/**
+	 * The server says that an expired tile hasn't changed, so now that the saved copy is refreshed
+	 * it's current again in memory too, without being downloaded or decoded.
+	 *
+	 * @return the expired tile, or null if it has been evicted from memory meanwhile
+	 */
+	private Drawable revalidated(final MapTileRequestState pState) {
+		final Drawable expiredTile = pState.getExpiredTile();
+		if (expiredTile instanceof ReusableBitmapDrawable
+				&& !((ReusableBitmapDrawable) expiredTile).isBitmapValid()) {
+			return null;
+		}
+		expiredTile.setState(new int[0]);
+		return expiredTile;
+	}
+
+	/**
+	 * Pause the provider if the breaker has just opened, until it can be half opened.
+	 */
+	private void pauseIfOpened(final CircuitBreaker pBreaker, final boolean pOpened) {
+		if (pOpened) {
+			pause();
+			scheduleProbe(pBreaker);
+		}
+	}
+
+	private void scheduleProbe(final CircuitBreaker pBreaker) {
+		schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (isDetached() || pBreaker != mCircuitBreaker) {
+					return;
+				}
+				final boolean networkAvailable = mNetworkAvailablityCheck == null
+						|| mNetworkAvailablityCheck.getNetworkAvailable();
+				if (pBreaker.tryHalfOpen(System.currentTimeMillis(), networkAvailable)) {
+					resume();
+				} else {
+					scheduleProbe(pBreaker);
+				}
+			}
+		}, Math.max(0, pBreaker.getRetryTime() - System.currentTimeMillis()));
 	}
 
 	// ===========================================================
 	// Inner and Anonymous Classes
 	// ===========================================================
 
+	/**
+	 * The outcome of {@link MapTileDownloader#fetchTile}.
+	 */
+	private static class Fetch {
+		/** the HTTP status, or -1 if no request was made */
+		private int mStatusCode = -1;
+		private long mLatency = -1;
+		/** whether the tile is in the file system cache now, saved or refreshed */
+		private boolean mSaved;
+		/** the content of the tile if it was downloaded, which the caller recycles */
+		private TileBuffer mData;
+
+		private boolean isHostFailed() {
+			return mStatusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR
+					|| mStatusCode == TOO_MANY_REQUESTS;
+		}
+	}
+
 	private class TileLoader extends MapTileModuleProviderBase.TileLoader {
 
 		@Override
 		public Drawable loadTile(final MapTileRequestState aState) throws CantContinueException {
 
-			if (mTileSource == null) {
+			final OnlineTileSourceBase tileSource = mTileSource;
+			if (tileSource == null) {
 				return null;
 			}
 
-			InputStream in = null;
-			OutputStream out = null;
 			final MapTile tile = aState.getMapTile();
+			final HostScheduler hostScheduler = tileSource.getHostScheduler();
+			final Fetch fetch = new Fetch();
+			boolean acquired = false;
+			boolean hostFailed = false;
 
 			try {
 
-				if (mNetworkAvailablityCheck != null
-						&& !mNetworkAvailablityCheck.getNetworkAvailable()) {
+				final CircuitBreaker breaker = mCircuitBreaker;
+				if (breaker.isOpen()
+						|| (mNetworkAvailablityCheck != null && !mNetworkAvailablityCheck
+								.getNetworkAvailable())) {
 					if (DEBUGMODE) {
-						logger.debug("Skipping " + getName() + " due to NetworkAvailabliltyCheck.");
+						logger.debug("Postponing " + tile + ", the network isn't available");
 					}
-					return null;
+					pauseIfOpened(breaker, breaker.open(System.currentTimeMillis()));
+					return retryLater(aState, 0);
 				}
 
-				final String tileURLString = mTileSource.getTileURLString(tile);
-
-				if (DEBUGMODE) {
-					logger.debug("Downloading Maptile from url: " + tileURLString);
-				}
-
-				if (TextUtils.isEmpty(tileURLString)) {
+				if (aState.isCancelled()) {
 					return null;
 				}
-
-				final HttpClient client = HttpClientFactory.createHttpClient();
-				final HttpUriRequest head = new HttpGet(tileURLString);
-				final HttpResponse response = client.execute(head);
-
-				// Check to see if we got success
-				final org.apache.http.StatusLine line = response.getStatusLine();
-				if (line.getStatusCode() != 200) {
-					logger.warn("Problem downloading MapTile: " + tile + " HTTP response: " + line);
-					return null;
+				// a host decides the url of the tile. If none is free, give the thread to the
+				// other providers rather than wait for one here
+				acquired = hostScheduler.acquire(tile, 0) >= 0;
+				if (!acquired) {
+					return retryLater(aState, HOST_BUSY_RETRY_DELAY);
 				}
 
-				final HttpEntity entity = response.getEntity();
-				if (entity == null) {
-					logger.warn("No content downloading MapTile: " + tile);
+				final TileValidators validators = getValidators(tileSource, aState);
+				fetchTile(tileSource, tile, validators, aState, fetch);
+				hostFailed = fetch.isHostFailed();
+				if (fetch.mStatusCode == HttpStatus.SC_NOT_MODIFIED && validators != null) {
+					return revalidated(aState);
+				}
+				if (hostFailed) {
+					return failed(aState);
+				}
+				if (fetch.mStatusCode != HttpStatus.SC_OK) {
+					// no status if there was no url or the request was cancelled before it was sent
+					if (fetch.mStatusCode > 0) {
+						getMissingTileCache().putMissing(tile,
+								fetch.mStatusCode == HttpStatus.SC_NOT_FOUND);
+					}
 					return null;
 				}
-				in = entity.getContent();
-
-				final ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
-				out = new BufferedOutputStream(dataStream, StreamUtils.IO_BUFFER_SIZE);
-				StreamUtils.copy(in, out);
-				out.flush();
-				final byte[] data = dataStream.toByteArray();
-				final ByteArrayInputStream byteStream = new ByteArrayInputStream(data);
-
-				// Save the data to the filesystem cache
-				if (mFilesystemCache != null) {
-					mFilesystemCache.saveFile(mTileSource, tile, byteStream);
-					byteStream.reset();
+				final TileBuffer data = fetch.mData;
+				if (data == null) {
+					return null;
 				}
-				final Drawable result = mTileSource.getDrawable(byteStream);
 
-				return result;
+				// the decoder recycles the buffer
+				fetch.mData = null;
+				return decodeLater(aState, new ITileDecoder() {
+					@Override
+					public Drawable decode() throws CantContinueException {
+						try {
+							final Drawable result = tileSource.getDrawable(data.toInputStream());
+							final CompressedMapTileCache compressedTileCache = getCompressedTileCache();
+							if (result != null && compressedTileCache != null) {
+								compressedTileCache.putTileBytes(tile, data.toByteArray());
+							}
+							return result;
+						} catch (final LowMemoryException e) {
+							// low memory so empty the queue
+							logger.warn("LowMemoryException decoding MapTile: " + tile + " : " + e);
+							throw new CantContinueException(e);
+						} finally {
+							data.recycle();
+						}
+					}
+				});
 			} catch (final UnknownHostException e) {
-				// no network connection so empty the queue
+				// no network connection, so wait for it rather than fail all the tiles
 				logger.warn("UnknownHostException downloading MapTile: " + tile + " : " + e);
-				throw new CantContinueException(e);
-			} catch (final LowMemoryException e) {
-				// low memory so empty the queue
-				logger.warn("LowMemoryException downloading MapTile: " + tile + " : " + e);
-				throw new CantContinueException(e);
+				final CircuitBreaker breaker = mCircuitBreaker;
+				pauseIfOpened(breaker, breaker.open(System.currentTimeMillis()));
+				return retryLater(aState, 0);
 			} catch (final FileNotFoundException e) {
 				logger.warn("Tile not found: " + tile + " : " + e);
+				getMissingTileCache().putMissing(tile, true);
 			} catch (final IOException e) {
-				logger.warn("IOException downloading MapTile: " + tile + " : " + e);
+				if (aState.isCancelled()) {
+					if (DEBUGMODE) {
+						logger.debug("Download cancelled: " + tile);
+					}
+				} else {
+					logger.warn("IOException downloading MapTile: " + tile + " : " + e);
+					hostFailed = true;
+					return failed(aState);
+				}
+			} catch (final InterruptedException e) {
+				// the provider is shutting down
+				Thread.currentThread().interrupt();
 			} catch (final Throwable e) {
 				logger.error("Error downloading MapTile: " + tile, e);
 			} finally {
-				StreamUtils.closeStream(in);
-				StreamUtils.closeStream(out);
+				if (acquired) {
+					hostScheduler.release(tile, hostFailed, fetch.mLatency);
+				}
+				if (fetch.mData != null) {
+					fetch.mData.recycle();
+				}
 			}
 
 			return null;
 		}
 
+		/**
+		 * A download has failed in a way that may not last, eg it timed out. Try again later if
+		 * the retry policy allows it, otherwise the tile is missing for now.
+		 */
+		private Drawable failed(final MapTileRequestState pState) {
+			final CircuitBreaker breaker = mCircuitBreaker;
+			pauseIfOpened(breaker, breaker.onFailure(System.currentTimeMillis()));
+			final RetryPolicy retryPolicy = mRetryPolicy;
+			final int retryCount = pState.getRetryCount();
+			if (retryPolicy.shouldRetry(retryCount)) {
+				pState.setRetryCount(retryCount + 1);
+				return retryLater(pState, retryPolicy.getDelay(retryCount));
+			}
+			getMissingTileCache().putMissing(pState.getMapTile(), false);
+			return null;
+		}
+
 		@Override
 		protected void tileLoaded(final MapTileRequestState pState, final Drawable pDrawable) {
 			removeTileFromQueues(pState.getMapTile());
+			if (pDrawable == pState.getExpiredTile()) {
+				// the expired tile has been revalidated, and it's in the cache already
+				pState.getCallback().mapTileRequestCompleted(pState, pDrawable);
+				return;
+			}
+			if (pState.isBackground()) {
+				// the tile was prefetched, so keep it in memory until it's needed
+				pState.getCallback().mapTileRequestCompleted(pState, pDrawable);
+				return;
+			}
 			// don't return the tile because we'll wait for the fs provider to ask for it
 			// this prevent flickering when a load of delayed downloads complete for tiles
 			// that we might not even be interested in any more
 			pState.getCallback().mapTileRequestCompleted(pState, null);
+			// nobody else has seen the bitmap so it can be reused straight away
+			if (pDrawable instanceof ReusableBitmapDrawable) {
+				BitmapPool.getInstance().returnDrawableToPool((ReusableBitmapDrawable) pDrawable);
+			}
 		}
 
 	}
@@ -0,0 +1,106 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Build;
+
+/**
+ * The thread pool that the tile loaders of all the {@link MapTileModuleProviderBase}s run on, so
+ * that a few map views don't each start their own set of threads. The number of threads depends on
+ * the number of processors. How many of them one provider uses at a time is limited by the
+ * provider, see {@link MapTileModuleProviderBase#getConcurrencyLimit()}. The threads stop when
+ * they have been idle for a while.
+ */
+public class MapTileExecutor implements Executor {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** the tile loaders mostly wait for the network or storage, so use more threads than cores */
+	public static final int THREADS_PER_PROCESSOR = 2;
+	public static final int MINIMUM_THREADS = 4;
+
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private static MapTileExecutor sInstance;
+
+	private final ThreadPoolExecutor mExecutor;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	private MapTileExecutor(final int pThreadCount) {
+		mExecutor = new ThreadPoolExecutor(pThreadCount, pThreadCount, KEEP_ALIVE_SECONDS,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, "MapTileExecutor"));
+		if (Build.VERSION.SDK_INT >= 9) {
+			mExecutor.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	public static synchronized MapTileExecutor getInstance() {
+		if (sInstance == null) {
+			sInstance = new MapTileExecutor(Math.max(MINIMUM_THREADS, Runtime.getRuntime()
+					.availableProcessors() * THREADS_PER_PROCESSOR));
+		}
+		return sInstance;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int getThreadCount() {
+		return mExecutor.getMaximumPoolSize();
+	}
+
+	/**
+	 * Change the number of threads, eg to favour the tiles over other background work.
+	 */
+	public void setThreadCount(final int pThreadCount) {
+		if (pThreadCount < 1) {
+			throw new IllegalArgumentException("pThreadCount must be at least 1");
+		}
+		synchronized (mExecutor) {
+			if (pThreadCount > mExecutor.getMaximumPoolSize()) {
+				mExecutor.setMaximumPoolSize(pThreadCount);
+				mExecutor.setCorePoolSize(pThreadCount);
+			} else {
+				mExecutor.setCorePoolSize(pThreadCount);
+				mExecutor.setMaximumPoolSize(pThreadCount);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of threads that are running a tile loader
+	 */
+	public int getActiveCount() {
+		return mExecutor.getActiveCount();
+	}
+
+	/**
+	 * @return the number of tile loaders waiting for a thread
+	 */
+	public int getQueuedCount() {
+		return mExecutor.getQueue().size();
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public void execute(final Runnable pRunnable) {
+		mExecutor.execute(pRunnable);
+	}
+}
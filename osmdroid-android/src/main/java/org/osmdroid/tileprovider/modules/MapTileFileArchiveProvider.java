@@ -1,14 +1,17 @@
 // Created by plusminus on 21:46:41 - 25.09.2008
 package org.osmdroid.tileprovider.modules;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
 
+import org.osmdroid.tileprovider.CompressedMapTileCache;
 import org.osmdroid.tileprovider.IRegisterReceiver;
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.MapTileProviderBase;
 import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase.LowMemoryException;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.util.StreamUtils;
 import org.slf4j.Logger;
@@ -130,6 +133,7 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 	@Override
 	public void setTileSource(final ITileSource pTileSource) {
 		mTileSource = pTileSource;
+		getMissingTileCache().clear();
 	}
 
 	@Override
@@ -147,6 +151,7 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 	private void findArchiveFiles() {
 
 		mArchiveFiles.clear();
+		getMissingTileCache().clear();
 
 		if (!getSdCardAvailable()) {
 			return;
@@ -187,7 +192,8 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 		@Override
 		public Drawable loadTile(final MapTileRequestState pState) {
 
-			if (mTileSource == null) {
+			final ITileSource tileSource = mTileSource;
+			if (tileSource == null) {
 				return null;
 			}
 
@@ -212,11 +218,31 @@ public class MapTileFileArchiveProvider extends MapTileFileStorageProviderBase {
 					if (DEBUGMODE) {
 						logger.debug("Use tile from archive: " + pTile);
 					}
-					final Drawable drawable = mTileSource.getDrawable(inputStream);
-					return drawable;
+					final byte[] bytes = StreamUtils.toByteArray(inputStream);
+					return decodeLater(pState, new ITileDecoder() {
+						@Override
+						public Drawable decode() {
+							try {
+								final Drawable drawable = tileSource.getDrawable(
+										new ByteArrayInputStream(bytes));
+								final CompressedMapTileCache compressedTileCache = getCompressedTileCache();
+								if (drawable != null && compressedTileCache != null) {
+									compressedTileCache.putTileBytes(pTile, bytes);
+								}
+								return drawable;
+							} catch (final LowMemoryException e) {
+								logger.error("Error decoding tile", e);
+								getMissingTileCache().putMissing(pTile, false);
+								return null;
+							}
+						}
+					});
 				}
+				// not in any of the archives
+				getMissingTileCache().putMissing(pTile, true);
 			} catch (final Throwable e) {
 				logger.error("Error loading tile", e);
+				getMissingTileCache().putMissing(pTile, false);
 			} finally {
 				if (inputStream != null) {
 					StreamUtils.closeStream(inputStream);
@@ -1,7 +1,12 @@
 package org.osmdroid.tileprovider.modules;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
+import org.osmdroid.tileprovider.CompressedMapTileCache;
 import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
 import org.osmdroid.tileprovider.IRegisterReceiver;
 import org.osmdroid.tileprovider.MapTile;
@@ -9,6 +14,7 @@ import org.osmdroid.tileprovider.MapTileRequestState;
 import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase.LowMemoryException;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+import org.osmdroid.tileprovider.util.StreamUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -113,6 +119,36 @@ public class MapTileFilesystemProvider extends MapTileFileStorageProviderBase {
 	@Override
 	public void setTileSource(final ITileSource pTileSource) {
 		mTileSource = pTileSource;
+		getMissingTileCache().clear();
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Decode a file that has been read into memory, and put the bytes in the compressed tile cache
+	 * if the tile is still current.
+	 */
+	private Drawable getDrawableAndCacheBytes(final ITileSource pTileSource, final File pFile,
+			final MapTile pTile, final byte[] pBytes, final boolean pFileExpired)
+			throws LowMemoryException {
+		final Drawable drawable = pTileSource.getDrawable(new ByteArrayInputStream(pBytes));
+		if (drawable == null) {
+			// if we couldn't load it then it's invalid - delete it
+			pFile.delete();
+			return null;
+		}
+		final CompressedMapTileCache compressedTileCache = getCompressedTileCache();
+		if (pFileExpired) {
+			if (DEBUGMODE) {
+				logger.debug("Tile expired: " + pTile);
+			}
+			drawable.setState(new int[] {ExpirableBitmapDrawable.EXPIRED });
+		} else if (compressedTileCache != null) {
+			compressedTileCache.putTileBytes(pTile, pBytes);
+		}
+		return drawable;
 	}
 
 	// ===========================================================
@@ -124,7 +160,8 @@ public class MapTileFilesystemProvider extends MapTileFileStorageProviderBase {
 		@Override
 		public Drawable loadTile(final MapTileRequestState pState) throws CantContinueException {
 
-			if (mTileSource == null) {
+			final ITileSource tileSource = mTileSource;
+			if (tileSource == null) {
 				return null;
 			}
 
@@ -141,33 +178,45 @@ public class MapTileFilesystemProvider extends MapTileFileStorageProviderBase {
 			// Check the tile source to see if its file is available and if so, then render the
 			// drawable and return the tile
 			final File file = new File(TILE_PATH_BASE,
-					mTileSource.getTileRelativeFilenameString(tile) + TILE_PATH_EXTENSION);
+					tileSource.getTileRelativeFilenameString(tile) + TILE_PATH_EXTENSION);
 			if (file.exists()) {
 
-				try {
-					final Drawable drawable = mTileSource.getDrawable(file.getPath());
+				// Check to see if file has expired
+				final long now = System.currentTimeMillis();
+				final long lastModified = file.lastModified();
+				final boolean fileExpired = lastModified < now - mMaximumCachedFileAge;
 
-					// Check to see if file has expired
-					final long now = System.currentTimeMillis();
-					final long lastModified = file.lastModified();
-					final boolean fileExpired = lastModified < now - mMaximumCachedFileAge;
+				// read the file here and decode it on the decode stage
+				InputStream in = null;
+				final byte[] bytes;
+				try {
+					in = new FileInputStream(file);
+					bytes = StreamUtils.toByteArray(in);
+				} catch (final IOException e) {
+					logger.warn("IOException reading MapTile: " + tile + " : " + e);
+					return null;
+				} finally {
+					StreamUtils.closeStream(in);
+				}
 
-					if (fileExpired) {
-						if (DEBUGMODE) {
-							logger.debug("Tile expired: " + tile);
+				return decodeLater(pState, new ITileDecoder() {
+					@Override
+					public Drawable decode() throws CantContinueException {
+						try {
+							return getDrawableAndCacheBytes(tileSource, file, tile, bytes,
+									fileExpired);
+						} catch (final LowMemoryException e) {
+							// low memory so empty the queue
+							logger.warn("LowMemoryException decoding MapTile: " + tile + " : " + e);
+							throw new CantContinueException(e);
 						}
-						drawable.setState(new int[] {ExpirableBitmapDrawable.EXPIRED });
 					}
-
-					return drawable;
-				} catch (final LowMemoryException e) {
-					// low memory so empty the queue
-					logger.warn("LowMemoryException downloading MapTile: " + tile + " : " + e);
-					throw new CantContinueException(e);
-				}
+				});
 			}
 
-			// If we get here then there is no file in the file cache
+			// If we get here then there is no file in the file cache. It may be downloaded soon, so
+			// only skip it for a short time.
+			getMissingTileCache().putMissing(tile, false);
 			return null;
 		}
 	}
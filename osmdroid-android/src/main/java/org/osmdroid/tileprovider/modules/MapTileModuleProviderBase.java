@@ -1,16 +1,18 @@
 package org.osmdroid.tileprovider.modules;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import org.osmdroid.tileprovider.CompressedMapTileCache;
 import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.tileprovider.MapTileTrace;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.slf4j.Logger;
@@ -79,97 +81,465 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 	 */
 	public abstract void setTileSource(ITileSource tileSource);
 
-	private final ExecutorService mExecutor;
+	private final Executor mExecutor;
+	private final Executor mDecodeExecutor;
 
 	private static final Logger logger = LoggerFactory.getLogger(MapTileModuleProviderBase.class);
 
+	/** runs the delayed work of all the providers, eg the retries, see {@link #schedule} */
+	private static ScheduledExecutorService sScheduler;
+
 	protected final Object mQueueLockObject = new Object();
-	protected final HashMap<MapTile, MapTileRequestState> mWorking;
-	protected final LinkedHashMap<MapTile, MapTileRequestState> mPending;
+	/** the tiles waiting to be loaded and being loaded */
+	protected final MapTileRequestQueue mPending;
+
+	private volatile CompressedMapTileCache mCompressedTileCache;
+
+	private final MissingTileCache mMissingTiles = new MissingTileCache();
+
+	/** reused by {@link #cancelTileRequests(int, int, int, int, int)} */
+	private final ArrayList<MapTileRequestState> mCancelledWaiting =
+		new ArrayList<MapTileRequestState>();
+	private final ArrayList<MapTileRequestState> mCancelledWorking =
+		new ArrayList<MapTileRequestState>();
+	private long mCancelledCount;
+
+	/** the number of tile loaders that may run at the same time, guarded by mQueueLockObject */
+	private int mConcurrencyLimit;
+	/** the number of tile loaders submitted to the executor, guarded by mQueueLockObject */
+	private int mActiveLoaders;
+	/**
+	 * the number of tiles handed to the decode stage that haven't been decoded yet, guarded by
+	 * mQueueLockObject
+	 */
+	private int mDecodingTiles;
+	private boolean mDetached;
+	private boolean mPaused;
+
+	private volatile AdaptiveConcurrencyController mConcurrencyController;
+
+	/**
+	 * @param pThreadPoolSize
+	 *            the number of tiles this provider loads at the same time, on the threads of the
+	 *            shared {@link MapTileExecutor}
+	 */
+	public MapTileModuleProviderBase(final int pThreadPoolSize, final int pPendingQueueSize) {
+		this(pThreadPoolSize, pPendingQueueSize, MapTileExecutor.getInstance());
+	}
+
+	/**
+	 * @param pExecutor
+	 *            the executor to run the tile loaders on
+	 */
+	protected MapTileModuleProviderBase(final int pThreadPoolSize, final int pPendingQueueSize,
+			final Executor pExecutor) {
+		this(pThreadPoolSize, pPendingQueueSize, pExecutor, MapTileDecoder.getInstance());
+	}
 
-	public MapTileModuleProviderBase(int pThreadPoolSize, final int pPendingQueueSize) {
+	/**
+	 * @param pExecutor
+	 *            the executor to run the tile loaders on
+	 * @param pDecodeExecutor
+	 *            the executor to decode the fetched tiles on
+	 */
+	protected MapTileModuleProviderBase(int pThreadPoolSize, final int pPendingQueueSize,
+			final Executor pExecutor, final Executor pDecodeExecutor) {
 		if (pPendingQueueSize < pThreadPoolSize) {
 			logger.warn("The pending queue size is smaller than the thread pool size. Automatically reducing the thread pool size.");
 			pThreadPoolSize = pPendingQueueSize;
 		}
-		mExecutor = Executors.newFixedThreadPool(pThreadPoolSize,
-				new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, getThreadGroupName()));
+		mExecutor = pExecutor;
+		mDecodeExecutor = pDecodeExecutor;
+		mConcurrencyLimit = pThreadPoolSize;
 
-		mWorking = new HashMap<MapTile, MapTileRequestState>();
-		mPending = new LinkedHashMap<MapTile, MapTileRequestState>(pPendingQueueSize + 2, 0.1f,
-				true) {
+		mPending = new MapTileRequestQueue(pPendingQueueSize);
+	}
 
-			private static final long serialVersionUID = 6455337315681858866L;
+	/**
+	 * @return the number of tiles this provider loads at the same time
+	 */
+	public int getConcurrencyLimit() {
+		synchronized (mQueueLockObject) {
+			return mConcurrencyLimit;
+		}
+	}
 
-			@Override
-			protected boolean removeEldestEntry(
-					final Map.Entry<MapTile, MapTileRequestState> pEldest) {
-				if (size() > pPendingQueueSize) {
-					MapTile result = null;
+	/**
+	 * Change the number of tiles this provider loads at the same time. When it's lowered, the tile
+	 * loaders over the limit stop after the tile they are loading.
+	 */
+	public void setConcurrencyLimit(final int pConcurrencyLimit) {
+		if (pConcurrencyLimit < 1) {
+			throw new IllegalArgumentException("pConcurrencyLimit must be at least 1");
+		}
+		synchronized (mQueueLockObject) {
+			mConcurrencyLimit = pConcurrencyLimit;
+		}
+		startTileLoaders();
+	}
 
-					// get the oldest tile that isn't in the mWorking queue
-					Iterator<MapTile> iterator = mPending.keySet().iterator();
+	/**
+	 * Let a controller adjust the concurrency limit from the time it takes to load the tiles. It
+	 * starts from the current limit.
+	 *
+	 * @param pConcurrencyController
+	 *            the controller, or null to keep the current limit from now on
+	 */
+	public void setConcurrencyController(
+			final AdaptiveConcurrencyController pConcurrencyController) {
+		if (pConcurrencyController != null) {
+			pConcurrencyController.reset(getConcurrencyLimit());
+			setConcurrencyLimit(pConcurrencyController.getConcurrencyLimit());
+		}
+		mConcurrencyController = pConcurrencyController;
+	}
 
-					while (result == null && iterator.hasNext()) {
-						final MapTile tile = iterator.next();
-						if (!mWorking.containsKey(tile)) {
-							result = tile;
-						}
-					}
+	public AdaptiveConcurrencyController getConcurrencyController() {
+		return mConcurrencyController;
+	}
 
-					if (result != null) {
-						MapTileRequestState state = mPending.get(result);
-						removeTileFromQueues(result);
-						state.getCallback().mapTileRequestFailed(state);
+	/**
+	 * Stop loading tiles, eg while the network is down. The requests are kept, and more can be
+	 * made, until {@link #resume()}. The tile loaders that are running finish the tile they are
+	 * loading.
+	 */
+	public void pause() {
+		synchronized (mQueueLockObject) {
+			mPaused = true;
+		}
+	}
+
+	public void resume() {
+		synchronized (mQueueLockObject) {
+			mPaused = false;
+		}
+		startTileLoaders();
+	}
+
+	public boolean isPaused() {
+		synchronized (mQueueLockObject) {
+			return mPaused;
+		}
+	}
+
+	protected boolean isDetached() {
+		synchronized (mQueueLockObject) {
+			return mDetached;
+		}
+	}
+
+	/**
+	 * @return the number of tile loaders of this provider that are running or waiting for a
+	 *         thread
+	 */
+	public int getActiveLoaderCount() {
+		synchronized (mQueueLockObject) {
+			return mActiveLoaders;
+		}
+	}
+
+	/**
+	 * @return the number of tiles waiting to be fetched by a tile loader
+	 */
+	public int getFetchQueueDepth() {
+		synchronized (mQueueLockObject) {
+			return mPending.getWaitingCount();
+		}
+	}
+
+	/**
+	 * @return the number of tiles this provider has fetched that are waiting to be decoded or
+	 *         being decoded. See {@link MapTileDecoder} for the decode stage of all the providers.
+	 */
+	public int getDecodeQueueDepth() {
+		synchronized (mQueueLockObject) {
+			return mDecodingTiles;
+		}
+	}
+
+	/**
+	 * Set a cache to put the compressed bytes of the tiles this provider reads into.
+	 *
+	 * @param pCompressedTileCache
+	 *            the cache, or null to not use one
+	 */
+	public void setCompressedTileCache(final CompressedMapTileCache pCompressedTileCache) {
+		mCompressedTileCache = pCompressedTileCache;
+	}
+
+	public CompressedMapTileCache getCompressedTileCache() {
+		return mCompressedTileCache;
+	}
+
+	/**
+	 * @return the tiles that this provider recently failed to load, which aren't requested from it
+	 *         again until they expire. Implementations clear it when the tile source changes.
+	 */
+	public MissingTileCache getMissingTileCache() {
+		return mMissingTiles;
+	}
+
+	/**
+	 * @param pViewportPriority
+	 *            true to load the tiles closest to the center of the viewport first, false to load
+	 *            the most recently requested tiles first
+	 * @see MapTileRequestQueue#setViewportPriority(boolean)
+	 */
+	public void setViewportPriority(final boolean pViewportPriority) {
+		synchronized (mQueueLockObject) {
+			mPending.setViewportPriority(pViewportPriority);
+		}
+	}
+
+	/**
+	 * Set the range of visible tiles. This is called on every frame.
+	 *
+	 * @see MapTileRequestQueue#setViewport(int, int, int, int, int)
+	 */
+	public void setViewport(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom) {
+		synchronized (mQueueLockObject) {
+			mPending.setViewport(pZoomLevel, pLeft, pTop, pRight, pBottom);
+		}
+	}
+
+	/**
+	 * @return the number of requests that were cancelled because their tiles left the viewport
+	 */
+	public long getCancelledCount() {
+		synchronized (mQueueLockObject) {
+			return mCancelledCount;
+		}
+	}
+
+	/**
+	 * Cancel the requests for all the tiles that aren't within a range of tiles. The waiting
+	 * requests are removed from the queue and the loading of the others is aborted if possible
+	 * (see {@link #abortTileLoad(MapTileRequestState)}). The callback of each request is told that
+	 * it failed, and it can check {@link MapTileRequestState#isCancelled()}.
+	 *
+	 * @see MapTileRequestQueue#removeOutside(int, int, int, int, int, java.util.List,
+	 *      java.util.List)
+	 * @return the number of requests cancelled
+	 */
+	public int cancelTileRequests(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom) {
+		synchronized (mCancelledWaiting) {
+			synchronized (mQueueLockObject) {
+				mPending.removeOutside(pZoomLevel, pLeft, pTop, pRight, pBottom,
+						mCancelledWaiting, mCancelledWorking);
+				// count the working ones that we haven't cancelled before
+				for (int i = mCancelledWorking.size() - 1; i >= 0; i--) {
+					if (mCancelledWorking.get(i).isCancelled()) {
+						mCancelledWorking.remove(i);
 					}
 				}
-				return false;
+				mCancelledCount += mCancelledWaiting.size() + mCancelledWorking.size();
+			}
+			final int count = mCancelledWaiting.size() + mCancelledWorking.size();
+			if (DEBUGMODE && count > 0) {
+				logger.debug(getName() + " cancelled " + count + " tile requests");
 			}
-		};
+
+			for (int i = 0; i < mCancelledWorking.size(); i++) {
+				final MapTileRequestState state = mCancelledWorking.get(i);
+				state.cancel();
+				abortTileLoad(state);
+			}
+			for (int i = 0; i < mCancelledWaiting.size(); i++) {
+				final MapTileRequestState state = mCancelledWaiting.get(i);
+				state.cancel();
+				state.getCallback().mapTileRequestFailed(state);
+			}
+			mCancelledWaiting.clear();
+			mCancelledWorking.clear();
+			return count;
+		}
+	}
+
+	/**
+	 * Called when the request for a tile that is being loaded is cancelled. Override this to stop
+	 * loading the tile, eg by aborting a download, so that {@link TileLoader#loadTile} fails
+	 * sooner. Does nothing by default.
+	 */
+	protected void abortTileLoad(final MapTileRequestState pState) {
+		// Do nothing by default
 	}
 
 	public void loadMapTileAsync(final MapTileRequestState pState) {
+		pState.trace(MapTileTrace.EVENT_ENQUEUED);
+		final MapTileRequestState dropped;
 		synchronized (mQueueLockObject) {
 			// this will put the tile in the queue, or move it to the front of
 			// the queue if it's already present
-			mPending.put(pState.getMapTile(), pState);
+			dropped = mPending.put(pState);
+		}
+		if (dropped != null) {
+			dropped.getCallback().mapTileRequestFailed(dropped);
+		}
+		startTileLoaders();
+	}
+
+	/**
+	 * Submit a tile loader to the executor for each waiting tile that no loader is about to take,
+	 * up to the concurrency limit.
+	 */
+	private void startTileLoaders() {
+		int count;
+		synchronized (mQueueLockObject) {
+			if (mDetached || mPaused) {
+				return;
+			}
+			final int waiting = mPending.getWaitingCount();
+			// the tiles in the decode stage are still in the queue but no loader holds them
+			final int idleLoaders = mActiveLoaders - (mPending.size() - waiting - mDecodingTiles);
+			count = Math.min(mConcurrencyLimit - mActiveLoaders, waiting - idleLoaders);
+			if (count <= 0) {
+				return;
+			}
+			mActiveLoaders += count;
 		}
 		try {
-			mExecutor.execute(getTileLoader());
+			for (; count > 0; count--) {
+				mExecutor.execute(getTileLoader());
+			}
 		} catch (final RejectedExecutionException e) {
 			logger.warn("RejectedExecutionException", e);
+			synchronized (mQueueLockObject) {
+				mActiveLoaders -= count;
+			}
+		}
+	}
+
+	/**
+	 * Tell the concurrency controller, if any, how long a tile took to load.
+	 */
+	private void onTileLoadTime(final long pStartTime) {
+		final AdaptiveConcurrencyController controller = mConcurrencyController;
+		if (controller == null) {
+			return;
+		}
+		final long now = System.nanoTime();
+		final boolean backlog;
+		synchronized (mQueueLockObject) {
+			backlog = mPending.getWaitingCount() > 0;
+		}
+		final int limit = controller.addSample(now - pStartTime, backlog, now);
+		if (limit != getConcurrencyLimit()) {
+			setConcurrencyLimit(limit);
+		}
+	}
+
+	/**
+	 * Move a request that is no longer a background request to the front of the queue, if it's
+	 * waiting in this provider's queue.
+	 *
+	 * @see MapTileRequestState#isBackground()
+	 */
+	public void promoteTileRequest(final MapTileRequestState pState) {
+		synchronized (mQueueLockObject) {
+			if (mPending.get(pState.getMapTile()) == pState
+					&& !mPending.isWorking(pState.getMapTile())) {
+				mPending.put(pState);
+			}
 		}
 	}
 
 	private void clearQueue() {
 		synchronized (mQueueLockObject) {
 			mPending.clear();
-			mWorking.clear();
 		}
 	}
 
 	/**
-	 * Detach, we're shutting down - Stops all workers.
+	 * Remove the waiting requests and tell their callbacks that they failed, so that they can be
+	 * requested again. The tiles being loaded are delivered as usual.
+	 */
+	private void failWaitingTiles() {
+		final ArrayList<MapTileRequestState> waiting = new ArrayList<MapTileRequestState>();
+		synchronized (mQueueLockObject) {
+			mPending.removeWaiting(waiting);
+		}
+		for (int i = 0; i < waiting.size(); i++) {
+			final MapTileRequestState state = waiting.get(i);
+			state.getCallback().mapTileRequestFailed(state);
+		}
+	}
+
+	/**
+	 * Put a tile that is being loaded back in the queue, for a tile loader to load it again. A
+	 * request that has been cancelled meanwhile fails instead.
+	 */
+	private void requeueTile(final MapTileRequestState pState) {
+		if (pState.isCancelled()) {
+			removeTileFromQueues(pState.getMapTile());
+			pState.getCallback().mapTileRequestFailed(pState);
+			return;
+		}
+		final boolean requeued;
+		synchronized (mQueueLockObject) {
+			requeued = mPending.requeue(pState.getMapTile()) != null;
+		}
+		if (requeued) {
+			startTileLoaders();
+		}
+	}
+
+	/**
+	 * Run something after a delay, on a thread shared by all the providers.
+	 */
+	protected void schedule(final Runnable pRunnable, final long pDelay) {
+		synchronized (MapTileModuleProviderBase.class) {
+			if (sScheduler == null) {
+				final ThreadFactory factory = new ConfigurablePriorityThreadFactory(
+						Thread.NORM_PRIORITY, "MapTileScheduler");
+				sScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable pRunnable) {
+						final Thread thread = factory.newThread(pRunnable);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			sScheduler.schedule(pRunnable, pDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Detach, we're shutting down - Stops all workers. The tile loaders that are running finish
+	 * the tile they are loading, the threads are shared with the other providers.
 	 */
 	public void detach() {
+		synchronized (mQueueLockObject) {
+			mDetached = true;
+		}
 		this.clearQueue();
-		this.mExecutor.shutdown();
 	}
 
 	void removeTileFromQueues(final MapTile mapTile) {
 		synchronized (mQueueLockObject) {
 			mPending.remove(mapTile);
-			mWorking.remove(mapTile);
 		}
 	}
 
 	/**
 	 * Load the requested tile. An abstract internal class whose objects are used by worker threads
 	 * to acquire tiles from servers. It processes tiles from the 'pending' set to the 'working' set
-	 * as they become available. The key unimplemented method is 'loadTile'.
+	 * as they become available. The key unimplemented method is 'loadTile'. It can fetch the tile
+	 * and leave decoding it to the {@link MapTileDecoder}, see {@link #decodeLater}.<br />
+	 * A loader loads one tile each time it runs and is then submitted to the executor again if
+	 * there are more tiles, so that a provider with slow tiles, eg the downloader, can't keep the
+	 * shared threads from the other providers.
 	 */
 	protected abstract class TileLoader implements Runnable {
 
+		/** set by {@link #decodeLater}, so that {@link #run()} leaves the tile to the decode stage */
+		private boolean mDecodeLater;
+
+		/** set by {@link #retryLater}, so that {@link #run()} doesn't deliver the tile */
+		private boolean mRetryLater;
+
 		/**
 		 * Load the requested tile.
 		 *
@@ -189,29 +559,130 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 			// Do nothing by default
 		}
 
+		/**
+		 * Submit this loader to the executor again if there are more tiles to load, otherwise
+		 * count it out.
+		 */
+		private void resubmit() {
+			synchronized (mQueueLockObject) {
+				// like nextTile(), decide within the lock so that a tile that's put in the queue
+				// after this either gets this loader or starts a new one
+				if (mDetached || mPaused || mActiveLoaders > mConcurrencyLimit
+						|| mPending.getWaitingCount() == 0) {
+					mActiveLoaders--;
+					return;
+				}
+			}
+			try {
+				mExecutor.execute(this);
+			} catch (final RejectedExecutionException e) {
+				logger.warn("RejectedExecutionException", e);
+				synchronized (mQueueLockObject) {
+					mActiveLoaders--;
+				}
+			}
+		}
+
 		private MapTileRequestState nextTile() {
+			synchronized (mQueueLockObject) {
+				// get the most recently accessed tile that's not already being processed, unless the
+				// limit has been lowered. Stopping within the lock means that a tile that's put in
+				// the queue after this either gets this loader or starts a new one.
+				final MapTileRequestState state = mPaused || mActiveLoaders > mConcurrencyLimit ? null
+						: mPending.next();
+				if (state == null) {
+					mActiveLoaders--;
+				}
+				return state;
+			}
+		}
 
+		/**
+		 * Hand a tile that has been fetched to the decode stage, so that this loader can fetch the
+		 * next tile while it's decoded. Call this at the end of {@link #loadTile} and return its
+		 * result. The decoded tile is delivered as if {@link #loadTile} had returned it.
+		 *
+		 * @return null
+		 */
+		protected final Drawable decodeLater(final MapTileRequestState pState,
+				final ITileDecoder pDecoder) {
+			// before the decode stage can deliver the tile to the next provider
+			pState.trace(MapTileTrace.EVENT_LOAD_FINISHED);
 			synchronized (mQueueLockObject) {
-				MapTile result = null;
-
-				// get the most recently accessed tile
-				// - the last item in the iterator that's not already being
-				// processed
-				Iterator<MapTile> iterator = mPending.keySet().iterator();
-
-				// TODO this iterates the whole list, make this faster...
-				while (iterator.hasNext()) {
-					final MapTile tile = iterator.next();
-					if (!mWorking.containsKey(tile)) {
-						result = tile;
+				mDecodingTiles++;
+			}
+			mDecodeLater = true;
+			try {
+				mDecodeExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						decode(pState, pDecoder);
 					}
-				}
+				});
+			} catch (final RejectedExecutionException e) {
+				logger.warn("RejectedExecutionException", e);
+				decode(pState, pDecoder);
+			}
+			return null;
+		}
+
+		/**
+		 * Put the tile back in the queue after a delay, to be loaded again, rather than deliver
+		 * it. Call this at the end of {@link #loadTile} and return its result. The request stays
+		 * in progress meanwhile. See {@link MapTileRequestState#getRetryCount()}.
+		 *
+		 * @param pDelay
+		 *            the delay in milliseconds, or 0 to put it back straight away, eg because the
+		 *            provider has been paused
+		 * @return null
+		 */
+		protected final Drawable retryLater(final MapTileRequestState pState, final long pDelay) {
+			mRetryLater = true;
+			if (pDelay <= 0) {
+				requeueTile(pState);
+			} else {
+				schedule(new Runnable() {
+					@Override
+					public void run() {
+						requeueTile(pState);
+					}
+				}, pDelay);
+			}
+			return null;
+		}
 
-				if (result != null) {
-					mWorking.put(result, mPending.get(result));
+		private void decode(final MapTileRequestState pState, final ITileDecoder pDecoder) {
+			Drawable result = null;
+			try {
+				if (!pState.isCancelled()) {
+					pState.trace(MapTileTrace.EVENT_DECODE_STARTED);
+					result = pDecoder.decode();
+					pState.trace(MapTileTrace.EVENT_DECODE_FINISHED);
+				}
+			} catch (final CantContinueException e) {
+				logger.info("Tile decoder can't continue: " + pState.getMapTile(), e);
+				failWaitingTiles();
+			} catch (final Throwable e) {
+				logger.error("Error decoding tile: " + pState.getMapTile(), e);
+			} finally {
+				synchronized (mQueueLockObject) {
+					mDecodingTiles--;
 				}
+			}
+			deliver(pState, result);
+		}
 
-				return (result != null ? mPending.get(result) : null);
+		private void deliver(final MapTileRequestState pState, final Drawable pResult) {
+			final MapTileTrace trace = pState.getTrace();
+			if (trace != null) {
+				trace.finish(getName(), pResult != null);
+			}
+			if (pResult == null) {
+				tileLoadedFailed(pState);
+			} else if (ExpirableBitmapDrawable.isDrawableExpired(pResult)) {
+				tileLoadedExpired(pState, pResult);
+			} else {
+				tileLoaded(pState, pResult);
 			}
 		}
 
@@ -229,6 +700,7 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 		 */
 		protected void tileLoadedExpired(final MapTileRequestState pState, final Drawable pDrawable) {
 			removeTileFromQueues(pState.getMapTile());
+			pState.setExpiredTile(pDrawable);
 			pState.getCallback().mapTileRequestExpiredTile(pState, pDrawable);
 		}
 
@@ -242,39 +714,60 @@ public abstract class MapTileModuleProviderBase implements OpenStreetMapTileProv
 		 */
 		@Override
 		final public void run() {
+			final MapTileRequestState state = nextTile();
+			if (state == null) {
+				if (DEBUGMODE) {
+					logger.debug("No more tiles");
+				}
+				return;
+			}
 
 			onTileLoaderInit();
 
-			MapTileRequestState state;
-			Drawable result = null;
-			while ((state = nextTile()) != null) {
+			boolean finished = false;
+			try {
+				state.trace(MapTileTrace.EVENT_DEQUEUED);
 				if (DEBUGMODE) {
 					logger.debug("Next tile: " + state.getMapTile());
 				}
+				Drawable result = null;
 				try {
-					result = null;
-					result = loadTile(state);
+					mDecodeLater = false;
+					mRetryLater = false;
+					if (!state.isCancelled()) {
+						final long startTime = System.nanoTime();
+						state.trace(MapTileTrace.EVENT_LOAD_STARTED);
+						result = loadTile(state);
+						if (!mDecodeLater) {
+							state.trace(MapTileTrace.EVENT_LOAD_FINISHED);
+						}
+						if (result != null || mDecodeLater) {
+							onTileLoadTime(startTime);
+						}
+					}
 				} catch (final CantContinueException e) {
 					logger.info("Tile loader can't continue: " + state.getMapTile(), e);
-					clearQueue();
+					failWaitingTiles();
 				} catch (final Throwable e) {
 					logger.error("Error downloading tile: " + state.getMapTile(), e);
 				}
 
-				if (result == null) {
-					tileLoadedFailed(state);
-				} else if (ExpirableBitmapDrawable.isDrawableExpired(result)) {
-					tileLoadedExpired(state, result);
-				} else {
-					tileLoaded(state, result);
+				if (!mDecodeLater && !mRetryLater) {
+					deliver(state, result);
 				}
-
-				if (DEBUGMODE) {
-					logger.debug("No more tiles");
+				finished = true;
+			} finally {
+				if (!finished) {
+					// a callback threw, so this loader won't be submitted again
+					synchronized (mQueueLockObject) {
+						mActiveLoaders--;
+					}
 				}
 			}
 
 			onTileLoaderShutdown();
+
+			resubmit();
 		}
 	}
 
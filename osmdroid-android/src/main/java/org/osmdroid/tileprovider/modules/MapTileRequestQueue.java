@@ -0,0 +1,506 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.util.List;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.util.LongHashMap;
+import org.osmdroid.util.MyMath;
+
+/**
+ * The queue of tile requests of a {@link MapTileModuleProviderBase}. The requests that are waiting
+ * to be loaded are kept in a linked list in most recently requested first order, and all requests
+ * are indexed by tile key, so requesting a tile again, taking the next tile to load and removing a
+ * tile are all constant time operations. A request stays in the queue while it's being loaded
+ * ("working") so that it isn't loaded twice.<br />
+ * With {@link #setViewportPriority(boolean)} the waiting requests are also kept in a binary heap,
+ * and the next tile to load is the one closest to the center of the viewport (see
+ * {@link #setViewport(int, int, int, int, int)}), rather than the most recently requested one.
+ * Taking the next tile and removing a tile are then O(log n), and moving the viewport is O(n).
+ * When the queue is full, the least recently requested tile is dropped in both cases.<br />
+ * Background requests (see {@link MapTileRequestState#isBackground()}) are loaded after all the
+ * others, in the order they were requested, and are dropped first.<br />
+ * This class is not thread safe.
+ */
+public class MapTileRequestQueue {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** added to the priority of background requests, more than any distance */
+	private static final double BACKGROUND_PRIORITY = 1E9;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final int mMaximumSize;
+
+	/** all the requests, waiting or working, by tile key */
+	private final LongHashMap<Node> mIndex;
+
+	/**
+	 * The head of a circular list of the waiting requests. The node after it is the most recently
+	 * requested one and the node before it is the least recently requested one.
+	 */
+	private final Node mHead = new Node(null, 0);
+
+	private int mWaitingCount;
+
+	private boolean mViewportPriority;
+
+	/** the waiting requests by priority, if {@link #mViewportPriority} is set */
+	private Node[] mHeap = new Node[16];
+	private int mHeapSize;
+
+	/** incremented for each request, so that the most recent one wins a tie */
+	private long mSequence;
+
+	/** reused by {@link #removeOutside(int, int, int, int, int, List, List)} */
+	private long[] mKeys;
+
+	private int mZoomLevel = -1;
+	private double mCenterX;
+	private double mCenterY;
+	private int mViewportSize;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pMaximumSize
+	 *            the maximum number of requests in the queue, including the ones being loaded
+	 */
+	public MapTileRequestQueue(final int pMaximumSize) {
+		mMaximumSize = pMaximumSize;
+		mIndex = new LongHashMap<Node>(pMaximumSize + 1);
+		mHead.mNext = mHead.mPrevious = mHead;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int getMaximumSize() {
+		return mMaximumSize;
+	}
+
+	/**
+	 * @return the number of requests in the queue, including the ones being loaded
+	 */
+	public int size() {
+		return mIndex.size();
+	}
+
+	public boolean isEmpty() {
+		return mIndex.isEmpty();
+	}
+
+	/**
+	 * @return the number of requests waiting to be loaded
+	 */
+	public int getWaitingCount() {
+		return mWaitingCount;
+	}
+
+	public boolean isViewportPriority() {
+		return mViewportPriority;
+	}
+
+	/**
+	 * @param pViewportPriority
+	 *            true to load the tiles closest to the center of the viewport first, false to load
+	 *            the most recently requested tiles first
+	 */
+	public void setViewportPriority(final boolean pViewportPriority) {
+		if (pViewportPriority == mViewportPriority) {
+			return;
+		}
+		mViewportPriority = pViewportPriority;
+		if (pViewportPriority) {
+			for (Node node = mHead.mNext; node != mHead; node = node.mNext) {
+				node.mPriority = getPriority(node.mState);
+				heapAdd(node);
+			}
+		} else {
+			clearHeap();
+		}
+	}
+
+	/**
+	 * Set the range of visible tiles. If the center of the viewport changed, the priorities of all
+	 * the waiting tiles are updated.
+	 *
+	 * @param pZoomLevel
+	 *            the zoom level of the map
+	 * @param pLeft
+	 *            the x coordinate of the left most visible tile, which can be outside the range of
+	 *            the zoom level if the map wraps around
+	 * @param pTop
+	 *            the y coordinate of the top most visible tile
+	 * @param pRight
+	 *            the x coordinate of the right most visible tile
+	 * @param pBottom
+	 *            the y coordinate of the bottom most visible tile
+	 */
+	public void setViewport(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom) {
+		final double centerX = (pLeft + pRight + 1) / 2.0;
+		final double centerY = (pTop + pBottom + 1) / 2.0;
+		if (pZoomLevel == mZoomLevel && centerX == mCenterX && centerY == mCenterY) {
+			return;
+		}
+		mZoomLevel = pZoomLevel;
+		mCenterX = centerX;
+		mCenterY = centerY;
+		mViewportSize = Math.max(pRight - pLeft, pBottom - pTop) + 1;
+		if (mViewportPriority) {
+			for (int i = 0; i < mHeapSize; i++) {
+				mHeap[i].mPriority = getPriority(mHeap[i].mState);
+			}
+			for (int i = mHeapSize / 2 - 1; i >= 0; i--) {
+				siftDown(i);
+			}
+		}
+	}
+
+	public boolean contains(final MapTile pTile) {
+		return mIndex.containsKey(pTile.getTileKey());
+	}
+
+	/**
+	 * @return whether the tile is being loaded
+	 */
+	public boolean isWorking(final MapTile pTile) {
+		final Node node = mIndex.get(pTile.getTileKey());
+		return node != null && node.mWorking;
+	}
+
+	/**
+	 * @return the latest request for the tile, or null if it isn't in the queue
+	 */
+	public MapTileRequestState get(final MapTile pTile) {
+		final Node node = mIndex.get(pTile.getTileKey());
+		return node == null ? null : node.mState;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Put a request at the front of the queue, or move it to the front if the tile is already
+	 * waiting. A background request goes to the back. If the queue is full, the least recently
+	 * requested tile that isn't being loaded is dropped.
+	 *
+	 * @return the request that was dropped, or null if none was
+	 */
+	public MapTileRequestState put(final MapTileRequestState pState) {
+		final long tileKey = pState.getMapTile().getTileKey();
+		Node node = mIndex.get(tileKey);
+		if (node != null) {
+			node.mState = pState;
+			if (!node.mWorking) {
+				unlink(node);
+				link(node);
+				node.mSequence = ++mSequence;
+				if (mViewportPriority) {
+					node.mPriority = getPriority(pState);
+					heapAdd(node);
+				}
+			}
+			return null;
+		}
+
+		node = new Node(pState, tileKey);
+		node.mSequence = ++mSequence;
+		mIndex.put(tileKey, node);
+		link(node);
+		if (mViewportPriority) {
+			node.mPriority = getPriority(pState);
+			heapAdd(node);
+		}
+
+		if (mIndex.size() > mMaximumSize) {
+			final Node eldest = mHead.mPrevious;
+			unlink(eldest);
+			mIndex.remove(eldest.mTileKey);
+			return eldest.mState;
+		}
+		return null;
+	}
+
+	/**
+	 * Take the most recently requested tile that is waiting, or the one closest to the center of
+	 * the viewport, and mark it as being loaded. It stays in the queue until it's removed.
+	 *
+	 * @return the request, or null if there are no waiting requests
+	 */
+	public MapTileRequestState next() {
+		final Node node = mViewportPriority ? (mHeapSize == 0 ? mHead : mHeap[0]) : mHead.mNext;
+		if (node == mHead) {
+			return null;
+		}
+		unlink(node);
+		node.mWorking = true;
+		return node.mState;
+	}
+
+	/**
+	 * @return the latest request for the tile, or null if it wasn't in the queue
+	 */
+	public MapTileRequestState remove(final MapTile pTile) {
+		final Node node = mIndex.remove(pTile.getTileKey());
+		if (node == null) {
+			return null;
+		}
+		if (!node.mWorking) {
+			unlink(node);
+		}
+		return node.mState;
+	}
+
+	/**
+	 * Put a tile that is being loaded back with the waiting requests, eg to try again later. It
+	 * goes to the front of the queue, or to the back if it's a background request.
+	 *
+	 * @return the latest request for the tile, or null if it isn't being loaded
+	 */
+	public MapTileRequestState requeue(final MapTile pTile) {
+		final Node node = mIndex.get(pTile.getTileKey());
+		if (node == null || !node.mWorking) {
+			return null;
+		}
+		node.mWorking = false;
+		link(node);
+		node.mSequence = ++mSequence;
+		if (mViewportPriority) {
+			node.mPriority = getPriority(node.mState);
+			heapAdd(node);
+		}
+		return node.mState;
+	}
+
+	/**
+	 * Remove the waiting requests for the tiles that aren't within a range of tiles, and find the
+	 * ones that are being loaded. Tiles of other zoom levels are never within the range. Background
+	 * requests are left alone.
+	 *
+	 * @param pZoomLevel
+	 *            the zoom level of the range
+	 * @param pLeft
+	 *            the x coordinate of the left most tile of the range, which can be outside the
+	 *            range of the zoom level if the map wraps around
+	 * @param pTop
+	 *            the y coordinate of the top most tile of the range
+	 * @param pRight
+	 *            the x coordinate of the right most tile of the range
+	 * @param pBottom
+	 *            the y coordinate of the bottom most tile of the range
+	 * @param pWaiting
+	 *            the waiting requests that were removed are added to this
+	 * @param pWorking
+	 *            the requests being loaded that are outside the range are added to this. They stay
+	 *            in the queue until they are removed after loading.
+	 */
+	public void removeOutside(final int pZoomLevel, final int pLeft, final int pTop,
+			final int pRight, final int pBottom, final List<MapTileRequestState> pWaiting,
+			final List<MapTileRequestState> pWorking) {
+		final int size = mIndex.size();
+		mKeys = mIndex.getKeys(mKeys);
+		final long[] keys = mKeys;
+		final int mapSize = 1 << pZoomLevel;
+		for (int i = 0; i < size; i++) {
+			final long tileKey = keys[i];
+			if (MapTile.getZoomLevel(tileKey) == pZoomLevel
+					&& MapTile.getY(tileKey) >= pTop && MapTile.getY(tileKey) <= pBottom
+					&& (pRight - pLeft + 1 >= mapSize
+					|| MyMath.mod(MapTile.getX(tileKey) - pLeft, mapSize) <= pRight - pLeft)) {
+				continue;
+			}
+			final Node node = mIndex.get(tileKey);
+			if (node.mState.isBackground()) {
+				continue;
+			}
+			if (node.mWorking) {
+				pWorking.add(node.mState);
+			} else {
+				unlink(node);
+				mIndex.remove(tileKey);
+				pWaiting.add(node.mState);
+			}
+		}
+	}
+
+	/**
+	 * Remove all the waiting requests. The ones being loaded stay in the queue until they are
+	 * removed after loading.
+	 *
+	 * @param pWaiting
+	 *            the waiting requests that were removed are added to this
+	 */
+	public void removeWaiting(final List<MapTileRequestState> pWaiting) {
+		while (mHead.mNext != mHead) {
+			final Node node = mHead.mNext;
+			unlink(node);
+			mIndex.remove(node.mTileKey);
+			pWaiting.add(node.mState);
+		}
+	}
+
+	public void clear() {
+		mIndex.clear();
+		mHead.mNext = mHead.mPrevious = mHead;
+		mWaitingCount = 0;
+		clearHeap();
+	}
+
+	/**
+	 * Add a node to the front of the list of waiting requests, or to the back if it's a background
+	 * request.
+	 */
+	private void link(final Node pNode) {
+		final Node previous = pNode.mState.isBackground() ? mHead.mPrevious : mHead;
+		pNode.mPrevious = previous;
+		pNode.mNext = previous.mNext;
+		previous.mNext.mPrevious = pNode;
+		previous.mNext = pNode;
+		mWaitingCount++;
+	}
+
+	/**
+	 * Remove a node from the list of waiting requests, and from the heap if it's in it.
+	 */
+	private void unlink(final Node pNode) {
+		pNode.mPrevious.mNext = pNode.mNext;
+		pNode.mNext.mPrevious = pNode.mPrevious;
+		pNode.mNext = pNode.mPrevious = null;
+		mWaitingCount--;
+		if (pNode.mHeapIndex >= 0) {
+			heapRemove(pNode.mHeapIndex);
+		}
+	}
+
+	private double getPriority(final MapTileRequestState pState) {
+		final double priority = getPriority(pState.getMapTile());
+		return pState.isBackground() ? priority + BACKGROUND_PRIORITY : priority;
+	}
+
+	/**
+	 * @return the distance of the center of the tile from the center of the viewport in tiles of
+	 *         the zoom level of the map, plus the size of the viewport for each zoom level between
+	 *         them
+	 */
+	private double getPriority(final MapTile pTile) {
+		if (mZoomLevel < 0) {
+			return 0;
+		}
+		final int zoomDelta = mZoomLevel - pTile.getZoomLevel();
+		final double scale = zoomDelta >= 0 ? 1 << zoomDelta : 1.0 / (1 << -zoomDelta);
+		final double mapSize = 1 << mZoomLevel;
+		// the map wraps around horizontally
+		double distanceX = Math.abs((pTile.getX() + 0.5) * scale - mCenterX) % mapSize;
+		distanceX = Math.min(distanceX, mapSize - distanceX);
+		final double distanceY = (pTile.getY() + 0.5) * scale - mCenterY;
+		return Math.sqrt(distanceX * distanceX + distanceY * distanceY) + Math.abs(zoomDelta)
+				* mViewportSize;
+	}
+
+	private void heapAdd(final Node pNode) {
+		if (mHeapSize == mHeap.length) {
+			final Node[] heap = new Node[mHeap.length * 2];
+			System.arraycopy(mHeap, 0, heap, 0, mHeapSize);
+			mHeap = heap;
+		}
+		mHeap[mHeapSize] = pNode;
+		pNode.mHeapIndex = mHeapSize++;
+		siftUp(pNode.mHeapIndex);
+	}
+
+	private void heapRemove(final int pIndex) {
+		final Node removed = mHeap[pIndex];
+		removed.mHeapIndex = -1;
+		final Node last = mHeap[--mHeapSize];
+		mHeap[mHeapSize] = null;
+		if (last != removed) {
+			mHeap[pIndex] = last;
+			last.mHeapIndex = pIndex;
+			siftDown(pIndex);
+			siftUp(last.mHeapIndex);
+		}
+	}
+
+	private void clearHeap() {
+		for (int i = 0; i < mHeapSize; i++) {
+			mHeap[i].mHeapIndex = -1;
+			mHeap[i] = null;
+		}
+		mHeapSize = 0;
+	}
+
+	private void siftUp(int pIndex) {
+		final Node node = mHeap[pIndex];
+		while (pIndex > 0) {
+			final int parent = (pIndex - 1) >>> 1;
+			if (!isBefore(node, mHeap[parent])) {
+				break;
+			}
+			mHeap[pIndex] = mHeap[parent];
+			mHeap[pIndex].mHeapIndex = pIndex;
+			pIndex = parent;
+		}
+		mHeap[pIndex] = node;
+		node.mHeapIndex = pIndex;
+	}
+
+	private void siftDown(int pIndex) {
+		final Node node = mHeap[pIndex];
+		while (true) {
+			int child = pIndex * 2 + 1;
+			if (child >= mHeapSize) {
+				break;
+			}
+			if (child + 1 < mHeapSize && isBefore(mHeap[child + 1], mHeap[child])) {
+				child++;
+			}
+			if (!isBefore(mHeap[child], node)) {
+				break;
+			}
+			mHeap[pIndex] = mHeap[child];
+			mHeap[pIndex].mHeapIndex = pIndex;
+			pIndex = child;
+		}
+		mHeap[pIndex] = node;
+		node.mHeapIndex = pIndex;
+	}
+
+	/**
+	 * @return whether the first node should be loaded before the second one
+	 */
+	private static boolean isBefore(final Node pNode1, final Node pNode2) {
+		return pNode1.mPriority < pNode2.mPriority
+				|| (pNode1.mPriority == pNode2.mPriority && pNode1.mSequence > pNode2.mSequence);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	private static final class Node {
+		private MapTileRequestState mState;
+		private final long mTileKey;
+		private boolean mWorking;
+		private Node mPrevious;
+		private Node mNext;
+		private int mHeapIndex = -1;
+		private double mPriority;
+		private long mSequence;
+
+		private Node(final MapTileRequestState pState, final long pTileKey) {
+			mState = pState;
+			mTileKey = pTileKey;
+		}
+	}
+}
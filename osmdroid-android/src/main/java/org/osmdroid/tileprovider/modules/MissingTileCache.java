@@ -0,0 +1,194 @@
+package org.osmdroid.tileprovider.modules;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.util.LongHashMap;
+
+/**
+ * Remembers the tiles that a {@link MapTileModuleProviderBase} failed to load, so that they are not
+ * requested from it again and again while they are on screen. A permanent miss, eg a tile that the
+ * server doesn't have or that isn't in any archive, is remembered for longer than a transient
+ * failure, eg a network error. Each miss is forgotten after its time to live, or earlier when it's
+ * removed or the cache is cleared, eg because the tile source changed. The number of misses is
+ * bounded, the oldest are forgotten first.<br />
+ * Every provider checks the cache for every tile on screen, so a lookup doesn't allocate: the
+ * misses are kept by primitive tile key, and in a list from the oldest to the newest.
+ */
+public class MissingTileCache implements OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	/** the misses by tile key */
+	private final LongHashMap<Miss> mMisses;
+	/** the first miss to evict, guarded by this */
+	private Miss mOldest;
+	/** the last miss put, guarded by this */
+	private Miss mNewest;
+	private final int mMaximumSize;
+
+	private long mPermanentTimeToLive;
+	private long mTransientTimeToLive;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public MissingTileCache() {
+		this(TILE_MISSING_CACHE_SIZE_DEFAULT, TILE_MISSING_PERMANENT_TTL_DEFAULT,
+				TILE_MISSING_TRANSIENT_TTL_DEFAULT);
+	}
+
+	/**
+	 * @param pMaximumSize
+	 *            the number of misses to remember
+	 * @param pPermanentTimeToLive
+	 *            how long to remember a permanent miss, in milliseconds
+	 * @param pTransientTimeToLive
+	 *            how long to remember a transient failure, in milliseconds
+	 */
+	public MissingTileCache(final int pMaximumSize, final long pPermanentTimeToLive,
+			final long pTransientTimeToLive) {
+		mMisses = new LongHashMap<Miss>();
+		mMaximumSize = pMaximumSize;
+		mPermanentTimeToLive = pPermanentTimeToLive;
+		mTransientTimeToLive = pTransientTimeToLive;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public synchronized long getPermanentTimeToLive() {
+		return mPermanentTimeToLive;
+	}
+
+	public synchronized void setPermanentTimeToLive(final long pPermanentTimeToLive) {
+		mPermanentTimeToLive = pPermanentTimeToLive;
+	}
+
+	public synchronized long getTransientTimeToLive() {
+		return mTransientTimeToLive;
+	}
+
+	public synchronized void setTransientTimeToLive(final long pTransientTimeToLive) {
+		mTransientTimeToLive = pTransientTimeToLive;
+	}
+
+	public synchronized int size() {
+		return mMisses.size();
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Remember that a tile couldn't be loaded.
+	 *
+	 * @param pPermanent
+	 *            true if the tile doesn't exist, false if loading it failed and could work later
+	 */
+	public void putMissing(final MapTile pTile, final boolean pPermanent) {
+		putMissing(pTile, pPermanent, System.currentTimeMillis());
+	}
+
+	synchronized void putMissing(final MapTile pTile, final boolean pPermanent, final long pNow) {
+		if (mMaximumSize <= 0) {
+			return;
+		}
+		final long key = pTile.getTileKey();
+		Miss miss = mMisses.get(key);
+		if (miss != null) {
+			// move it to the end, so that the oldest miss is evicted first
+			unlink(miss);
+		} else {
+			if (mMisses.size() >= mMaximumSize) {
+				// reuse the oldest miss
+				miss = mOldest;
+				unlink(miss);
+				mMisses.remove(miss.mKey);
+			} else {
+				miss = new Miss();
+			}
+			miss.mKey = key;
+			mMisses.put(key, miss);
+		}
+		miss.mExpiryTime = pNow + (pPermanent ? mPermanentTimeToLive : mTransientTimeToLive);
+		miss.mPrevious = mNewest;
+		if (mNewest != null) {
+			mNewest.mNext = miss;
+		} else {
+			mOldest = miss;
+		}
+		mNewest = miss;
+	}
+
+	/**
+	 * @return true if the tile couldn't be loaded recently
+	 */
+	public boolean isMissing(final MapTile pTile) {
+		return isMissing(pTile, System.currentTimeMillis());
+	}
+
+	synchronized boolean isMissing(final MapTile pTile, final long pNow) {
+		if (mMisses.isEmpty()) {
+			return false;
+		}
+		final Miss miss = mMisses.get(pTile.getTileKey());
+		if (miss == null) {
+			return false;
+		}
+		if (miss.mExpiryTime <= pNow) {
+			mMisses.remove(miss.mKey);
+			unlink(miss);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Forget a miss, eg because the tile has been loaded by another provider.
+	 */
+	public synchronized void remove(final MapTile pTile) {
+		if (!mMisses.isEmpty()) {
+			final Miss miss = mMisses.remove(pTile.getTileKey());
+			if (miss != null) {
+				unlink(miss);
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		mMisses.clear();
+		mOldest = null;
+		mNewest = null;
+	}
+
+	private void unlink(final Miss pMiss) {
+		if (pMiss.mPrevious != null) {
+			pMiss.mPrevious.mNext = pMiss.mNext;
+		} else {
+			mOldest = pMiss.mNext;
+		}
+		if (pMiss.mNext != null) {
+			pMiss.mNext.mPrevious = pMiss.mPrevious;
+		} else {
+			mNewest = pMiss.mPrevious;
+		}
+		pMiss.mPrevious = null;
+		pMiss.mNext = null;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	private static class Miss {
+		private long mKey;
+		private long mExpiryTime;
+		private Miss mPrevious;
+		private Miss mNext;
+	}
+}
@@ -0,0 +1,81 @@
+package org.osmdroid.tileprovider.modules;
+
+import java.util.Random;
+
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+
+/**
+ * Decides whether and when to try loading a tile again after a transient failure, eg a timeout.
+ * The delay doubles with each retry up to a maximum, and a random part of it is taken off, so that
+ * the tiles that failed together aren't all tried again at the same time.
+ */
+public class RetryPolicy implements OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final int mMaximumRetries;
+	private final long mInitialDelay;
+	private final long mMaximumDelay;
+	private final Random mRandom;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public RetryPolicy() {
+		this(TILE_DOWNLOAD_MAXIMUM_RETRIES_DEFAULT, TILE_DOWNLOAD_RETRY_DELAY_DEFAULT,
+				TILE_DOWNLOAD_MAXIMUM_RETRY_DELAY_DEFAULT, new Random());
+	}
+
+	/**
+	 * @param pMaximumRetries
+	 *            the number of times a tile is tried again, 0 to not try again
+	 * @param pInitialDelay
+	 *            the delay in milliseconds before the first retry
+	 * @param pMaximumDelay
+	 *            the maximum delay in milliseconds
+	 */
+	public RetryPolicy(final int pMaximumRetries, final long pInitialDelay,
+			final long pMaximumDelay, final Random pRandom) {
+		mMaximumRetries = pMaximumRetries;
+		mInitialDelay = pInitialDelay;
+		mMaximumDelay = pMaximumDelay;
+		mRandom = pRandom;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public int getMaximumRetries() {
+		return mMaximumRetries;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * @param pRetryCount
+	 *            the number of times the tile has been tried again already
+	 */
+	public boolean shouldRetry(final int pRetryCount) {
+		return pRetryCount < mMaximumRetries;
+	}
+
+	/**
+	 * @param pRetryCount
+	 *            the number of times the tile has been tried again already
+	 * @return the time to wait in milliseconds, between half and all of the backed off delay
+	 */
+	public long getDelay(final int pRetryCount) {
+		final long delay = Math.min(mMaximumDelay, mInitialDelay << Math.min(pRetryCount, 30));
+		final double jitter;
+		synchronized (mRandom) {
+			jitter = mRandom.nextDouble();
+		}
+		return delay / 2 + (long) (jitter * (delay - delay / 2));
+	}
+}
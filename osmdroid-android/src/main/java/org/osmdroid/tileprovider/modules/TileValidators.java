@@ -0,0 +1,66 @@
+package org.osmdroid.tileprovider.modules;
+
+/**
+ * The validators that an HTTP server sent with a tile, so that the tile can be revalidated with a
+ * conditional request when it expires, rather than downloaded again.
+ *
+ * @see IRevalidatingFilesystemCache
+ */
+public class TileValidators {
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final String mETag;
+	private final String mLastModified;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	/**
+	 * @param pETag
+	 *            the ETag header, or null
+	 * @param pLastModified
+	 *            the Last-Modified header, or null
+	 */
+	public TileValidators(final String pETag, final String pLastModified) {
+		mETag = pETag;
+		mLastModified = pLastModified;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * @return the value for an If-None-Match header, or null
+	 */
+	public String getETag() {
+		return mETag;
+	}
+
+	/**
+	 * @return the value for an If-Modified-Since header, or null
+	 */
+	public String getLastModified() {
+		return mLastModified;
+	}
+
+	/**
+	 * @return whether there is a validator to send
+	 */
+	public boolean isEmpty() {
+		return mETag == null && mLastModified == null;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public String toString() {
+		return "TileValidators [ETag=" + mETag + ", Last-Modified=" + mLastModified + "]";
+	}
+}
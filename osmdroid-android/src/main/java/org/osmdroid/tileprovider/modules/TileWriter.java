@@ -1,10 +1,16 @@
 package org.osmdroid.tileprovider.modules;
 
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -15,17 +21,19 @@ import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.util.StreamUtils;
+import org.osmdroid.tileprovider.util.TileBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * An implementation of {@link IFilesystemCache}. It writes tiles to the file system cache. If the
- * cache exceeds 600 Mb then it will be trimmed to 500 Mb.
+ * cache exceeds 600 Mb then it will be trimmed to 500 Mb. The HTTP validators of a tile are kept in
+ * a small file next to it.
  *
  * @author Neil Boyd
  *
  */
-public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderConstants {
+public class TileWriter implements IRevalidatingFilesystemCache, OpenStreetMapTileProviderConstants {
 
 	// ===========================================================
 	// Constants
@@ -33,6 +41,11 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 
 	private static final Logger logger = LoggerFactory.getLogger(TileWriter.class);
 
+	/** appended to the name of a tile file for the file of its validators */
+	private static final String VALIDATORS_EXTENSION = ".validators";
+	private static final String ETAG = "ETag: ";
+	private static final String LAST_MODIFIED = "Last-Modified: ";
+
 	// ===========================================================
 	// Fields
 	// ===========================================================
@@ -40,18 +53,30 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 	/** amount of disk space used by tile cache **/
 	private static long mUsedCacheSpace;
 
+	/** the directory the tiles are written to */
+	private final File mBasePath;
+
 	// ===========================================================
 	// Constructors
 	// ===========================================================
 
 	public TileWriter() {
+		this(TILE_PATH_BASE);
+	}
+
+	/**
+	 * @param pBasePath
+	 *            the directory to write the tiles to, eg a temporary directory in the tests
+	 */
+	TileWriter(final File pBasePath) {
+		mBasePath = pBasePath;
 
 		// do this in the background because it takes a long time
 		final Thread t = new Thread() {
 			@Override
 			public void run() {
 				mUsedCacheSpace = 0; // because it's static
-				calculateDirectorySize(TILE_PATH_BASE);
+				calculateDirectorySize(mBasePath);
 				if (mUsedCacheSpace > TILE_MAX_CACHE_SIZE_BYTES) {
 					cutCurrentCache();
 				}
@@ -85,22 +110,30 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 	@Override
 	public boolean saveFile(final ITileSource pTileSource, final MapTile pTile,
 			final InputStream pStream) {
+		return saveFile(pTileSource, pTile, pStream, null);
+	}
 
-		final File file = new File(TILE_PATH_BASE, pTileSource.getTileRelativeFilenameString(pTile)
-				+ TILE_PATH_EXTENSION);
+	@Override
+	public boolean saveFile(final ITileSource pTileSource, final MapTile pTile,
+			final InputStream pStream, final TileValidators pValidators) {
+
+		final File file = getFile(pTileSource, pTile);
 
 		final File parent = file.getParentFile();
 		if (!parent.exists() && !createFolderAndCheckIfExists(parent)) {
 			return false;
 		}
 
-		BufferedOutputStream outputStream = null;
+		OutputStream outputStream = null;
 		try {
-			outputStream = new BufferedOutputStream(new FileOutputStream(file.getPath()),
-					StreamUtils.IO_BUFFER_SIZE);
+			outputStream = new FileOutputStream(file.getPath());
+			if (!(pStream instanceof TileBuffer.BufferInputStream)) {
+				// the content of a tile buffer is written in one go
+				outputStream = new BufferedOutputStream(outputStream, StreamUtils.IO_BUFFER_SIZE);
+			}
 			final long length = StreamUtils.copy(pStream, outputStream);
 
-			mUsedCacheSpace += length;
+			mUsedCacheSpace += length + saveValidators(file, pValidators);
 			if (mUsedCacheSpace > TILE_MAX_CACHE_SIZE_BYTES) {
 				cutCurrentCache(); // TODO perhaps we should do this in the background
 			}
@@ -114,10 +147,101 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 		return true;
 	}
 
+	@Override
+	public TileValidators getValidators(final ITileSource pTileSource, final MapTile pTile) {
+		final File file = getFile(pTileSource, pTile);
+		final File validatorsFile = getValidatorsFile(file);
+		if (!file.exists() || !validatorsFile.exists()) {
+			return null;
+		}
+		String eTag = null;
+		String lastModified = null;
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(validatorsFile),
+					"UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(ETAG)) {
+					eTag = line.substring(ETAG.length());
+				} else if (line.startsWith(LAST_MODIFIED)) {
+					lastModified = line.substring(LAST_MODIFIED.length());
+				}
+			}
+		} catch (final IOException e) {
+			logger.warn("IOException reading validators of MapTile: " + pTile + " : " + e);
+			return null;
+		} finally {
+			StreamUtils.closeStream(reader);
+		}
+		final TileValidators validators = new TileValidators(eTag, lastModified);
+		return validators.isEmpty() ? null : validators;
+	}
+
+	@Override
+	public boolean refreshFile(final ITileSource pTileSource, final MapTile pTile) {
+		final File file = getFile(pTileSource, pTile);
+		final long now = System.currentTimeMillis();
+		if (!file.setLastModified(now)) {
+			return false;
+		}
+		// so that the validators aren't trimmed before the tile
+		getValidatorsFile(file).setLastModified(now);
+		return true;
+	}
+
+	@Override
+	public long getSaveTime(final ITileSource pTileSource, final MapTile pTile) {
+		// 0 if the file doesn't exist
+		return getFile(pTileSource, pTile).lastModified();
+	}
+
 	// ===========================================================
 	// Methods
 	// ===========================================================
 
+	private File getFile(final ITileSource pTileSource, final MapTile pTile) {
+		return new File(mBasePath, pTileSource.getTileRelativeFilenameString(pTile)
+				+ TILE_PATH_EXTENSION);
+	}
+
+	private File getValidatorsFile(final File pFile) {
+		return new File(pFile.getPath() + VALIDATORS_EXTENSION);
+	}
+
+	/**
+	 * Write the validators of a tile, or delete those of its previous version.
+	 *
+	 * @return the number of bytes written
+	 */
+	private long saveValidators(final File pFile, final TileValidators pValidators) {
+		final File validatorsFile = getValidatorsFile(pFile);
+		if (pValidators == null || pValidators.isEmpty()) {
+			final long length = validatorsFile.length();
+			if (validatorsFile.delete()) {
+				mUsedCacheSpace -= length;
+			}
+			return 0;
+		}
+		Writer writer = null;
+		try {
+			writer = new OutputStreamWriter(new FileOutputStream(validatorsFile), "UTF-8");
+			if (pValidators.getETag() != null) {
+				writer.write(ETAG + pValidators.getETag() + "\n");
+			}
+			if (pValidators.getLastModified() != null) {
+				writer.write(LAST_MODIFIED + pValidators.getLastModified() + "\n");
+			}
+		} catch (final IOException e) {
+			logger.warn("IOException writing validators: " + validatorsFile + " : " + e);
+			validatorsFile.delete();
+			return 0;
+		} finally {
+			StreamUtils.closeStream(writer);
+		}
+		return validatorsFile.length();
+	}
+
 	private boolean createFolderAndCheckIfExists(final File pFile) {
 		if (pFile.mkdirs()) {
 			return true;
@@ -213,7 +337,7 @@ public class TileWriter implements IFilesystemCache, OpenStreetMapTileProviderCo
 				logger.info("Trimming tile cache from " + mUsedCacheSpace + " to "
 						+ TILE_TRIM_CACHE_SIZE_BYTES);
 
-				final List<File> z = getDirectoryFileList(TILE_PATH_BASE);
+				final List<File> z = getDirectoryFileList(mBasePath);
 
 				// order list by files day created from old to new
 				final File[] files = z.toArray(new File[0]);
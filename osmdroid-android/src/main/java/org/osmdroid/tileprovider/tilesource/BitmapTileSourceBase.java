@@ -1,13 +1,15 @@
 package org.osmdroid.tileprovider.tilesource;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Random;
 
 import org.osmdroid.ResourceProxy;
 import org.osmdroid.ResourceProxy.string;
-import org.osmdroid.tileprovider.ExpirableBitmapDrawable;
+import org.osmdroid.tileprovider.BitmapPool;
 import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.ReusableBitmapDrawable;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -90,9 +92,16 @@ public abstract class BitmapTileSourceBase implements ITileSource,
 		try {
 			// default implementation will load the file as a bitmap and create
 			// a BitmapDrawable from it
-			final Bitmap bitmap = BitmapFactory.decodeFile(aFilePath);
+			final BitmapFactory.Options options = new BitmapFactory.Options();
+			Bitmap bitmap = null;
+			if (applyReusableOptions(options)) {
+				bitmap = decodeFileIntoPooledBitmap(aFilePath, options);
+			}
+			if (bitmap == null) {
+				bitmap = BitmapFactory.decodeFile(aFilePath);
+			}
 			if (bitmap != null) {
-				return new ExpirableBitmapDrawable(bitmap);
+				return new ReusableBitmapDrawable(bitmap);
 			} else {
 				// if we couldn't load it then it's invalid - delete it
 				try {
@@ -127,10 +136,24 @@ public abstract class BitmapTileSourceBase implements ITileSource,
 		try {
 			// default implementation will load the file as a bitmap and create
 			// a BitmapDrawable from it
-			final Bitmap bitmap = BitmapFactory.decodeStream(aFileInputStream);
+			final BitmapFactory.Options options = new BitmapFactory.Options();
+			Bitmap bitmap = null;
+			if (aFileInputStream.markSupported() && applyReusableOptions(options)) {
+				// mark the stream so that we can decode it again if the pooled bitmap doesn't fit
+				aFileInputStream.mark(Integer.MAX_VALUE);
+				bitmap = decodeStreamIntoPooledBitmap(aFileInputStream, options);
+				if (bitmap == null) {
+					aFileInputStream.reset();
+				}
+			}
+			if (bitmap == null) {
+				bitmap = BitmapFactory.decodeStream(aFileInputStream);
+			}
 			if (bitmap != null) {
-				return new ExpirableBitmapDrawable(bitmap);
+				return new ReusableBitmapDrawable(bitmap);
 			}
+		} catch (final IOException e) {
+			logger.error("IOException resetting tile stream", e);
 		} catch (final OutOfMemoryError e) {
 			logger.error("OutOfMemoryError loading bitmap");
 			System.gc();
@@ -139,6 +162,58 @@ public abstract class BitmapTileSourceBase implements ITileSource,
 		return null;
 	}
 
+	/**
+	 * Set up the options to decode into a tile bitmap from the {@link BitmapPool}.
+	 *
+	 * @return true if there is a bitmap to reuse
+	 */
+	protected boolean applyReusableOptions(final BitmapFactory.Options pOptions) {
+		return BitmapPool.getInstance().applyReusableOptions(pOptions, mTileSizePixels,
+				mTileSizePixels, Bitmap.Config.ARGB_8888);
+	}
+
+	/**
+	 * @return the decoded bitmap, or null if the image didn't fit the pooled bitmap
+	 */
+	private Bitmap decodeFileIntoPooledBitmap(final String aFilePath,
+			final BitmapFactory.Options pOptions) {
+		Bitmap bitmap = null;
+		try {
+			bitmap = BitmapFactory.decodeFile(aFilePath, pOptions);
+		} catch (final IllegalArgumentException e) {
+			// since KitKat this is thrown if the bitmap can't be reused, before that null is returned
+		}
+		if (bitmap == null) {
+			returnReusableBitmap(pOptions);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * @return the decoded bitmap, or null if the image didn't fit the pooled bitmap
+	 */
+	private Bitmap decodeStreamIntoPooledBitmap(final InputStream aInputStream,
+			final BitmapFactory.Options pOptions) {
+		Bitmap bitmap = null;
+		try {
+			bitmap = BitmapFactory.decodeStream(aInputStream, null, pOptions);
+		} catch (final IllegalArgumentException e) {
+			// since KitKat this is thrown if the bitmap can't be reused, before that null is returned
+		}
+		if (bitmap == null) {
+			returnReusableBitmap(pOptions);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Give the pooled bitmap that a decode couldn't use back to the {@link BitmapPool}.
+	 */
+	private static void returnReusableBitmap(final BitmapFactory.Options pOptions) {
+		BitmapPool.getInstance().returnBitmapToPool(pOptions.inBitmap);
+		pOptions.inBitmap = null;
+	}
+
 	public final class LowMemoryException extends Exception {
 		private static final long serialVersionUID = 146526524087765134L;
 
@@ -35,7 +35,7 @@ public class CloudmadeTileSource extends OnlineTileSourceBase implements IStyled
 			logger.error("CloudMade key is not set. You should enter it in the manifest and call CloudmadeUtil.retrieveCloudmadeKey()");
 		}
 		final String token = CloudmadeUtil.getCloudmadeToken();
-		return String.format(getBaseUrl(), key, mStyle, getTileSizePixels(), pTile.getZoomLevel(),
+		return String.format(getBaseUrl(pTile), key, mStyle, getTileSizePixels(), pTile.getZoomLevel(),
 				pTile.getX(), pTile.getY(), mImageFilenameEnding, token);
 	}
 
@@ -0,0 +1,346 @@
+package org.osmdroid.tileprovider.tilesource;
+
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
+import org.osmdroid.util.LongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules the downloads of an {@link OnlineTileSourceBase} over its base urls, eg the subdomains
+ * a, b and c of a tile server.<br />
+ * Each tile is mapped to the same host every time, so that the caches of the servers and the
+ * connections to them stay warm. The number of requests in flight to each host is limited. A host
+ * that fails repeatedly or is slow is drained for a while, and its tiles go to the other hosts.<br />
+ * A download calls {@link #acquire(MapTile, long)} before it builds the url of the tile, and
+ * {@link #release(MapTile, boolean, long)} when it has finished, whatever the outcome. The same tile
+ * can be in flight more than once, eg for two map views on the same tile source, and each
+ * acquisition is released on its own.
+ */
+public class HostScheduler implements OpenStreetMapTileProviderConstants {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final Logger logger = LoggerFactory.getLogger(HostScheduler.class);
+
+	/** the weight of the latest request in the average latency of a host */
+	private static final float LATENCY_WEIGHT = 0.2f;
+
+	/** the number of requests before a host can be drained for its latency */
+	private static final int MINIMUM_LATENCY_SAMPLES = 3;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final String[] mBaseUrls;
+	private final int[] mInFlight;
+	private final long[] mRequests;
+	private final long[] mFailures;
+	private final int[] mConsecutiveFailures;
+	private final float[] mAverageLatency;
+	private final long[] mDrainedUntil;
+	private final long[] mDrainCount;
+
+	/** the hosts each tile in flight was given */
+	private final LongHashMap<Assignment> mAssigned = new LongHashMap<Assignment>();
+
+	private int mMaximumInFlight = TILE_DOWNLOAD_MAXIMUM_REQUESTS_PER_HOST_DEFAULT;
+	private int mFailuresToDrain = HOST_FAILURES_TO_DRAIN_DEFAULT;
+	private long mSlowLatency = HOST_SLOW_LATENCY_DEFAULT;
+	private long mDrainTime = HOST_DRAIN_TIME_DEFAULT;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public HostScheduler(final String... pBaseUrls) {
+		mBaseUrls = pBaseUrls.length > 0 ? pBaseUrls : new String[] { null };
+		final int count = mBaseUrls.length;
+		mInFlight = new int[count];
+		mRequests = new long[count];
+		mFailures = new long[count];
+		mConsecutiveFailures = new int[count];
+		mAverageLatency = new float[count];
+		mDrainedUntil = new long[count];
+		mDrainCount = new long[count];
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * @param pMaximumInFlight
+	 *            the number of requests to each host at the same time
+	 */
+	public synchronized void setMaximumInFlight(final int pMaximumInFlight) {
+		mMaximumInFlight = Math.max(1, pMaximumInFlight);
+		notifyAll();
+	}
+
+	public synchronized int getMaximumInFlight() {
+		return mMaximumInFlight;
+	}
+
+	/**
+	 * @param pFailuresToDrain
+	 *            the number of failures in a row after which a host is drained
+	 * @param pSlowLatency
+	 *            the average latency in milliseconds above which a host is drained
+	 * @param pDrainTime
+	 *            how long a host is drained for in milliseconds
+	 */
+	public synchronized void setDrainPolicy(final int pFailuresToDrain, final long pSlowLatency,
+			final long pDrainTime) {
+		mFailuresToDrain = pFailuresToDrain;
+		mSlowLatency = pSlowLatency;
+		mDrainTime = pDrainTime;
+	}
+
+	public int getHostCount() {
+		return mBaseUrls.length;
+	}
+
+	public String getBaseUrl(final int pHost) {
+		return mBaseUrls[pHost];
+	}
+
+	/**
+	 * @return the number of requests to a host that haven't finished
+	 */
+	public synchronized int getInFlightCount(final int pHost) {
+		return mInFlight[pHost];
+	}
+
+	/**
+	 * @return the number of requests to a host that have finished
+	 */
+	public synchronized long getRequestCount(final int pHost) {
+		return mRequests[pHost];
+	}
+
+	public synchronized long getFailureCount(final int pHost) {
+		return mFailures[pHost];
+	}
+
+	/**
+	 * @return the weighted average time in milliseconds until the host responded
+	 */
+	public synchronized long getAverageLatency(final int pHost) {
+		return (long) mAverageLatency[pHost];
+	}
+
+	/**
+	 * @return the number of times the host was drained
+	 */
+	public synchronized long getDrainCount(final int pHost) {
+		return mDrainCount[pHost];
+	}
+
+	public boolean isDraining(final int pHost) {
+		return isDraining(pHost, System.currentTimeMillis());
+	}
+
+	synchronized boolean isDraining(final int pHost, final long pNow) {
+		return mDrainedUntil[pHost] > pNow;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public synchronized String toString() {
+		final StringBuilder sb = new StringBuilder("HostScheduler [");
+		for (int i = 0; i < mBaseUrls.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(mBaseUrls[i]).append(": ").append(mRequests[i]).append(" requests, ")
+					.append(mFailures[i]).append(" failures, ").append((long) mAverageLatency[i])
+					.append("ms, ").append(mInFlight[i]).append(" in flight");
+		}
+		return sb.append(']').toString();
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * @return the host a tile is mapped to when all the hosts are healthy
+	 */
+	public int getPreferredHost(final MapTile pTile) {
+		// neighbouring tiles go to different hosts
+		return (int) (((long) pTile.getX() + pTile.getY()) % mBaseUrls.length);
+	}
+
+	/**
+	 * @return the base url of the host that a tile was last given by
+	 *         {@link #acquire(MapTile, long)}, or of its preferred host if it isn't in flight
+	 */
+	public synchronized String getBaseUrl(final MapTile pTile) {
+		final Assignment assignment = mAssigned.get(pTile.getTileKey());
+		return mBaseUrls[assignment != null ? assignment.getLast() : getPreferredHost(pTile)];
+	}
+
+	/**
+	 * Give a tile a host, waiting for a host to have a free slot if need be.
+	 *
+	 * @param pTimeout
+	 *            the time to wait in milliseconds
+	 * @return the host, or -1 if none was free in time
+	 */
+	public int acquire(final MapTile pTile, final long pTimeout) throws InterruptedException {
+		final long end = System.currentTimeMillis() + pTimeout;
+		synchronized (this) {
+			while (true) {
+				final long now = System.currentTimeMillis();
+				final int host = tryAcquire(pTile, now);
+				if (host >= 0 || now >= end) {
+					return host;
+				}
+				wait(end - now);
+			}
+		}
+	}
+
+	/**
+	 * Give a tile a host if one has a free slot.
+	 *
+	 * @return the host, or -1 if none is free
+	 */
+	synchronized int tryAcquire(final MapTile pTile, final long pNow) {
+		final int host = selectHost(pTile, pNow);
+		if (host >= 0) {
+			mInFlight[host]++;
+			Assignment assignment = mAssigned.get(pTile.getTileKey());
+			if (assignment == null) {
+				assignment = new Assignment();
+				mAssigned.put(pTile.getTileKey(), assignment);
+			}
+			assignment.add(host);
+		}
+		return host;
+	}
+
+	/**
+	 * Choose the host for a tile: the preferred host if it's healthy and has a free slot, otherwise
+	 * the next healthy host that has one. If no host is healthy, the hosts are used anyway.
+	 *
+	 * @return the host, or -1 if no suitable host has a free slot
+	 */
+	synchronized int selectHost(final MapTile pTile, final long pNow) {
+		final int preferred = getPreferredHost(pTile);
+		boolean anyHealthy = false;
+		for (int i = 0; i < mBaseUrls.length; i++) {
+			final int host = (preferred + i) % mBaseUrls.length;
+			if (!isDraining(host, pNow)) {
+				anyHealthy = true;
+				if (mInFlight[host] < mMaximumInFlight) {
+					return host;
+				}
+			}
+		}
+		if (!anyHealthy) {
+			for (int i = 0; i < mBaseUrls.length; i++) {
+				final int host = (preferred + i) % mBaseUrls.length;
+				if (mInFlight[host] < mMaximumInFlight) {
+					return host;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Record the outcome of a request and free its slot.
+	 *
+	 * @param pFailed
+	 *            whether the host failed, eg it timed out or returned a server error. A tile that
+	 *            doesn't exist isn't a failure of the host.
+	 * @param pLatency
+	 *            the time in milliseconds until the host responded, or a negative number if the
+	 *            request was abandoned, eg because it was cancelled
+	 */
+	public void release(final MapTile pTile, final boolean pFailed, final long pLatency) {
+		release(pTile, pFailed, pLatency, System.currentTimeMillis());
+	}
+
+	synchronized void release(final MapTile pTile, final boolean pFailed, final long pLatency,
+			final long pNow) {
+		final Assignment assignment = mAssigned.get(pTile.getTileKey());
+		if (assignment == null) {
+			return;
+		}
+		final int host = assignment.removeLast();
+		if (assignment.isEmpty()) {
+			mAssigned.remove(pTile.getTileKey());
+		}
+		mInFlight[host]--;
+		notifyAll();
+		if (pFailed) {
+			mRequests[host]++;
+			mFailures[host]++;
+			mConsecutiveFailures[host]++;
+			if (mConsecutiveFailures[host] >= mFailuresToDrain) {
+				drain(host, pNow, "failed " + mConsecutiveFailures[host] + " times");
+			}
+		} else if (pLatency >= 0) {
+			mRequests[host]++;
+			mConsecutiveFailures[host] = 0;
+			mAverageLatency[host] = mRequests[host] == 1 ? pLatency : mAverageLatency[host]
+					+ LATENCY_WEIGHT * (pLatency - mAverageLatency[host]);
+			if (mRequests[host] >= MINIMUM_LATENCY_SAMPLES && mAverageLatency[host] > mSlowLatency
+					&& !isDraining(host, pNow)) {
+				drain(host, pNow, "average latency " + (long) mAverageLatency[host] + "ms");
+			}
+		}
+	}
+
+	private void drain(final int pHost, final long pNow, final String pReason) {
+		logger.info("Draining host " + mBaseUrls[pHost] + " for " + mDrainTime + "ms, " + pReason);
+		mDrainedUntil[pHost] = pNow + mDrainTime;
+		mDrainCount[pHost]++;
+		// when the host is used again, one more failure drains it again
+		mConsecutiveFailures[pHost] = Math.max(0, mFailuresToDrain - 1);
+		// and it starts again from the slow latency, so it has to respond faster to stay
+		mAverageLatency[pHost] = mSlowLatency;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * The hosts a tile in flight was given, one for each time it was acquired.
+	 */
+	private static class Assignment {
+		private int[] mHosts = new int[1];
+		private int mCount;
+
+		private void add(final int pHost) {
+			if (mCount == mHosts.length) {
+				final int[] grown = new int[mHosts.length * 2];
+				System.arraycopy(mHosts, 0, grown, 0, mCount);
+				mHosts = grown;
+			}
+			mHosts[mCount++] = pHost;
+		}
+
+		private int getLast() {
+			return mHosts[mCount - 1];
+		}
+
+		private int removeLast() {
+			return mHosts[--mCount];
+		}
+
+		private boolean isEmpty() {
+			return mCount == 0;
+		}
+	}
+}
@@ -7,20 +7,39 @@ public abstract class OnlineTileSourceBase extends BitmapTileSourceBase {
 
 	private final String mBaseUrls[];
 
+	private final HostScheduler mHostScheduler;
+
 	public OnlineTileSourceBase(final String aName, final string aResourceId,
 			final int aZoomMinLevel, final int aZoomMaxLevel, final int aTileSizePixels,
 			final String aImageFilenameEnding, final String... aBaseUrl) {
 		super(aName, aResourceId, aZoomMinLevel, aZoomMaxLevel, aTileSizePixels,
 				aImageFilenameEnding);
 		mBaseUrls = aBaseUrl;
+		mHostScheduler = new HostScheduler(aBaseUrl);
 	}
 
 	public abstract String getTileURLString(MapTile aTile);
 
+	/**
+	 * @return the scheduler of the downloads over the base urls, which also has their statistics
+	 */
+	public HostScheduler getHostScheduler() {
+		return mHostScheduler;
+	}
+
 	/**
 	 * Get the base url, which will be a random one if there are more than one.
+	 *
+	 * @see #getBaseUrl(MapTile)
 	 */
 	protected String getBaseUrl() {
 		return mBaseUrls[random.nextInt(mBaseUrls.length)];
 	}
+
+	/**
+	 * Get the base url for a tile, which is the one the {@link HostScheduler} has given it.
+	 */
+	protected String getBaseUrl(final MapTile aTile) {
+		return mHostScheduler.getBaseUrl(aTile);
+	}
 }
@@ -14,7 +14,7 @@ public class QuadTreeTileSource extends OnlineTileSourceBase {
 
 	@Override
 	public String getTileURLString(final MapTile aTile) {
-		return getBaseUrl() + quadTree(aTile) + mImageFilenameEnding;
+		return getBaseUrl(aTile) + quadTree(aTile) + mImageFilenameEnding;
 	}
 
 	/**
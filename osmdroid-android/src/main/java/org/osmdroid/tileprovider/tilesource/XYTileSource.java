@@ -14,7 +14,7 @@ public class XYTileSource extends OnlineTileSourceBase {
 
 	@Override
 	public String getTileURLString(final MapTile aTile) {
-		return getBaseUrl() + aTile.getZoomLevel() + "/" + aTile.getX() + "/" + aTile.getY()
+		return getBaseUrl(aTile) + aTile.getZoomLevel() + "/" + aTile.getX() + "/" + aTile.getY()
 				+ mImageFilenameEnding;
 	}
 }
@@ -10,6 +10,7 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.osmdroid.http.HttpClientFactory;
+import org.osmdroid.http.PooledHttpClientFactory;
 import org.osmdroid.tileprovider.constants.OpenStreetMapTileProviderConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -124,9 +125,10 @@ public class CloudmadeUtil implements OpenStreetMapTileProviderConstants {
 					final String url = "http://auth.cloudmade.com/token/" + mKey + "?userid=" + mAndroidId;
 					final HttpClient httpClient = HttpClientFactory.createHttpClient();
 					final HttpPost httpPost = new HttpPost(url);
+					HttpResponse response = null;
 					try {
 						httpPost.setEntity(new StringEntity("", "utf-8"));
-						final HttpResponse response = httpClient.execute(httpPost);
+						response = httpClient.execute(httpPost);
 						if (DEBUGMODE) {
 							logger.debug("Response from Cloudmade auth: " + response.getStatusLine());
 						}
@@ -151,6 +153,9 @@ public class CloudmadeUtil implements OpenStreetMapTileProviderConstants {
 						}
 					} catch (final IOException e) {
 						logger.error("No authorization token received from Cloudmade: " + e);
+					} finally {
+						// let the connection be reused
+						PooledHttpClientFactory.consumeEntity(response);
 					}
 				}
 			}
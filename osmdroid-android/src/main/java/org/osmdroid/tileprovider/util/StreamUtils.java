@@ -1,6 +1,7 @@
 // Created by plusminus on 19:14:08 - 20.10.2008
 package org.osmdroid.tileprovider.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -47,7 +48,8 @@ public class StreamUtils {
 
 	/**
 	 * Copy the content of the input stream into the output stream, using a temporary byte array
-	 * buffer whose size is defined by {@link #IO_BUFFER_SIZE}.
+	 * buffer whose size is defined by {@link #IO_BUFFER_SIZE}. The content of a
+	 * {@link TileBuffer} is written without a temporary buffer.
 	 * 
 	 * @param in
 	 *            The input stream to copy from.
@@ -59,6 +61,9 @@ public class StreamUtils {
 	 *             If any error occurs during the copy.
 	 */
 	public static long copy(final InputStream in, final OutputStream out) throws IOException {
+		if (in instanceof TileBuffer.BufferInputStream) {
+			return ((TileBuffer.BufferInputStream) in).writeTo(out);
+		}
 		long length = 0;
 		final byte[] b = new byte[IO_BUFFER_SIZE];
 		int read;
@@ -69,6 +74,22 @@ public class StreamUtils {
 		return length;
 	}
 
+	/**
+	 * Read the rest of the input stream into a byte array.
+	 *
+	 * @param in
+	 *            The input stream to read.
+	 * @return the bytes that were read
+	 *
+	 * @throws IOException
+	 *             If any error occurs while reading.
+	 */
+	public static byte[] toByteArray(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(IO_BUFFER_SIZE);
+		copy(in, out);
+		return out.toByteArray();
+	}
+
 	/**
 	 * Closes the specified stream.
 	 * 
@@ -0,0 +1,138 @@
+package org.osmdroid.tileprovider.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedList;
+
+/**
+ * A reusable buffer for the bytes of a tile, that is read from a stream once and then written to
+ * the file system cache and decoded without being copied. Get one with {@link #obtain()} and give
+ * it back with {@link #recycle()} once nobody reads it any more.
+ */
+public class TileBuffer extends ByteArrayOutputStream {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/** the number of buffers that are kept for reuse */
+	private static final int MAXIMUM_POOL_SIZE = 16;
+
+	/** a buffer that has grown bigger than this isn't kept, so that it doesn't hold on to memory */
+	private static final int MAXIMUM_POOLED_CAPACITY = 256 * 1024;
+
+	private static final LinkedList<TileBuffer> sPool = new LinkedList<TileBuffer>();
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	private TileBuffer() {
+		super(StreamUtils.IO_BUFFER_SIZE);
+	}
+
+	/**
+	 * @return an empty buffer from the pool, or a new one if the pool is empty
+	 */
+	public static TileBuffer obtain() {
+		synchronized (sPool) {
+			if (!sPool.isEmpty()) {
+				return sPool.removeFirst();
+			}
+		}
+		return new TileBuffer();
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Give the buffer back to the pool. It must not be used after this.
+	 */
+	public void recycle() {
+		reset();
+		if (buf.length > MAXIMUM_POOLED_CAPACITY) {
+			return;
+		}
+		synchronized (sPool) {
+			if (sPool.size() < MAXIMUM_POOL_SIZE) {
+				sPool.addFirst(this);
+			}
+		}
+	}
+
+	/**
+	 * Replace the content of the buffer with the rest of a stream, which is read straight into the
+	 * buffer.
+	 *
+	 * @param pContentLength
+	 *            the expected length, eg from a Content-Length header, so that the buffer only has
+	 *            to grow once, or a negative number if it isn't known
+	 * @return the number of bytes read
+	 */
+	public synchronized int readFrom(final InputStream pStream, final long pContentLength)
+			throws IOException {
+		reset();
+		if (pContentLength > buf.length && pContentLength <= Integer.MAX_VALUE) {
+			buf = new byte[(int) pContentLength];
+		}
+		while (true) {
+			if (count == buf.length) {
+				// check for the end before growing, for when the length was right
+				final int next = pStream.read();
+				if (next == -1) {
+					break;
+				}
+				final byte[] grown = new byte[buf.length * 2];
+				System.arraycopy(buf, 0, grown, 0, count);
+				buf = grown;
+				buf[count++] = (byte) next;
+			}
+			final int read = pStream.read(buf, count, buf.length - count);
+			if (read == -1) {
+				break;
+			}
+			count += read;
+		}
+		return count;
+	}
+
+	/**
+	 * @return a stream of the content, that reads the buffer itself. It's only valid until the
+	 *         buffer is recycled.
+	 */
+	public synchronized BufferInputStream toInputStream() {
+		return new BufferInputStream(buf, count);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * A stream of the content of a {@link TileBuffer}, that can write the rest of its content
+	 * without copying it, see {@link StreamUtils#copy(InputStream, OutputStream)}.
+	 */
+	public static class BufferInputStream extends ByteArrayInputStream {
+
+		private BufferInputStream(final byte[] pBuffer, final int pLength) {
+			super(pBuffer, 0, pLength);
+		}
+
+		/**
+		 * Write the rest of the content in one go.
+		 *
+		 * @return the number of bytes written
+		 */
+		public synchronized long writeTo(final OutputStream pOut) throws IOException {
+			final int length = count - pos;
+			pOut.write(buf, pos, length);
+			pos = count;
+			return length;
+		}
+	}
+}
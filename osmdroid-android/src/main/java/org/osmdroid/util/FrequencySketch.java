@@ -0,0 +1,95 @@
+package org.osmdroid.util;
+
+import org.osmdroid.tileprovider.MapTile;
+
+/**
+ * Estimates how often tile keys (see {@link MapTile#getTileKey(int, int, int)}) have been seen
+ * recently. It's a count-min sketch of 4-bit counters, so it takes a few bytes per tile no matter
+ * how many different tiles are seen, and never underestimates a count. All counters are halved
+ * once the number of increments reaches ten times the expected size, so that tiles that were
+ * popular a long time ago are forgotten. This class is not thread safe.
+ */
+public class FrequencySketch {
+
+	/** the largest value of a counter */
+	public static final int MAXIMUM_FREQUENCY = 15;
+
+	private static final long[] SEEDS = { 0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL,
+			0x165667B19E3779F9L, 0xD6E8FEB86659FD93L };
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	/** 16 counters of 4 bits in each long */
+	private final long[] mTable;
+	private final int mMask;
+	private final int mSampleSize;
+	private int mIncrements;
+
+	/**
+	 * @param pExpectedSize
+	 *            the number of tiles in the cache that uses the sketch
+	 */
+	public FrequencySketch(final int pExpectedSize) {
+		int counters = 64;
+		while (counters < pExpectedSize * 4) {
+			counters <<= 1;
+		}
+		mTable = new long[counters / 16];
+		mMask = counters - 1;
+		mSampleSize = Math.max(1, pExpectedSize) * 10;
+	}
+
+	/**
+	 * @return the estimated number of times the key has been seen, at most
+	 *         {@link #MAXIMUM_FREQUENCY}
+	 */
+	public int frequency(final long pKey) {
+		int frequency = MAXIMUM_FREQUENCY;
+		for (int i = 0; i < SEEDS.length; i++) {
+			final int index = indexOf(pKey, i);
+			final int count = (int) ((mTable[index >>> 4] >>> ((index & 15) << 2)) & 15);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	public void increment(final long pKey) {
+		// only increment the smallest counters, which keeps the others more accurate
+		final int frequency = frequency(pKey);
+		if (frequency == MAXIMUM_FREQUENCY) {
+			return;
+		}
+		for (int i = 0; i < SEEDS.length; i++) {
+			final int index = indexOf(pKey, i);
+			final int shift = (index & 15) << 2;
+			if (((mTable[index >>> 4] >>> shift) & 15) == frequency) {
+				mTable[index >>> 4] += 1L << shift;
+			}
+		}
+		if (++mIncrements >= mSampleSize) {
+			reset();
+		}
+	}
+
+	public void clear() {
+		for (int i = 0; i < mTable.length; i++) {
+			mTable[i] = 0;
+		}
+		mIncrements = 0;
+	}
+
+	/**
+	 * Halve all the counters.
+	 */
+	private void reset() {
+		for (int i = 0; i < mTable.length; i++) {
+			mTable[i] = (mTable[i] >>> 1) & RESET_MASK;
+		}
+		mIncrements /= 2;
+	}
+
+	private int indexOf(final long pKey, final int pHash) {
+		final long hash = (pKey + pHash) * SEEDS[pHash];
+		return (int) (hash ^ (hash >>> 32)) & mMask;
+	}
+}
@@ -0,0 +1,118 @@
+package org.osmdroid.util;
+
+/**
+ * Counts latencies in buckets whose bounds double, from under a millisecond to over half a minute,
+ * so it takes the same few bytes however many latencies are added. The percentiles it gives are
+ * the upper bounds of the buckets, so they are within a factor of 2 of the real ones.
+ */
+public class LatencyHistogram {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	/**
+	 * the number of buckets. Bucket 0 is under 1ms, bucket i is from 2^(i-1)ms to under 2^i ms and
+	 * the last bucket is everything from 2^14ms.
+	 */
+	public static final int BUCKET_COUNT = 16;
+
+	private static final long NANOS_PER_MILLI = 1000000;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final long[] mBuckets = new long[BUCKET_COUNT];
+	private long mCount;
+	private long mTotalNanos;
+	private long mMaximumNanos;
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	public synchronized long getCount() {
+		return mCount;
+	}
+
+	/**
+	 * @return the number of latencies in a bucket
+	 */
+	public synchronized long getBucketCount(final int pBucket) {
+		return mBuckets[pBucket];
+	}
+
+	/**
+	 * @return the upper bound of a bucket in milliseconds, or Long.MAX_VALUE for the last one
+	 */
+	public static long getBucketLimit(final int pBucket) {
+		return pBucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << pBucket;
+	}
+
+	/**
+	 * @return the average latency in milliseconds
+	 */
+	public synchronized double getMean() {
+		return mCount == 0 ? 0 : (double) mTotalNanos / NANOS_PER_MILLI / mCount;
+	}
+
+	/**
+	 * @return the longest latency in milliseconds
+	 */
+	public synchronized double getMaximum() {
+		return (double) mMaximumNanos / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * @param pPercentile
+	 *            the percentile, eg 95
+	 * @return the upper bound in milliseconds of the bucket that has the percentile, or 0 if
+	 *         nothing was added
+	 */
+	public synchronized long getPercentile(final double pPercentile) {
+		if (mCount == 0) {
+			return 0;
+		}
+		final long rank = (long) Math.ceil(mCount * pPercentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+			seen += mBuckets[i];
+			if (seen >= rank) {
+				return getBucketLimit(i);
+			}
+		}
+		return getBucketLimit(BUCKET_COUNT - 1);
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	public synchronized void add(final long pNanos) {
+		final long millis = Math.max(0, pNanos) / NANOS_PER_MILLI;
+		final int bucket = millis == 0 ? 0 : Math.min(BUCKET_COUNT - 1,
+				64 - Long.numberOfLeadingZeros(millis));
+		mBuckets[bucket]++;
+		mCount++;
+		mTotalNanos += pNanos;
+		if (pNanos > mMaximumNanos) {
+			mMaximumNanos = pNanos;
+		}
+	}
+
+	public synchronized void clear() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			mBuckets[i] = 0;
+		}
+		mCount = 0;
+		mTotalNanos = 0;
+		mMaximumNanos = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "count=" + mCount + " mean=" + getMean() + "ms p50=" + getPercentile(50)
+				+ "ms p95=" + getPercentile(95) + "ms max=" + getMaximum() + "ms";
+	}
+}
@@ -0,0 +1,167 @@
+package org.osmdroid.util;
+
+import org.osmdroid.tileprovider.MapTile;
+
+/**
+ * A hash map with primitive long keys, typically tile keys (see
+ * {@link MapTile#getTileKey(int, int, int)}). It uses open addressing with linear probing, so
+ * lookups, updates and removals don't allocate anything. Only growing the table allocates. Null
+ * values are not allowed. This class is not thread safe.
+ *
+ * @param <V>
+ *            the type of the values
+ */
+public class LongHashMap<V> {
+
+	private static final int MINIMUM_CAPACITY = 16;
+
+	private long[] mKeys;
+	private Object[] mValues;
+	private int mMask;
+	private int mSize;
+
+	public LongHashMap() {
+		this(MINIMUM_CAPACITY);
+	}
+
+	/**
+	 * @param pExpectedSize
+	 *            the number of entries the map can hold before it needs to grow
+	 */
+	public LongHashMap(final int pExpectedSize) {
+		int capacity = MINIMUM_CAPACITY;
+		while (capacity * 3 / 4 < pExpectedSize) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	public boolean containsKey(final long pKey) {
+		return mValues[indexOf(pKey)] != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(final long pKey) {
+		return (V) mValues[indexOf(pKey)];
+	}
+
+	/**
+	 * @return the previous value for the key, or null if there wasn't one
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(final long pKey, final V pValue) {
+		if (pValue == null) {
+			throw new IllegalArgumentException("Null values are not allowed");
+		}
+		int index = indexOf(pKey);
+		final V previous = (V) mValues[index];
+		if (previous == null) {
+			if ((mSize + 1) * 4 > mValues.length * 3) {
+				grow();
+				index = indexOf(pKey);
+			}
+			mKeys[index] = pKey;
+			mSize++;
+		}
+		mValues[index] = pValue;
+		return previous;
+	}
+
+	/**
+	 * @return the removed value, or null if there was no value for the key
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(final long pKey) {
+		int index = indexOf(pKey);
+		final V previous = (V) mValues[index];
+		if (previous == null) {
+			return null;
+		}
+		mSize--;
+
+		// shift back any following entries that would no longer be found
+		int next = (index + 1) & mMask;
+		while (mValues[next] != null) {
+			final int ideal = hash(mKeys[next]);
+			// move the entry if its ideal slot isn't cyclically within (index, next]
+			if (((next - ideal) & mMask) >= ((next - index) & mMask)) {
+				mKeys[index] = mKeys[next];
+				mValues[index] = mValues[next];
+				index = next;
+			}
+			next = (next + 1) & mMask;
+		}
+		mValues[index] = null;
+		return previous;
+	}
+
+	public void clear() {
+		if (mSize > 0) {
+			for (int i = 0; i < mValues.length; i++) {
+				mValues[i] = null;
+			}
+			mSize = 0;
+		}
+	}
+
+	/**
+	 * Copy all the keys into an array, eg to iterate over them while modifying the map.
+	 *
+	 * @param pKeys
+	 *            an array to reuse, or null
+	 * @return an array that holds the keys in the first {@link #size()} elements. It's the array
+	 *         that was passed in if it was big enough.
+	 */
+	public long[] getKeys(final long[] pKeys) {
+		final long[] keys = pKeys != null && pKeys.length >= mSize ? pKeys : new long[mSize];
+		int count = 0;
+		for (int i = 0; i < mValues.length; i++) {
+			if (mValues[i] != null) {
+				keys[count++] = mKeys[i];
+			}
+		}
+		return keys;
+	}
+
+	private int hash(final long pKey) {
+		return MapTile.hashTileKey(pKey) & mMask;
+	}
+
+	/**
+	 * @return the index of the key, or of the empty slot where it would go
+	 */
+	private int indexOf(final long pKey) {
+		int index = hash(pKey);
+		while (mValues[index] != null && mKeys[index] != pKey) {
+			index = (index + 1) & mMask;
+		}
+		return index;
+	}
+
+	private void allocate(final int pCapacity) {
+		mKeys = new long[pCapacity];
+		mValues = new Object[pCapacity];
+		mMask = pCapacity - 1;
+	}
+
+	private void grow() {
+		final long[] keys = mKeys;
+		final Object[] values = mValues;
+		allocate(values.length << 1);
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				final int index = indexOf(keys[i]);
+				mKeys[index] = keys[i];
+				mValues[index] = values[i];
+			}
+		}
+	}
+}
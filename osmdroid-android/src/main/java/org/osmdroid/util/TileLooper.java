@@ -32,8 +32,7 @@ public abstract class TileLooper {
 				// Construct a MapTile to request from the tile provider.
 				final int tileY = MyMath.mod(y, mapTileUpperBound);
 				final int tileX = MyMath.mod(x, mapTileUpperBound);
-				final MapTile tile = new MapTile(pZoomLevel, tileX, tileY);
-				handleTile(pCanvas, pTileSizePx, tile, x, y);
+				handleTile(pCanvas, pTileSizePx, MapTile.getTileKey(pZoomLevel, tileX, tileY), x, y);
 			}
 		}
 
@@ -42,7 +41,26 @@ public abstract class TileLooper {
 
 	public abstract void initialiseLoop(int pZoomLevel, int pTileSizePx);
 
-	public abstract void handleTile(Canvas pCanvas, int pTileSizePx, MapTile pTile, int pX, int pY);
+	/**
+	 * Handle a tile identified by its tile key. Override this instead of
+	 * {@link #handleTile(Canvas, int, MapTile, int, int)} to loop without allocating anything. The
+	 * default implementation creates a {@link MapTile} and calls that method.
+	 *
+	 * @see MapTile#getTileKey(int, int, int)
+	 */
+	public void handleTile(final Canvas pCanvas, final int pTileSizePx, final long pTileKey,
+			final int pX, final int pY) {
+		handleTile(pCanvas, pTileSizePx, new MapTile(MapTile.getZoomLevel(pTileKey),
+				MapTile.getX(pTileKey), MapTile.getY(pTileKey)), pX, pY);
+	}
+
+	/**
+	 * Handle a tile. Does nothing by default.
+	 */
+	public void handleTile(final Canvas pCanvas, final int pTileSizePx, final MapTile pTile,
+			final int pX, final int pY) {
+		// Do nothing by default
+	}
 
 	public abstract void finaliseLoop();
 }
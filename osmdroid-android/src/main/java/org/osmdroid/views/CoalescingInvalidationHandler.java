@@ -0,0 +1,192 @@
+package org.osmdroid.views;
+
+import microsoft.mappoint.TileSystem;
+
+import org.osmdroid.tileprovider.MapTile;
+
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Message;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * The default handler of the tile request completion messages of a {@link MapView}. Rather than
+ * redraw the map for each tile that is loaded, it collects the loaded tiles and invalidates the
+ * union of their screen rects at most once per display frame. The tiles that can't be placed on
+ * the screen, eg those of a {@link org.osmdroid.views.overlay.MinimapOverlay} that shares the
+ * handler, or any tile while the map is being zoomed, invalidate the whole view.
+ */
+public class CoalescingInvalidationHandler extends Handler {
+
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	private static final int FLUSH_ID = MapTile.MAPTILE_FAIL_ID + 1;
+
+	/** the display frame interval, if it can't be read from {@link Choreographer} */
+	private static final long FRAME_INTERVAL = 16;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+
+	private final MapView mMapView;
+
+	/** the union of the loaded tiles in map coordinates, see {@link MapView#invalidateMapCoordinates(Rect)} */
+	private final Rect mDirtyRect = new Rect();
+	private final Rect mScreenRect = new Rect();
+	private final Rect mTileRect = new Rect();
+	private boolean mInvalidateAll;
+	private boolean mFlushScheduled;
+	private FrameFlusher mFrameFlusher;
+
+	private long mTileCount;
+	private long mInvalidateCount;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public CoalescingInvalidationHandler(final MapView pMapView) {
+		super();
+		mMapView = pMapView;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	/**
+	 * @return the number of tiles that were loaded
+	 */
+	public long getTileCount() {
+		return mTileCount;
+	}
+
+	/**
+	 * @return the number of times the map was invalidated
+	 */
+	public long getInvalidateCount() {
+		return mInvalidateCount;
+	}
+
+	/**
+	 * @return the number of redraws saved, compared to invalidating the map once per tile
+	 */
+	public long getRedrawsSaved() {
+		return mTileCount - mInvalidateCount;
+	}
+
+	public void resetStatistics() {
+		mTileCount = 0;
+		mInvalidateCount = 0;
+	}
+
+	// ===========================================================
+	// Methods from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public void handleMessage(final Message msg) {
+		switch (msg.what) {
+		case MapTile.MAPTILE_SUCCESS_ID:
+			mTileCount++;
+			addTile(msg.obj instanceof MapTile ? (MapTile) msg.obj : null);
+			scheduleFlush();
+			break;
+		case FLUSH_ID:
+			flush();
+			break;
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	/**
+	 * Add the screen rect of a tile to the area to invalidate, if it's visible.
+	 *
+	 * @param pTile
+	 *            the tile, or null to invalidate the whole view
+	 */
+	private void addTile(final MapTile pTile) {
+		if (mInvalidateAll) {
+			return;
+		}
+		final int zoomLevel = mMapView.getZoomLevel(false);
+		if (pTile == null || pTile.getZoomLevel() != zoomLevel || mMapView.isAnimating()
+				|| mMapView.isMultiTouchScaling()) {
+			mInvalidateAll = true;
+			return;
+		}
+		final int tileSize = TileSystem.getTileSize();
+		final int worldSize = TileSystem.MapSize(zoomLevel);
+		final int left = pTile.getX() * tileSize - worldSize / 2;
+		final int top = pTile.getY() * tileSize - worldSize / 2;
+		mMapView.getScreenRect(mScreenRect);
+		// the map wraps around, so the tile can be drawn a world to the left or to the right
+		for (int offset = -worldSize; offset <= worldSize; offset += worldSize) {
+			mTileRect.set(left + offset, top, left + offset + tileSize, top + tileSize);
+			if (Rect.intersects(mTileRect, mScreenRect)) {
+				mDirtyRect.union(mTileRect);
+			}
+		}
+	}
+
+	private void scheduleFlush() {
+		if (mFlushScheduled) {
+			return;
+		}
+		mFlushScheduled = true;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			if (mFrameFlusher == null) {
+				mFrameFlusher = new FrameFlusher();
+			}
+			mFrameFlusher.post();
+		} else {
+			// guess when the next frame starts
+			sendEmptyMessageDelayed(FLUSH_ID,
+					FRAME_INTERVAL - SystemClock.uptimeMillis() % FRAME_INTERVAL);
+		}
+	}
+
+	/**
+	 * Invalidate what the tiles loaded since the last flush have changed. Package-private for the
+	 * tests.
+	 */
+	void flush() {
+		mFlushScheduled = false;
+		if (mInvalidateAll) {
+			mMapView.invalidate();
+			mInvalidateCount++;
+		} else if (!mDirtyRect.isEmpty()) {
+			mMapView.invalidateMapCoordinates(mDirtyRect);
+			mInvalidateCount++;
+		}
+		mInvalidateAll = false;
+		mDirtyRect.setEmpty();
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+	/**
+	 * Flushes at the start of the next frame. This is only loaded from API 16.
+	 */
+	private class FrameFlusher implements Choreographer.FrameCallback {
+
+		private void post() {
+			Choreographer.getInstance().postFrameCallback(this);
+		}
+
+		@Override
+		public void doFrame(final long pFrameTimeNanos) {
+			flush();
+		}
+	}
+}
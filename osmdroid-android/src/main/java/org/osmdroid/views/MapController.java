@@ -98,6 +98,7 @@ public class MapController implements IMapController, MapViewConstants {
 		final int worldSize_2 = TileSystem.MapSize(mOsmv.getZoomLevel()) / 2;
 		mOsmv.getScroller().startScroll(x, y, p.x - worldSize_2 - x, p.y - worldSize_2 - y,
 				ANIMATION_DURATION_DEFAULT);
+		mOsmv.prefetchScroll(p.x - worldSize_2, p.y - worldSize_2);
 		mOsmv.postInvalidate();
 	}
 
@@ -189,6 +190,11 @@ public class MapController implements IMapController, MapViewConstants {
 		}
 
 		this.mCurrentAnimationRunner.start();
+
+		final Point p = TileSystem.LatLongToPixelXY(aLatitudeE6 / 1E6, aLongitudeE6 / 1E6,
+				mOsmv.getZoomLevel(), null);
+		final int worldSize_2 = TileSystem.MapSize(mOsmv.getZoomLevel()) / 2;
+		mOsmv.prefetchScroll(p.x - worldSize_2, p.y - worldSize_2);
 	}
 
 	public void scrollBy(final int x, final int y) {
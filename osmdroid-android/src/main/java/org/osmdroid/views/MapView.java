@@ -21,12 +21,13 @@ import org.osmdroid.api.IProjection;
 import org.osmdroid.events.MapListener;
 import org.osmdroid.events.ScrollEvent;
 import org.osmdroid.events.ZoomEvent;
+import org.osmdroid.tileprovider.MapTilePrefetcher;
+import org.osmdroid.tileprovider.MapTileProviderArray;
 import org.osmdroid.tileprovider.MapTileProviderBase;
 import org.osmdroid.tileprovider.MapTileProviderBasic;
 import org.osmdroid.tileprovider.tilesource.IStyledTileSource;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
-import org.osmdroid.tileprovider.util.SimpleInvalidationHandler;
 import org.osmdroid.util.BoundingBoxE6;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.util.GeometryMath;
@@ -130,6 +131,24 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 	/* a point that will be reused to design added views */
 	private final Point mPoint = new Point();
 
+	private final Rect mPrefetchRect = new Rect();
+
+	private boolean mIdlePrefetchPending;
+	private final Runnable mIdlePrefetchRunnable = new Runnable() {
+		@Override
+		public void run() {
+			mIdlePrefetchPending = false;
+			final MapTilePrefetcher prefetcher = getPrefetcher();
+			if (prefetcher != null) {
+				final long wait = prefetcher.prefetchIfIdle();
+				if (wait > 0) {
+					mIdlePrefetchPending = true;
+					postDelayed(this, wait);
+				}
+			}
+		}
+	};
+
 	// ===========================================================
 	// Constructors
 	// ===========================================================
@@ -148,7 +167,7 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 			tileProvider = new MapTileProviderBasic(context, tileSource);
 		}
 
-		mTileRequestCompleteHandler = tileRequestCompleteHandler == null ? new SimpleInvalidationHandler(
+		mTileRequestCompleteHandler = tileRequestCompleteHandler == null ? new CoalescingInvalidationHandler(
 				this) : tileRequestCompleteHandler;
 		mTileProvider = tileProvider;
 		mTileProvider.setTileRequestCompleteHandler(mTileRequestCompleteHandler);
@@ -316,6 +335,7 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 			mScroller.startScroll(getScrollX(), getScrollY(),
 					coords.x - worldSize_2 - getScrollX(), coords.y - worldSize_2 - getScrollY(),
 					500);
+			prefetchScroll(coords.x - worldSize_2, coords.y - worldSize_2);
 			postInvalidate();
 		}
 	}
@@ -436,6 +456,13 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 		return getZoomLevel(true);
 	}
 
+	/**
+	 * @return true while the map is scaled by a multi-touch zoom gesture
+	 */
+	boolean isMultiTouchScaling() {
+		return mMultiTouchScale != 1.0f;
+	}
+
 	/**
 	 * Get the current ZoomLevel for the map tiles.
 	 *
@@ -962,6 +989,51 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 		return rotatedEvent;
 	}
 
+	/**
+	 * Prefetch the tiles for a scroll that is starting, if the tile provider has a
+	 * {@link MapTilePrefetcher}.
+	 *
+	 * @param aToScrollX
+	 *            the scroll x position at the end of the scroll
+	 * @param aToScrollY
+	 *            the scroll y position at the end of the scroll
+	 */
+	void prefetchScroll(final int aToScrollX, final int aToScrollY) {
+		final MapTilePrefetcher prefetcher = getPrefetcher();
+		if (prefetcher == null) {
+			return;
+		}
+		final int zoomLevel = getZoomLevel(false);
+		final int worldSize_2 = TileSystem.MapSize(zoomLevel) / 2;
+		final Rect screenRect = getScreenRect(mPrefetchRect);
+		prefetcher.prefetchScroll(zoomLevel, TileSystem.getTileSize(), getScrollX() + worldSize_2,
+				getScrollY() + worldSize_2, aToScrollX + worldSize_2, aToScrollY + worldSize_2,
+				screenRect.width(), screenRect.height());
+	}
+
+	/**
+	 * Prefetch the tiles of the adjacent zoom levels once the map stops moving, if the tile
+	 * provider has a {@link MapTilePrefetcher}. This is called on every frame.
+	 */
+	private void schedulePrefetchIfIdle() {
+		if (mIdlePrefetchPending) {
+			return;
+		}
+		final MapTilePrefetcher prefetcher = getPrefetcher();
+		if (prefetcher == null || prefetcher.getIdleDelay() < 0) {
+			return;
+		}
+		mIdlePrefetchPending = true;
+		postDelayed(mIdlePrefetchRunnable, prefetcher.getIdleDelay());
+	}
+
+	private MapTilePrefetcher getPrefetcher() {
+		if (!(mTileProvider instanceof MapTileProviderArray)) {
+			return null;
+		}
+		return ((MapTileProviderArray) mTileProvider).getPrefetcher();
+	}
+
 	@Override
 	public void computeScroll() {
 		if (mScroller.computeScrollOffset()) {
@@ -1071,6 +1143,8 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 
 		super.dispatchDraw(c);
 
+		schedulePrefetchIfIdle();
+
 		if (DEBUGMODE) {
 			final long endMs = System.currentTimeMillis();
 			logger.debug("Rendering overall: " + (endMs - startMs) + "ms");
@@ -1098,6 +1172,8 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 	@Override
 	protected void onDetachedFromWindow() {
 		this.mZoomController.setVisible(false);
+		removeCallbacks(mIdlePrefetchRunnable);
+		mIdlePrefetchPending = false;
 		this.onDetach();
 		super.onDetachedFromWindow();
 	}
@@ -1535,6 +1611,7 @@ public class MapView extends ViewGroup implements IMapView, MapViewConstants,
 			mIsFlinging = true;
 			mScroller.fling(getScrollX(), getScrollY(), (int) -velocityX, (int) -velocityY,
 					-worldSize, worldSize, -worldSize, worldSize);
+			prefetchScroll(mScroller.getFinalX(), mScroller.getFinalY());
 			return true;
 		}
 
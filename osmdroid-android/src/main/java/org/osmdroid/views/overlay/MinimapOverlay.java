@@ -86,7 +86,9 @@ public class MinimapOverlay extends TilesOverlay {
 	 * Creates a {@link MinimapOverlay} with the supplied tile provider. The {@link Handler} passed
 	 * in is typically the same handler being used by the main map. The {@link MapTileProviderBase}
 	 * passed in cannot be the same tile provider used in the {@link TilesOverlay}, it must be a new
-	 * instance.
+	 * instance. To load the tiles only once for both, give each a
+	 * {@link org.osmdroid.tileprovider.MapTileProviderBasic} attached to the same
+	 * {@link org.osmdroid.tileprovider.SharedMapTileProvider}.
 	 * 
 	 * @param pContext
 	 *            a context
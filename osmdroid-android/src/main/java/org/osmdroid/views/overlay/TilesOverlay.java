@@ -6,6 +6,7 @@ import org.osmdroid.DefaultResourceProxyImpl;
 import org.osmdroid.ResourceProxy;
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.MapTileProviderBase;
+import org.osmdroid.tileprovider.ReusableBitmapDrawable;
 import org.osmdroid.tileprovider.tilesource.ITileSource;
 import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
 import org.osmdroid.util.TileLooper;
@@ -163,25 +164,44 @@ public class TilesOverlay extends SafeDrawOverlay implements IOverlayMenuProvide
 			// make sure the cache is big enough for all the tiles
 			final int numNeeded = (mLowerRight.y - mUpperLeft.y + 1) * (mLowerRight.x - mUpperLeft.x + 1);
 			mTileProvider.ensureCapacity(numNeeded + mOvershootTileCache);
+			mTileProvider.setViewport(pZoomLevel, mUpperLeft.x, mUpperLeft.y, mLowerRight.x,
+					mLowerRight.y);
 		}
 		@Override
-		public void handleTile(final Canvas pCanvas, final int pTileSizePx, final MapTile pTile, final int pX, final int pY) {
-			Drawable currentMapTile = mTileProvider.getMapTile(pTile);
-			if (currentMapTile == null) {
-				currentMapTile = getLoadingTile();
+		public void handleTile(final Canvas pCanvas, final int pTileSizePx, final long pTileKey, final int pX, final int pY) {
+			// use the tile key so that we don't allocate anything for tiles that are in the cache
+			Drawable currentMapTile = mTileProvider.getMapTile(pTileKey);
+			// make sure the bitmap isn't given to the bitmap pool while we're drawing it
+			final ReusableBitmapDrawable reusableTile = currentMapTile instanceof ReusableBitmapDrawable
+					? (ReusableBitmapDrawable) currentMapTile : null;
+			if (reusableTile != null) {
+				reusableTile.beginUsingDrawable();
 			}
+			try {
+				if (reusableTile != null && !reusableTile.isBitmapValid()) {
+					currentMapTile = null;
+				}
+				if (currentMapTile == null) {
+					currentMapTile = getLoadingTile();
+				}
 
-			if (currentMapTile != null) {
-				mTileRect.set(pX * pTileSizePx, pY * pTileSizePx, pX * pTileSizePx + pTileSizePx, pY
-						* pTileSizePx + pTileSizePx);
-				onTileReadyToDraw(pCanvas, currentMapTile, mTileRect);
+				if (currentMapTile != null) {
+					mTileRect.set(pX * pTileSizePx, pY * pTileSizePx, pX * pTileSizePx + pTileSizePx,
+							pY * pTileSizePx + pTileSizePx);
+					onTileReadyToDraw(pCanvas, currentMapTile, mTileRect);
+				}
+			} finally {
+				if (reusableTile != null) {
+					reusableTile.finishUsingDrawable();
+				}
 			}
 
 			if (DEBUGMODE) {
 				mTileRect.set(pX * pTileSizePx, pY * pTileSizePx, pX * pTileSizePx + pTileSizePx, pY
 						* pTileSizePx + pTileSizePx);
 				mTileRect.offset(-mWorldSize_2, -mWorldSize_2);
-				pCanvas.drawText(pTile.toString(), mTileRect.left + 1,
+				pCanvas.drawText("/" + MapTile.getZoomLevel(pTileKey) + "/" + MapTile.getX(pTileKey)
+						+ "/" + MapTile.getY(pTileKey), mTileRect.left + 1,
 						mTileRect.top + mDebugPaint.getTextSize(), mDebugPaint);
 				pCanvas.drawLine(mTileRect.left, mTileRect.top, mTileRect.right, mTileRect.top,
 						mDebugPaint);
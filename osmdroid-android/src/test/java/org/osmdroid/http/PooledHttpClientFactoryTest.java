@@ -0,0 +1,154 @@
+package org.osmdroid.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Downloads tiles from a local server, which counts the requests and the connections.
+ */
+public class PooledHttpClientFactoryTest {
+
+	private static final int TILES = 200;
+	private static final byte[] TILE = new byte[8 * 1024];
+
+	private ServerSocket mServer;
+	private String mUrl;
+	private final AtomicInteger mRequests = new AtomicInteger();
+	private final AtomicInteger mConnections = new AtomicInteger();
+
+	/**
+	 * A keep-alive server that writes each response at once, so that the timing doesn't depend
+	 * on Nagle's algorithm.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		mServer = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		mUrl = "http://127.0.0.1:" + mServer.getLocalPort() + "/";
+		start(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						final Socket socket = mServer.accept();
+						mConnections.incrementAndGet();
+						start(new Runnable() {
+							@Override
+							public void run() {
+								serve(socket);
+							}
+						});
+					}
+				} catch (final IOException e) {
+					// closed
+				}
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		mServer.close();
+	}
+
+	private static void start(final Runnable pRunnable) {
+		// the pooled connections are left open
+		final Thread thread = new Thread(pRunnable);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void serve(final Socket pSocket) {
+		try {
+			pSocket.setTcpNoDelay(true);
+			final BufferedReader in = new BufferedReader(new InputStreamReader(
+					pSocket.getInputStream(), "US-ASCII"));
+			final OutputStream out = pSocket.getOutputStream();
+			String requestLine;
+			while ((requestLine = in.readLine()) != null) {
+				String header;
+				while ((header = in.readLine()) != null && header.length() > 0) {
+					// the requests don't have a body
+				}
+				mRequests.incrementAndGet();
+				final boolean found = !requestLine.contains("/missing");
+				final byte[] head = ("HTTP/1.1 " + (found ? "200 OK" : "404 Not Found")
+						+ "\r\nContent-Type: image/png\r\nContent-Length: " + TILE.length
+						+ "\r\n\r\n").getBytes("US-ASCII");
+				final byte[] response = new byte[head.length + TILE.length];
+				System.arraycopy(head, 0, response, 0, head.length);
+				System.arraycopy(TILE, 0, response, head.length, TILE.length);
+				out.write(response);
+				out.flush();
+			}
+		} catch (final IOException e) {
+			// the client has closed the connection
+		} finally {
+			try {
+				pSocket.close();
+			} catch (final IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	@Test
+	public void test_reuse_connections() throws IOException {
+		final PooledHttpClientFactory factory = new PooledHttpClientFactory();
+		final HttpClient client = factory.createHttpClient();
+		assertSame("shared", client, factory.createHttpClient());
+
+		// an error response that isn't read must not keep its connection from the pool
+		for (int i = 0; i < 20; i++) {
+			final HttpResponse response = client.execute(new HttpGet(mUrl + "missing/" + i));
+			assertEquals("status", 404, response.getStatusLine().getStatusCode());
+			PooledHttpClientFactory.consumeEntity(response);
+		}
+		final HttpResponse response = client.execute(new HttpGet(mUrl + "10/1/1.png"));
+		assertEquals("tile", TILE.length, EntityUtils.toByteArray(response.getEntity()).length);
+		assertEquals("requests", 21, mRequests.get());
+		assertEquals("one connection", 1, mConnections.get());
+	}
+
+	/**
+	 * Compare with a new client for each tile, the way the downloader used to work.
+	 */
+	@Test
+	public void test_connections_per_tile() throws IOException {
+		for (int i = 0; i < TILES; i++) {
+			final DefaultHttpClient client = new DefaultHttpClient();
+			download(client, i);
+			client.getConnectionManager().shutdown();
+		}
+		assertEquals("a connection for each tile", TILES, mConnections.get());
+
+		final HttpClient pooled = new PooledHttpClientFactory().createHttpClient();
+		for (int i = 0; i < TILES; i++) {
+			download(pooled, i);
+		}
+		assertEquals("requests", 2 * TILES, mRequests.get());
+		assertEquals("one connection for the pooled client", TILES + 1, mConnections.get());
+	}
+
+	private void download(final HttpClient pClient, final int pIndex) throws IOException {
+		final HttpResponse response = pClient.execute(new HttpGet(mUrl + "10/" + pIndex + "/0.png"));
+		assertEquals("tile", TILE.length, EntityUtils.toByteArray(response.getEntity()).length);
+	}
+}
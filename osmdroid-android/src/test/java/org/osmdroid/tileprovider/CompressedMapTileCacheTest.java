@@ -0,0 +1,45 @@
+package org.osmdroid.tileprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CompressedMapTileCacheTest {
+
+	@Test
+	public void test_evict_least_recently_used() {
+		final CompressedMapTileCache cache = new CompressedMapTileCache(100);
+		final MapTile tile1 = new MapTile(1, 0, 0);
+		final MapTile tile2 = new MapTile(1, 0, 1);
+		final MapTile tile3 = new MapTile(1, 1, 0);
+
+		cache.putTileBytes(tile1, new byte[40]);
+		cache.putTileBytes(tile2, new byte[40]);
+		assertNotNull("tile1 is cached", cache.getTileBytes(tile1));
+
+		// tile2 is now the least recently used
+		cache.putTileBytes(tile3, new byte[40]);
+		assertTrue("tile1 is kept", cache.containsTile(tile1));
+		assertFalse("tile2 is evicted", cache.containsTile(tile2));
+		assertTrue("tile3 is cached", cache.containsTile(tile3));
+		assertEquals("bytes", 80, cache.getCurrentBytes());
+
+		assertNull("tile2 is a miss", cache.getTileBytes(tile2));
+		assertEquals("hits", 1, cache.getHits());
+		assertEquals("misses", 1, cache.getMisses());
+
+		cache.putTileBytes(tile1, new byte[10]);
+		assertEquals("replaced bytes", 50, cache.getCurrentBytes());
+
+		cache.putTileBytes(tile2, new byte[101]);
+		assertFalse("too big to cache", cache.containsTile(tile2));
+
+		cache.clear();
+		assertEquals("cleared", 0, cache.getSize());
+		assertEquals("no bytes", 0, cache.getCurrentBytes());
+	}
+}
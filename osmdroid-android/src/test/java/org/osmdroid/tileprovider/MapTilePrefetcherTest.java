@@ -0,0 +1,167 @@
+package org.osmdroid.tileprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+
+import android.graphics.drawable.Drawable;
+
+/**
+ * The tile loaders never run, so the prefetched tiles stay in progress.
+ */
+public class MapTilePrefetcherTest {
+
+	@Test
+	public void test_prefetch_fling() {
+		final TestModuleProvider network = new TestModuleProvider(true);
+		final TestModuleProvider local = new TestModuleProvider(false);
+		final MapTileProviderArray provider = new MapTileProviderArray(null, null,
+				new MapTileModuleProviderBase[] { network, local });
+		final MapTilePrefetcher prefetcher = new MapTilePrefetcher(provider);
+		prefetcher.setMaximumTiles(12);
+
+		// a viewport of 3 x 3 tiles flung 8 tiles to the right
+		assertEquals("budget", 12,
+				prefetcher.prefetchScroll(10, 256, 5120, 5120, 5120 + 2048, 5120, 512, 512));
+		assertEquals("all over the network", 12, network.getPendingCount());
+		assertTrue("destination", provider.isTileInProgress(MapTile.getTileKey(10, 29, 21)));
+		assertTrue("on the way", provider.isTileInProgress(MapTile.getTileKey(10, 22, 19)));
+		assertFalse("visible already", provider.isTileInProgress(MapTile.getTileKey(10, 21, 20)));
+		assertFalse("over budget", provider.isTileInProgress(MapTile.getTileKey(10, 23, 20)));
+
+		// on the way to the destination, one tile has loaded
+		provider.mTileCache.mCachedTiles.put(new MapTile(10, 22, 19), null);
+		prefetcher.onViewport(10, 20, 19, 22, 21);
+		assertEquals("hit", 1, prefetcher.getHitCount());
+		assertEquals("late", 2, prefetcher.getLateCount());
+
+		// the next fling has used up the downloads
+		prefetcher.setDownloadsPerMinute(0);
+		prefetcher.prefetchScroll(10, 256, 5120, 5120, 5120, 5120 - 2048, 512, 512);
+		assertEquals("not seen", 9, prefetcher.getUnusedCount());
+		assertEquals("from local storage", 12, local.getPendingCount());
+		assertEquals("requested", 24, prefetcher.getRequestedCount());
+	}
+
+	@Test
+	public void test_prefetch_adjacent_zoom_levels() {
+		final TestModuleProvider network = new TestModuleProvider(true);
+		final TestModuleProvider local = new TestModuleProvider(false);
+		final MapTileProviderArray provider = new MapTileProviderArray(null, null,
+				new MapTileModuleProviderBase[] { network, local });
+		final MapTilePrefetcher prefetcher = new MapTilePrefetcher(provider);
+		prefetcher.setIdleDelay(500);
+
+		assertEquals("no viewport yet", -1, prefetcher.prefetchIfIdle(0));
+		prefetcher.onViewport(10, 20, 20, 21, 21, 0);
+		prefetcher.onViewport(10, 20, 20, 21, 21, 400);
+		assertEquals("not idle yet", 100, prefetcher.prefetchIfIdle(400));
+
+		// 1 parent and 16 children
+		assertEquals("idle", -1, prefetcher.prefetchIfIdle(500));
+		assertEquals("requested", 17, prefetcher.getRequestedCount());
+		assertTrue("parent", provider.isTileInProgress(MapTile.getTileKey(9, 10, 10)));
+		assertTrue("child", provider.isTileInProgress(MapTile.getTileKey(11, 43, 43)));
+		assertFalse("visible", provider.isTileInProgress(MapTile.getTileKey(10, 21, 20)));
+		assertEquals("once per viewport", -1, prefetcher.prefetchIfIdle(1000));
+
+		// the map wraps around at zoom level 1
+		prefetcher.onViewport(1, -1, 0, 0, 1, 2000);
+		prefetcher.prefetchIfIdle(2500);
+		assertEquals("parent and all the children", 17 + 1 + 16, prefetcher.getRequestedCount());
+		assertEquals("over the download budget", 4, local.getPendingCount());
+	}
+
+	@Test
+	public void test_prefetched_tile_not_redrawn() {
+		final TestModuleProvider network = new TestModuleProvider(true);
+		final int[] notified = new int[1];
+		final MapTileProviderArray provider = new MapTileProviderArray(null, null,
+				new MapTileModuleProviderBase[] { network }) {
+			@Override
+			protected void notifyTileRequestCompleted(final MapTile pTile) {
+				notified[0]++;
+			}
+		};
+		final MapTile prefetched = new MapTile(11, 40, 40);
+		final MapTile visible = new MapTile(10, 20, 20);
+		assertTrue("prefetched", provider.prefetchMapTile(prefetched, true));
+		provider.getMapTile(visible);
+
+		provider.mapTileRequestCompleted(getState(provider, prefetched), null);
+		assertEquals("another zoom level, nothing to redraw", 0, notified[0]);
+		provider.mapTileRequestCompleted(getState(provider, visible), null);
+		assertEquals("visible", 1, notified[0]);
+	}
+
+	private static MapTileRequestState getState(final MapTileProviderArray pProvider,
+			final MapTile pTile) {
+		return pProvider.getTileRequestState(pTile.getTileKey());
+	}
+
+	private static class TestModuleProvider extends MapTileModuleProviderBase {
+
+		private final boolean mUsesDataConnection;
+
+		private TestModuleProvider(final boolean pUsesDataConnection) {
+			super(1, 40, new Executor() {
+				@Override
+				public void execute(final Runnable pRunnable) {
+					// leave the requests in the queue
+				}
+			});
+			mUsesDataConnection = pUsesDataConnection;
+		}
+
+		private int getPendingCount() {
+			synchronized (mQueueLockObject) {
+				return mPending.size();
+			}
+		}
+
+		@Override
+		protected String getName() {
+			return "Test";
+		}
+
+		@Override
+		protected String getThreadGroupName() {
+			return "test";
+		}
+
+		@Override
+		protected Runnable getTileLoader() {
+			return new TileLoader() {
+				@Override
+				protected Drawable loadTile(final MapTileRequestState pState) {
+					return null;
+				}
+			};
+		}
+
+		@Override
+		public boolean getUsesDataConnection() {
+			return mUsesDataConnection;
+		}
+
+		@Override
+		public int getMinimumZoomLevel() {
+			return 0;
+		}
+
+		@Override
+		public int getMaximumZoomLevel() {
+			return 20;
+		}
+
+		@Override
+		public void setTileSource(final ITileSource pTileSource) {
+		}
+	}
+}
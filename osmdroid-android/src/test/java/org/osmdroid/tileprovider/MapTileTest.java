@@ -0,0 +1,43 @@
+package org.osmdroid.tileprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class MapTileTest {
+
+	@Test
+	public void test_tile_key() {
+		final int zoomLevel = 22;
+		final int max = (1 << zoomLevel) - 1;
+		final long key = MapTile.getTileKey(zoomLevel, max, 12345);
+		assertEquals("zoom level", zoomLevel, MapTile.getZoomLevel(key));
+		assertEquals("x", max, MapTile.getX(key));
+		assertEquals("y", 12345, MapTile.getY(key));
+		assertEquals("same key as MapTile", key, new MapTile(zoomLevel, max, 12345).getTileKey());
+		assertFalse("x and y are not interchangeable",
+				MapTile.getTileKey(1, 0, 1) == MapTile.getTileKey(1, 1, 0));
+	}
+
+	/**
+	 * The hash codes of the tiles of a viewport should (almost) all be different.
+	 */
+	@Test
+	public void test_hashCode() {
+		final Set<Integer> hashCodes = new HashSet<Integer>();
+		int tiles = 0;
+		for (int zoomLevel = 14; zoomLevel <= 16; zoomLevel++) {
+			for (int x = 0; x < 32; x++) {
+				for (int y = 0; y < 32; y++) {
+					hashCodes.add(new MapTile(zoomLevel, 8000 + x, 5000 + y).hashCode());
+					tiles++;
+				}
+			}
+		}
+		assertEquals("no collisions", tiles, hashCodes.size());
+	}
+}
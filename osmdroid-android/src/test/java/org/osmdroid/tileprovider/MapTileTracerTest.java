@@ -0,0 +1,87 @@
+package org.osmdroid.tileprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.osmdroid.util.LatencyHistogram;
+
+public class MapTileTracerTest {
+
+	private static final long MS = 1000000;
+
+	@Test
+	public void test_stages() {
+		final MapTileTracer tracer = new MapTileTracer();
+		final ArrayList<String> traced = new ArrayList<String>();
+		tracer.addListener(new IMapTileTraceListener() {
+			@Override
+			public void onProviderFinished(final MapTileTrace pTrace) {
+				traced.add(pTrace.getProviderName() + " " + pTrace.isLoaded() + " "
+						+ pTrace.getStageTime(MapTileTrace.STAGE_QUEUE) / MS);
+			}
+
+			@Override
+			public void onTileCached(final MapTileTrace pTrace) {
+				traced.add("cached " + pTrace.getStageTime(MapTileTrace.STAGE_TOTAL) / MS);
+			}
+		});
+		final MapTileTrace trace = new MapTileTrace(tracer, new MapTile(10, 1, 1), 0);
+
+		// not on the filesystem
+		trace.mark(MapTileTrace.EVENT_ENQUEUED, 1 * MS);
+		trace.mark(MapTileTrace.EVENT_DEQUEUED, 3 * MS);
+		trace.mark(MapTileTrace.EVENT_LOAD_STARTED, 3 * MS);
+		trace.mark(MapTileTrace.EVENT_LOAD_FINISHED, 4 * MS);
+		trace.finish("File", false, 4 * MS);
+
+		// downloaded and decoded
+		trace.mark(MapTileTrace.EVENT_ENQUEUED, 4 * MS);
+		assertEquals("cleared", -1, trace.getStageTime(MapTileTrace.STAGE_LOAD));
+		trace.mark(MapTileTrace.EVENT_DEQUEUED, 10 * MS);
+		trace.mark(MapTileTrace.EVENT_LOAD_STARTED, 10 * MS);
+		trace.mark(MapTileTrace.EVENT_LOAD_FINISHED, 110 * MS);
+		trace.mark(MapTileTrace.EVENT_DECODE_STARTED, 112 * MS);
+		trace.mark(MapTileTrace.EVENT_DECODE_FINISHED, 120 * MS);
+		trace.finish("Network", true, 120 * MS);
+		trace.mark(MapTileTrace.EVENT_CACHED, 121 * MS);
+
+		assertEquals("listener", "[File false 2, Network true 6, cached 121]", traced.toString());
+		assertEquals("load", 100.0,
+				tracer.getHistogram("Network", MapTileTrace.STAGE_LOAD).getMean(), 0.001);
+		assertEquals("decode queue", 2.0,
+				tracer.getHistogram("Network", MapTileTrace.STAGE_DECODE_QUEUE).getMean(), 0.001);
+		assertEquals("not decoded", 0,
+				tracer.getHistogram("File", MapTileTrace.STAGE_DECODE).getCount());
+		assertEquals("not cached", 0,
+				tracer.getHistogram("File", MapTileTrace.STAGE_TOTAL).getCount());
+		assertEquals("total", 1, tracer.getHistogram("Network", MapTileTrace.STAGE_TOTAL)
+				.getCount());
+		assertEquals("providers", 2, tracer.getProviderNames().length);
+
+		tracer.clear();
+		assertNull("cleared", tracer.getHistogram("File", MapTileTrace.STAGE_QUEUE));
+	}
+
+	@Test
+	public void test_histogram() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 90; i++) {
+			histogram.add(3 * MS);
+		}
+		for (int i = 0; i < 10; i++) {
+			histogram.add(100 * MS);
+		}
+		histogram.add(0);
+
+		assertEquals("count", 101, histogram.getCount());
+		assertEquals("3ms is under 4ms", 4, histogram.getPercentile(50));
+		assertEquals("100ms is under 128ms", 128, histogram.getPercentile(95));
+		assertEquals("under 1ms", 1, histogram.getBucketCount(0));
+		assertEquals("maximum", 100.0, histogram.getMaximum(), 0.001);
+		assertTrue("mean", histogram.getMean() > 3 && histogram.getMean() < 100);
+	}
+}
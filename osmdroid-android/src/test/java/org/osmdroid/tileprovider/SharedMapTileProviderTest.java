@@ -0,0 +1,195 @@
+package org.osmdroid.tileprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+
+import android.graphics.drawable.Drawable;
+
+public class SharedMapTileProviderTest {
+
+	@Test
+	public void test_shared_requests() {
+		final TestModuleProvider module = new TestModuleProvider();
+		final SharedMapTileProvider shared = new SharedMapTileProvider(null, null,
+				new XYTileSource("Test", null, 0, 18, 256, ".png", "http://a/"),
+				new MapTileModuleProviderBase[] { module });
+		final TestProvider map = new TestProvider(shared.retain());
+		final TestProvider minimap = new TestProvider(shared.retain());
+		assertEquals("attached", 2, shared.getConsumerCount());
+		assertSame("shared", shared, map.getSharedProvider());
+
+		// a tile both views need is requested once
+		final MapTile tile = new MapTile(10, 1, 2);
+		assertNull("not loaded", map.getMapTile(tile));
+		assertNull("not loaded", minimap.getMapTile(tile.getTileKey()));
+		assertEquals("one request", 1, module.getPendingCount());
+		assertTrue("in progress", minimap.isTileInProgress(tile.getTileKey()));
+
+		// and both are told when it has loaded
+		final MapTileProviderArray chain = shared.getChain();
+		chain.mapTileRequestCompleted(chain.getTileRequestState(tile.getTileKey()), null);
+		assertEquals("map", 1, map.mCompleted);
+		assertEquals("minimap", 1, minimap.mCompleted);
+		assertFalse("loaded", map.isTileInProgress(tile.getTileKey()));
+
+		// the memory cache has room for the tiles of both
+		map.ensureCapacity(40);
+		minimap.ensureCapacity(30);
+		map.ensureCapacity(40);
+		assertEquals("capacity", 70, getCapacity(shared));
+
+		map.detach();
+		assertEquals("one left", 1, shared.getReferenceCount());
+		assertFalse("still used", module.mDetached);
+		minimap.detach();
+		assertEquals("none left", 0, shared.getReferenceCount());
+		assertTrue("detached with the last one", module.mDetached);
+	}
+
+	@Test
+	public void test_switch_source() {
+		final TestModuleProvider module = new TestModuleProvider();
+		final SharedMapTileProvider shared = new SharedMapTileProvider(null, null,
+				tileSource("Test"), new MapTileModuleProviderBase[] { module });
+		final TestProvider map = new TestProvider(shared.retain());
+		final TestProvider minimap = new TestProvider(shared.retain());
+		map.ensureCapacity(40);
+		minimap.ensureCapacity(30);
+
+		// the same source keeps the map first, so that it still drives the viewport
+		map.setTileSource(tileSource("Test"));
+		assertSame("same shared provider", shared, map.getSharedProvider());
+		assertEquals("same references", 2, shared.getReferenceCount());
+		minimap.setViewport(5, 0, 0, 1, 1);
+		map.setViewport(6, 0, 0, 1, 1);
+		assertEquals("the map drives the viewport", 6, module.mZoomLevel);
+
+		// another source moves the map, and the room it needs, to another chain
+		final SharedMapTileProvider other = new SharedMapTileProvider(null, null,
+				tileSource("Other"), new MapTileModuleProviderBase[] { new TestModuleProvider() });
+		SharedMapTileProvider.put(other);
+		map.setTileSource(tileSource("Other"));
+		try {
+			assertSame("other source", other, map.getSharedProvider());
+			assertEquals("one reference left", 1, shared.getReferenceCount());
+			assertEquals("one consumer left", 1, shared.getConsumerCount());
+			assertEquals("one reference", 1, other.getReferenceCount());
+			assertEquals("capacity moved", 40, getCapacity(other));
+
+			// and the minimap joins it without the map's room being counted twice
+			minimap.setTileSource(tileSource("Other"));
+			assertSame("shared again", other, minimap.getSharedProvider());
+			assertTrue("old chain detached", module.mDetached);
+			assertEquals("two references", 2, other.getReferenceCount());
+			minimap.ensureCapacity(30);
+			assertEquals("capacity", 70, getCapacity(other));
+		} finally {
+			map.detach();
+			minimap.detach();
+		}
+		assertEquals("released", 0, other.getReferenceCount());
+	}
+
+	private static ITileSource tileSource(final String pName) {
+		return new XYTileSource(pName, null, 0, 18, 256, ".png", "http://a/");
+	}
+
+	private static int getCapacity(final SharedMapTileProvider pShared) {
+		return pShared.getChain().mTileCache.mCachedTiles.getCapacity();
+	}
+
+	private static class TestProvider extends MapTileProviderBasic {
+		private int mCompleted;
+
+		private TestProvider(final SharedMapTileProvider pSharedProvider) {
+			super(pSharedProvider);
+		}
+
+		@Override
+		protected void notifyTileRequestCompleted(final MapTile pTile) {
+			mCompleted++;
+		}
+	}
+
+	private static class TestModuleProvider extends MapTileModuleProviderBase {
+		private boolean mDetached;
+		private int mZoomLevel = -1;
+
+		private TestModuleProvider() {
+			super(1, 40, new Executor() {
+				@Override
+				public void execute(final Runnable pRunnable) {
+					// leave the requests in the queue
+				}
+			});
+		}
+
+		private int getPendingCount() {
+			synchronized (mQueueLockObject) {
+				return mPending.size();
+			}
+		}
+
+		@Override
+		public void detach() {
+			super.detach();
+			mDetached = true;
+		}
+
+		@Override
+		public void setViewport(final int pZoomLevel, final int pLeft, final int pTop,
+				final int pRight, final int pBottom) {
+			super.setViewport(pZoomLevel, pLeft, pTop, pRight, pBottom);
+			mZoomLevel = pZoomLevel;
+		}
+
+		@Override
+		protected String getName() {
+			return "Test";
+		}
+
+		@Override
+		protected String getThreadGroupName() {
+			return "test";
+		}
+
+		@Override
+		protected Runnable getTileLoader() {
+			return new TileLoader() {
+				@Override
+				protected Drawable loadTile(final MapTileRequestState pState) {
+					return null;
+				}
+			};
+		}
+
+		@Override
+		public boolean getUsesDataConnection() {
+			return false;
+		}
+
+		@Override
+		public int getMinimumZoomLevel() {
+			return 0;
+		}
+
+		@Override
+		public int getMaximumZoomLevel() {
+			return 20;
+		}
+
+		@Override
+		public void setTileSource(final ITileSource pTileSource) {
+		}
+	}
+}
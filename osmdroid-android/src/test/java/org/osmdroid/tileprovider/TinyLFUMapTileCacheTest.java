@@ -0,0 +1,188 @@
+package org.osmdroid.tileprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the admission policy of {@link TinyLFUMapTileCache}, and compares its hit ratio with the
+ * plain {@link LRUMapTileCache} by replaying pan and zoom sessions. A recorded session can be
+ * replayed by setting the system property <code>osmdroid.tileTrace</code> to a file with a line
+ * "zoom x y" for the center tile of each viewport position.<br />
+ * The tiles are cached without drawables, which can't be created outside Android.
+ */
+public class TinyLFUMapTileCacheTest {
+
+	private static final int VIEWPORT_WIDTH = 5;
+	private static final int VIEWPORT_HEIGHT = 7;
+	private static final int WINDOW = VIEWPORT_WIDTH * VIEWPORT_HEIGHT + 5;
+
+	@Test
+	public void test_admission() {
+		final TinyLFUMapTileCache cache = new TinyLFUMapTileCache(2, 2);
+		final MapTile popular = new MapTile(1, 0, 0);
+
+		// the popular tile keeps dropping out of the window and being used again
+		int x = 1;
+		for (int i = 0; i < 3; i++) {
+			request(cache, popular);
+			request(cache, new MapTile(1, x, x++));
+			request(cache, new MapTile(1, x, x++));
+		}
+		assertEquals("cache is full", 4, cache.size());
+
+		// a scan of tiles that are only seen once doesn't evict it
+		for (int i = 0; i < 17; i++) {
+			request(cache, new MapTile(1, x, x++));
+		}
+		assertTrue("popular tile kept", cache.containsKey(popular));
+		assertTrue("window kept", cache.containsKey(new MapTile(1, x - 1, x - 1)));
+		assertTrue("window kept", cache.containsKey(new MapTile(1, x - 2, x - 2)));
+		assertFalse("scan evicted", cache.containsKey(new MapTile(1, x - 5, x - 5)));
+		assertEquals("size", 4, cache.size());
+		assertTrue("admitted", cache.getAdmitted() > 0);
+		assertTrue("rejected", cache.getRejected() > 0);
+
+		cache.clear();
+		assertEquals("cleared", 0, cache.size());
+	}
+
+	@Test
+	public void test_hit_ratio() throws IOException {
+		final String traceFile = System.getProperty("osmdroid.tileTrace");
+		final int[][] session = traceFile == null ? createSession(new Random(42), 20000)
+				: readSession(traceFile);
+
+		for (final int capacity : new int[] { 60, 100, 200 }) {
+			final double lru = replay(session, new LRUMapTileCache(capacity));
+			final double tinyLfu = replay(session, new TinyLFUMapTileCache(WINDOW, capacity
+					- WINDOW));
+			assertTrue("LRU hit ratio " + lru, lru > 0 && lru < 1);
+			assertTrue("TinyLFU hit ratio " + tinyLfu, tinyLfu > 0 && tinyLfu < 1);
+			if (traceFile == null) {
+				assertTrue("TinyLFU hit ratio " + tinyLfu + " is at least LRU hit ratio " + lru,
+						tinyLfu >= lru);
+			}
+		}
+	}
+
+	/**
+	 * @return whether the tile was in the cache
+	 */
+	private static boolean request(final LRUMapTileCache pCache, final MapTile pTile) {
+		final boolean hit = pCache.containsKey(pTile);
+		pCache.get(pTile.getTileKey());
+		if (!hit) {
+			pCache.put(pTile, null);
+		}
+		return hit;
+	}
+
+	/**
+	 * Request all the tiles of each viewport position, and put the ones that aren't in the cache.
+	 *
+	 * @return the hit ratio
+	 */
+	private static double replay(final int[][] pSession, final LRUMapTileCache pCache) {
+		long hits = 0;
+		long lookups = 0;
+		for (final int[] position : pSession) {
+			for (int dy = -VIEWPORT_HEIGHT / 2; dy <= VIEWPORT_HEIGHT / 2; dy++) {
+				for (int dx = -VIEWPORT_WIDTH / 2; dx <= VIEWPORT_WIDTH / 2; dx++) {
+					if (request(pCache, new MapTile(position[0], position[1] + dx, position[2]
+							+ dy))) {
+						hits++;
+					}
+					lookups++;
+				}
+			}
+		}
+		return (double) hits / lookups;
+	}
+
+	/**
+	 * Create a session of someone who mostly looks around a few places they often go back to, and
+	 * sometimes flings across the map or zooms in and out.
+	 */
+	private static int[][] createSession(final Random pRandom, final int pPositions) {
+		final int[][] places = new int[4][];
+		for (int i = 0; i < places.length; i++) {
+			places[i] = new int[] { 14, 8000 + pRandom.nextInt(200), 5000 + pRandom.nextInt(200) };
+		}
+
+		final ArrayList<int[]> session = new ArrayList<int[]>(pPositions);
+		int zoom = 14;
+		int x = places[0][1];
+		int y = places[0][2];
+		while (session.size() < pPositions) {
+			final int action = pRandom.nextInt(10);
+			if (action < 4) {
+				// look around
+				final int steps = 20 + pRandom.nextInt(30);
+				final int centerX = x;
+				final int centerY = y;
+				for (int i = 0; i < steps; i++) {
+					x = Math.max(centerX - 3, Math.min(centerX + 3, x + pRandom.nextInt(3) - 1));
+					y = Math.max(centerY - 3, Math.min(centerY + 3, y + pRandom.nextInt(3) - 1));
+					session.add(new int[] { zoom, x, y });
+				}
+			} else if (action < 6) {
+				// fling
+				final int steps = 15 + pRandom.nextInt(30);
+				final int dx = pRandom.nextInt(3) - 1;
+				final int dy = dx == 0 ? (pRandom.nextBoolean() ? 1 : -1) : pRandom.nextInt(3) - 1;
+				for (int i = 0; i < steps; i++) {
+					x += dx;
+					y += dy;
+					session.add(new int[] { zoom, x, y });
+				}
+			} else if (action < 8) {
+				// zoom in or out
+				if (pRandom.nextBoolean() && zoom < 17) {
+					zoom++;
+					x *= 2;
+					y *= 2;
+				} else if (zoom > 11) {
+					zoom--;
+					x /= 2;
+					y /= 2;
+				}
+				session.add(new int[] { zoom, x, y });
+			} else {
+				// go back to a favourite place
+				final int[] place = places[pRandom.nextInt(places.length)];
+				zoom = place[0];
+				x = place[1];
+				y = place[2];
+				session.add(new int[] { zoom, x, y });
+			}
+		}
+		return session.toArray(new int[session.size()][]);
+	}
+
+	private static int[][] readSession(final String pFileName) throws IOException {
+		final ArrayList<int[]> session = new ArrayList<int[]>();
+		final BufferedReader reader = new BufferedReader(new FileReader(pFileName));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] fields = line.trim().split("\\s+");
+				if (fields.length == 3) {
+					session.add(new int[] { Integer.parseInt(fields[0]),
+							Integer.parseInt(fields[1]), Integer.parseInt(fields[2]) });
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return session.toArray(new int[session.size()][]);
+	}
+}
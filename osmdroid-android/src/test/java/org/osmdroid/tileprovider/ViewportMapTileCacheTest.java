@@ -0,0 +1,53 @@
+package org.osmdroid.tileprovider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * The tiles are cached without drawables, which can't be created outside Android.
+ */
+public class ViewportMapTileCacheTest {
+
+	@Test
+	public void test_evict_furthest_from_viewport() {
+		final ViewportMapTileCache cache = new ViewportMapTileCache(4);
+		cache.setViewport(10, 100, 100, 101, 101);
+
+		cache.put(new MapTile(10, 100, 100), null);
+		cache.put(new MapTile(10, 101, 100), null);
+		cache.put(new MapTile(10, 100, 101), null);
+		final MapTile stale = new MapTile(5, 3, 3);
+		cache.put(stale, null);
+
+		// the tile of another zoom level goes first, even though the visible tiles are older
+		final MapTile neighbour = new MapTile(10, 102, 100);
+		cache.put(neighbour, null);
+		assertFalse("stale tile evicted", cache.containsKey(stale));
+		assertTrue("neighbour kept", cache.containsKey(neighbour));
+
+		cache.put(new MapTile(10, 101, 101), null);
+		assertFalse("neighbour evicted", cache.containsKey(neighbour));
+		assertTrue("visible tile kept", cache.containsKey(new MapTile(10, 100, 100)));
+		assertEquals("size", 4, cache.size());
+	}
+
+	@Test
+	public void test_score() {
+		final ViewportMapTileCache cache = new ViewportMapTileCache(4);
+		cache.setViewport(10, 100, 100, 101, 101);
+		assertEquals("visible", 0, cache.getScore(new MapTile(10, 101, 101)));
+		assertEquals("next to the viewport", 1, cache.getScore(new MapTile(10, 102, 101)));
+		assertEquals("zoomed out", 2, cache.getScore(new MapTile(9, 50, 50)));
+		assertEquals("zoomed in", 2, cache.getScore(new MapTile(11, 203, 203)));
+		assertEquals("zoomed in and next to the viewport", 3, cache.getScore(new MapTile(11,
+				204, 203)));
+
+		// the viewport wraps around the date line
+		cache.setViewport(2, -1, 1, 0, 2);
+		assertEquals("wrapped", 0, cache.getScore(new MapTile(2, 3, 1)));
+		assertEquals("next to the wrapped viewport", 1, cache.getScore(new MapTile(2, 2, 1)));
+	}
+}
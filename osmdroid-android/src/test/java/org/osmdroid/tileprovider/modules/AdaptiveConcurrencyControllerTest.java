@@ -0,0 +1,82 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.modules.AdaptiveConcurrencyController.Decision;
+
+public class AdaptiveConcurrencyControllerTest {
+
+	private static final long MILLISECOND = 1000000;
+
+	private long mNow;
+
+	@Test
+	public void test_aimd() {
+		final AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(1, 8,
+				10, 2.0f);
+		final ArrayList<Decision> decisions = new ArrayList<Decision>();
+		controller.setListener(new IConcurrencyListener() {
+			@Override
+			public void onConcurrencyDecision(final AdaptiveConcurrencyController pController,
+					final Decision pDecision, final int pPreviousLimit) {
+				decisions.add(pDecision);
+			}
+		});
+		controller.reset(2);
+
+		// a fast server with tiles waiting: each window raises the limit by one, while each
+		// extra loader adds to the throughput
+		for (int limit = 2; limit < 8; limit++) {
+			window(controller, 100, limit, true);
+		}
+		assertEquals("raised to the maximum", 8, controller.getConcurrencyLimit());
+		assertEquals("windows", 6, decisions.size());
+		assertSame("raised", Decision.INCREASE, decisions.get(5));
+
+		// no tiles waiting
+		window(controller, 100, 8, false);
+		assertSame("held", Decision.HOLD, controller.getLastDecision());
+		assertEquals("10 tiles in two batches of 100ms", 50f, controller.getThroughput(), 1f);
+
+		// the server slows down
+		assertEquals("cut by a quarter", 6, window(controller, 300, 8, true));
+		assertSame("lowered", Decision.DECREASE, controller.getLastDecision());
+		assertEquals("average", 300 * MILLISECOND, controller.getAverageLatency());
+		assertEquals("minimum", 100 * MILLISECOND, controller.getMinimumLatency());
+		assertEquals("cut again", 4, window(controller, 300, 6, true));
+	}
+
+	@Test
+	public void test_revert() {
+		final AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(1, 8,
+				10, 2.0f);
+		controller.reset(4);
+		window(controller, 100, 4, true);
+		assertEquals("raised", 5, controller.getConcurrencyLimit());
+
+		// the extra loader only made each tile slower
+		assertEquals("undone", 4, window(controller, 150, 4, true));
+		assertSame("reverted", Decision.REVERT, controller.getLastDecision());
+	}
+
+	/**
+	 * Load a window of tiles, in batches of the concurrency.
+	 *
+	 * @return the limit after the window
+	 */
+	private int window(final AdaptiveConcurrencyController pController, final long pLatency,
+			final int pConcurrency, final boolean pBacklog) {
+		int limit = 0;
+		for (int i = 0; i < 10; i++) {
+			if (i % pConcurrency == 0) {
+				mNow += pLatency * MILLISECOND;
+			}
+			limit = pController.addSample(pLatency * MILLISECOND, pBacklog, mNow);
+		}
+		return limit;
+	}
+}
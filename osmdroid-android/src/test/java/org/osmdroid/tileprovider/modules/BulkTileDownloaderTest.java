@@ -0,0 +1,183 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileProviderArray;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+import org.osmdroid.util.BoundingBoxE6;
+
+public class BulkTileDownloaderTest {
+
+	@Test
+	public void test_resume() throws IOException {
+		final File jobFile = File.createTempFile("bulk", ".job");
+		jobFile.delete();
+		final TestDownloader downloader = new TestDownloader();
+		final BoundingBoxE6 area = new BoundingBoxE6(80000000, 90000000, -80000000, -90000000);
+		// 2 x 2 tiles at zoom level 1 and 2
+		final int[] ranges = { 0, 0, 1, 1, 1, 1, 2, 2 };
+		final BulkTileDownloader job = new BulkTileDownloader(downloader, area, 1, 2, 1000, ranges,
+				jobFile);
+		job.setTilesPerSecond(1000);
+		job.setRetryPolicy(new RetryPolicy(1, 0, 0, new Random(1)));
+		assertEquals("tiles", 8, job.getTileCount());
+
+		// the job stops with the process after 3 tiles
+		final Listener listener = new Listener(3);
+		job.setProgressListener(listener);
+		job.runJob();
+		assertEquals("completed", 3, job.getCompletedCount());
+		assertTrue("saved", jobFile.exists());
+
+		final BulkTileDownloader restored = BulkTileDownloader.restore(downloader, jobFile);
+		assertEquals("restored", 3, restored.getCompletedCount());
+		assertEquals("same tiles", 8, restored.getTileCount());
+		restored.setTilesPerSecond(1000);
+		restored.setProgressListener(listener);
+		listener.mPauseAt = -1;
+		restored.runJob();
+
+		assertTrue("finished", restored.isFinished());
+		assertEquals("finished once", 1, listener.mFinished);
+		assertEquals("skipped", 1, restored.getSkippedCount());
+		assertEquals("failed", 1, restored.getFailedCount());
+		assertEquals("downloaded", 6, restored.getDownloadedCount());
+		// the tile that failed once was tried again, and no tile was downloaded twice
+		assertEquals("downloads", 6, downloader.mDownloaded.size());
+		assertEquals("first", new MapTile(1, 0, 0).toString(), downloader.mDownloaded.get(0));
+		assertEquals("last", new MapTile(2, 2, 1).toString(), downloader.mDownloaded.get(5));
+
+		restored.cancel();
+		assertFalse("deleted", jobFile.exists());
+		assertNull("nothing to restore", BulkTileDownloader.restore(downloader, jobFile));
+	}
+
+	@Test
+	public void test_cancel_from_listener() throws IOException {
+		final File jobFile = File.createTempFile("bulk", ".job");
+		final BulkTileDownloader job = new BulkTileDownloader(new TestDownloader(),
+				new BoundingBoxE6(80000000, 90000000, -80000000, -90000000), 1, 2, 1000, new int[] {
+						0, 0, 1, 1, 1, 1, 2, 2 }, jobFile);
+		job.setTilesPerSecond(1000);
+		job.setProgressListener(new BulkTileDownloader.ProgressListener() {
+			@Override
+			public void onProgress(final BulkTileDownloader pJob) {
+				if (pJob.getCompletedCount() == 3) {
+					pJob.cancel();
+				}
+			}
+
+			@Override
+			public void onFinished(final BulkTileDownloader pJob) {
+			}
+		});
+		job.runJob();
+
+		assertEquals("stopped", 3, job.getCompletedCount());
+		assertFalse("not saved again", jobFile.exists());
+	}
+
+	@Test
+	public void test_clears_missing_tiles() throws IOException {
+		final File jobFile = File.createTempFile("bulk", ".job");
+		final TestDownloader downloader = new TestDownloader();
+		final TestDownloader other = new TestDownloader();
+		final MapTileProviderArray provider = new MapTileProviderArray(null, null,
+				new MapTileModuleProviderBase[] { other });
+		final BulkTileDownloader job = new BulkTileDownloader(downloader, new BoundingBoxE6(
+				80000000, 90000000, -80000000, -90000000), 2, 2, 1000, new int[] { 1, 1, 2, 2 },
+				jobFile);
+		job.setTilesPerSecond(1000);
+		job.setRetryPolicy(new RetryPolicy(1, 0, 0, new Random(1)));
+		job.setTileProvider(provider);
+		final MapTile saved = new MapTile(2, 1, 2);
+		final MapTile notOnServer = new MapTile(2, 2, 2);
+		downloader.getMissingTileCache().putMissing(saved, false);
+		other.getMissingTileCache().putMissing(saved, false);
+		other.getMissingTileCache().putMissing(notOnServer, false);
+
+		job.runJob();
+
+		// the providers load the tile that the job saved
+		assertFalse("downloader", downloader.getMissingTileCache().isMissing(saved));
+		assertFalse("provider", other.getMissingTileCache().isMissing(saved));
+		assertTrue("not saved", other.getMissingTileCache().isMissing(notOnServer));
+		job.cancel();
+	}
+
+	@Test
+	public void test_antimeridian() {
+		// x from 3 round to 0 at zoom level 2
+		final BulkTileDownloader job = new BulkTileDownloader(new TestDownloader(),
+				new BoundingBoxE6(10000000, -170000000, -10000000, 170000000), 2, 2, 1000,
+				new int[] { 3, 1, 0, 2 }, new File("unused"));
+		assertEquals("tiles", 4, job.getTileCount());
+		assertEquals("east", new MapTile(2, 3, 2).toString(), job.getTile(1).toString());
+		assertEquals("wrapped", new MapTile(2, 0, 1).toString(), job.getTile(2).toString());
+	}
+
+	private static class Listener implements BulkTileDownloader.ProgressListener {
+		private long mPauseAt;
+		private int mFinished;
+
+		private Listener(final long pPauseAt) {
+			mPauseAt = pPauseAt;
+		}
+
+		@Override
+		public void onProgress(final BulkTileDownloader pJob) {
+			if (pJob.getCompletedCount() == mPauseAt) {
+				pJob.pause();
+			}
+		}
+
+		@Override
+		public void onFinished(final BulkTileDownloader pJob) {
+			mFinished++;
+		}
+	}
+
+	private static class TestDownloader extends MapTileDownloader {
+		private final ArrayList<String> mDownloaded = new ArrayList<String>();
+		private boolean mFailedOnce;
+
+		private TestDownloader() {
+			super(new XYTileSource("Test", null, 0, 18, 256, ".png", "http://a/"));
+		}
+
+		@Override
+		public boolean isAvailable() {
+			return true;
+		}
+
+		@Override
+		public boolean isTileSaved(final MapTile pTile, final long pMaximumAge) {
+			return pTile.getZoomLevel() == 2 && pTile.getX() == 1 && pTile.getY() == 1;
+		}
+
+		@Override
+		public boolean downloadTile(final MapTile pTile) throws IOException {
+			if (pTile.getZoomLevel() == 2 && pTile.getX() == 2 && pTile.getY() == 2) {
+				// not on the server
+				return false;
+			}
+			if (pTile.getZoomLevel() == 2 && !mFailedOnce) {
+				mFailedOnce = true;
+				throw new IOException("timeout");
+			}
+			assertFalse("once", mDownloaded.contains(pTile.toString()));
+			mDownloaded.add(pTile.toString());
+			return true;
+		}
+	}
+}
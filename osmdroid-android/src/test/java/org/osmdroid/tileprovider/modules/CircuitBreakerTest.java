@@ -0,0 +1,59 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+	@Test
+	public void test_open_and_close() {
+		final CircuitBreaker breaker = new CircuitBreaker(3, 1000, 3000);
+		assertFalse("one failure", breaker.onFailure(0));
+		assertFalse("two failures", breaker.onFailure(0));
+		assertTrue("opened", breaker.onFailure(0));
+		assertTrue("open", breaker.isOpen());
+		assertEquals("retry time", 1000, breaker.getRetryTime());
+
+		assertFalse("too soon", breaker.tryHalfOpen(500, true));
+		assertTrue("half open", breaker.tryHalfOpen(1000, true));
+		assertEquals("state", CircuitBreaker.HALF_OPEN, breaker.getState());
+
+		// a failure while half open opens it for longer
+		assertTrue("opened again", breaker.onFailure(1000));
+		assertEquals("twice as long", 3000, breaker.getRetryTime());
+
+		// no network keeps it open, up to the maximum open time
+		assertFalse("no network", breaker.tryHalfOpen(3000, false));
+		assertEquals("maximum", 6000, breaker.getRetryTime());
+		assertFalse("already open", breaker.open(3000));
+
+		assertTrue("half open", breaker.tryHalfOpen(6000, true));
+		breaker.onSuccess();
+		assertEquals("closed", CircuitBreaker.CLOSED, breaker.getState());
+		assertEquals("open count", 2, breaker.getOpenCount());
+		assertTrue("opened with no network", breaker.open(6000));
+		assertEquals("back to the open time", 7000, breaker.getRetryTime());
+	}
+
+	@Test
+	public void test_retry_policy() {
+		final RetryPolicy policy = new RetryPolicy(3, 1000, 3000, new Random(1));
+		assertTrue("first", policy.shouldRetry(0));
+		assertFalse("too many", policy.shouldRetry(3));
+		for (int i = 0; i < 20; i++) {
+			assertBetween("first delay", 500, 1000, policy.getDelay(0));
+			assertBetween("backed off", 1000, 2000, policy.getDelay(1));
+			assertBetween("maximum", 1500, 3000, policy.getDelay(40));
+		}
+	}
+
+	private static void assertBetween(final String pMessage, final long pMinimum,
+			final long pMaximum, final long pActual) {
+		assertTrue(pMessage + ": " + pActual, pActual >= pMinimum && pActual <= pMaximum);
+	}
+}
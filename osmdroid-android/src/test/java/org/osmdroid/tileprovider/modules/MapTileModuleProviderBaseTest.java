@@ -0,0 +1,279 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.IMapTileProviderCallback;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileRequestState;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+
+import android.graphics.drawable.Drawable;
+
+public class MapTileModuleProviderBaseTest {
+
+	@Test
+	public void test_concurrency_limit() {
+		final QueuedExecutor executor = new QueuedExecutor();
+		final TestProvider provider = new TestProvider(2, executor);
+		final Callback callback = new Callback();
+		for (int i = 0; i < 5; i++) {
+			provider.loadMapTileAsync(new MapTileRequestState(new MapTile(10, i, i),
+					new MapTileModuleProviderBase[] { provider }, callback));
+		}
+		assertEquals("limited", 2, executor.mRunnables.size());
+		assertEquals("active", 2, provider.getActiveLoaderCount());
+
+		// a loader loads one tile and is submitted again behind the other loader
+		executor.mRunnables.remove(0).run();
+		assertEquals("loaded one", 1, callback.mFailed);
+		assertEquals("submitted again", 2, executor.mRunnables.size());
+		assertEquals("still active", 2, provider.getActiveLoaderCount());
+		executor.runAll();
+		assertEquals("loaded", 5, callback.mFailed);
+		assertEquals("none left", 0, provider.getActiveLoaderCount());
+
+		provider.setConcurrencyLimit(4);
+		for (int i = 0; i < 3; i++) {
+			provider.loadMapTileAsync(new MapTileRequestState(new MapTile(11, i, i),
+					new MapTileModuleProviderBase[] { provider }, callback));
+		}
+		assertEquals("one per tile", 3, executor.mRunnables.size());
+
+		// after detaching the loaders stop and no more are started
+		provider.detach();
+		for (final Runnable runnable : executor.mRunnables) {
+			runnable.run();
+		}
+		executor.mRunnables.clear();
+		provider.loadMapTileAsync(new MapTileRequestState(new MapTile(12, 0, 0),
+				new MapTileModuleProviderBase[] { provider }, callback));
+		assertEquals("detached", 0, executor.mRunnables.size());
+		assertEquals("none active", 0, provider.getActiveLoaderCount());
+	}
+
+	@Test
+	public void test_decode_stage() {
+		final QueuedExecutor executor = new QueuedExecutor();
+		final QueuedExecutor decodeExecutor = new QueuedExecutor();
+		final TestProvider provider = new TestProvider(1, executor, decodeExecutor);
+		final Callback callback = new Callback();
+		for (int i = 0; i < 3; i++) {
+			provider.loadMapTileAsync(new MapTileRequestState(new MapTile(10, i, i),
+					new MapTileModuleProviderBase[] { provider }, callback));
+		}
+		assertEquals("fetch queue", 3, provider.getFetchQueueDepth());
+
+		// the loader fetches all the tiles without waiting for them to be decoded
+		executor.runAll();
+		assertEquals("all fetched", 0, provider.getFetchQueueDepth());
+		assertEquals("decode queue", 3, provider.getDecodeQueueDepth());
+		assertEquals("not delivered yet", 0, callback.mFailed);
+		assertEquals("loader stopped", 0, provider.getActiveLoaderCount());
+
+		// a tile that's requested again isn't fetched again while it's decoded
+		provider.loadMapTileAsync(new MapTileRequestState(new MapTile(10, 0, 0),
+				new MapTileModuleProviderBase[] { provider }, callback));
+		assertEquals("no loader", 0, executor.mRunnables.size());
+
+		for (final Runnable runnable : decodeExecutor.mRunnables) {
+			runnable.run();
+		}
+		assertEquals("delivered", 3, callback.mFailed);
+		assertEquals("all decoded", 0, provider.getDecodeQueueDepth());
+		synchronized (provider.mQueueLockObject) {
+			assertEquals("removed from the queue", 0, provider.mPending.size());
+		}
+	}
+
+	@Test
+	public void test_retry_later() {
+		final QueuedExecutor executor = new QueuedExecutor();
+		final TestProvider provider = new TestProvider(1, executor);
+		provider.mRetries = 1;
+		final Callback callback = new Callback();
+		final MapTileRequestState[] states = new MapTileRequestState[3];
+		for (int i = 0; i < states.length; i++) {
+			states[i] = new MapTileRequestState(new MapTile(10, i, i),
+					new MapTileModuleProviderBase[] { provider }, callback);
+			provider.loadMapTileAsync(states[i]);
+		}
+
+		// the tiles are kept in the queue until they're tried again
+		executor.runAll();
+		assertEquals("scheduled", 3, provider.mScheduled.size());
+		assertEquals("not delivered", 0, callback.mFailed);
+		assertEquals("retried", 1, states[0].getRetryCount());
+		synchronized (provider.mQueueLockObject) {
+			assertEquals("still queued", 3, provider.mPending.size());
+		}
+
+		// while paused they wait
+		provider.pause();
+		states[2].cancel();
+		for (final Runnable runnable : provider.mScheduled) {
+			runnable.run();
+		}
+		assertEquals("cancelled one failed", 1, callback.mFailed);
+		assertEquals("waiting", 2, provider.getFetchQueueDepth());
+		assertEquals("no loader", 0, executor.mRunnables.size());
+
+		provider.resume();
+		assertFalse("resumed", provider.isPaused());
+		executor.runAll();
+		assertEquals("delivered", 3, callback.mFailed);
+		synchronized (provider.mQueueLockObject) {
+			assertEquals("removed from the queue", 0, provider.mPending.size());
+		}
+	}
+
+	@Test
+	public void test_shared_threads() {
+		final QueuedExecutor executor = new QueuedExecutor();
+		final TestProvider slow = new TestProvider(1, executor);
+		final TestProvider fast = new TestProvider(1, executor);
+		final Callback slowCallback = new Callback();
+		final Callback fastCallback = new Callback();
+		for (int i = 0; i < 5; i++) {
+			slow.loadMapTileAsync(new MapTileRequestState(new MapTile(10, i, i),
+					new MapTileModuleProviderBase[] { slow }, slowCallback));
+		}
+		fast.loadMapTileAsync(new MapTileRequestState(new MapTile(10, 0, 0),
+				new MapTileModuleProviderBase[] { fast }, fastCallback));
+
+		// the loader of the slow provider gives up its thread after each tile
+		executor.mRunnables.remove(0).run();
+		assertEquals("one slow tile", 1, slowCallback.mFailed);
+		executor.mRunnables.remove(0).run();
+		assertEquals("then the fast tile", 1, fastCallback.mFailed);
+		assertEquals("fast loader stopped", 0, fast.getActiveLoaderCount());
+
+		executor.runAll();
+		assertEquals("all slow tiles", 5, slowCallback.mFailed);
+		assertEquals("slow loader stopped", 0, slow.getActiveLoaderCount());
+	}
+
+	private static class QueuedExecutor implements Executor {
+		private final ArrayList<Runnable> mRunnables = new ArrayList<Runnable>();
+
+		@Override
+		public void execute(final Runnable pRunnable) {
+			mRunnables.add(pRunnable);
+		}
+
+		/**
+		 * Run the loaders, and the ones they submit again, until none is left.
+		 */
+		private void runAll() {
+			while (!mRunnables.isEmpty()) {
+				mRunnables.remove(0).run();
+			}
+		}
+	}
+
+	private static class Callback implements IMapTileProviderCallback {
+		private int mFailed;
+
+		@Override
+		public void mapTileRequestCompleted(final MapTileRequestState aState,
+				final Drawable aDrawable) {
+		}
+
+		@Override
+		public void mapTileRequestFailed(final MapTileRequestState aState) {
+			mFailed++;
+		}
+
+		@Override
+		public void mapTileRequestExpiredTile(final MapTileRequestState aState,
+				final Drawable aDrawable) {
+		}
+
+		@Override
+		public boolean useDataConnection() {
+			return true;
+		}
+	}
+
+	private static class TestProvider extends MapTileModuleProviderBase {
+
+		/** true to hand the tiles to the decode stage */
+		private final boolean mDecodeLater;
+
+		/** the number of times each tile is tried again */
+		private int mRetries;
+
+		private final ArrayList<Runnable> mScheduled = new ArrayList<Runnable>();
+
+		private TestProvider(final int pThreadPoolSize, final Executor pExecutor) {
+			super(pThreadPoolSize, 40, pExecutor);
+			mDecodeLater = false;
+		}
+
+		private TestProvider(final int pThreadPoolSize, final Executor pExecutor,
+				final Executor pDecodeExecutor) {
+			super(pThreadPoolSize, 40, pExecutor, pDecodeExecutor);
+			mDecodeLater = true;
+		}
+
+		@Override
+		protected String getName() {
+			return "Test";
+		}
+
+		@Override
+		protected String getThreadGroupName() {
+			return "test";
+		}
+
+		@Override
+		protected Runnable getTileLoader() {
+			return new TileLoader() {
+				@Override
+				protected Drawable loadTile(final MapTileRequestState pState) {
+					if (pState.getRetryCount() < mRetries) {
+						pState.setRetryCount(pState.getRetryCount() + 1);
+						return retryLater(pState, 1000);
+					}
+					if (!mDecodeLater) {
+						return null;
+					}
+					return decodeLater(pState, new ITileDecoder() {
+						@Override
+						public Drawable decode() {
+							return null;
+						}
+					});
+				}
+			};
+		}
+
+		@Override
+		protected void schedule(final Runnable pRunnable, final long pDelay) {
+			mScheduled.add(pRunnable);
+		}
+
+		@Override
+		public boolean getUsesDataConnection() {
+			return false;
+		}
+
+		@Override
+		public int getMinimumZoomLevel() {
+			return 0;
+		}
+
+		@Override
+		public int getMaximumZoomLevel() {
+			return 20;
+		}
+
+		@Override
+		public void setTileSource(final ITileSource pTileSource) {
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileRequestState;
+
+public class MapTileRequestQueueTest {
+
+	private static final MapTileModuleProviderBase[] NO_PROVIDERS = {};
+
+	@Test
+	public void test_most_recent_first() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(10);
+		final MapTileRequestState state1 = request(1);
+		final MapTileRequestState state2 = request(2);
+		final MapTileRequestState state3 = request(3);
+		queue.put(state1);
+		queue.put(state2);
+		queue.put(state3);
+		queue.put(request(2));
+
+		assertEquals("tile2 jumped the queue", state2.getMapTile(), queue.next().getMapTile());
+		assertSame("tile3", state3, queue.next());
+
+		// a working tile isn't returned again, even if it's requested again
+		queue.put(state3);
+		assertSame("tile1", state1, queue.next());
+		assertNull("nothing waiting", queue.next());
+		assertEquals("all still in the queue", 3, queue.size());
+		assertTrue("working", queue.isWorking(state3.getMapTile()));
+
+		queue.remove(state3.getMapTile());
+		assertFalse("removed", queue.contains(state3.getMapTile()));
+		assertEquals("size", 2, queue.size());
+	}
+
+	@Test
+	public void test_drop_eldest_waiting() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(3);
+		final MapTileRequestState state1 = request(1);
+		queue.put(state1);
+		queue.next();
+		final MapTileRequestState state2 = request(2);
+		queue.put(state2);
+		queue.put(request(3));
+
+		// tile1 is older but it's being loaded
+		assertSame("tile2 dropped", state2, queue.put(request(4)));
+		assertEquals("size", 3, queue.size());
+		assertEquals("waiting", 2, queue.getWaitingCount());
+		assertTrue("tile1 kept", queue.contains(state1.getMapTile()));
+
+		queue.clear();
+		assertEquals("cleared", 0, queue.size());
+		assertNull("nothing waiting", queue.next());
+	}
+
+	@Test
+	public void test_viewport_priority() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(30);
+		queue.setViewportPriority(true);
+		queue.setViewport(10, 0, 0, 4, 4);
+
+		// request the tiles like TileLooper does, from the top left to the bottom right
+		for (int y = 0; y <= 4; y++) {
+			for (int x = 0; x <= 4; x++) {
+				queue.put(new MapTileRequestState(new MapTile(10, x, y), NO_PROVIDERS, null));
+			}
+		}
+		final MapTile zoomedOut = new MapTile(9, 1, 1);
+		queue.put(new MapTileRequestState(zoomedOut, NO_PROVIDERS, null));
+		queue.put(new MapTileRequestState(new MapTile(10, 2, 2), NO_PROVIDERS, null));
+
+		assertEquals("center first", new MapTile(10, 2, 2), queue.next().getMapTile());
+		final MapTile second = queue.next().getMapTile();
+		assertEquals("next to the center", 1,
+				Math.abs(second.getX() - 2) + Math.abs(second.getY() - 2));
+
+		// the viewport moves to the bottom right
+		queue.setViewport(10, 10, 10, 14, 14);
+		assertEquals("closest to the new center", new MapTile(10, 4, 4), queue.next().getMapTile());
+
+		queue.setViewport(10, 0, 0, 4, 4);
+		for (int i = 0; i < 22; i++) {
+			assertFalse("other zoom level last", zoomedOut.equals(queue.next().getMapTile()));
+		}
+		assertEquals("other zoom level", zoomedOut, queue.next().getMapTile());
+		assertNull("nothing waiting", queue.next());
+
+		// back to most recently requested first
+		queue.clear();
+		queue.put(request(1));
+		queue.put(request(2));
+		queue.setViewportPriority(false);
+		assertEquals("most recent", new MapTile(10, 2, 2), queue.next().getMapTile());
+	}
+
+	@Test
+	public void test_remove_outside() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(30);
+		for (int x = 0; x < 8; x++) {
+			queue.put(new MapTileRequestState(new MapTile(3, x, 0), NO_PROVIDERS, null));
+		}
+		queue.put(new MapTileRequestState(new MapTile(4, 0, 0), NO_PROVIDERS, null));
+		final MapTileRequestState working = queue.next();
+
+		// a range that wraps around the date line
+		final ArrayList<MapTileRequestState> waiting = new ArrayList<MapTileRequestState>();
+		final ArrayList<MapTileRequestState> loading = new ArrayList<MapTileRequestState>();
+		queue.removeOutside(3, -2, 0, 1, 0, waiting, loading);
+
+		assertEquals("other zoom level is loading", 1, loading.size());
+		assertSame("other zoom level", working, loading.get(0));
+		assertEquals("tiles 2 to 5 removed", 4, waiting.size());
+		assertEquals("4 tiles left plus the one loading", 5, queue.size());
+		assertTrue("wrapped tile kept", queue.contains(new MapTile(3, 7, 0)));
+		assertTrue("tile kept", queue.contains(new MapTile(3, 1, 0)));
+		assertFalse("tile removed", queue.contains(new MapTile(3, 2, 0)));
+	}
+
+	@Test
+	public void test_background() {
+		final MapTileRequestQueue queue = new MapTileRequestQueue(30);
+		final MapTileRequestState prefetch1 = request(1);
+		final MapTileRequestState prefetch2 = request(2);
+		prefetch1.setBackground(true);
+		prefetch2.setBackground(true);
+		queue.put(prefetch1);
+		queue.put(prefetch2);
+		queue.put(request(3));
+
+		// background requests aren't cancelled
+		final ArrayList<MapTileRequestState> waiting = new ArrayList<MapTileRequestState>();
+		queue.removeOutside(10, 0, 0, 0, 0, waiting, new ArrayList<MapTileRequestState>());
+		assertEquals("tile3 removed", 1, waiting.size());
+
+		queue.put(request(4));
+		prefetch2.setBackground(false);
+		queue.put(prefetch2);
+		assertSame("promoted", prefetch2, queue.next());
+		assertEquals("foreground first", new MapTile(10, 4, 4), queue.next().getMapTile());
+		assertSame("background in the order requested", prefetch1, queue.next());
+	}
+
+	/**
+	 * Check that the queue hands out the same requests as the LinkedHashMap that it replaced, for a
+	 * queue that is kept full of prefetch requests while one tile at a time is loaded.
+	 */
+	@Test
+	public void test_same_as_linked_hash_map() {
+		final int size = 300;
+		final int operations = 20000;
+		final MapTileRequestState[] requests = new MapTileRequestState[size * 4];
+		for (int i = 0; i < requests.length; i++) {
+			requests[i] = request(i);
+		}
+
+		final MapTileRequestQueue queue = new MapTileRequestQueue(size);
+		final LinkedHashMapQueue map = new LinkedHashMapQueue(size);
+		final Random random = new Random(1);
+		for (int i = 0; i < operations; i++) {
+			final MapTileRequestState request = requests[random.nextInt(requests.length)];
+			queue.put(request);
+			map.put(request);
+			final MapTileRequestState next = queue.next();
+			assertSame("same next request", map.next(), next);
+			if (next != null && random.nextBoolean()) {
+				queue.remove(next.getMapTile());
+				map.remove(next.getMapTile());
+			}
+			assertEquals("same size", map.mPending.size(), queue.size());
+		}
+	}
+
+	private static MapTileRequestState request(final int pIndex) {
+		return new MapTileRequestState(new MapTile(10, pIndex, pIndex), NO_PROVIDERS, null);
+	}
+
+	/**
+	 * The way the queue used to be implemented.
+	 */
+	private static class LinkedHashMapQueue {
+		private final LinkedHashMap<MapTile, MapTileRequestState> mPending;
+		private final LinkedHashMap<MapTile, MapTileRequestState> mWorking = new LinkedHashMap<MapTile, MapTileRequestState>();
+
+		private LinkedHashMapQueue(final int pSize) {
+			mPending = new LinkedHashMap<MapTile, MapTileRequestState>(pSize + 2, 0.1f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(
+						final Map.Entry<MapTile, MapTileRequestState> pEldest) {
+					if (size() > pSize) {
+						final Iterator<MapTile> iterator = keySet().iterator();
+						while (iterator.hasNext()) {
+							final MapTile tile = iterator.next();
+							if (!mWorking.containsKey(tile)) {
+								remove(tile);
+								break;
+							}
+						}
+					}
+					return false;
+				}
+			};
+		}
+
+		private void put(final MapTileRequestState pState) {
+			mPending.put(pState.getMapTile(), pState);
+		}
+
+		private MapTileRequestState next() {
+			MapTile result = null;
+			final Iterator<MapTile> iterator = mPending.keySet().iterator();
+			while (iterator.hasNext()) {
+				final MapTile tile = iterator.next();
+				if (!mWorking.containsKey(tile)) {
+					result = tile;
+				}
+			}
+			if (result != null) {
+				mWorking.put(result, mPending.get(result));
+			}
+			return result != null ? mPending.get(result) : null;
+		}
+
+		private void remove(final MapTile pTile) {
+			mPending.remove(pTile);
+			mWorking.remove(pTile);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+
+public class MissingTileCacheTest {
+
+	@Test
+	public void test_time_to_live() {
+		final MissingTileCache cache = new MissingTileCache(10, 1000, 100);
+		final MapTile notFound = new MapTile(10, 1, 1);
+		final MapTile failed = new MapTile(10, 2, 2);
+		cache.putMissing(notFound, true, 0);
+		cache.putMissing(failed, false, 0);
+
+		assertTrue("not found", cache.isMissing(notFound, 50));
+		assertTrue("failed", cache.isMissing(failed, 50));
+		assertFalse("try again after a failure", cache.isMissing(failed, 100));
+		assertTrue("still not found", cache.isMissing(notFound, 999));
+		assertFalse("try again", cache.isMissing(notFound, 1000));
+		assertEquals("expired misses are forgotten", 0, cache.size());
+
+		cache.putMissing(notFound, true, 0);
+		cache.remove(notFound);
+		assertFalse("removed", cache.isMissing(notFound, 0));
+	}
+
+	@Test
+	public void test_bounded() {
+		final MissingTileCache cache = new MissingTileCache(3, 1000, 100);
+		for (int i = 0; i < 4; i++) {
+			cache.putMissing(new MapTile(10, i, i), true, 0);
+		}
+		// a miss that happens again is the newest
+		cache.putMissing(new MapTile(10, 1, 1), true, 0);
+		cache.putMissing(new MapTile(10, 4, 4), true, 0);
+
+		assertEquals("size", 3, cache.size());
+		assertFalse("oldest forgotten", cache.isMissing(new MapTile(10, 0, 0), 0));
+		assertFalse("next oldest forgotten", cache.isMissing(new MapTile(10, 2, 2), 0));
+		assertTrue("renewed", cache.isMissing(new MapTile(10, 1, 1), 0));
+
+		cache.clear();
+		assertFalse("cleared", cache.isMissing(new MapTile(10, 4, 4), 0));
+	}
+
+	@Test
+	public void test_bounded_after_remove() {
+		final MissingTileCache cache = new MissingTileCache(2, 1000, 100);
+		cache.putMissing(new MapTile(10, 0, 0), true, 0);
+		cache.putMissing(new MapTile(10, 1, 1), false, 0);
+		// the failure expires, and the oldest miss is removed
+		assertFalse("expired", cache.isMissing(new MapTile(10, 1, 1), 100));
+		cache.remove(new MapTile(10, 0, 0));
+		assertEquals("empty", 0, cache.size());
+
+		for (int i = 2; i < 5; i++) {
+			cache.putMissing(new MapTile(10, i, i), true, 0);
+		}
+		assertEquals("size", 2, cache.size());
+		assertFalse("oldest forgotten", cache.isMissing(new MapTile(10, 2, 2), 0));
+		assertTrue("kept", cache.isMissing(new MapTile(10, 3, 3), 0));
+		assertTrue("newest", cache.isMissing(new MapTile(10, 4, 4), 0));
+	}
+}
@@ -0,0 +1,99 @@
+package org.osmdroid.tileprovider.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+
+public class TileWriterTest {
+
+	private final ITileSource mTileSource = new XYTileSource("Test", null, 0, 18, 256, ".png",
+			"http://a/");
+	private final MapTile mTile = new MapTile(10, 1, 2);
+
+	private File mBasePath;
+	private TileWriter mTileWriter;
+
+	@Before
+	public void setUp() throws IOException {
+		mBasePath = File.createTempFile("tiles", "");
+		mBasePath.delete();
+		mBasePath.mkdirs();
+		mTileWriter = new TileWriter(mBasePath);
+	}
+
+	@After
+	public void tearDown() {
+		delete(mBasePath);
+	}
+
+	@Test
+	public void test_validators() {
+		assertNull("not saved", mTileWriter.getValidators(mTileSource, mTile));
+
+		assertTrue("saved", mTileWriter.saveFile(mTileSource, mTile, tile(),
+				new TileValidators("\"abc\"", "Wed, 21 Oct 2015 07:28:00 GMT")));
+		TileValidators validators = mTileWriter.getValidators(mTileSource, mTile);
+		assertEquals("ETag", "\"abc\"", validators.getETag());
+		assertEquals("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT",
+				validators.getLastModified());
+
+		assertTrue("saved", mTileWriter.saveFile(mTileSource, mTile, tile(),
+				new TileValidators("\"def\"", null)));
+		validators = mTileWriter.getValidators(mTileSource, mTile);
+		assertEquals("new ETag", "\"def\"", validators.getETag());
+		assertNull("no Last-Modified", validators.getLastModified());
+
+		// a new version without validators drops those of the previous one
+		assertTrue("saved", mTileWriter.saveFile(mTileSource, mTile, tile()));
+		assertNull("no validators", mTileWriter.getValidators(mTileSource, mTile));
+	}
+
+	@Test
+	public void test_refresh() {
+		assertFalse("not saved", mTileWriter.refreshFile(mTileSource, mTile));
+		assertEquals("no save time", 0, mTileWriter.getSaveTime(mTileSource, mTile));
+
+		assertTrue("saved", mTileWriter.saveFile(mTileSource, mTile, tile(),
+				new TileValidators("\"abc\"", null)));
+		final File file = new File(mBasePath, mTileSource.getTileRelativeFilenameString(mTile)
+				+ TileWriter.TILE_PATH_EXTENSION);
+		final long saved = System.currentTimeMillis() - 10 * TileWriter.ONE_DAY;
+		assertTrue("backdated", file.setLastModified(saved));
+		assertTrue("old save time",
+				mTileWriter.getSaveTime(mTileSource, mTile) <= saved + TileWriter.ONE_SECOND);
+
+		final long before = System.currentTimeMillis();
+		assertTrue("refreshed", mTileWriter.refreshFile(mTileSource, mTile));
+		// the file system may only keep whole seconds
+		assertTrue("new save time",
+				mTileWriter.getSaveTime(mTileSource, mTile) >= before - TileWriter.ONE_SECOND);
+		assertEquals("validators kept", "\"abc\"",
+				mTileWriter.getValidators(mTileSource, mTile).getETag());
+	}
+
+	private static ByteArrayInputStream tile() {
+		return new ByteArrayInputStream(new byte[] { 1, 2, 3 });
+	}
+
+	private static void delete(final File pFile) {
+		final File[] files = pFile.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				delete(file);
+			}
+		}
+		pFile.delete();
+	}
+}
@@ -0,0 +1,123 @@
+package org.osmdroid.tileprovider.tilesource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+
+public class HostSchedulerTest {
+
+	private static final String[] HOSTS = { "http://a/", "http://b/", "http://c/" };
+
+	@Test
+	public void test_same_host_per_tile() throws InterruptedException {
+		final HostScheduler scheduler = new HostScheduler(HOSTS);
+		final MapTile tile = new MapTile(10, 4, 6);
+		assertEquals("preferred", "http://b/", scheduler.getBaseUrl(tile));
+		assertEquals("acquired", 1, scheduler.acquire(tile, 0));
+		assertEquals("in flight", 1, scheduler.getInFlightCount(1));
+		scheduler.release(tile, false, 100);
+		assertEquals("again", 1, scheduler.acquire(tile, 0));
+		scheduler.release(tile, false, 100);
+		assertEquals("requests", 2, scheduler.getRequestCount(1));
+		assertEquals("latency", 100, scheduler.getAverageLatency(1));
+		assertEquals("none in flight", 0, scheduler.getInFlightCount(1));
+
+		// a 3 x 3 viewport is spread evenly
+		final int[] counts = new int[HOSTS.length];
+		for (int x = 0; x < 3; x++) {
+			for (int y = 0; y < 3; y++) {
+				counts[scheduler.getPreferredHost(new MapTile(10, x, y))]++;
+			}
+		}
+		assertEquals("a", 3, counts[0]);
+		assertEquals("b", 3, counts[1]);
+		assertEquals("c", 3, counts[2]);
+	}
+
+	@Test
+	public void test_in_flight_limit() throws InterruptedException {
+		final HostScheduler scheduler = new HostScheduler("http://a/", "http://b/");
+		scheduler.setMaximumInFlight(1);
+		final MapTile tile1 = new MapTile(10, 0, 0);
+		final MapTile tile2 = new MapTile(10, 2, 0);
+		final MapTile tile3 = new MapTile(10, 4, 0);
+
+		assertEquals("preferred", 0, scheduler.acquire(tile1, 0));
+		assertEquals("next host", 1, scheduler.acquire(tile2, 0));
+		assertEquals("url of the host given", "http://b/", scheduler.getBaseUrl(tile2));
+		assertEquals("all busy", -1, scheduler.acquire(tile3, 10));
+
+		scheduler.release(tile1, false, -1);
+		assertEquals("freed", 0, scheduler.acquire(tile3, 0));
+		assertEquals("abandoned requests aren't counted", 0, scheduler.getRequestCount(0));
+	}
+
+	@Test
+	public void test_same_tile_twice() throws InterruptedException {
+		final HostScheduler scheduler = new HostScheduler("http://a/");
+		scheduler.setMaximumInFlight(2);
+		final MapTile tile = new MapTile(10, 0, 0);
+
+		// eg two map views on the same tile source
+		assertEquals("first", 0, scheduler.acquire(tile, 0));
+		assertEquals("second", 0, scheduler.acquire(tile, 0));
+		assertEquals("in flight", 2, scheduler.getInFlightCount(0));
+		scheduler.release(tile, false, 100);
+		assertEquals("one left", 1, scheduler.getInFlightCount(0));
+		assertEquals("still given", "http://a/", scheduler.getBaseUrl(tile));
+		scheduler.release(tile, false, 100);
+		assertEquals("none left", 0, scheduler.getInFlightCount(0));
+		assertEquals("both counted", 2, scheduler.getRequestCount(0));
+
+		// no slot has leaked
+		assertEquals("free", 0, scheduler.acquire(new MapTile(10, 1, 0), 0));
+		assertEquals("free", 0, scheduler.acquire(new MapTile(10, 2, 0), 0));
+	}
+
+	@Test
+	public void test_drain() {
+		final HostScheduler scheduler = new HostScheduler(HOSTS);
+		scheduler.setDrainPolicy(3, 1000, 30000);
+		final MapTile tile = new MapTile(10, 0, 0);
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals("preferred", 0, download(scheduler, tile, true, 0));
+		}
+		assertTrue("drained", scheduler.isDraining(0, 0));
+		assertEquals("next host", 1, download(scheduler, tile, false, 0));
+		assertEquals("failures", 3, scheduler.getFailureCount(0));
+
+		// after the drain, one more failure drains it again
+		assertEquals("back", 0, download(scheduler, tile, true, 30000));
+		assertTrue("drained again", scheduler.isDraining(0, 30000));
+		assertEquals("drain count", 2, scheduler.getDrainCount(0));
+
+		// a slow host
+		final MapTile slowTile = new MapTile(10, 1, 0);
+		for (int i = 0; i < 3; i++) {
+			assertEquals("slow host", 1, scheduler.tryAcquire(slowTile, 0));
+			scheduler.release(slowTile, false, 2000, 0);
+		}
+		assertTrue("slow", scheduler.isDraining(1, 0));
+		assertFalse("healthy", scheduler.isDraining(2, 0));
+
+		// all the hosts are drained, but the tiles still have to be downloaded
+		final MapTile lastTile = new MapTile(10, 2, 0);
+		for (int i = 0; i < 3; i++) {
+			download(scheduler, lastTile, true, 0);
+		}
+		assertTrue("all drained", scheduler.isDraining(2, 0));
+		assertEquals("preferred anyway", 2, scheduler.tryAcquire(lastTile, 0));
+	}
+
+	private static int download(final HostScheduler pScheduler, final MapTile pTile,
+			final boolean pFailed, final long pNow) {
+		final int host = pScheduler.tryAcquire(pTile, pNow);
+		assertTrue("acquired", host >= 0);
+		pScheduler.release(pTile, pFailed, pFailed ? -1 : 100, pNow);
+		return host;
+	}
+}
@@ -0,0 +1,138 @@
+package org.osmdroid.tileprovider.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TileBufferTest {
+
+	private static final int TILE_SIZE = 20000;
+
+	@Test
+	public void test_read() throws IOException {
+		final byte[] tile = tile(TILE_SIZE);
+		final TileBuffer buffer = TileBuffer.obtain();
+
+		assertEquals("right length", TILE_SIZE, buffer.readFrom(new NetworkStream(tile), TILE_SIZE));
+		assertArrayEquals("content", tile, buffer.toByteArray());
+		assertEquals("length too short", TILE_SIZE, buffer.readFrom(new NetworkStream(tile), 100));
+		assertArrayEquals("content", tile, buffer.toByteArray());
+		assertEquals("no length", TILE_SIZE, buffer.readFrom(new NetworkStream(tile), -1));
+		assertArrayEquals("content", tile, StreamUtils.toByteArray(buffer.toInputStream()));
+		assertEquals("length too long", 10, buffer.readFrom(new NetworkStream(tile(10)), 100));
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final InputStream in = buffer.toInputStream();
+		in.read();
+		assertEquals("rest", 9, StreamUtils.copy(in, out));
+		assertEquals("nothing left", -1, in.read());
+
+		buffer.recycle();
+		assertSame("reused", buffer, TileBuffer.obtain());
+	}
+
+	/**
+	 * Compare the bytes allocated for each tile with the way a downloaded tile used to be read,
+	 * saved and handed to the decoder.
+	 */
+	@Test
+	public void test_allocated_bytes() throws IOException {
+		final byte[] tile = tile(TILE_SIZE);
+		final File file = File.createTempFile("tile", ".tile");
+		file.deleteOnExit();
+		final int tiles = 200;
+
+		// warm up
+		downloadWithCopies(tile, file);
+		downloadIntoBuffer(tile, file);
+
+		long start = getAllocatedBytes();
+		for (int i = 0; i < tiles; i++) {
+			downloadWithCopies(tile, file);
+		}
+		final long copiesBytes = (getAllocatedBytes() - start) / tiles;
+
+		start = getAllocatedBytes();
+		for (int i = 0; i < tiles; i++) {
+			downloadIntoBuffer(tile, file);
+		}
+		final long bufferBytes = (getAllocatedBytes() - start) / tiles;
+
+		assertTrue("TileBuffer allocates " + bufferBytes + " bytes per tile, copies "
+				+ copiesBytes + " bytes", bufferBytes < copiesBytes / 2);
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			assertArrayEquals("saved", tile, StreamUtils.toByteArray(in));
+		} finally {
+			in.close();
+		}
+	}
+
+	private static InputStream downloadWithCopies(final byte[] pTile, final File pFile)
+			throws IOException {
+		final ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
+		final OutputStream out = new BufferedOutputStream(dataStream, StreamUtils.IO_BUFFER_SIZE);
+		StreamUtils.copy(new NetworkStream(pTile), out);
+		out.flush();
+		final byte[] data = dataStream.toByteArray();
+
+		final OutputStream file = new BufferedOutputStream(new FileOutputStream(pFile),
+				StreamUtils.IO_BUFFER_SIZE);
+		StreamUtils.copy(new ByteArrayInputStream(data), file);
+		file.close();
+		return new ByteArrayInputStream(data);
+	}
+
+	private static InputStream downloadIntoBuffer(final byte[] pTile, final File pFile)
+			throws IOException {
+		final TileBuffer buffer = TileBuffer.obtain();
+		buffer.readFrom(new NetworkStream(pTile), pTile.length);
+
+		final OutputStream file = new FileOutputStream(pFile);
+		StreamUtils.copy(buffer.toInputStream(), file);
+		file.close();
+		final InputStream result = buffer.toInputStream();
+		buffer.recycle();
+		return result;
+	}
+
+	private static long getAllocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static byte[] tile(final int pLength) {
+		final byte[] tile = new byte[pLength];
+		new Random(1).nextBytes(tile);
+		return tile;
+	}
+
+	/**
+	 * Returns the content a packet at a time.
+	 */
+	private static class NetworkStream extends ByteArrayInputStream {
+		private NetworkStream(final byte[] pContent) {
+			super(pContent);
+		}
+
+		@Override
+		public synchronized int read(final byte[] pBuffer, final int pOffset, final int pLength) {
+			return super.read(pBuffer, pOffset, Math.min(pLength, 1460));
+		}
+	}
+}
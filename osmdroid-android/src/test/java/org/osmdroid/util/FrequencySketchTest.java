@@ -0,0 +1,45 @@
+package org.osmdroid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+
+public class FrequencySketchTest {
+
+	@Test
+	public void test_frequency() {
+		final FrequencySketch sketch = new FrequencySketch(100);
+		final long key = MapTile.getTileKey(15, 17000, 11000);
+		assertEquals("not seen yet", 0, sketch.frequency(key));
+
+		for (int i = 0; i < 5; i++) {
+			sketch.increment(key);
+		}
+		assertTrue("at least the real count", sketch.frequency(key) >= 5);
+
+		for (int i = 0; i < 100; i++) {
+			sketch.increment(key);
+		}
+		assertEquals("saturated", FrequencySketch.MAXIMUM_FREQUENCY, sketch.frequency(key));
+	}
+
+	@Test
+	public void test_aging() {
+		final FrequencySketch sketch = new FrequencySketch(10);
+		final long key = MapTile.getTileKey(15, 1, 1);
+		for (int i = 0; i < 20; i++) {
+			sketch.increment(key);
+		}
+
+		// other keys push the sketch past its sample size, which halves the counters
+		for (int i = 0; i < 100; i++) {
+			sketch.increment(MapTile.getTileKey(15, 1000 + i, 1000));
+		}
+		assertTrue("aged", sketch.frequency(key) < FrequencySketch.MAXIMUM_FREQUENCY);
+
+		sketch.clear();
+		assertEquals("cleared", 0, sketch.frequency(key));
+	}
+}
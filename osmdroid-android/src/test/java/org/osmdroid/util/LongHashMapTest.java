@@ -0,0 +1,70 @@
+package org.osmdroid.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.osmdroid.tileprovider.MapTile;
+
+public class LongHashMapTest {
+
+	@Test
+	public void test_put_get_remove() {
+		final LongHashMap<String> map = new LongHashMap<String>();
+		assertTrue("new map is empty", map.isEmpty());
+
+		final long key = MapTile.getTileKey(0, 0, 0);
+		assertNull("no previous value", map.put(key, "a"));
+		assertEquals("previous value", "a", map.put(key, "b"));
+		assertEquals("one entry", 1, map.size());
+		assertEquals("value", "b", map.get(key));
+
+		assertEquals("removed value", "b", map.remove(key));
+		assertNull("nothing to remove", map.remove(key));
+		assertFalse("key removed", map.containsKey(key));
+		assertTrue("map is empty", map.isEmpty());
+	}
+
+	/**
+	 * Compare a random sequence of operations on a small set of keys, so that there are plenty of
+	 * collisions and removals in the middle of probe sequences, with a {@link HashMap}.
+	 */
+	@Test
+	public void test_same_as_HashMap() {
+		final LongHashMap<Integer> map = new LongHashMap<Integer>();
+		final Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		final Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			final long key = MapTile.getTileKey(random.nextInt(3) + 10, random.nextInt(16),
+					random.nextInt(16));
+			if (random.nextInt(3) == 0) {
+				assertEquals("remove " + i, expected.remove(key), map.remove(key));
+			} else {
+				assertEquals("put " + i, expected.put(key, i), map.put(key, i));
+			}
+			assertEquals("size " + i, expected.size(), map.size());
+		}
+		for (final Map.Entry<Long, Integer> entry : expected.entrySet()) {
+			assertEquals("get", entry.getValue(), map.get(entry.getKey()));
+		}
+
+		final long[] keys = map.getKeys(null);
+		for (int i = 0; i < map.size(); i++) {
+			assertTrue("getKeys", expected.containsKey(keys[i]));
+		}
+
+		map.clear();
+		assertEquals("cleared", 0, map.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_null_value() {
+		new LongHashMap<String>().put(1, null);
+	}
+}
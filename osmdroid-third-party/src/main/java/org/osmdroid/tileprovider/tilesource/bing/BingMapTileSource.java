@@ -12,6 +12,7 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.osmdroid.ResourceProxy;
 import org.osmdroid.http.HttpClientFactory;
+import org.osmdroid.http.PooledHttpClientFactory;
 import org.osmdroid.tileprovider.MapTile;
 import org.osmdroid.tileprovider.tilesource.IStyledTileSource;
 import org.osmdroid.tileprovider.tilesource.QuadTreeTileSource;
@@ -227,8 +228,9 @@ public class BingMapTileSource extends QuadTreeTileSource implements IStyledTile
 		final HttpClient client = HttpClientFactory.createHttpClient();
 		final HttpUriRequest head = new HttpGet(String.format(BASE_URL_PATTERN, mStyle, mBingMapKey));
 		logger.debug("make request "+head.getURI().toString());
+		HttpResponse response = null;
 		try {
-			final HttpResponse response = client.execute(head);
+			response = client.execute(head);
 
 			final HttpEntity entity = response.getEntity();
 
@@ -248,7 +250,8 @@ public class BingMapTileSource extends QuadTreeTileSource implements IStyledTile
 		} catch(final Exception e) {
 			logger.error("Error getting imagery meta data", e);
 		} finally {
-			client.getConnectionManager().shutdown();
+			// the client is shared, so let the connection be reused rather than shut it down
+			PooledHttpClientFactory.consumeEntity(response);
 			logger.trace("end getMetaData");
 		}
 		return null;